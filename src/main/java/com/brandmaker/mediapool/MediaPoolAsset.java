@@ -7,10 +7,12 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
 
 import javax.mail.internet.ContentDisposition;
@@ -23,7 +25,11 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.brandmaker.mediapool.rest.MediaPoolEndpoint;
+import com.brandmaker.mediapool.rest.AssetSyncException;
+import com.brandmaker.mediapool.rest.MediaPoolUnavailableException;
 import com.brandmaker.mediapool.rest.RestServicesWrapper;
+import com.brandmaker.mediapool.webhook.ChannelPublication;
 import com.brandmaker.mediapool.webhook.MediaPoolEvent;
 import com.brandmaker.mediapool.webhook.WebhookException;
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -98,7 +104,7 @@ public class MediaPoolAsset
 	private HashSet<String> assignedCategoryIds = new HashSet<String>();
 
 	@JsonIgnore
-	private String serviceUrl;
+	private MediaPoolEndpoint endpoint;
 
 	@JsonIgnore
 	private MediaPoolEvent mediaPoolEvent;
@@ -220,7 +226,7 @@ public class MediaPoolAsset
 		this.mediaPoolEvent = event;
 		this.restService = restService;
 
-		this.serviceUrl = event.getBaseUrl();
+		this.endpoint = restService.getEndpoint(event);
 		
 		try {
 			LOGGER.debug(event.toJson().toString(4) );
@@ -269,17 +275,14 @@ public class MediaPoolAsset
 	 */
 	private void mapPublishingData() {
 		
-		JSONArray eventData = new JSONArray();
-		
 		try {
 			
+			List<ChannelPublication> eventData = new ArrayList<ChannelPublication>();
 			for ( Entry<String, Long> chnEntry : getChannels().entrySet() ) {
-				JSONObject eentry = new JSONObject();
-				eentry.put(MediaPoolEvent.PROP_CHANNELID, chnEntry.getKey());
-				eentry.put(MediaPoolEvent.PROP_RENDERINGSCHEME, chnEntry.getValue() );
-				eventData.put(eentry);
+				eventData.add(new ChannelPublication(chnEntry.getKey(),
+						chnEntry.getValue() != null ? chnEntry.getValue() : ChannelPublication.NO_RENDERING_SCHEME, null, null));
 			}
-			mediaPoolEvent.setPayloadArray(eventData);
+			mediaPoolEvent.setPublications(eventData.toArray(new ChannelPublication[eventData.size()]));
 		} 
 		catch (Exception e) {
 			LOGGER.error("Error", e);
@@ -291,6 +294,8 @@ public class MediaPoolAsset
 	 * Retrieve asset data from MP REST API
 	 * Available from 6.3 release on (!)
 	 *
+	 * @return false, if the asset is not found
+	 * @throws AssetSyncException if the data cannot be loaded or is not as expected
 	 */
 	private boolean loadAssetMetaData()
 	{
@@ -336,15 +341,26 @@ public class MediaPoolAsset
 		}
 		catch (JSONException e)
 		{
-			LOGGER.error("JSON error", e);
+			// the result is not structured as expected, it will not be next time either
+			setState(states.fault);
+			throw new AssetSyncException("Unexpected data of asset " + mediaPoolEvent.getAssetId() + ": " + e.getMessage(), e, false);
+		}
+		catch (MediaPoolUnavailableException e)
+		{
+			// tried again later by the queue consumer
+			setState(states.fault);
+			throw e;
+		}
+		catch (IOException e)
+		{
 			setState(states.fault);
+			throw new AssetSyncException("Error loading asset data of " + mediaPoolEvent.getAssetId() + ": " + e.getMessage(), e, true);
 		}
 		catch (Exception e)
 		{
-			LOGGER.error("Error loading asset data: " + e.getMessage(), e);
 			setState(states.fault);
+			throw new AssetSyncException("Error loading asset data of " + mediaPoolEvent.getAssetId() + ": " + e.getMessage(), e, false);
 		}
-		return false;
 
 	}
 
@@ -577,7 +593,7 @@ public class MediaPoolAsset
 						}
 					};
 					
-					if ( channelId != null && mediaPoolEvent.getMySyncChannels() != null && mediaPoolEvent.getMySyncChannels().contains(channelId) ) {
+					if ( channelId != null && mediaPoolEvent.getChannelMatcher() != null && mediaPoolEvent.getChannelMatcher().matches(channelId) ) {
 						
 						new PropertyMapper<String>(chnentry, "fields.publishedFrom") {
 							@Override
@@ -788,14 +804,14 @@ public class MediaPoolAsset
 
 		if ( this.isStateReady() && mediaPoolEvent.needsBinary() ) {
 			
-			setDownloadUrl(serviceUrl + "/rest/mp/v1.2/file-generation-task");
+			setDownloadUrl(endpoint.getFileGenerationTaskUrl());
 			
 			LOGGER.info("ID: " + getMediaID() );
 			LOGGER.info("Version: " + getVersion() );
 			LOGGER.info("Rendition: " +  mediaPoolEvent.getRenderingScheme() );
 			LOGGER.info("Channels: " +  mediaPoolEvent.getChannelsFromPayload().toString() );
 			
-			if ( this.getMediaID() == null || this.getVersion() == null || mediaPoolEvent.getRenderingScheme() == null ) {
+			if ( this.getMediaID() == null || this.getVersion() == null || mediaPoolEvent.getRenderingScheme() == ChannelPublication.NO_RENDERING_SCHEME ) {
 				downloadTaskId = null;
 				setDownloadUrl(null);
 			}
@@ -813,7 +829,7 @@ public class MediaPoolAsset
 					downloadTaskId = restService.createDownloadTask(getDownloadUrl(), taskRequest);
 					
 					if ( downloadTaskId != null && !downloadTaskId.isEmpty() )
-						setDownloadUrl(serviceUrl + "/rest/mp/v1.2/download/file-generation-task/" + downloadTaskId);
+						setDownloadUrl(endpoint.downloadTaskUrl(downloadTaskId));
 				}
 				catch ( WebhookException e )
 				{
@@ -76,7 +76,7 @@ public class MediaPoolWebHookEvents
 	/** Test event to test the endpoint */
 	private static final String EVENT_TEST = "TEST";
 	
-	/** enum encapsulation to not to mess up */
+	/** enum encapsulation to not to mess up. The queue transfers the ordinal, add new events at the end only! */
 	public static enum Event {
 
 		/** Global synchronization of all assets */
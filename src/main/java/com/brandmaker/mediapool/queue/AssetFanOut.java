@@ -0,0 +1,211 @@
+package com.brandmaker.mediapool.queue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.apache.activemq.ScheduledMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * <p>Expands a bulk event, i.e. an event with a list of {@link MediaPoolEvent#getAssetIds() asset IDs}, into one event per
+ * asset while it is consumed.
+ *
+ * <p>A SYNCHRONIZE of a category may list tens of thousands of assets. The bulk event is queued as it is, a compact list of
+ * IDs, and nothing is created for its assets up front. A consumer takes the first <code>chunk-size</code> assets and queues
+ * an event of each of them through the {@link Sender}, nothing is synchronized right away. The events of the assets are
+ * processed like events received by the webhook: in the message group of their asset, in order with its other events. They
+ * are not held by the {@link EventCoalescer}, the synchronization loads the current state of the asset anyway. The
+ * remaining IDs are queued again as up to <code>split</code> smaller bulk events, so other consumers can take over parts of
+ * them, and events of other assets and tenants queued in the meantime are not held back until the whole list is done.
+ *
+ * <p>The events of the assets are outstanding until they are processed. They are marked with the property {@link
+ * #FAN_OUT_PROPERTY}, and the consumer reports each one it has processed, or handed to the {@link EventRetries}. At most
+ * <code>max-outstanding</code> of them are queued at a time: a bulk event takes only as many assets as there is room for,
+ * and without room it is queued again, due <code>hold-delay</code> msec later. It is split only as far as there is room for
+ * the chunks of its parts. So a bulk event of any size adds at most <code>max-outstanding</code> events of assets to the
+ * broker, plus about one bulk event per chunk of them, and the next chunk is released as the previous ones are done.
+ *
+ * <p>The outstanding events are counted by this instance. If they are not reported within <code>stall-timeout</code>
+ * seconds, e.g. as they were consumed by another instance, or the instance has been restarted, the count is reset, so a bulk
+ * event is never held forever.
+ *
+ * <p>The events are sent on the session of the listener. It must be transacted, then they are committed together with the
+ * acknowledge of the bulk event: if the consumer fails, the bulk event is redelivered and no event is left behind.
+ *
+ * <p>Metrics:
+ * <ul>
+ * 		<li><code>mediapool.queue.fanout.assets</code>: events of single assets queued from bulk events
+ * 		<li><code>mediapool.queue.fanout.continuations</code>: bulk events queued with the remaining assets
+ * 		<li><code>mediapool.queue.fanout.held</code>: bulk events queued again, as <code>max-outstanding</code> events were outstanding
+ * 		<li><code>mediapool.queue.fanout.outstanding</code>: events of single assets queued and not processed yet
+ * </ul>
+ *
+ * @author axel.amthor
+ *
+ */
+public class AssetFanOut {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AssetFanOut.class);
+
+	/** JMS property of the events of single assets queued from a bulk event */
+	public static final String FAN_OUT_PROPERTY = "MediaPoolFanOut";
+
+	/** max number of assets of a bulk event processed per message */
+	@Value("${spring.active-mq.fan-out.chunk-size:100}")
+	private int chunkSize;
+
+	/** number of bulk events the remaining assets are queued as */
+	@Value("${spring.active-mq.fan-out.split:2}")
+	private int split;
+
+	/** max number of events of single assets queued and not processed yet */
+	@Value("${spring.active-mq.fan-out.max-outstanding:1000}")
+	private int maxOutstanding;
+
+	/** msec until a bulk event held for lack of room comes back */
+	@Value("${spring.active-mq.fan-out.hold-delay:5000}")
+	private long holdDelay;
+
+	/** seconds without a processed event, after which the outstanding events are no longer counted */
+	@Value("${spring.active-mq.fan-out.stall-timeout:600}")
+	private int stallTimeout;
+
+	@Autowired
+	private Sender sender;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private final AtomicInteger outstanding = new AtomicInteger();
+
+	/** msec of the last event queued or processed */
+	private volatile long lastProgress = System.currentTimeMillis();
+
+	private Counter assets;
+	private Counter continuations;
+	private Counter held;
+
+	@PostConstruct
+	public void init() {
+
+		chunkSize = Math.max(1, chunkSize);
+		split = Math.max(1, split);
+		maxOutstanding = Math.max(1, maxOutstanding);
+
+		assets = meterRegistry.counter("mediapool.queue.fanout.assets");
+		continuations = meterRegistry.counter("mediapool.queue.fanout.continuations");
+		held = meterRegistry.counter("mediapool.queue.fanout.held");
+		meterRegistry.gauge("mediapool.queue.fanout.outstanding", outstanding);
+	}
+
+	/**
+	 * Queue an event of each asset of the first chunk, and the assets beyond it as continuations. Without room for further
+	 * outstanding events, the bulk event is queued again as it is.
+	 *
+	 * @param event a bulk event
+	 * @param session the transacted session of the listener
+	 * @return number of events of single assets queued
+	 * @throws JMSException if the events cannot be sent, the bulk event must be rolled back then
+	 */
+	public int expand(MediaPoolEvent event, Session session) throws JMSException {
+
+		long[] ids = event.getAssetIds();
+		long now = System.currentTimeMillis();
+
+		if ( outstanding.get() > 0 && now - lastProgress > stallTimeout * 1000L ) {
+			LOGGER.warn(outstanding.get() + " events of assets of bulk events have not been processed within " + stallTimeout
+					+ " sec, they are no longer counted");
+			outstanding.set(0);
+		}
+
+		int room = maxOutstanding - outstanding.get();
+		if ( room <= 0 ) {
+			sender.send(Collections.singletonList(event), session, message -> {
+				message.setLongProperty(ScheduledMessage.AMQ_SCHEDULED_DELAY, holdDelay);
+				return message;
+			});
+			held.increment();
+			LOGGER.debug("Bulk " + event.getEvent() + " of " + ids.length + " assets held, " + outstanding.get() + " events outstanding");
+			return 0;
+		}
+
+		int chunk = Math.min(ids.length, Math.min(chunkSize, room));
+		int rest = ids.length - chunk;
+		// split only as far as there is room for the chunks of the parts, so the bulk events do not multiply while waiting
+		int parts = rest > 0 ? Math.min(Math.min(split, (rest + chunkSize - 1) / chunkSize), Math.max(1, (room - chunk) / chunkSize)) : 0;
+
+		List<MediaPoolEvent> events = new ArrayList<MediaPoolEvent>(chunk);
+		for ( int i = 0; i < chunk; i++ )
+			events.add(event.forAsset(ids[i]));
+
+		List<MediaPoolEvent> rests = new ArrayList<MediaPoolEvent>(parts);
+		int from = chunk;
+		for ( int part = 1; part <= parts; part++ ) {
+			int to = chunk + (int) ((long) rest * part / parts);
+			rests.add(event.forAssets(Arrays.copyOfRange(ids, from, to)));
+			from = to;
+		}
+
+		sender.send(events, session, message -> {
+			message.setBooleanProperty(FAN_OUT_PROPERTY, true);
+			return message;
+		});
+		if ( !rests.isEmpty() )
+			sender.send(rests, session);
+
+		// counted once sent, a rolled back bulk event is counted again when it is redelivered, until the stall timeout
+		outstanding.addAndGet(chunk);
+		lastProgress = now;
+		assets.increment(chunk);
+		continuations.increment(parts);
+
+		if ( rest > 0 )
+			LOGGER.info("Bulk " + event.getEvent() + " of " + ids.length + " assets: queued " + chunk + " events, " + rest
+					+ " assets queued again as " + parts + " bulk events");
+
+		return chunk;
+	}
+
+	/**
+	 * An event of a single asset of a bulk event has been processed, or handed to the {@link EventRetries}
+	 */
+	public void completed() {
+		outstanding.updateAndGet(n -> Math.max(0, n - 1));
+		lastProgress = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return number of events of single assets queued and not processed yet
+	 */
+	public int getOutstanding() {
+		return outstanding.get();
+	}
+
+	/**
+	 * @return true, if the message is an event of a single asset of a bulk event
+	 */
+	public static boolean isFanOut(Message message) {
+		try {
+			return message.propertyExists(FAN_OUT_PROPERTY);
+		}
+		catch ( JMSException e ) {
+			return false;
+		}
+	}
+}
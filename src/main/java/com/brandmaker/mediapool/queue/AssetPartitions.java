@@ -0,0 +1,255 @@
+package com.brandmaker.mediapool.queue;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ScheduledMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.support.JmsUtils;
+
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * <p>Processes the events of one asset one after the other, and the events of different assets in parallel.
+ *
+ * <p>Each event of a single asset is queued with the message group {@link #groupId(MediaPoolEvent) of its asset}. The broker
+ * dispatches all messages of a group to the same consumer, in the order they were queued, so the consumers are the
+ * partitions and the assets are spread across them. A group does not span the queues of the {@link EventLanes lanes}, and it
+ * moves to another consumer if its consumer is stopped. So in addition, an event is only processed while holding the lock of
+ * its asset. There is a lock per asset which is being processed, assets do not wait for each other.
+ *
+ * <p>The wait for the lock is bounded: an event which does not get it within <code>lock-wait</code> msec, e.g. while the
+ * binary of its asset is downloaded in another lane, is queued again with a delay of <code>requeue-delay</code> msec, and
+ * the consumer goes on with the next message. The event may be overtaken by later events of its asset then, the
+ * {@link com.brandmaker.mediapool.rest.AssetStateStore asset state} does not let it overwrite what they have applied.
+ *
+ * <p>A group sticks to the consumer which received its first message. Consumers started later by the
+ * {@link ConsumerConcurrencyController} only get assets which have not been seen yet, or whose consumer has been stopped, so
+ * a backlog of few assets with many events each is not spread evenly. That is what the skew shows.
+ *
+ * <p>A partition is identified by the session of its consumer. Consumers are started and stopped by the container, so the
+ * partitions are counted per window of <code>skew-window</code> seconds, and the metrics show the last complete window.
+ * They are updated by the events, without events the previous values remain.
+ *
+ * <p>Metrics:
+ * <ul>
+ * 		<li><code>mediapool.queue.partition.skew</code>: events of the busiest partition divided by the mean of all partitions
+ * 			which processed events. 1 is even, the number of partitions means all events went to one of them.
+ * 		<li><code>mediapool.queue.partition.max</code>: events of the busiest partition
+ * 		<li><code>mediapool.queue.partition.active</code>: partitions which processed events
+ * 		<li><code>mediapool.queue.partition.contended</code>: events which had to wait for the lock of their asset, held by
+ * 			another event of the asset
+ * 		<li><code>mediapool.queue.partition.requeued</code>: events queued again, as they did not get the lock in time
+ * </ul>
+ *
+ * @author axel.amthor
+ *
+ */
+public class AssetPartitions {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AssetPartitions.class);
+
+	/** the JMS property of the message group */
+	public static final String GROUP_PROPERTY = "JMSXGroupID";
+
+	/** max msec to wait for the lock of an asset */
+	@Value("${spring.active-mq.partition.lock-wait:1000}")
+	private long lockWait;
+
+	/** msec until an event which did not get the lock comes back */
+	@Value("${spring.active-mq.partition.requeue-delay:5000}")
+	private long requeueDelay;
+
+	@Value("${spring.active-mq.partition.skew-window:60}")
+	private int skewWindow;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	/** the locks of the assets being processed, by message group */
+	private final ConcurrentMap<String, AssetLock> locks = new ConcurrentHashMap<String, AssetLock>();
+
+	/** events per partition in the current window, replaced when the window is complete */
+	private volatile ConcurrentMap<Object, AtomicLong> window = new ConcurrentHashMap<Object, AtomicLong>();
+
+	/** written while holding this */
+	private volatile long windowStart;
+
+	/** of the last complete window */
+	private volatile double skew = 1d;
+	private volatile long max;
+	private volatile int active;
+
+	private Counter contended;
+	private Counter requeued;
+
+	/**
+	 * The lock of an asset, it is removed when no event uses it any more
+	 */
+	@SuppressWarnings("serial")
+	private static final class AssetLock extends ReentrantLock {
+
+		/** events holding or waiting for the lock, changed within the compute functions of the map only */
+		private int users;
+	}
+
+	@PostConstruct
+	public void init() {
+
+		lockWait = Math.max(0L, lockWait);
+		windowStart = System.nanoTime();
+
+		contended = meterRegistry.counter("mediapool.queue.partition.contended");
+		requeued = meterRegistry.counter("mediapool.queue.partition.requeued");
+		meterRegistry.gauge("mediapool.queue.partition.skew", this, p -> p.skew);
+		meterRegistry.gauge("mediapool.queue.partition.max", this, p -> p.max);
+		meterRegistry.gauge("mediapool.queue.partition.active", this, p -> p.active);
+	}
+
+	/**
+	 * @param event an event to be queued
+	 * @return the message group of the asset of the event, null for bulk events and events without asset
+	 */
+	public static String groupId(MediaPoolEvent event) {
+
+		if ( event.getAssetId() == null || event.hasAssetIds() )
+			return null;
+
+		if ( event.getTenantId() != MediaPoolEvent.NO_TENANT )
+			return event.getTenantId() + ":" + event.getAssetId();
+
+		return event.getCustomerId() + "/" + event.getSystemId() + ":" + event.getAssetId();
+	}
+
+	/**
+	 * Process the event while holding the lock of its asset, or queue it again if the lock is not free in time
+	 *
+	 * @param event the event of a single asset
+	 * @param message the received message of the event
+	 * @param session the transacted session of the consumer which received the event, it identifies the partition
+	 * @param handler processes the event
+	 * @return true if the event was processed, false if it was queued again
+	 * @throws org.springframework.jms.JmsException if the event cannot be queued again, the received one must be rolled back
+	 */
+	public boolean process(MediaPoolEvent event, Message message, Session session, Consumer<MediaPoolEvent> handler) {
+
+		String group = groupId(event);
+		if ( group == null ) {
+			handler.accept(event);
+			count(session);
+			return true;
+		}
+
+		AssetLock lock = locks.compute(group, (g, l) -> {
+			AssetLock used = l != null ? l : new AssetLock();
+			used.users++;
+			return used;
+		});
+		try {
+			if ( !lock.tryLock() ) {
+				contended.increment();
+				if ( !await(lock) ) {
+					requeue(event, message, session);
+					return false;
+				}
+			}
+			try {
+				handler.accept(event);
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+		finally {
+			locks.computeIfPresent(group, (g, l) -> --l.users > 0 ? l : null);
+		}
+
+		count(session);
+		return true;
+	}
+
+	private boolean await(ReentrantLock lock) {
+		try {
+			return lock.tryLock(lockWait, TimeUnit.MILLISECONDS);
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Queue a copy of the message to its queue again, on the session of the consumer, it is committed with the received one
+	 */
+	private void requeue(MediaPoolEvent event, Message message, Session session) {
+
+		try {
+			Message copy = EventRetries.copy(message);
+			if ( requeueDelay > 0L )
+				copy.setLongProperty(ScheduledMessage.AMQ_SCHEDULED_DELAY, requeueDelay);
+
+			MessageProducer producer = session.createProducer(message.getJMSDestination());
+			try {
+				producer.send(copy);
+			}
+			finally {
+				JmsUtils.closeMessageProducer(producer);
+			}
+
+			requeued.increment();
+			LOGGER.info(event.getEvent() + " of asset " + groupId(event) + " is waiting for another event of the asset, queued again");
+		}
+		catch ( JMSException e ) {
+			throw JmsUtils.convertJmsAccessException(e);
+		}
+	}
+
+	private void count(Object partition) {
+
+		window.computeIfAbsent(partition, p -> new AtomicLong()).incrementAndGet();
+
+		long now = System.nanoTime();
+		if ( now - windowStart >= skewWindow * 1000000000L ) {
+			synchronized ( this ) {
+				if ( now - windowStart >= skewWindow * 1000000000L ) {
+					complete(window);
+					window = new ConcurrentHashMap<Object, AtomicLong>();
+					windowStart = now;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Publish the metrics of a complete window. Sessions of stopped consumers are dropped with it.
+	 */
+	private void complete(ConcurrentMap<Object, AtomicLong> window) {
+
+		long max = 0L;
+		long total = 0L;
+		for ( AtomicLong events : window.values() ) {
+			max = Math.max(max, events.get());
+			total += events.get();
+		}
+
+		this.max = max;
+		this.active = window.size();
+		this.skew = total > 0L ? (double) max * window.size() / total : 1d;
+	}
+}
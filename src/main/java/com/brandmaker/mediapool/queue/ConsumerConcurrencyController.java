@@ -0,0 +1,343 @@
+package com.brandmaker.mediapool.queue;
+
+import java.net.URI;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.activemq.broker.BrokerRegistry;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.config.JmsListenerEndpointRegistry;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.jms.listener.MessageListenerContainer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import com.brandmaker.mediapool.queue.EventLanes.Lane;
+import com.brandmaker.mediapool.rest.MediaPoolCallStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+
+/**
+ * <p>Adapts the number of consumers of the processing queues to the capacity of Media Pool.
+ *
+ * <p>A consumer spends most of its time waiting for Media Pool, so one consumer leaves Media Pool idle while the queue
+ * grows, and too many of them overload it. The controller sets the max number of consumers of the listener containers,
+ * a container starts consumers up to that limit as long as there are messages, and stops the superfluous ones when the
+ * queue runs dry. The limit of all consumers is adjusted every <code>interval</code> seconds by additive increase,
+ * multiplicative decrease:
+ * <ul>
+ * 		<li>if more than <code>max-failure-rate</code> of the calls to Media Pool have failed (429, 5xx or no response), or
+ * 			their mean response time exceeds <code>latency-target</code>, the limit is multiplied by <code>decrease</code>
+ * 		<li>otherwise, if all consumers have been started and there are more messages in the queue than consumers, the limit
+ * 			is raised by one
+ * 		<li>if the queue is empty, the limit is lowered by one
+ * </ul>
+ * The limit stays within <code>min</code> and <code>max</code>, at least one consumer per lane. The calls are only judged if
+ * there have been at least <code>min-calls</code> of them. The queue depth is read from the embedded broker; with an external
+ * broker it is not known, then the limit is raised as long as all consumers are busy.
+ *
+ * <p>The limit is shared by the {@link EventLanes lanes}: each lane has one consumer, the others are given to the lanes in
+ * the order of their priority, as many as they have queued messages. What is left goes to the lane with the highest
+ * priority. So when Media Pool is overloaded, the lanes with the lowest priority give up their consumers first.
+ *
+ * <p>Metrics:
+ * <ul>
+ * 		<li><code>mediapool.queue.consumers.limit</code>: the current limit
+ * 		<li><code>mediapool.queue.consumers</code>: consumers started by the containers
+ * 		<li><code>mediapool.queue.depth</code>: messages in the queues, -1 if not known
+ * 		<li><code>mediapool.queue.lane.limit{lane}</code>, <code>mediapool.queue.lane.consumers{lane}</code>,
+ * 			<code>mediapool.queue.lane.depth{lane}</code>: the same per lane
+ * </ul>
+ *
+ * @author axel.amthor
+ *
+ */
+public class ConsumerConcurrencyController {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConsumerConcurrencyController.class);
+
+	@Value("${spring.active-mq.broker-url}")
+	private String brokerUrl;
+
+	/** false: the number of consumers is left to the container, between min and max */
+	@Value("${spring.active-mq.concurrency.enabled:true}")
+	private boolean enabled;
+
+	@Value("${spring.active-mq.concurrency.min:1}")
+	private int min;
+
+	@Value("${spring.active-mq.concurrency.max:8}")
+	private int max;
+
+	/** seconds between two adjustments */
+	@Value("${spring.active-mq.concurrency.interval:5}")
+	private int interval;
+
+	/** mean response time of Media Pool in msec, beyond the limit is decreased. 0 to ignore the response time */
+	@Value("${spring.active-mq.concurrency.latency-target:3000}")
+	private long latencyTarget;
+
+	@Value("${spring.active-mq.concurrency.max-failure-rate:0.2}")
+	private double maxFailureRate;
+
+	/** min number of calls per interval to judge the response time and failure rate */
+	@Value("${spring.active-mq.concurrency.min-calls:5}")
+	private int minCalls;
+
+	/** factor of the multiplicative decrease */
+	@Value("${spring.active-mq.concurrency.decrease:0.5}")
+	private double decrease;
+
+	@Autowired
+	private JmsListenerEndpointRegistry listenerRegistry;
+
+	@Autowired
+	private MediaPoolCallStats callStats;
+
+	@Autowired
+	private EventLanes lanes;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private ScheduledExecutorService scheduler;
+
+	/** the threads of the consumers, reused when the container stops and starts consumers */
+	private ThreadPoolTaskExecutor consumerExecutor;
+
+	/** only changed by the scheduler thread */
+	private volatile int limit;
+	private volatile long depth = -1L;
+
+	/** by the ordinal of the lane */
+	private final AtomicIntegerArray laneLimits = new AtomicIntegerArray(Lane.values().length);
+	private final AtomicLongArray laneDepths = new AtomicLongArray(Lane.values().length);
+
+	private final Map<Lane, DefaultMessageListenerContainer> containers = new EnumMap<Lane, DefaultMessageListenerContainer>(Lane.class);
+	private final Map<Lane, Destination> queues = new EnumMap<Lane, Destination>(Lane.class);
+
+	@PostConstruct
+	public void init() {
+
+		int laneCount = Lane.values().length;
+
+		min = Math.max(laneCount, min);
+		max = Math.max(min, max);
+		limit = min;
+
+		for ( Lane lane : Lane.values() ) {
+			laneLimits.set(lane.ordinal(), enabled ? 1 : max);
+			laneDepths.set(lane.ordinal(), -1L);
+		}
+
+		// a container keeps its consumers until their task ends, so a lane may still run consumers given to another one
+		consumerExecutor = new ThreadPoolTaskExecutor();
+		consumerExecutor.setCorePoolSize(max * laneCount);
+		consumerExecutor.setMaxPoolSize(max * laneCount);
+		consumerExecutor.setThreadNamePrefix("mediapool-consumer-");
+		consumerExecutor.initialize();
+
+		meterRegistry.gauge("mediapool.queue.consumers.limit", this, c -> c.enabled ? c.limit : c.max * laneCount);
+		meterRegistry.gauge("mediapool.queue.consumers", this, c -> c.consumers(null));
+		meterRegistry.gauge("mediapool.queue.depth", this, c -> c.depth);
+		for ( Lane lane : Lane.values() ) {
+			meterRegistry.gauge("mediapool.queue.lane.limit", Tags.of("lane", lane.key()), this, c -> c.laneLimits.get(lane.ordinal()));
+			meterRegistry.gauge("mediapool.queue.lane.consumers", Tags.of("lane", lane.key()), this, c -> c.consumers(lane));
+			meterRegistry.gauge("mediapool.queue.lane.depth", Tags.of("lane", lane.key()), this, c -> c.laneDepths.get(lane.ordinal()));
+		}
+
+		if ( !enabled )
+			return;
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "consumer-concurrency");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::adjust, interval, interval, TimeUnit.SECONDS);
+
+		LOGGER.info("Consumer concurrency between " + min + " and " + max + ", adjusted every " + interval + " sec");
+	}
+
+	@PreDestroy
+	public void close() {
+		if ( scheduler != null )
+			scheduler.shutdownNow();
+		consumerExecutor.shutdown();
+	}
+
+	/**
+	 * @return the concurrency of the listener container factory, "min-max" where max is the initial limit of a lane
+	 */
+	public String getConcurrency() {
+		return "1-" + (enabled ? 1 : max);
+	}
+
+	/**
+	 * @return the task executor of the containers, with a thread for each of the max number of consumers of each lane
+	 */
+	public ThreadPoolTaskExecutor getConsumerExecutor() {
+		return consumerExecutor;
+	}
+
+	private void adjust() {
+
+		try {
+			if ( !containers() )
+				return;
+
+			MediaPoolCallStats.Sample sample = callStats.sample();
+			long depth = this.depth = queueDepths();
+			int consumers = consumers(null);
+
+			int next;
+			String reason;
+			if ( sample.getCalls() >= minCalls && sample.getFailureRate() > maxFailureRate ) {
+				next = (int) (limit * decrease);
+				reason = String.format("%.0f%% of %d calls to Media Pool failed", sample.getFailureRate() * 100, sample.getCalls());
+			}
+			else if ( sample.getCalls() >= minCalls && latencyTarget > 0 && sample.getMeanMillis() > latencyTarget ) {
+				next = (int) (limit * decrease);
+				reason = "mean response time of Media Pool is " + sample.getMeanMillis() + " msec";
+			}
+			else if ( consumers >= limit && (depth < 0 || depth > consumers) ) {
+				next = limit + 1;
+				reason = depth < 0 ? "all consumers are busy" : depth + " messages are queued";
+			}
+			else if ( depth == 0 ) {
+				next = limit - 1;
+				reason = "queue is empty";
+			}
+			else {
+				next = limit;
+				reason = null;
+			}
+
+			next = Math.max(min, Math.min(max, next));
+			if ( next != limit )
+				LOGGER.info("Consumer limit " + limit + " -> " + next + ", " + reason + " (" + consumers + " consumers)");
+			limit = next;
+
+			share(next);
+		}
+		catch ( Exception e ) {
+			LOGGER.error("Cannot adjust the consumer concurrency", e);
+		}
+	}
+
+	/**
+	 * Give each lane one consumer, and the rest of the limit to the lanes with queued messages by their priority
+	 */
+	private void share(int limit) {
+
+		int rest = limit - Lane.values().length;
+
+		for ( Lane lane : lanes.byPriority() ) {
+			long depth = laneDepths.get(lane.ordinal());
+			int extra = (int) Math.min(Math.min(rest, max - 1), depth < 0 ? rest : Math.max(0L, depth - 1));
+			laneLimits.set(lane.ordinal(), 1 + extra);
+			rest -= extra;
+		}
+
+		for ( Lane lane : lanes.byPriority() ) {
+			int extra = Math.min(rest, max - laneLimits.get(lane.ordinal()));
+			laneLimits.addAndGet(lane.ordinal(), extra);
+			rest -= extra;
+		}
+
+		for ( Lane lane : Lane.values() ) {
+			DefaultMessageListenerContainer container = containers.get(lane);
+			int laneLimit = laneLimits.get(lane.ordinal());
+			if ( container.getMaxConcurrentConsumers() != laneLimit ) {
+				LOGGER.debug("Consumer limit of lane " + lane.key() + " " + container.getMaxConcurrentConsumers() + " -> " + laneLimit);
+				container.setMaxConcurrentConsumers(laneLimit);
+			}
+		}
+	}
+
+	/**
+	 * @return true, if the containers of all lanes are known and running
+	 */
+	private boolean containers() {
+
+		for ( Lane lane : Lane.values() ) {
+			DefaultMessageListenerContainer container = containers.get(lane);
+			if ( container == null ) {
+				MessageListenerContainer listener = listenerRegistry.getListenerContainer(QueueConsumer.LISTENER_ID + "." + lane.key());
+				if ( !(listener instanceof DefaultMessageListenerContainer) )
+					return false;
+				container = (DefaultMessageListenerContainer) listener;
+				containers.put(lane, container);
+			}
+			if ( !container.isRunning() )
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param lane null for all lanes
+	 * @return number of consumers started by the container of the lane
+	 */
+	private int consumers(Lane lane) {
+
+		int consumers = 0;
+		for ( Map.Entry<Lane, DefaultMessageListenerContainer> entry : containers.entrySet() )
+			if ( lane == null || entry.getKey() == lane )
+				consumers += entry.getValue().getScheduledConsumerCount();
+		return consumers;
+	}
+
+	/**
+	 * @return number of messages in the queues of all lanes, -1 if not known
+	 */
+	private long queueDepths() throws Exception {
+
+		long total = 0L;
+		for ( Lane lane : Lane.values() ) {
+			long depth = queueDepth(lane);
+			laneDepths.set(lane.ordinal(), depth);
+			total = total < 0 || depth < 0 ? -1L : total + depth;
+		}
+		return total;
+	}
+
+	/**
+	 * @return number of messages in the queue of the embedded broker, including the ones being processed. -1 if not known.
+	 */
+	private long queueDepth(Lane lane) throws Exception {
+
+		Destination queue = queues.get(lane);
+		if ( queue == null ) {
+			if ( !brokerUrl.startsWith("vm:") )
+				return -1L;
+
+			String name = URI.create(brokerUrl).getHost();
+			BrokerService broker = name != null ? BrokerRegistry.getInstance().lookup(name) : null;
+			if ( broker == null )
+				broker = BrokerRegistry.getInstance().findFirst();
+			if ( broker == null || !broker.isStarted() )
+				return -1L;
+
+			queue = broker.getDestination(new ActiveMQQueue(lanes.queueName(lane)));
+			if ( queue == null )
+				return -1L;
+			queues.put(lane, queue);
+		}
+		return queue.getDestinationStatistics().getMessages().getCount();
+	}
+}
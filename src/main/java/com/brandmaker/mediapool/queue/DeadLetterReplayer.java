@@ -0,0 +1,267 @@
+package com.brandmaker.mediapool.queue;
+
+import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.QueueBrowser;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConversionException;
+
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * <p>Queues the dead letters to their lanes again, at a limited rate.
+ *
+ * <p>Dead letters are left by the {@link EventRetries}, e.g. during a longer outage of Media Pool or with a wrong
+ * configuration. Once the cause is gone, they are replayed: each one is moved from the dead-letter queue to the queue of its
+ * lane, as a new event with all attempts left. Taking it from the dead-letter queue and queueing it again is one transaction,
+ * so nothing is lost or duplicated if the replay is stopped. The rate is limited, so a large number of dead letters does not
+ * flood Media Pool again at once.
+ *
+ * <p>Dead letters which cannot be decoded are {@link EventRetries#UNDECODABLE marked} and skipped, they would fail again.
+ * A dead letter which cannot be decoded any more is marked in the same transaction, so it does not end the replay.
+ *
+ * <p>One replay runs at a time, in a thread of its own. It ends when the dead-letter queue is empty, the given number of
+ * dead letters has been replayed, or it is stopped. Dead letters added meanwhile are replayed as well.
+ *
+ * <p>Metrics:
+ * <ul>
+ * 		<li><code>mediapool.queue.dead-letters.replayed</code>: dead letters queued again
+ * </ul>
+ *
+ * @author axel.amthor
+ *
+ */
+public class DeadLetterReplayer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DeadLetterReplayer.class);
+
+	/** dead letters per second, if not given with the request */
+	@Value("${spring.active-mq.retry.replay-rate:10}")
+	private double defaultRate;
+
+	/** prefetch 1, so a replay takes only the messages it replays */
+	@Autowired
+	private ActiveMQConnectionFactory receiverActiveMQConnectionFactory;
+
+	@Autowired
+	private MediaPoolEventMessageConverter messageConverter;
+
+	@Autowired
+	private EventRetries retries;
+
+	@Autowired
+	private EventLanes lanes;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private Counter replayed;
+
+	/** the running replay, null if none */
+	private volatile Replay replay;
+
+	/** the previous replay */
+	private volatile Replay previous;
+
+	/**
+	 * State of a replay, returned by the admin endpoint
+	 */
+	public static final class Replay {
+
+		private final int limit;
+		private final double rate;
+		private final long started = System.currentTimeMillis();
+		private volatile int replayed;
+		private volatile boolean running = true;
+		private volatile String error;
+
+		Replay(int limit, double rate) {
+			this.limit = limit;
+			this.rate = rate;
+		}
+
+		/** max number of dead letters, 0 for all */
+		public int getLimit() {
+			return limit;
+		}
+
+		/** dead letters per second */
+		public double getRate() {
+			return rate;
+		}
+
+		/** msec since the epoch */
+		public long getStarted() {
+			return started;
+		}
+
+		public int getReplayed() {
+			return replayed;
+		}
+
+		public boolean isRunning() {
+			return running;
+		}
+
+		/** why the replay has ended early, null if it has not */
+		public String getError() {
+			return error;
+		}
+	}
+
+	@PostConstruct
+	public void init() {
+		replayed = meterRegistry.counter("mediapool.queue.dead-letters.replayed");
+	}
+
+	@PreDestroy
+	public void close() {
+		stop();
+	}
+
+	/**
+	 * Start to replay the dead letters
+	 *
+	 * @param limit max number of dead letters to replay, 0 for all
+	 * @param rate dead letters per second, 0 for the configured rate
+	 * @return the new replay, null if a replay is running already
+	 */
+	public synchronized Replay start(int limit, double rate) {
+
+		if ( replay != null )
+			return null;
+
+		Replay replay = new Replay(Math.max(0, limit), rate > 0d ? rate : defaultRate);
+		this.replay = replay;
+
+		Thread thread = new Thread(() -> run(replay), "dead-letter-replay");
+		thread.setDaemon(true);
+		thread.start();
+
+		LOGGER.info("Replaying " + (replay.limit > 0 ? "up to " + replay.limit : "all") + " dead letters of " + retries.getDeadLetterQueue()
+				+ " at " + replay.rate + " per sec");
+		return replay;
+	}
+
+	/**
+	 * Stop the running replay after the current dead letter
+	 *
+	 * @return the stopped replay, null if none was running
+	 */
+	public Replay stop() {
+
+		Replay replay = this.replay;
+		if ( replay != null )
+			replay.running = false;
+		return replay;
+	}
+
+	/**
+	 * @return the running replay, or the previous one, null if there was none
+	 */
+	public Replay getReplay() {
+		Replay replay = this.replay;
+		return replay != null ? replay : previous;
+	}
+
+	/**
+	 * @return number of dead letters, they are browsed
+	 * @throws JMSException if the broker cannot be reached
+	 */
+	public int countDeadLetters() throws JMSException {
+
+		Connection connection = receiverActiveMQConnectionFactory.createConnection();
+		try {
+			connection.start();
+			Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+			QueueBrowser browser = session.createBrowser(session.createQueue(retries.getDeadLetterQueue()));
+
+			int count = 0;
+			for ( Enumeration<?> messages = browser.getEnumeration(); messages.hasMoreElements(); messages.nextElement() )
+				count++;
+			return count;
+		}
+		finally {
+			JmsUtils.closeConnection(connection);
+		}
+	}
+
+	private void run(Replay replay) {
+
+		Connection connection = null;
+		try {
+			connection = receiverActiveMQConnectionFactory.createConnection();
+			connection.start();
+
+			Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+			MessageConsumer consumer = session.createConsumer(session.createQueue(retries.getDeadLetterQueue()), EventRetries.REPLAYABLE);
+			MessageProducer producer = session.createProducer(null);
+
+			long start = System.nanoTime();
+			while ( replay.running && (replay.limit == 0 || replay.replayed < replay.limit) ) {
+
+				Message message = consumer.receive(1000L);
+				if ( message == null )
+					break;
+
+				MediaPoolEvent event;
+				try {
+					event = (MediaPoolEvent) messageConverter.fromMessage(message);
+				}
+				catch ( MessageConversionException e ) {
+					retries.undecodable(message, session, e);
+					session.commit();
+					continue;
+				}
+
+				producer.send(session.createQueue(lanes.queueName(event)), messageConverter.toMessage(event, session));
+				session.commit();
+
+				replay.replayed++;
+				replayed.increment();
+
+				// the n-th dead letter is due n / rate seconds after the start
+				long due = start + (long) (replay.replayed * TimeUnit.SECONDS.toNanos(1) / replay.rate);
+				long wait = due - System.nanoTime();
+				if ( wait > 0L )
+					TimeUnit.NANOSECONDS.sleep(wait);
+			}
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			replay.error = "interrupted";
+		}
+		catch ( Exception e ) {
+			LOGGER.error("Replay of dead letters failed", e);
+			replay.error = e.toString();
+		}
+		finally {
+			JmsUtils.closeConnection(connection);
+
+			LOGGER.info("Replayed " + replay.replayed + " dead letters in " + (System.currentTimeMillis() - replay.started) / 1000L + " sec");
+			synchronized ( this ) {
+				replay.running = false;
+				previous = replay;
+				this.replay = null;
+			}
+		}
+	}
+}
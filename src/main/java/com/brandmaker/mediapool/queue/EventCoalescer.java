@@ -0,0 +1,373 @@
+package com.brandmaker.mediapool.queue;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ScheduledMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.support.JmsUtils;
+
+import com.brandmaker.mediapool.MediaPoolWebHookEvents.Event;
+import com.brandmaker.mediapool.queue.EventLanes.Lane;
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * <p>Holds the events of an asset for a short window and executes only their net effect.
+ *
+ * <p>Editors produce bursts of events, e.g. several METADATA_CHANGED of an asset within seconds, or a PUBLISHED followed
+ * by a DEPUBLISHED. Each of them would cost a search, a version lookup and possibly a download. By the effect of their type
+ * on the local copy, the events of an asset are merged:
+ * <ul>
+ * 		<li>metadata changes collapse into one
+ * 		<li>a change of the files (published, new or official version, ...) includes the metadata, it absorbs metadata changes
+ * 		<li>of two changes of the files, the later one wins: a DEPUBLISHED after a PUBLISHED only deletes the files
+ * 		<li>a deletion of the asset cancels everything pending
+ * </ul>
+ * Events of different channels are not merged, except a metadata change into a change of the files. The pending event is
+ * executed first then. The net event carries the latest event time of the events merged into it: it is executed with the
+ * current state of the asset, which includes all of them, so the asset state discards events of the asset up to that time.
+ * Events of other types and the events of bulk events are executed right away, the {@link AssetFanOut} limits how many of
+ * the latter are outstanding. Events of the fast {@link EventLanes lane} are time-critical, they are not held either: they
+ * are executed right away and cancel the pending event they supersede.
+ *
+ * <p>The pending events are not only kept in memory: each merged event is queued again to the lane of its type, with a
+ * delay of <code>window</code> seconds and a generation number. This is committed together with the received event. When a
+ * queued event comes back, it is executed if it is still the latest generation of its asset, otherwise it has been merged
+ * into a later one and is dropped. After a restart the generations are gone and the queued events are executed as they come, each of them
+ * carries what has been merged so far, and the older ones are discarded by the asset state. An asset is held for at most
+ * <code>max-hold</code> seconds, so a steady stream of events does not postpone it forever.
+ *
+ * <p>The delay requires the scheduler support of the broker, i.e. <code>broker.schedulerSupport=true</code> of the
+ * embedded broker. Without it, events come back right away and are not merged.
+ *
+ * <p>Metrics:
+ * <ul>
+ * 		<li><code>mediapool.queue.coalesce{result=held}</code>: events held, as the first pending event of their asset
+ * 		<li><code>mediapool.queue.coalesce{result=merged}</code>: events merged into a pending one
+ * 		<li><code>mediapool.queue.coalesce{result=flushed}</code>: pending events executed early, as a later event could not be merged
+ * 		<li><code>mediapool.queue.coalesce{result=superseded}</code>: queued events dropped, as they have been merged into later ones
+ * 		<li><code>mediapool.queue.coalesce{result=executed}</code>: net events executed
+ * 		<li><code>mediapool.queue.coalesce.pending</code>: assets with pending events
+ * </ul>
+ *
+ * @author axel.amthor
+ *
+ */
+public class EventCoalescer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EventCoalescer.class);
+
+	/** JMS property of a merged event, its generation */
+	public static final String GENERATION_PROPERTY = "MediaPoolCoalesceGeneration";
+
+	/** JMS property of a merged event, when it is due in msec */
+	private static final String DUE_PROPERTY = "MediaPoolCoalesceDue";
+
+	/** how an event changes the local copy of its asset */
+	enum Effect {
+		/** not coalesced */
+		NONE,
+		/** store the metadata */
+		METADATA,
+		/** store or delete the files, including the metadata */
+		FILES,
+		/** delete everything */
+		DELETE
+	}
+
+	/** seconds to hold the events of an asset, 0 to execute all events right away */
+	@Value("${spring.active-mq.coalesce.window:5}")
+	private int window;
+
+	/** max seconds an asset is held */
+	@Value("${spring.active-mq.coalesce.max-hold:30}")
+	private int maxHold;
+
+	/** max number of assets held, events of further assets are executed right away */
+	@Value("${spring.active-mq.coalesce.max-pending:10000}")
+	private int maxPending;
+
+	@Autowired
+	private MediaPoolEventMessageConverter messageConverter;
+
+	/** merged events are queued in the lane of the net event */
+	@Autowired
+	private EventLanes lanes;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	/** by message group of the asset. The events of an asset come in one after the other, see {@link AssetPartitions} */
+	private final ConcurrentMap<String, Pending> pending = new ConcurrentHashMap<String, Pending>();
+
+	private Counter held;
+	private Counter merged;
+	private Counter flushed;
+	private Counter superseded;
+	private Counter executed;
+
+	private volatile boolean noSchedulerReported;
+
+	private static final class Pending {
+
+		/** null if cancelled by an event of the fast lane, which has been executed right away */
+		private MediaPoolEvent event;
+		private long generation;
+		private final long since;
+
+		Pending(MediaPoolEvent event, long generation, long since) {
+			this.event = event;
+			this.generation = generation;
+			this.since = since;
+		}
+	}
+
+	@PostConstruct
+	public void init() {
+
+		held = meterRegistry.counter("mediapool.queue.coalesce", "result", "held");
+		merged = meterRegistry.counter("mediapool.queue.coalesce", "result", "merged");
+		flushed = meterRegistry.counter("mediapool.queue.coalesce", "result", "flushed");
+		superseded = meterRegistry.counter("mediapool.queue.coalesce", "result", "superseded");
+		executed = meterRegistry.counter("mediapool.queue.coalesce", "result", "executed");
+		meterRegistry.gauge("mediapool.queue.coalesce.pending", this, c -> c.pending.size());
+	}
+
+	/**
+	 * Hold the event, merge it into the pending event of its asset, or pass it to the handler
+	 *
+	 * @param event a received event of a single asset
+	 * @param message the message of the event
+	 * @param session the transacted session of the listener, merged events are queued on it
+	 * @param handler executes an event
+	 * @throws org.springframework.jms.JmsException if a merged event cannot be queued, the received one must be rolled back
+	 */
+	public void offer(MediaPoolEvent event, Message message, Session session, Consumer<MediaPoolEvent> handler) {
+
+		try {
+			if ( message.propertyExists(GENERATION_PROPERTY) ) {
+				returned(event, message, handler);
+				return;
+			}
+
+			// an event tried again after a failure is not held again, see EventRetries, nor an event of a bulk event, see AssetFanOut
+			String group = AssetPartitions.groupId(event);
+			Effect effect = effect(event.getEvent());
+			if ( window <= 0 || group == null || effect == Effect.NONE || message.propertyExists(EventRetries.ATTEMPTS_PROPERTY)
+					|| AssetFanOut.isFanOut(message) ) {
+				handler.accept(event);
+				return;
+			}
+
+			long now = System.currentTimeMillis();
+			Pending entry = pending.get(group);
+			boolean urgent = lanes.lane(event) == Lane.FAST;
+
+			if ( entry == null || entry.event == null ) {
+				if ( urgent ) {
+					handler.accept(event);
+					return;
+				}
+				if ( entry == null && pending.size() >= maxPending && !evict(now) ) {
+					handler.accept(event);
+					return;
+				}
+				// the generations go on after a cancelled entry, its copies may still come back
+				entry = new Pending(event, entry != null ? entry.generation + 1 : 1L, now);
+				pending.put(group, entry);
+				held.increment();
+			}
+			else {
+				MediaPoolEvent net = merge(entry.event, event);
+				if ( net == null ) {
+					// cannot be merged, its queued copy is superseded
+					LOGGER.info("Executing pending " + entry.event.getEvent() + " of asset " + group + " before " + event.getEvent());
+					flushed.increment();
+					executed.increment();
+					handler.accept(entry.event);
+					if ( urgent ) {
+						pending.put(group, new Pending(null, entry.generation + 1, now));
+						handler.accept(event);
+						return;
+					}
+					entry = new Pending(event, entry.generation + 1, now);
+					pending.put(group, entry);
+				}
+				else if ( urgent && net == event ) {
+					// an event of the fast lane is not held, it cancels what is pending
+					pending.put(group, new Pending(null, entry.generation + 1, now));
+					merged.increment();
+					handler.accept(event);
+					return;
+				}
+				else {
+					entry.event = net;
+					entry.generation++;
+					merged.increment();
+				}
+			}
+
+			long delay = Math.max(0L, Math.min(window * 1000L, entry.since + maxHold * 1000L - now));
+			send(entry, delay, now, session);
+		}
+		catch ( JMSException e ) {
+			throw JmsUtils.convertJmsAccessException(e);
+		}
+	}
+
+	/**
+	 * A merged event is back from the queue
+	 */
+	private void returned(MediaPoolEvent event, Message message, Consumer<MediaPoolEvent> handler) throws JMSException {
+
+		String group = AssetPartitions.groupId(event);
+		long generation = message.getLongProperty(GENERATION_PROPERTY);
+
+		if ( !noSchedulerReported && message.propertyExists(DUE_PROPERTY)
+				&& message.getLongProperty(DUE_PROPERTY) - System.currentTimeMillis() > 1000L ) {
+			noSchedulerReported = true;
+			LOGGER.warn("Events are not delayed by the broker, they are not coalesced. Enable the scheduler support of the broker.");
+		}
+
+		Pending entry = group != null ? pending.get(group) : null;
+		if ( entry != null && entry.generation != generation ) {
+			// the copies come back in the order they were queued, the last one of a cancelled entry ends it
+			if ( entry.event == null && entry.generation == generation + 1 )
+				pending.remove(group, entry);
+			superseded.increment();
+			return;
+		}
+
+		if ( entry != null )
+			pending.remove(group);
+
+		executed.increment();
+		handler.accept(event);
+	}
+
+	private void send(Pending entry, long delay, long now, Session session) throws JMSException {
+
+		MessageProducer producer = session.createProducer(session.createQueue(lanes.queueName(entry.event)));
+		try {
+			Message message = messageConverter.toMessage(entry.event, session);
+			message.setLongProperty(GENERATION_PROPERTY, entry.generation);
+			message.setLongProperty(DUE_PROPERTY, now + delay);
+			if ( delay > 0L )
+				message.setLongProperty(ScheduledMessage.AMQ_SCHEDULED_DELAY, delay);
+			producer.send(message);
+		}
+		finally {
+			JmsUtils.closeMessageProducer(producer);
+		}
+	}
+
+	/**
+	 * Drop entries whose queued event has not come back, e.g. as it was consumed by another instance
+	 *
+	 * @return true, if there is room for another entry
+	 */
+	private boolean evict(long now) {
+
+		long expired = now - 2L * Math.max(maxHold, window) * 1000L;
+		for ( Iterator<Pending> entries = pending.values().iterator(); entries.hasNext(); ) {
+			if ( entries.next().since < expired )
+				entries.remove();
+		}
+		return pending.size() < maxPending;
+	}
+
+	/**
+	 * @param pending the pending event of an asset
+	 * @param event a later event of the asset
+	 * @return the net event with the later event time of both, null if the events cannot be merged
+	 */
+	static MediaPoolEvent merge(MediaPoolEvent pending, MediaPoolEvent event) {
+
+		Effect before = effect(pending.getEvent());
+		Effect after = effect(event.getEvent());
+
+		boolean sameChannels = pending.getChannelsFromPayload().equals(event.getChannelsFromPayload())
+				&& pending.getRenderingScheme() == event.getRenderingScheme();
+
+		// an older event would be discarded by the asset state anyway
+		if ( pending.getEventTime() != null && event.getEventTime() != null && event.getEventTime().before(pending.getEventTime()) )
+			return pending;
+
+		// a later deletion cancels everything
+		if ( after == Effect.DELETE )
+			return latest(event, pending);
+
+		// the files include the metadata, whatever the channel of the metadata change is
+		if ( after == Effect.METADATA && before == Effect.FILES )
+			return latest(pending, event);
+
+		if ( !sameChannels )
+			return null;
+
+		// a metadata change after a deletion or a removal of the files has nothing to do
+		if ( after == Effect.METADATA && before != Effect.METADATA )
+			return latest(pending, event);
+
+		// the later one of two metadata changes, or the later state of the files
+		return latest(event, pending);
+	}
+
+	/**
+	 * @param net the net event of a merge
+	 * @param merged the other event
+	 * @return the net event, with the event time of the other one if that is later
+	 */
+	private static MediaPoolEvent latest(MediaPoolEvent net, MediaPoolEvent merged) {
+
+		if ( merged.getEventTime() != null && (net.getEventTime() == null || merged.getEventTime().after(net.getEventTime())) )
+			net.setEventTime(merged.getEventTime());
+		return net;
+	}
+
+	/**
+	 * @return how the event type changes the local copy, see {@link com.brandmaker.mediapool.rest.MediaPoolAssetManager}
+	 */
+	static Effect effect(Event event) {
+
+		if ( event == null )
+			return Effect.NONE;
+
+		switch ( event ) {
+			case METADATA_CHANGED:
+				return Effect.METADATA;
+
+			case PUBLISHED:
+			case PUBLISHING_START:
+			case PUBLISHING_END:
+			case DEPUBLISHED:
+			case VERSION_ADDED:
+			case VERSION_OFFICIAL:
+			case VERSION_DELETED:
+			case VERSION_UNOFFICIAL:
+			case ASSET_REACTIVATED:
+			case ASSET_ARCHIVED:
+				return Effect.FILES;
+
+			case ASSET_REMOVED:
+			case ASSET_DELETED:
+				return Effect.DELETE;
+
+			default:
+				return Effect.NONE;
+		}
+	}
+}
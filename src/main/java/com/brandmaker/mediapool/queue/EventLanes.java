@@ -0,0 +1,183 @@
+package com.brandmaker.mediapool.queue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+
+import com.brandmaker.mediapool.MediaPoolWebHookEvents.Event;
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+
+/**
+ * <p>Routes the events to processing lanes by their type, each lane has its own queue and consumers.
+ *
+ * <p>Events differ a lot in their cost. A depublish only deletes local files, but it is time-critical, the asset must not
+ * stay visible. A new version waits for the rendition in Media Pool, which may take minutes. In a single queue, the
+ * depublish would wait behind the download. So there are three lanes:
+ * <ul>
+ * 		<li>{@link Lane#FAST}: operations on the local copy only, e.g. depublished or deleted assets
+ * 		<li>{@link Lane#METADATA}: refreshes of the metadata, one REST call, no download
+ * 		<li>{@link Lane#BINARY}: events which download a rendition, and all events not assigned to another lane
+ * </ul>
+ * The event types of a lane are configured as <code>spring.active-mq.lanes.&lt;lane&gt;.events</code>, the queue as
+ * <code>queue-name</code>. The binary lane uses the queue of former versions, so events queued before an update are still
+ * processed. If the lanes are disabled, all events go to the binary lane.
+ *
+ * <p>The events of an asset may be queued in different lanes, so they may be processed out of order. An older event is
+ * discarded by the state of the asset then, and no two events of an asset are processed at the same time, see
+ * {@link AssetPartitions}.
+ *
+ * <p>The <code>priority</code> of a lane decides which lane gets the consumers, when the {@link ConsumerConcurrencyController}
+ * limits them: each lane has one consumer, further ones are given to the lanes with queued messages in the order of their
+ * priority, the highest first.
+ *
+ * @author axel.amthor
+ *
+ */
+public class EventLanes {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EventLanes.class);
+
+	/** the lanes, their configuration key is the lower case name */
+	public enum Lane {
+		FAST,
+		METADATA,
+		BINARY;
+
+		/**
+		 * @return the name of the lane in the configuration and the metrics
+		 */
+		public String key() {
+			return name().toLowerCase();
+		}
+	}
+
+	/** false: all events are queued in the binary lane */
+	@Value("${spring.active-mq.lanes.enabled:true}")
+	private boolean enabled;
+
+	@Value("${spring.active-mq.lanes.fast.queue-name:${spring.active-mq.queue-name}.fast}")
+	private String fastQueue;
+
+	@Value("${spring.active-mq.lanes.fast.events:PUBLISHING_END,DEPUBLISHED,ASSET_REMOVED,ASSET_DELETED}")
+	private String[] fastEvents;
+
+	@Value("${spring.active-mq.lanes.fast.priority:3}")
+	private int fastPriority;
+
+	@Value("${spring.active-mq.lanes.metadata.queue-name:${spring.active-mq.queue-name}.metadata}")
+	private String metadataQueue;
+
+	@Value("${spring.active-mq.lanes.metadata.events:METADATA_CHANGED,VERSION_DELETED,VERSION_UNOFFICIAL,ASSET_ARCHIVED}")
+	private String[] metadataEvents;
+
+	@Value("${spring.active-mq.lanes.metadata.priority:2}")
+	private int metadataPriority;
+
+	@Value("${spring.active-mq.lanes.binary.queue-name:${spring.active-mq.queue-name}}")
+	private String binaryQueue;
+
+	@Value("${spring.active-mq.lanes.binary.priority:1}")
+	private int binaryPriority;
+
+	/** the lane of each event type, the binary lane if not listed */
+	private final Map<Event, Lane> lanes = new EnumMap<Event, Lane>(Event.class);
+
+	private final Map<Lane, String> queues = new EnumMap<Lane, String>(Lane.class);
+
+	private final Map<Lane, Integer> priorities = new EnumMap<Lane, Integer>(Lane.class);
+
+	/** highest priority first */
+	private List<Lane> byPriority;
+
+	@PostConstruct
+	public void init() {
+
+		queues.put(Lane.FAST, fastQueue);
+		queues.put(Lane.METADATA, metadataQueue);
+		queues.put(Lane.BINARY, binaryQueue);
+
+		priorities.put(Lane.FAST, fastPriority);
+		priorities.put(Lane.METADATA, metadataPriority);
+		priorities.put(Lane.BINARY, binaryPriority);
+
+		List<Lane> byPriority = new ArrayList<Lane>(Arrays.asList(Lane.values()));
+		byPriority.sort(Comparator.comparing((Lane lane) -> priorities.get(lane)).reversed());
+		this.byPriority = Collections.unmodifiableList(byPriority);
+
+		if ( !enabled ) {
+			LOGGER.info("Event lanes disabled, all events are queued to " + binaryQueue);
+			return;
+		}
+
+		assign(Lane.METADATA, metadataEvents);
+		assign(Lane.FAST, fastEvents);
+
+		for ( Lane lane : this.byPriority )
+			LOGGER.info("Lane " + lane.key() + " (priority " + priorities.get(lane) + "): " + queues.get(lane) + " "
+					+ (lane == Lane.BINARY ? "all other events" : eventsOf(lane).toString()));
+	}
+
+	private void assign(Lane lane, String[] events) {
+
+		for ( String name : events ) {
+			if ( name.trim().isEmpty() )
+				continue;
+			try {
+				lanes.put(Event.valueOf(name.trim().toUpperCase()), lane);
+			}
+			catch ( IllegalArgumentException e ) {
+				throw new IllegalArgumentException("Unknown event type " + name + " of lane " + lane.key(), e);
+			}
+		}
+	}
+
+	private List<Event> eventsOf(Lane lane) {
+
+		List<Event> events = new ArrayList<Event>();
+		for ( Map.Entry<Event, Lane> entry : lanes.entrySet() )
+			if ( entry.getValue() == lane )
+				events.add(entry.getKey());
+		return events;
+	}
+
+	/**
+	 * @param event an event to be queued, a single or a bulk event
+	 * @return the lane of its type
+	 */
+	public Lane lane(MediaPoolEvent event) {
+
+		Lane lane = event.getEvent() != null ? lanes.get(event.getEvent()) : null;
+		return lane != null ? lane : Lane.BINARY;
+	}
+
+	/**
+	 * @return name of the queue of the lane
+	 */
+	public String queueName(Lane lane) {
+		return queues.get(lane);
+	}
+
+	/**
+	 * @return name of the queue of the lane of the event
+	 */
+	public String queueName(MediaPoolEvent event) {
+		return queues.get(lane(event));
+	}
+
+	/**
+	 * @return the lanes, the highest priority first
+	 */
+	public List<Lane> byPriority() {
+		return byPriority;
+	}
+}
@@ -0,0 +1,288 @@
+package com.brandmaker.mediapool.queue;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.annotation.PostConstruct;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ScheduledMessage;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.util.JMSExceptionSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.support.JmsUtils;
+
+import com.brandmaker.mediapool.rest.AssetSyncException;
+import com.brandmaker.mediapool.rest.MediaPoolUnavailableException;
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * <p>Tries failed events again later, and puts those which cannot be processed into the dead-letter queue.
+ *
+ * <p>A failure is transient, if Media Pool is overloaded or not reachable, see {@link MediaPoolUnavailableException}, or if
+ * an {@link AssetSyncException} is retryable, e.g. on an error of the local file system. The
+ * event is queued again to its lane, with a delay of <code>initial-delay</code> seconds, multiplied by
+ * <code>multiplier</code> for each further attempt up to <code>max-delay</code>. The delay is shortened by a random share of
+ * up to <code>jitter</code>, so the events which failed in the same outage do not come back all at once. After
+ * <code>max-attempts</code> attempts, the event is dead-lettered.
+ *
+ * <p>Any other failure is permanent, trying again would fail again. The event is dead-lettered right away. Dead letters are
+ * kept until they are replayed by the {@link DeadLetterReplayer}, e.g. after a fix of the configuration.
+ *
+ * <p>A message which cannot be decoded, e.g. of a tenant number which is not in the {@link
+ * com.brandmaker.mediapool.webhook.TenantRegistry registry}, would fail on each redelivery. It is copied to the
+ * dead-letter queue as it is, marked as <code>undecodable</code>, and kept for inspection. Such dead letters are not
+ * replayed.
+ *
+ * <p>The messages are sent on the session of the listener. It is transacted, so they are committed together with the
+ * failed message, and the failed one is not redelivered by the broker. The delay requires the scheduler support of the
+ * broker; without it, events are tried again right away until they run out of attempts.
+ *
+ * <p>Metrics:
+ * <ul>
+ * 		<li><code>mediapool.queue.retries</code>: events queued to be tried again
+ * 		<li><code>mediapool.queue.dead-letters{reason=permanent|exhausted|undecodable}</code>: events dead-lettered after a
+ * 			permanent failure, or after the last attempt, and messages which cannot be decoded
+ * </ul>
+ *
+ * @author axel.amthor
+ *
+ */
+public class EventRetries {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(EventRetries.class);
+
+	/** JMS property, number of failed attempts of the event */
+	public static final String ATTEMPTS_PROPERTY = "MediaPoolAttempts";
+
+	/** JMS property of a dead letter, the message of the failure */
+	public static final String FAILURE_PROPERTY = "MediaPoolFailure";
+
+	/** JMS property of a dead letter, transient, permanent or {@link #UNDECODABLE} */
+	public static final String FAILURE_TYPE_PROPERTY = "MediaPoolFailureType";
+
+	/** failure type of a dead letter which cannot be decoded */
+	public static final String UNDECODABLE = "undecodable";
+
+	/** JMS selector of the dead letters which can be replayed */
+	public static final String REPLAYABLE = FAILURE_TYPE_PROPERTY + " IS NULL OR " + FAILURE_TYPE_PROPERTY + " <> '" + UNDECODABLE + "'";
+
+	@Value("${spring.active-mq.retry.dead-letter-queue:${spring.active-mq.queue-name}.dlq}")
+	private String deadLetterQueue;
+
+	/** attempts of an event, including the first one */
+	@Value("${spring.active-mq.retry.max-attempts:6}")
+	private int maxAttempts;
+
+	/** seconds before the second attempt */
+	@Value("${spring.active-mq.retry.initial-delay:30}")
+	private long initialDelay;
+
+	@Value("${spring.active-mq.retry.multiplier:2}")
+	private double multiplier;
+
+	/** max seconds between two attempts */
+	@Value("${spring.active-mq.retry.max-delay:1800}")
+	private long maxDelay;
+
+	/** max share of the delay cut off at random */
+	@Value("${spring.active-mq.retry.jitter:0.5}")
+	private double jitter;
+
+	@Autowired
+	private MediaPoolEventMessageConverter messageConverter;
+
+	@Autowired
+	private EventLanes lanes;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private Counter retries;
+	private Counter permanent;
+	private Counter exhausted;
+	private Counter undecodable;
+
+	@PostConstruct
+	public void init() {
+
+		maxAttempts = Math.max(1, maxAttempts);
+		jitter = Math.max(0d, Math.min(1d, jitter));
+
+		retries = meterRegistry.counter("mediapool.queue.retries");
+		permanent = meterRegistry.counter("mediapool.queue.dead-letters", "reason", "permanent");
+		exhausted = meterRegistry.counter("mediapool.queue.dead-letters", "reason", "exhausted");
+		undecodable = meterRegistry.counter("mediapool.queue.dead-letters", "reason", UNDECODABLE);
+	}
+
+	/**
+	 * @return name of the dead-letter queue
+	 */
+	public String getDeadLetterQueue() {
+		return deadLetterQueue;
+	}
+
+	/**
+	 * @param message a received message
+	 * @return number of failed attempts of its event, 0 if it is a new one
+	 */
+	public static int attempts(Message message) {
+		try {
+			return message.propertyExists(ATTEMPTS_PROPERTY) ? message.getIntProperty(ATTEMPTS_PROPERTY) : 0;
+		}
+		catch ( JMSException e ) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @return true, if the failure may pass, as Media Pool was overloaded or not reachable, or the synchronization of the
+	 * 		asset failed for a retryable reason
+	 */
+	public static boolean isTransient(Throwable failure) {
+
+		for ( Throwable cause = failure; cause != null; cause = cause.getCause() ) {
+			if ( cause instanceof MediaPoolUnavailableException )
+				return true;
+			if ( cause instanceof AssetSyncException )
+				return ((AssetSyncException) cause).isRetryable();
+		}
+		return false;
+	}
+
+	/**
+	 * Queue the event to be tried again, or to the dead-letter queue
+	 *
+	 * @param event the event of a single asset, which has failed
+	 * @param attempts number of failed attempts before this one
+	 * @param session the transacted session of the listener
+	 * @param failure what went wrong
+	 * @throws org.springframework.jms.JmsException if the event cannot be queued, the received message must be rolled back
+	 */
+	public void failed(MediaPoolEvent event, int attempts, Session session, RuntimeException failure) {
+
+		boolean isTransient = isTransient(failure);
+		int failed = attempts + 1;
+
+		try {
+			if ( isTransient && failed < maxAttempts ) {
+				long delay = delay(failed);
+				LOGGER.warn("Attempt " + failed + " of " + event.getEvent() + " of asset " + event.getAssetId() + " failed, trying again in "
+						+ delay / 1000L + " sec: " + failure.getMessage());
+
+				send(event, session.createQueue(lanes.queueName(event)), failed, delay, null, session);
+				retries.increment();
+				return;
+			}
+
+			if ( isTransient ) {
+				LOGGER.error(event.getEvent() + " of asset " + event.getAssetId() + " failed " + failed + " times, dead-lettered: " + failure.getMessage());
+				exhausted.increment();
+			}
+			else {
+				LOGGER.error(event.getEvent() + " of asset " + event.getAssetId() + " cannot be processed, dead-lettered", failure);
+				permanent.increment();
+			}
+
+			send(event, session.createQueue(deadLetterQueue), failed, 0L, failure, session);
+		}
+		catch ( JMSException e ) {
+			throw JmsUtils.convertJmsAccessException(e);
+		}
+	}
+
+	/**
+	 * Copy a message which cannot be decoded to the dead-letter queue, so it is not redelivered again and again
+	 *
+	 * @param message the received message
+	 * @param session the transacted session of the listener
+	 * @param failure why it cannot be decoded
+	 * @throws org.springframework.jms.JmsException if the message cannot be queued, the received message must be rolled back
+	 */
+	public void undecodable(Message message, Session session, RuntimeException failure) {
+
+		try {
+			LOGGER.error("Message " + message.getJMSMessageID() + " cannot be decoded, dead-lettered", failure);
+
+			Message copy = copy(message);
+			copy.setStringProperty(FAILURE_TYPE_PROPERTY, UNDECODABLE);
+			copy.setStringProperty(FAILURE_PROPERTY, String.valueOf(failure.getMessage()));
+
+			MessageProducer producer = session.createProducer(session.createQueue(deadLetterQueue));
+			try {
+				producer.send(copy);
+			}
+			finally {
+				JmsUtils.closeMessageProducer(producer);
+			}
+			undecodable.increment();
+		}
+		catch ( JMSException e ) {
+			throw JmsUtils.convertJmsAccessException(e);
+		}
+	}
+
+	/**
+	 * @param message a received message
+	 * @return a copy to be sent again, with its body and properties. It is not scheduled, even if the message was.
+	 * @throws JMSException if it is not a message of ActiveMQ
+	 */
+	static Message copy(Message message) throws JMSException {
+
+		if ( !(message instanceof ActiveMQMessage) )
+			throw new JMSException("Cannot copy message of type " + message.getClass().getName());
+
+		ActiveMQMessage copy = (ActiveMQMessage) ((ActiveMQMessage) message).copy();
+		// a bytes message writes its body again when a property is set
+		copy.setReadOnlyBody(false);
+		copy.setReadOnlyProperties(false);
+		try {
+			// the broker would not schedule it again
+			copy.removeProperty(ScheduledMessage.AMQ_SCHEDULED_ID);
+			copy.removeProperty(ScheduledMessage.AMQ_SCHEDULED_DELAY);
+		}
+		catch ( IOException e ) {
+			throw JMSExceptionSupport.create(e);
+		}
+		return copy;
+	}
+
+	/**
+	 * @param failed number of failed attempts
+	 * @return msec until the next attempt
+	 */
+	long delay(int failed) {
+
+		double backoff = Math.min(maxDelay, initialDelay * Math.pow(multiplier, failed - 1)) * 1000d;
+		return (long) (backoff * (1d - jitter * ThreadLocalRandom.current().nextDouble()));
+	}
+
+	private void send(MediaPoolEvent event, Destination destination, int attempts, long delay, RuntimeException failure, Session session) throws JMSException {
+
+		MessageProducer producer = session.createProducer(destination);
+		try {
+			Message message = messageConverter.toMessage(event, session);
+			message.setIntProperty(ATTEMPTS_PROPERTY, attempts);
+			if ( delay > 0L )
+				message.setLongProperty(ScheduledMessage.AMQ_SCHEDULED_DELAY, delay);
+			if ( failure != null ) {
+				message.setStringProperty(FAILURE_TYPE_PROPERTY, isTransient(failure) ? "transient" : "permanent");
+				message.setStringProperty(FAILURE_PROPERTY, String.valueOf(failure.getMessage()));
+			}
+			producer.send(message);
+		}
+		finally {
+			JmsUtils.closeMessageProducer(producer);
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.brandmaker.mediapool.queue;
+
+import java.util.Map;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.MessageConverter;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+import com.brandmaker.mediapool.webhook.MediaPoolEventCodec;
+import com.brandmaker.mediapool.webhook.TenantRegistry;
+
+/**
+ * <p>Converts the events of the processing queue.
+ *
+ * <p>Events are sent as {@link BytesMessage} in the form of the {@link MediaPoolEventCodec}, or as {@link MapMessage} of
+ * {@link MediaPoolEvent#toMap()} if <code>spring.active-mq.message-format</code> is <code>map</code>. Both forms are read,
+ * so messages queued by a former version, which are still in the broker's store, are processed as well.
+ *
+ * <p>Events of a single asset are sent in the {@link AssetPartitions#groupId(MediaPoolEvent) message group} of the asset.
+ *
+ * <p>Events are registered in the {@link TenantRegistry} on both ends, so binary messages carry the number of the tenant
+ * instead of its identity strings, and dequeued events share the strings of the registry.
+ *
+ * @author axel.amthor
+ *
+ */
+public class MediaPoolEventMessageConverter implements MessageConverter {
+
+	/** the JMSType of binary events, in case anybody else is browsing the queue */
+	public static final String JMS_TYPE = "MediaPoolEvent";
+
+	private final boolean binary;
+
+	private final TenantRegistry tenants;
+
+	private final SimpleMessageConverter mapConverter = new SimpleMessageConverter();
+
+	/**
+	 * @param binary true to send BytesMessages, false to send MapMessages
+	 * @param tenants the registry of the tenant numbers
+	 */
+	public MediaPoolEventMessageConverter(boolean binary, TenantRegistry tenants) {
+		this.binary = binary;
+		this.tenants = tenants;
+	}
+
+	@Override
+	public Message toMessage(Object object, Session session) throws JMSException, MessageConversionException {
+
+		if ( !(object instanceof MediaPoolEvent) )
+			return mapConverter.toMessage(object, session);
+
+		MediaPoolEvent event = (MediaPoolEvent) object;
+		Message message;
+		if ( !binary ) {
+			message = mapConverter.toMessage(event.toMap(), session);
+		}
+		else {
+			tenants.register(event);
+
+			BytesMessage bytesMessage = session.createBytesMessage();
+			bytesMessage.setJMSType(JMS_TYPE);
+			bytesMessage.writeBytes(MediaPoolEventCodec.encode(event));
+			message = bytesMessage;
+		}
+
+		// the events of an asset are dispatched to one consumer in order
+		String group = AssetPartitions.groupId(event);
+		if ( group != null )
+			message.setStringProperty(AssetPartitions.GROUP_PROPERTY, group);
+
+		return message;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Object fromMessage(Message message) throws JMSException, MessageConversionException {
+
+		try {
+			if ( message instanceof BytesMessage ) {
+				BytesMessage bytesMessage = (BytesMessage) message;
+				byte[] data = new byte[(int) bytesMessage.getBodyLength()];
+				bytesMessage.readBytes(data);
+				MediaPoolEvent event = MediaPoolEventCodec.decode(data, tenants);
+				tenants.register(event);
+				return event;
+			}
+
+			if ( message instanceof MapMessage ) {
+				MediaPoolEvent event = new MediaPoolEvent((Map<String, Object>) mapConverter.fromMessage(message));
+				tenants.register(event);
+				return event;
+			}
+		}
+		catch ( JMSException e ) {
+			throw e;
+		}
+		catch ( Exception e ) {
+			throw new MessageConversionException("Cannot decode event of message " + message.getJMSMessageID(), e);
+		}
+
+		throw new MessageConversionException("Unexpected message type " + message.getClass().getName() + " of message " + message.getJMSMessageID());
+	}
+}
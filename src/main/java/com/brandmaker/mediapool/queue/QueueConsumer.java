@@ -1,17 +1,24 @@
 package com.brandmaker.mediapool.queue;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import javax.annotation.PostConstruct;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.JmsException;
 import org.springframework.jms.annotation.JmsListener;
+import org.springframework.jms.support.converter.MessageConversionException;
 
 import com.brandmaker.mediapool.rest.MediaPoolAssetManager;
 import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+import com.brandmaker.mediapool.webhook.TenantId;
+import com.brandmaker.mediapool.webhook.tenant.TenantDirectory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 
 /**
  * <p>The consumer of the internal event queue.
@@ -23,9 +30,16 @@ import com.brandmaker.mediapool.webhook.MediaPoolEvent;
  * 		<li>Retrieve meta data and store to JSON file
  * 		<li>Retrieve the binary in requested rendition and version and store to local file system
  * </ul>
+ * <p>There is a listener for the queue of each {@link EventLanes lane}, so cheap and urgent events are not held back by downloads.
+ * <p>Bulk events, which list the IDs of several assets, are expanded into one queued event per asset by the {@link AssetFanOut}.
+ * Events of single assets are held for a short window and merged by the {@link EventCoalescer}.
+ * <p>Events which fail are tried again later or dead-lettered by the {@link EventRetries}, they are not lost. Messages
+ * which cannot be decoded are dead-lettered as well, rather than redelivered forever.
  * <p>This is just an example on how to use the REST API of Media Pool to get access to any data stored there.
  * 
  * <p><b>Hint:</b> Do not create worker threads here, leave the configuration of any parallelism up to the queue itself as this will give more control and even flexibility!
+ * The number of consumers is adapted to the capacity of Media Pool by the {@link ConsumerConcurrencyController}, the events
+ * of one asset are processed in order by one of them, see {@link AssetPartitions}.
  * 
  * @author axel.amthor
  *
@@ -34,37 +48,124 @@ public class QueueConsumer {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(QueueConsumer.class);
 
+	/** id of the listener containers, followed by the key of their {@link EventLanes.Lane lane}. Their concurrency is set by the {@link ConsumerConcurrencyController} */
+	public static final String LISTENER_ID = "mediapool.consumer";
+
 	/** The AssetManager is responsible for handling all necessary API operations */
 	@Autowired
 	MediaPoolAssetManager assetManager;
 	
-	/** Configured list of channels which we want to manage */
-	@Value("#{'${spring.application.system.channels:}'.split(',')}")
-	private ArrayList<String> mySyncChannels;
+	/** Processes the events of an asset one after the other */
+	@Autowired
+	private AssetPartitions partitions;
+	
+	/** Expands bulk events chunk by chunk into queued events of single assets */
+	@Autowired
+	private AssetFanOut fanOut;
+	
+	/** Merges bursts of events of an asset */
+	@Autowired
+	private EventCoalescer coalescer;
+	
+	/** Tries failed events again, or dead-letters them */
+	@Autowired
+	private EventRetries retries;
+	
+	/** Decodes the messages, a message which cannot be decoded is dead-lettered */
+	@Autowired
+	private MediaPoolEventMessageConverter messageConverter;
+	
+	/** Configured channels which we want to manage, per tenant */
+	@Autowired
+	private TenantDirectory tenantDirectory;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	/** messages taken from the queue, processed or not */
+	private Counter consumed;
+
+	@PostConstruct
+	public void init() {
+		consumed = meterRegistry.counter("mediapool.queue.consumed");
+	}
 
 	/**
 	 * <p>This method will be called as soon as something is enqueued and avaliable for the consumer(s)
 	 * 
-	 * @param message
+	 * @param message the received message, the event is decoded by the {@link MediaPoolEventMessageConverter}
+	 * @param session the transacted session of the listener, the events of the assets of a bulk event and held events are queued on it
+	 * @throws JMSException if the events of the assets of a bulk event cannot be queued, the message is rolled back
+	 * @throws JmsException if a held or failed event cannot be queued, the message is rolled back
 	 */
-	@JmsListener(destination = "${spring.active-mq.queue-name}")
-	public void onMessage(Map<String, Object> message) {
+	@JmsListener(id = LISTENER_ID + ".fast", destination = "${spring.active-mq.lanes.fast.queue-name:${spring.active-mq.queue-name}.fast}")
+	@JmsListener(id = LISTENER_ID + ".metadata", destination = "${spring.active-mq.lanes.metadata.queue-name:${spring.active-mq.queue-name}.metadata}")
+	@JmsListener(id = LISTENER_ID + ".binary", destination = "${spring.active-mq.lanes.binary.queue-name:${spring.active-mq.queue-name}}")
+	public void onMessage(Message message, Session session) throws JMSException {
 		
+		MediaPoolEvent event = null;
 		try {
-			LOGGER.info("watching channels: " + mySyncChannels.toString() );
-			MediaPoolEvent event = new MediaPoolEvent(message);
-			event.setMySyncChannels(mySyncChannels);
+			try {
+				event = (MediaPoolEvent) messageConverter.fromMessage(message);
+			}
+			catch ( MessageConversionException e ) {
+				// it would fail on each redelivery
+				retries.undecodable(message, session, e);
+				return;
+			}
 			
-			LOGGER.info("dequeued event " + event.toJson().toString(4) );
+			event.setChannelMatcher(tenantDirectory.resolve(new TenantId(event.getCustomerId(), event.getSystemId())).getChannelMatcher());
 			
-			// process the event now. We have an "Asset Manager" and a REST Wrapper class which are handling all Media Pool API stuff
-			assetManager.synchronize(event);
+			if ( event.hasAssetIds() ) {
+				LOGGER.info("dequeued bulk event " + event.getEvent() + " of " + event.getAssetIds().length + " assets");
+				
+				// the events of the assets are queued, each is received and processed like a single event. The number of
+				// outstanding ones is limited, the bulk event may be queued again to wait for them
+				fanOut.expand(event, session);
+			}
+			else {
+				LOGGER.info("dequeued event " + event.toJson().toString(4) );
 				
+				// hold the event for a moment, it may be merged with further events of the asset. We have an "Asset Manager"
+				// and a REST Wrapper class which are handling all Media Pool API stuff
+				int attempts = EventRetries.attempts(message);
+				boolean processed = partitions.process(event, message, session,
+						e -> coalescer.offer(e, message, session, net -> synchronize(net, net == e ? attempts : 0, session)));
+				
+				// an event of a bulk event is done, unless it has been queued again to wait for its asset
+				if ( processed && AssetFanOut.isFanOut(message) )
+					fanOut.completed();
+			}
 			
-		} catch ( Exception e) {
+		} catch ( JMSException | JmsException e ) {
+			throw e;
 			
-			LOGGER.error("Problems on deserialization", e);
+		} catch ( RuntimeException e ) {
+			// e.g. the tenant is not configured: queued again or dead-lettered, not lost
+			retries.failed(event, EventRetries.attempts(message), session, e);
+			if ( event != null && !event.hasAssetIds() && AssetFanOut.isFanOut(message) )
+				fanOut.completed();
+		}
+		finally {
+			consumed.increment();
 		}
 
 	}
+	
+	/**
+	 * Synchronize the asset of the event, a failed event is queued again or dead-lettered
+	 *
+	 * @param attempts number of failed attempts of the event before
+	 */
+	private void synchronize(MediaPoolEvent event, int attempts, Session session) {
+		try {
+			assetManager.synchronize(event);
+		}
+		catch ( JmsException e ) {
+			throw e;
+		}
+		catch ( RuntimeException e ) {
+			retries.failed(event, attempts, session, e);
+		}
+	}
 }
@@ -1,6 +1,7 @@
 package com.brandmaker.mediapool.queue;
 
 import org.apache.activemq.ActiveMQConnectionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -21,11 +22,20 @@ public class QueueConsumerConfig {
   @Value("${spring.active-mq.broker-url}")
   private String brokerUrl;
 
+  /** messages dispatched to a consumer ahead, more than 1 would starve the consumers started later */
+  @Value("${spring.active-mq.prefetch:1}")
+  private int prefetch;
+
+  /** reads the binary and the map form of the events, see SenderConfig */
+  @Autowired
+  private MediaPoolEventMessageConverter mediaPoolEventMessageConverter;
+
   @Bean
   public ActiveMQConnectionFactory receiverActiveMQConnectionFactory() {
 	  
     ActiveMQConnectionFactory activeMQConnectionFactory = new ActiveMQConnectionFactory();
     activeMQConnectionFactory.setBrokerURL(brokerUrl);
+    activeMQConnectionFactory.getPrefetchPolicy().setQueuePrefetch(prefetch);
 
     return activeMQConnectionFactory;
   }
@@ -35,6 +45,14 @@ public class QueueConsumerConfig {
     DefaultJmsListenerContainerFactory factory = new DefaultJmsListenerContainerFactory();
     
     factory.setConnectionFactory(receiverActiveMQConnectionFactory());
+    factory.setMessageConverter(mediaPoolEventMessageConverter);
+    // the remaining assets of a bulk event are queued and committed together with the acknowledge, see AssetFanOut
+    factory.setSessionTransacted(true);
+    // the max number of consumers is adjusted at runtime. Consumers end their task after a few messages, so superfluous
+    // ones can be stopped, and the threads are pooled
+    factory.setConcurrency(consumerConcurrencyController().getConcurrency());
+    factory.setTaskExecutor(consumerConcurrencyController().getConsumerExecutor());
+    factory.setMaxMessagesPerTask(10);
 
     return factory;
   }
@@ -43,4 +61,34 @@ public class QueueConsumerConfig {
   public QueueConsumer receiver() {
     return new QueueConsumer();
   }
+
+  @Bean
+  public ConsumerConcurrencyController consumerConcurrencyController() {
+    return new ConsumerConcurrencyController();
+  }
+
+  @Bean
+  public AssetPartitions assetPartitions() {
+    return new AssetPartitions();
+  }
+
+  @Bean
+  public AssetFanOut assetFanOut() {
+    return new AssetFanOut();
+  }
+
+  @Bean
+  public EventCoalescer eventCoalescer() {
+    return new EventCoalescer();
+  }
+
+  @Bean
+  public EventRetries eventRetries() {
+    return new EventRetries();
+  }
+
+  @Bean
+  public DeadLetterReplayer deadLetterReplayer() {
+    return new DeadLetterReplayer();
+  }
 }
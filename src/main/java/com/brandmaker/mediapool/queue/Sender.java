@@ -1,10 +1,32 @@
 package com.brandmaker.mediapool.queue;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.MessagePostProcessor;
+import org.springframework.jms.support.JmsUtils;
+import org.springframework.jms.support.converter.MessageConverter;
+
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 
 public class Sender {
 
@@ -16,11 +38,161 @@ public class Sender {
 	@Autowired
 	private JmsTemplate jmsTemplate;
 
+	/** the queue of each event */
+	@Autowired
+	private EventLanes lanes;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	/** messages committed to the queue */
+	private Counter enqueued;
+
+	/** duration of a batch, from the first send to the commit */
+	private Timer batchTimer;
+
+	@PostConstruct
+	public void init() {
+		enqueued = meterRegistry.counter("mediapool.queue.enqueued");
+		batchTimer = meterRegistry.timer("mediapool.queue.batch");
+	}
+
 	public void send(Object message) {
 
-		LOGGER.debug("sending message='{}' to " + queueName, message.toString());
-		
-		jmsTemplate.convertAndSend(queueName, message);
+		String queue = queueName(message);
+
+		LOGGER.debug("sending message='{}' to " + queue, message.toString());
+
+		jmsTemplate.convertAndSend(queue, message);
+		enqueued.increment();
+
+	}
+
+	/**
+	 * <p>Send all messages of one webhook request within a single transacted session.
+	 *
+	 * <p>The session is committed once after the last message, so a persistent broker writes and syncs its journal once per batch
+	 * instead of once per message. If anything fails, the session is rolled back and none of the messages is delivered.
+	 * Each event is sent to the queue of its {@link EventLanes lane}. The duration of each batch is recorded as
+	 * <code>mediapool.queue.batch</code>.
+	 *
+	 * @param messages the messages to send, converted with the template's message converter
+	 * @return number of messages committed
+	 * @throws org.springframework.jms.JmsException if sending or committing fails
+	 */
+	public int sendBatch(Collection<?> messages) {
+
+		if ( messages.isEmpty() )
+			return 0;
+
+		long start = System.nanoTime();
+
+		Connection connection = null;
+		Session session = null;
+		MessageProducer producer = null;
+		try {
+			// a transacted session of its own, the template's sessions stay non-transacted for single sends
+			connection = jmsTemplate.getConnectionFactory().createConnection();
+			session = connection.createSession(true, Session.SESSION_TRANSACTED);
+			producer = session.createProducer(null);
+
+			sendAll(messages, session, producer, null);
+
+			session.commit();
+		}
+		catch ( JMSException e ) {
+			rollback(session);
+			throw JmsUtils.convertJmsAccessException(e);
+		}
+		catch ( RuntimeException e ) {
+			rollback(session);
+			throw e;
+		}
+		finally {
+			JmsUtils.closeMessageProducer(producer);
+			JmsUtils.closeSession(session);
+			JmsUtils.closeConnection(connection);
+		}
+
+		enqueued.increment(messages.size());
+		batchTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+		return messages.size();
+	}
+
+	/**
+	 * <p>Send messages on a transacted session of the caller, e.g. of a listener.
+	 *
+	 * <p>They are delivered when the caller commits its session, together with whatever else it does within the
+	 * transaction, e.g. the acknowledge of a received message. Each event is sent to the queue of its {@link EventLanes lane}.
+	 *
+	 * @param messages the messages to send, converted with the template's message converter
+	 * @param session a transacted session
+	 * @return number of messages sent
+	 * @throws JMSException if sending fails, the caller must roll back its session
+	 */
+	public int send(Collection<?> messages, Session session) throws JMSException {
+		return send(messages, session, null);
+	}
+
+	/**
+	 * Send messages on a transacted session of the caller, see {@link #send(Collection, Session)}
+	 *
+	 * @param messages the messages to send, converted with the template's message converter
+	 * @param session a transacted session
+	 * @param postProcessor applied to each message after the conversion, e.g. to set properties, null for none
+	 * @return number of messages sent
+	 * @throws JMSException if sending fails, the caller must roll back its session
+	 */
+	public int send(Collection<?> messages, Session session, MessagePostProcessor postProcessor) throws JMSException {
+
+		MessageProducer producer = session.createProducer(null);
+		try {
+			sendAll(messages, session, producer, postProcessor);
+		}
+		finally {
+			JmsUtils.closeMessageProducer(producer);
+		}
+
+		enqueued.increment(messages.size());
+		return messages.size();
+	}
+
+	private void sendAll(Collection<?> messages, Session session, MessageProducer producer, MessagePostProcessor postProcessor) throws JMSException {
+
+		MessageConverter converter = jmsTemplate.getMessageConverter();
+		Map<String, Destination> destinations = new HashMap<String, Destination>();
+
+		for ( Object message : messages ) {
+			String queue = queueName(message);
+			Destination destination = destinations.get(queue);
+			if ( destination == null ) {
+				destination = jmsTemplate.getDestinationResolver().resolveDestinationName(session, queue, false);
+				destinations.put(queue, destination);
+			}
+			Message converted = converter.toMessage(message, session);
+			producer.send(destination, postProcessor != null ? postProcessor.postProcessMessage(converted) : converted);
+		}
+	}
+
+	/**
+	 * The session is cached, don't leave any uncommitted messages behind
+	 */
+	private void rollback(Session session) {
+		if ( session == null )
+			return;
+		try {
+			JmsUtils.rollbackIfNecessary(session);
+		}
+		catch ( JMSException e ) {
+			LOGGER.warn("Cannot roll back batch: " + e.getMessage());
+		}
+	}
 
+	/**
+	 * @return the queue of the lane of an event, the default queue for other messages
+	 */
+	private String queueName(Object message) {
+		return message instanceof MediaPoolEvent ? lanes.queueName((MediaPoolEvent) message) : queueName;
 	}
 }
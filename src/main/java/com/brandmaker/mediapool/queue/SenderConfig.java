@@ -1,18 +1,27 @@
 package com.brandmaker.mediapool.queue;
 
 import org.apache.activemq.ActiveMQConnectionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jms.connection.CachingConnectionFactory;
 import org.springframework.jms.core.JmsTemplate;
 
+import com.brandmaker.mediapool.webhook.TenantRegistry;
+
 @Configuration
 public class SenderConfig {
 
   @Value("${spring.active-mq.broker-url}")
   private String brokerUrl;
 
+  @Value("${spring.active-mq.message-format:binary}")
+  private String messageFormat;
+
+  @Autowired
+  private TenantRegistry tenantRegistry;
+
   @Bean
   public ActiveMQConnectionFactory senderActiveMQConnectionFactory() {
 	  
@@ -29,11 +38,24 @@ public class SenderConfig {
 
   @Bean
   public JmsTemplate jmsTemplate() {
-    return new JmsTemplate(cachingConnectionFactory());
+    JmsTemplate jmsTemplate = new JmsTemplate(cachingConnectionFactory());
+    jmsTemplate.setMessageConverter(mediaPoolEventMessageConverter());
+    
+    return jmsTemplate;
+  }
+
+  @Bean
+  public MediaPoolEventMessageConverter mediaPoolEventMessageConverter() {
+    return new MediaPoolEventMessageConverter(!"map".equalsIgnoreCase(messageFormat), tenantRegistry);
   }
 
   @Bean
   public Sender sender() {
     return new Sender();
   }
+
+  @Bean
+  public EventLanes eventLanes() {
+    return new EventLanes();
+  }
 }
@@ -0,0 +1,366 @@
+package com.brandmaker.mediapool.rest;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * <p>The state last applied to the local copy of each asset: the event time of the last processed event and the version of
+ * the asset it has stored.
+ *
+ * <p>Events may arrive out of order, e.g. after a redelivery or if a slow rendition poll finishes after a newer event was
+ * queued. The {@link MediaPoolAssetManager} discards an event which is older than the applied state of its asset before
+ * anything is requested from Media Pool, so an old PUBLISHED does not bring back the files a newer DEPUBLISHED has deleted.
+ *
+ * <p>Assets are identified by (tenant number, assetId), hashed into a 64 bit key. Events without tenant number are
+ * identified by their customerId and systemId instead. The states are kept in an open
+ * addressing table with linear probing in a memory mapped file, so they survive a restart and need no serialization.
+ * The table has twice as many slots as <code>max-assets</code>; beyond that, states of new assets are not recorded and
+ * their events are not checked. If <code>max-assets</code> is changed, the file is rebuilt on startup.
+ *
+ * <p>File layout, all numbers big endian:
+ * <pre>
+ * int   magic "MPAS"
+ * int   layout version
+ * int   number of slots, a power of 2
+ * int   number of used slots
+ * per slot:
+ *   long  key, 0 if the slot is free
+ *   long  event time in msec
+ *   int   version, -1 if not known
+ * </pre>
+ *
+ * <p>Metrics:
+ * <ul>
+ * 		<li><code>mediapool.assets.state.stale</code>: discarded events
+ * 		<li><code>mediapool.assets.state.size</code>: assets with a recorded state
+ * </ul>
+ *
+ * @author axel.amthor
+ *
+ */
+public class AssetStateStore {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AssetStateStore.class);
+
+	/** version of an asset which is deleted or was not loaded */
+	public static final int NO_VERSION = -1;
+
+	private static final int MAGIC = 0x4d504153;
+	private static final int LAYOUT = 2;
+
+	private static final int HEADER = 16;
+	private static final int SIZE_OFFSET = 12;
+	private static final int SLOT = 20;
+
+	/** the state file */
+	@Value("${spring.application.assets.state.file:./state/asset-state.bin}")
+	private String file;
+
+	/** max number of assets with a recorded state */
+	@Value("${spring.application.assets.state.max-assets:262144}")
+	private int maxAssets;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	/** guarded by this */
+	private MappedByteBuffer table;
+	private int mask;
+	private int size;
+	private boolean fullReported;
+
+	private Counter stale;
+
+	@PostConstruct
+	public void init() throws IOException {
+
+		Path path = Paths.get(file).toAbsolutePath().normalize();
+		if ( path.getParent() != null )
+			Files.createDirectories(path.getParent());
+
+		// keep the load factor at or below 0.5
+		int capacity = Integer.highestOneBit(Math.max(2, maxAssets) * 2 - 1) << 1;
+
+		if ( Files.exists(path) )
+			open(path, capacity);
+		else
+			create(path, capacity);
+
+		stale = meterRegistry.counter("mediapool.assets.state.stale");
+		meterRegistry.gauge("mediapool.assets.state.size", this, AssetStateStore::size);
+
+		LOGGER.info("Asset state store " + path + " with " + size + " assets, max " + maxAssets);
+	}
+
+	@PreDestroy
+	public synchronized void close() {
+		if ( table != null )
+			table.force();
+	}
+
+	/**
+	 * @param event a dequeued event
+	 * @return true, if a newer event of the asset has been applied already and the event must be discarded
+	 */
+	public boolean isStale(MediaPoolEvent event) {
+
+		if ( event.getAssetId() == null || event.getEventTime() == null )
+			return false;
+
+		long key = key(event);
+		long eventTime = event.getEventTime().getTimeInMillis();
+
+		synchronized ( this ) {
+			int slot = find(key);
+			if ( slot < 0 )
+				return false;
+
+			long appliedTime = table.getLong(position(slot) + 8);
+			if ( eventTime >= appliedTime )
+				return false;
+
+			LOGGER.info("Discarding stale " + event.getEvent() + " of asset " + event.getAssetId() + " from " + eventTime
+					+ ", applied is " + appliedTime + " (version " + table.getInt(position(slot) + 16) + ")");
+		}
+
+		stale.increment();
+		return true;
+	}
+
+	/**
+	 * Record the event as applied to the local copy of its asset. The state is not set back by older events.
+	 *
+	 * @param event the processed event
+	 * @param version the version of the asset which has been applied, null if not known
+	 */
+	public void applied(MediaPoolEvent event, String version) {
+
+		if ( event.getAssetId() == null || event.getEventTime() == null )
+			return;
+
+		long key = key(event);
+		long eventTime = event.getEventTime().getTimeInMillis();
+		int appliedVersion = version(version);
+
+		synchronized ( this ) {
+			int slot = find(key);
+
+			if ( slot >= 0 ) {
+				int position = position(slot);
+				if ( eventTime >= table.getLong(position + 8) ) {
+					table.putLong(position + 8, eventTime);
+					table.putInt(position + 16, appliedVersion);
+				}
+				return;
+			}
+
+			if ( size >= maxAssets ) {
+				if ( !fullReported ) {
+					LOGGER.warn("Asset state store full with " + size + " assets, consider to raise max-assets");
+					fullReported = true;
+				}
+				return;
+			}
+
+			insert(table, -slot - 1, key, eventTime, appliedVersion);
+			table.putInt(SIZE_OFFSET, ++size);
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the slot of the key, or -(free slot + 1) if it is not present
+	 */
+	private int find(long key) {
+
+		for ( int i = (int) key & mask; ; i = (i + 1) & mask ) {
+			long slot = table.getLong(position(i));
+			if ( slot == key )
+				return i;
+			if ( slot == 0 )
+				return -i - 1;
+		}
+	}
+
+	private static int position(int slot) {
+		return HEADER + slot * SLOT;
+	}
+
+	/**
+	 * Write the state before the key, so a key is never visible with a partial state
+	 */
+	private static void insert(MappedByteBuffer table, int slot, long key, long eventTime, int version) {
+
+		int position = position(slot);
+		table.putLong(position + 8, eventTime);
+		table.putInt(position + 16, version);
+		table.putLong(position, key);
+	}
+
+	private void create(Path path, int capacity) throws IOException {
+
+		// a new file is all zeros, i.e. all slots are free
+		Files.deleteIfExists(path);
+		table = map(path, capacity);
+		table.putInt(0, MAGIC);
+		table.putInt(4, LAYOUT);
+		table.putInt(8, capacity);
+		table.putInt(SIZE_OFFSET, 0);
+		mask = capacity - 1;
+		size = 0;
+	}
+
+	private void open(Path path, int capacity) throws IOException {
+
+		MappedByteBuffer existing = map(path, -1);
+
+		if ( existing.capacity() < HEADER || existing.getInt(0) != MAGIC || existing.getInt(4) != LAYOUT
+				|| existing.capacity() != HEADER + existing.getInt(8) * SLOT ) {
+			LOGGER.warn("Asset state store " + path + " is not readable, starting with an empty one");
+			create(path, capacity);
+			return;
+		}
+
+		int existingCapacity = existing.getInt(8);
+		if ( existingCapacity == capacity ) {
+			table = existing;
+			mask = capacity - 1;
+			size = existing.getInt(SIZE_OFFSET);
+			return;
+		}
+
+		// max-assets has changed, rehash into a new file and replace the old one
+		Path rebuilt = path.resolveSibling(path.getFileName() + ".rebuild");
+		MappedByteBuffer target = map(rebuilt, capacity);
+		target.putInt(0, MAGIC);
+		target.putInt(4, LAYOUT);
+		target.putInt(8, capacity);
+
+		int targetMask = capacity - 1;
+		int copied = 0;
+		for ( int i = 0; i < existingCapacity && copied < maxAssets; i++ ) {
+			int position = position(i);
+			long key = existing.getLong(position);
+			if ( key == 0 )
+				continue;
+
+			int slot = (int) key & targetMask;
+			while ( target.getLong(position(slot)) != 0 )
+				slot = (slot + 1) & targetMask;
+
+			insert(target, slot, key, existing.getLong(position + 8), existing.getInt(position + 16));
+			copied++;
+		}
+		target.putInt(SIZE_OFFSET, copied);
+		target.force();
+
+		Files.move(rebuilt, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		LOGGER.info("Asset state store rebuilt from " + existingCapacity + " to " + capacity + " slots, " + copied + " assets");
+
+		table = target;
+		mask = targetMask;
+		size = copied;
+	}
+
+	/**
+	 * @param capacity number of slots, -1 to map the file as it is
+	 */
+	private static MappedByteBuffer map(Path path, int capacity) throws IOException {
+
+		try ( RandomAccessFile raf = new RandomAccessFile(path.toFile(), "rw") ) {
+			if ( capacity >= 0 )
+				raf.setLength(HEADER + (long) capacity * SLOT);
+			// the mapping stays valid after the file is closed
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+		}
+	}
+
+	private static int version(String version) {
+
+		if ( version == null )
+			return NO_VERSION;
+		try {
+			return Integer.parseInt(version);
+		}
+		catch ( NumberFormatException e ) {
+			return NO_VERSION;
+		}
+	}
+
+	private static long key(MediaPoolEvent event) {
+
+		if ( event.getTenantId() != MediaPoolEvent.NO_TENANT )
+			return key(event.getTenantId(), event.getAssetId());
+
+		return key(event.getCustomerId(), event.getSystemId(), event.getAssetId());
+	}
+
+	/**
+	 * Same as below for an asset of a registered tenant
+	 */
+	static long key(int tenantId, String assetId) {
+
+		long h = 0xcbf29ce484222325L;
+		h = (h ^ tenantId) * 0x100000001b3L;
+		h = hash(h, assetId);
+		return mix(h);
+	}
+
+	/**
+	 * 64 bit FNV-1a over the fields, finished with the MurmurHash3 mixer
+	 */
+	static long key(String customerId, String systemId, String assetId) {
+
+		long h = 0xcbf29ce484222325L;
+		h = hash(h, customerId);
+		h = hash(h, systemId);
+		h = hash(h, assetId);
+		return mix(h);
+	}
+
+	/**
+	 * MurmurHash3 finalizer. 0 marks a free slot, so it is never returned.
+	 */
+	private static long mix(long h) {
+
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h == 0 ? 1 : h;
+	}
+
+	private static long hash(long h, String s) {
+
+		if ( s != null ) {
+			for ( int i = 0; i < s.length(); i++ )
+				h = (h ^ s.charAt(i)) * 0x100000001b3L;
+		}
+		// field separator, so ("ab", "c") and ("a", "bc") differ
+		return (h ^ 0xff) * 0x100000001b3L;
+	}
+}
@@ -0,0 +1,13 @@
+package com.brandmaker.mediapool.rest;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class AssetStateStoreConfig {
+
+	@Bean
+	AssetStateStore assetStateStore() {
+		return new AssetStateStore();
+	}
+}
@@ -0,0 +1,36 @@
+package com.brandmaker.mediapool.rest;
+
+/**
+ * <p>The local copy of an asset cannot be synchronized, for another reason than an unavailable Media Pool: the asset is not
+ * found or its data is not as expected, or the files cannot be written.
+ *
+ * <p>It is passed up to the queue consumer, like the {@link MediaPoolUnavailableException}. A retryable failure, e.g. of the
+ * local file system, is tried again later, any other one is dead-lettered right away, see
+ * {@link com.brandmaker.mediapool.queue.EventRetries}.
+ *
+ * @author axel.amthor
+ *
+ */
+public class AssetSyncException extends RuntimeException {
+
+	private static final long serialVersionUID = -3920561834071926517L;
+
+	private final boolean retryable;
+
+	public AssetSyncException(String message, boolean retryable) {
+		super(message);
+		this.retryable = retryable;
+	}
+
+	public AssetSyncException(String message, Throwable cause, boolean retryable) {
+		super(message, cause);
+		this.retryable = retryable;
+	}
+
+	/**
+	 * @return true, if the failure may pass and the event is worth another attempt
+	 */
+	public boolean isRetryable() {
+		return retryable;
+	}
+}
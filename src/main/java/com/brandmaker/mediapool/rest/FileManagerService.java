@@ -30,6 +30,7 @@ public interface FileManagerService {
 	 * Convert the Asset to a JSON Object and store into file
 	 * 
 	 * @param mpAsset
+	 * @throws AssetSyncException if the files cannot be written, retryable on I/O errors
 	 */
 	void storeMetadata(MediaPoolAsset mpAsset);
 
@@ -40,6 +41,7 @@ public interface FileManagerService {
 	 * that's why we have to poll, please refer to the Media Pool REST API documentation here"
 	 * 
 	 * @param mpAsset
+	 * @throws AssetSyncException if the files cannot be written, retryable on I/O errors
 	 */
 	void storeBinarydata(MediaPoolAsset mpAsset);
 
@@ -47,6 +49,7 @@ public interface FileManagerService {
 	 * Delete all files of this asset from the local file store
 	 * 
 	 * @param event
+	 * @throws AssetSyncException if the files cannot be removed, retryable on I/O errors
 	 */
 	void deleteFiles(MediaPoolEvent event);
 
@@ -12,10 +12,12 @@ import org.apache.commons.compress.utils.IOUtils;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.annotation.Autowired;
 
 import com.brandmaker.mediapool.MediaPoolAsset;
 import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+import com.brandmaker.mediapool.webhook.TenantId;
+import com.brandmaker.mediapool.webhook.tenant.TenantDirectory;
 
 /**
  * @see FileManagerService
@@ -27,9 +29,12 @@ public class FileManagerServiceImpl implements FileManagerService {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(FileManagerService.class);
 	
-	/** directory where to store the local copies of the assets */
-	@Value("${spring.application.system.basepath}")
-	private String basepath;
+	/** knows the directory where to store the local copies of the assets of each tenant */
+	@Autowired
+	private TenantDirectory tenantDirectory;
+	
+	/** "basepath/customerId/systemId/" by number of the tenant, grown on demand */
+	private volatile String[] tenantFolders = new String[0];
 	
 	/* (non-Javadoc)
 	 * @see com.brandmaker.mediapool.rest.FileManagerService#storeMetadata(com.brandmaker.mediapool.MediaPoolAsset)
@@ -45,8 +50,12 @@ public class FileManagerServiceImpl implements FileManagerService {
 		    byte[] bytes = mpAsset.toJson().toString(4).getBytes();
 		    outputStream.write(bytes);
 		}
+		catch ( IOException e ) {
+			// e.g. the disk is full, the event is tried again later
+			throw new AssetSyncException("Error on writing meta data of asset " + mpAsset.getMediaPoolEvent().getAssetId(), e, true);
+		}
 		catch ( Exception e ) {
-			LOGGER.error("Error on writing meta data", e);
+			throw new AssetSyncException("Error on writing meta data of asset " + mpAsset.getMediaPoolEvent().getAssetId(), e, false);
 		}
 		finally {
 			
@@ -87,8 +96,16 @@ public class FileManagerServiceImpl implements FileManagerService {
 		    LOGGER.info("Copied {} bytes to file " + binary.getAbsolutePath(), n);
 		    
 		}
+		catch ( MediaPoolUnavailableException e ) {
+			// the rendition is downloaded again when the event is tried again
+			throw e;
+		}
+		catch ( IOException e ) {
+			throw new AssetSyncException("Error on writing binary data of asset " + mpAsset.getMediaPoolEvent().getAssetId(), e, true);
+		}
 		catch ( Exception e ) {
-			LOGGER.error("Error on writing meta data", e);
+			// e.g. no rendition of this scheme, it will not be there next time either
+			throw new AssetSyncException("Error on writing binary data of asset " + mpAsset.getMediaPoolEvent().getAssetId(), e, false);
 		}
 		finally {
 			
@@ -118,7 +135,7 @@ public class FileManagerServiceImpl implements FileManagerService {
 			FileUtils.deleteDirectory(path);
 		} 
 		catch (IOException e) {
-			LOGGER.error("Error on removing files", e);
+			throw new AssetSyncException("Error on removing files of asset " + event.getAssetId(), e, true);
 		}
 		
 	}
@@ -126,10 +143,7 @@ public class FileManagerServiceImpl implements FileManagerService {
 	
 	private File getOrCreateTargetFolder(MediaPoolEvent event) {
 		
-		String path = basepath 
-				+ event.getCustomerId() + "/" 
-				+ event.getSystemId() + "/"				
-				+ event.getAssetId();
+		String path = getTenantFolder(event) + event.getAssetId();
 		
 		File dir = new File(path);
 		
@@ -137,5 +151,38 @@ public class FileManagerServiceImpl implements FileManagerService {
 		
 		return dir;
 	}
+	
+	/**
+	 * The folder of the tenant is resolved once per tenant number
+	 */
+	private String getTenantFolder(MediaPoolEvent event) {
+		
+		int tenantId = event.getTenantId();
+		
+		String[] folders = tenantFolders;
+		if ( tenantId != MediaPoolEvent.NO_TENANT && tenantId < folders.length && folders[tenantId] != null )
+			return folders[tenantId];
+		
+		String basepath = tenantDirectory.resolve(new TenantId(event.getCustomerId(), event.getSystemId())).getBasepath();
+		String folder = basepath 
+				+ event.getCustomerId() + "/" 
+				+ event.getSystemId() + "/";
+		
+		if ( tenantId != MediaPoolEvent.NO_TENANT ) {
+			synchronized ( this ) {
+				folders = tenantFolders;
+				if ( tenantId >= folders.length ) {
+					String[] grown = new String[Math.max(tenantId + 1, folders.length * 2)];
+					System.arraycopy(folders, 0, grown, 0, folders.length);
+					folders = grown;
+				}
+				else
+					folders = folders.clone();
+				folders[tenantId] = folder;
+				tenantFolders = folders;
+			}
+		}
+		return folder;
+	}
 
 }
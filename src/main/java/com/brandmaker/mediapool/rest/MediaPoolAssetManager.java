@@ -29,9 +29,15 @@ public class MediaPoolAssetManager {
 	@Autowired
 	FileManagerService fileManagerService;
 	
+	@Autowired
+	AssetStateStore assetStates;
+	
 	/**
 	 * Synchronize the local file copy of the asset
 	 * @param event
+	 * @throws MediaPoolUnavailableException if Media Pool is overloaded or not reachable, the event may succeed later
+	 * @throws AssetSyncException if the asset cannot be loaded or its files cannot be written, retryable or not
+	 * @throws IllegalStateException on any other error, the event will fail again
 	 */
 	public void synchronize(MediaPoolEvent event) {
 
@@ -43,6 +49,10 @@ public class MediaPoolAssetManager {
 			Event evt = event.getEvent();
 			boolean dataLoaded = false;
 			
+			// an older event must not overwrite what a newer one has applied, and it's not worth a REST call
+			if ( assetStates.isStale(event) )
+				return;
+			
 			switch ( evt ) {
 				
 				case TEST:
@@ -54,8 +64,14 @@ public class MediaPoolAssetManager {
 					break;
 					
 				case ASSET_DELETED:
-					// the asset may be gone in MP, so we do not retrieve it from there, we just drop the files
+				case ASSET_REMOVED:
+				case PUBLISHING_END:
+				case DEPUBLISHED:
+					// the asset may be gone in MP, so we do not retrieve it from there, we just drop the files.
+					// Local only, so these events are queued in the fast lane by default, see EventLanes
 					dispatchEvent(event, null);
+					if ( event.isMyChannel() )
+						assetStates.applied(event, null);
 					break;
 					
 				default:
@@ -68,17 +84,26 @@ public class MediaPoolAssetManager {
 					
 					if ( dataLoaded ) {
 						dispatchEvent(event, mpAsset);
+						if ( event.isMyChannel() )
+							assetStates.applied(event, mpAsset.getVersion());
 						LOGGER.info("File updated" );
 					}
 					else {
-						LOGGER.error("could not load asset " + (event.getAssetId() != null ? event.getAssetId() : "due to missing asset ID"));
+						// not found, or no download task: the event will fail again
+						throw new AssetSyncException("Cannot load asset " + (event.getAssetId() != null ? event.getAssetId() : "without asset ID")
+								+ " on " + event.getEvent(), false);
 					}
 					break;
 			}
 			
 		} 
+		catch ( MediaPoolUnavailableException | AssetSyncException e ) {
+			// classified already, see EventRetries
+			throw e;
+		}
 		catch ( Exception e) {
 			LOGGER.error("A general error", e);
+			throw new IllegalStateException("Cannot synchronize asset " + event.getAssetId() + " on " + event.getEvent(), e);
 		}
 		
 	}
@@ -0,0 +1,120 @@
+package com.brandmaker.mediapool.rest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * <p>Response times and failures of the REST calls to Media Pool, the feedback of the consumer concurrency.
+ *
+ * <p>A call is timed from opening the connection to the response code. It has failed if Media Pool is overloaded or
+ * unavailable, i.e. answered with 429 or 5xx or not at all. Other client errors, e.g. an asset which is not found, say
+ * nothing about the capacity of Media Pool and count as answered.
+ *
+ * <p>The calls are summed up until the next {@link #sample()}, which is taken by a single reader.
+ *
+ * <p>Metrics:
+ * <ul>
+ * 		<li><code>mediapool.rest.requests{outcome=answered|failed}</code>: timer of the calls
+ * </ul>
+ *
+ * @author axel.amthor
+ *
+ */
+public class MediaPoolCallStats {
+
+	/**
+	 * The calls since the previous sample
+	 */
+	public static final class Sample {
+
+		private final long calls;
+		private final long failures;
+		private final long nanos;
+
+		Sample(long calls, long failures, long nanos) {
+			this.calls = calls;
+			this.failures = failures;
+			this.nanos = nanos;
+		}
+
+		public long getCalls() {
+			return calls;
+		}
+
+		/**
+		 * @return share of failed calls, 0 if there were none
+		 */
+		public double getFailureRate() {
+			return calls > 0 ? (double) failures / calls : 0d;
+		}
+
+		/**
+		 * @return mean response time in msec, 0 if there were no calls
+		 */
+		public long getMeanMillis() {
+			return calls > 0 ? TimeUnit.NANOSECONDS.toMillis(nanos / calls) : 0L;
+		}
+	}
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private final LongAdder calls = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder nanos = new LongAdder();
+
+	private Timer answered;
+	private Timer failed;
+
+	@PostConstruct
+	public void init() {
+		answered = meterRegistry.timer("mediapool.rest.requests", "outcome", "answered");
+		failed = meterRegistry.timer("mediapool.rest.requests", "outcome", "failed");
+	}
+
+	/**
+	 * @param start {@link System#nanoTime()} when the connection was opened
+	 * @param responseCode the HTTP status of the response
+	 */
+	public void answered(long start, int responseCode) {
+
+		if ( responseCode == 429 || responseCode >= 500 ) {
+			failed(start);
+			return;
+		}
+
+		long elapsed = System.nanoTime() - start;
+		record(elapsed);
+		answered.record(elapsed, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @param start {@link System#nanoTime()} when the connection was opened
+	 */
+	public void failed(long start) {
+
+		long elapsed = System.nanoTime() - start;
+		record(elapsed);
+		failures.increment();
+		failed.record(elapsed, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @return the calls since the previous sample
+	 */
+	public Sample sample() {
+		return new Sample(calls.sumThenReset(), failures.sumThenReset(), nanos.sumThenReset());
+	}
+
+	private void record(long elapsed) {
+		calls.increment();
+		nanos.add(elapsed);
+	}
+}
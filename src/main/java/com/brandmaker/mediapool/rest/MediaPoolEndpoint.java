@@ -0,0 +1,103 @@
+package com.brandmaker.mediapool.rest;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * <p>The REST API of one Media Pool instance.
+ *
+ * <p>The base URL is parsed once, when the endpoint is created by the {@link MediaPoolEndpointRegistry}. The routes without
+ * parameters are kept as parsed {@link URL}s, the routes with parameters as prefixes, so a request URL is a single
+ * concatenation. Instances are immutable and shared by all events of the instance; state which belongs to the Media Pool
+ * instance, e.g. a connection pool, goes here.
+ *
+ * @author axel.amthor
+ *
+ */
+public final class MediaPoolEndpoint {
+
+	static final String SEARCH_PATH = "/rest/mp/v1.1/search";
+	static final String VERSIONS_PATH = "/rest/mp/versions/assets/";
+	static final String ASSETS_PATH = "/rest/mp/assets/";
+	static final String FILE_GENERATION_TASK_PATH = "/rest/mp/v1.2/file-generation-task";
+	static final String DOWNLOAD_TASK_PATH = "/rest/mp/v1.2/download/file-generation-task/";
+
+	private static final String VERSIONS_INFIX = "/versions/";
+	private static final String PUBLISHED_CHANNELS_QUERY = "?expand=publishedChannels";
+
+	private final String baseUrl;
+
+	private final URL searchUrl;
+	private final String fileGenerationTaskUrl;
+
+	private final String versionsPrefix;
+	private final String assetsPrefix;
+	private final String downloadTaskPrefix;
+
+	/**
+	 * @param baseUrl the normalized base URL, protocol://host[:port]
+	 * @throws MalformedURLException if the base URL is not a URL
+	 */
+	MediaPoolEndpoint(String baseUrl) throws MalformedURLException {
+
+		this.baseUrl = baseUrl;
+
+		this.searchUrl = new URL(baseUrl + SEARCH_PATH);
+		this.fileGenerationTaskUrl = new URL(baseUrl + FILE_GENERATION_TASK_PATH).toExternalForm();
+
+		this.versionsPrefix = baseUrl + VERSIONS_PATH;
+		this.assetsPrefix = baseUrl + ASSETS_PATH;
+		this.downloadTaskPrefix = baseUrl + DOWNLOAD_TASK_PATH;
+	}
+
+	/**
+	 * @return the normalized base URL, protocol://host[:port]
+	 */
+	public String getBaseUrl() {
+		return baseUrl;
+	}
+
+	/**
+	 * @return /rest/mp/v1.1/search
+	 */
+	public URL getSearchUrl() {
+		return searchUrl;
+	}
+
+	/**
+	 * @return /rest/mp/v1.2/file-generation-task
+	 */
+	public String getFileGenerationTaskUrl() {
+		return fileGenerationTaskUrl;
+	}
+
+	/**
+	 * @return /rest/mp/versions/assets/{assetId}
+	 */
+	public String versionsUrl(String assetId) {
+		return versionsPrefix.concat(assetId);
+	}
+
+	/**
+	 * @return /rest/mp/assets/{mediaId}/versions/{version}?expand=publishedChannels
+	 */
+	public String publishedChannelsUrl(String mediaId, String version) {
+		return new StringBuilder(assetsPrefix.length() + mediaId.length() + version.length() + 36)
+				.append(assetsPrefix).append(mediaId)
+				.append(VERSIONS_INFIX).append(version)
+				.append(PUBLISHED_CHANNELS_QUERY)
+				.toString();
+	}
+
+	/**
+	 * @return /rest/mp/v1.2/download/file-generation-task/{taskId}
+	 */
+	public String downloadTaskUrl(String taskId) {
+		return downloadTaskPrefix.concat(taskId);
+	}
+
+	@Override
+	public String toString() {
+		return baseUrl;
+	}
+}
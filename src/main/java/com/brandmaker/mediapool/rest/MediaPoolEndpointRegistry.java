@@ -0,0 +1,73 @@
+package com.brandmaker.mediapool.rest;
+
+import java.net.MalformedURLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+
+/**
+ * <p>The {@link MediaPoolEndpoint}s of the Media Pool instances we have received events from, keyed by the normalized
+ * base URL of the events.
+ *
+ * <p>The number of endpoints is bounded by <code>spring.application.rest.max-endpoints</code>. The base URL is sent by the
+ * caller, so beyond that limit endpoints are created per request and not kept.
+ *
+ * @author axel.amthor
+ *
+ */
+public class MediaPoolEndpointRegistry {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MediaPoolEndpointRegistry.class);
+
+	@Value("${spring.application.rest.max-endpoints:100}")
+	private int maxEndpoints;
+
+	private final ConcurrentMap<String, MediaPoolEndpoint> endpoints = new ConcurrentHashMap<String, MediaPoolEndpoint>();
+
+	/**
+	 * @param event the event
+	 * @return the endpoint of the Media Pool instance which has sent the event
+	 * @throws MalformedURLException if the event has no valid base URL
+	 */
+	public MediaPoolEndpoint getEndpoint(MediaPoolEvent event) throws MalformedURLException {
+		return getEndpoint(event.getBaseUrl());
+	}
+
+	/**
+	 * @param baseUrl the normalized base URL, protocol://host[:port]
+	 * @return the endpoint of the Media Pool instance
+	 * @throws MalformedURLException if the base URL is not a URL
+	 */
+	public MediaPoolEndpoint getEndpoint(String baseUrl) throws MalformedURLException {
+
+		MediaPoolEndpoint endpoint = endpoints.get(baseUrl);
+		if ( endpoint != null )
+			return endpoint;
+
+		endpoint = new MediaPoolEndpoint(baseUrl);
+
+		if ( endpoints.size() >= maxEndpoints ) {
+			LOGGER.warn("More than {} Media Pool instances, endpoint of {} is not kept", maxEndpoints, baseUrl);
+			return endpoint;
+		}
+
+		MediaPoolEndpoint existing = endpoints.putIfAbsent(baseUrl, endpoint);
+		if ( existing != null )
+			return existing;
+
+		LOGGER.info("New Media Pool endpoint {}", baseUrl);
+		return endpoint;
+	}
+
+	/**
+	 * @return the number of endpoints kept
+	 */
+	public int size() {
+		return endpoints.size();
+	}
+}
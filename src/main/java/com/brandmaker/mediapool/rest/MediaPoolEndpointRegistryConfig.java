@@ -0,0 +1,13 @@
+package com.brandmaker.mediapool.rest;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MediaPoolEndpointRegistryConfig {
+
+	@Bean
+	MediaPoolEndpointRegistry endpointRegistry() {
+		return new MediaPoolEndpointRegistry();
+	}
+}
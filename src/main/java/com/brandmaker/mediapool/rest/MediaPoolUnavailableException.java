@@ -0,0 +1,39 @@
+package com.brandmaker.mediapool.rest;
+
+/**
+ * <p>A call to Media Pool has failed for a transient reason: Media Pool is overloaded or not reachable, it answered with
+ * 429 or 5xx or not at all.
+ *
+ * <p>It is passed up to the queue consumer, the event is tried again later, see
+ * {@link com.brandmaker.mediapool.queue.EventRetries}. Other failures, e.g. an asset which is not found, are passed up as
+ * {@link AssetSyncException}.
+ *
+ * @author axel.amthor
+ *
+ */
+public class MediaPoolUnavailableException extends RuntimeException {
+
+	private static final long serialVersionUID = 4718259463021807352L;
+
+	/** no response at all */
+	public static final int NO_RESPONSE = -1;
+
+	private final int responseCode;
+
+	public MediaPoolUnavailableException(String message, int responseCode) {
+		super(message);
+		this.responseCode = responseCode;
+	}
+
+	public MediaPoolUnavailableException(String message, Throwable cause) {
+		super(message, cause);
+		this.responseCode = NO_RESPONSE;
+	}
+
+	/**
+	 * @return the HTTP status Media Pool answered with, {@link #NO_RESPONSE} if there was none
+	 */
+	public int getResponseCode() {
+		return responseCode;
+	}
+}
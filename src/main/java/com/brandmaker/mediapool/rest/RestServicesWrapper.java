@@ -386,4 +386,14 @@ public interface RestServicesWrapper
 	
 	JSONObject loadPublishingData(MediaPoolEvent mediaPoolEvent, MediaPoolAsset mpAsset) throws Exception ;
 
+	/**
+	 * The REST API of the Media Pool instance which has sent the event
+	 * 
+	 * @param event
+	 * @return the endpoint, shared by all events of the instance
+	 * @throws MalformedURLException if the event has no valid base URL
+	 */
+	
+	MediaPoolEndpoint getEndpoint(MediaPoolEvent event) throws MalformedURLException;
+
 }
@@ -27,6 +27,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 
 import com.brandmaker.mediapool.MediaPoolAsset;
@@ -244,6 +245,18 @@ public class RestServicesWrapperImpl extends HttpConnectionHandler implements Re
 	@Value("${spring.application.system.oAauth2CredentialsFile:#{null}}")
 	private Optional<String> oauthCredentialsFile;
 	
+	@Autowired
+	private MediaPoolEndpointRegistry endpointRegistry;
+
+	/** response times and failures, the feedback of the consumer concurrency */
+	@Autowired
+	private MediaPoolCallStats callStats;
+	
+	@Override
+	public MediaPoolEndpoint getEndpoint(MediaPoolEvent event) throws MalformedURLException {
+		return endpointRegistry.getEndpoint(event);
+	}
+	
 	/* (non-Javadoc)
 	 * @see com.brandmaker.webcache.core.asset.services.mediapool.RestServicesWrapper#createDownloadTask(java.lang.String, org.apache.sling.commons.json.JSONObject, com.brandmaker.webcache.core.tenant.WebCacheTenant)
 	 */
@@ -257,6 +270,7 @@ public class RestServicesWrapperImpl extends HttpConnectionHandler implements Re
 		try {
 			LOGGER.debug(taskRequest.toString(4));
 			
+			long start = System.nanoTime();
 			vconn = connectUri(downloadUrl, "POST");
 	
 			handleCookies(downloadUrl, vconn);
@@ -268,13 +282,11 @@ public class RestServicesWrapperImpl extends HttpConnectionHandler implements Re
 			String rqBody = taskRequest.toString(4);
 			LOGGER.debug(rqBody);
 
-			vconn.connect();
-			
-			vconn.getOutputStream().write(rqBody.getBytes(), 0, rqBody.length());
+			send(vconn, rqBody, start);
 	
 			cmgr.storeCookies(vconn);
 			
-			int rc = vconn.getResponseCode();
+			int rc = responseCode(vconn, start);
 			
 			if ( rc != 201 ) // we only accept "201 - created"
 			{
@@ -300,7 +312,7 @@ public class RestServicesWrapperImpl extends HttpConnectionHandler implements Re
 			}
 			
 		}
-		catch ( WebhookException e )
+		catch ( WebhookException | MediaPoolUnavailableException e )
 		{
 			throw e;
 		}
@@ -325,18 +337,18 @@ public class RestServicesWrapperImpl extends HttpConnectionHandler implements Re
 		
 		JSONObject pubData = null;
 		HttpURLConnection conn = null;
-		String versionUrl = mediaPoolEvent.getBaseUrl() + "/rest/mp/assets/" + mpAsset.getMediaID() + "/versions/" + mpAsset.getVersion();
+		String versionUrl = getEndpoint(mediaPoolEvent).publishedChannelsUrl(mpAsset.getMediaID(), mpAsset.getVersion());
 		
-		versionUrl += "?expand=publishedChannels";
 		LOGGER.info(versionUrl );
 		
 		try {
 			
-			conn = connectToDownloadTask(versionUrl);
+			long start = System.nanoTime();
+			conn = connectToDownloadTask(versionUrl, start);
 			
 			cmgr.storeCookies(conn);
 	
-			int rc = conn.getResponseCode();
+			int rc = responseCode(conn, start);
 	
 			LOGGER.info("Response code is " + rc );
 	
@@ -353,6 +365,9 @@ public class RestServicesWrapperImpl extends HttpConnectionHandler implements Re
 				pubData = new JSONObject(data);
 			}
 		}
+		catch ( MediaPoolUnavailableException e ) {
+			throw e;
+		}
 		catch ( Exception e ) {
 			
 		}
@@ -372,15 +387,16 @@ public class RestServicesWrapperImpl extends HttpConnectionHandler implements Re
 		try
 		{
 
-			String versionUrl = mediaPoolEvent.getBaseUrl() + "/rest/mp/versions/assets/" + mediaPoolEvent.getAssetId();
+			String versionUrl = getEndpoint(mediaPoolEvent).versionsUrl(mediaPoolEvent.getAssetId());
 
 			LOGGER.debug("Retrieving versions from " + versionUrl);
 
-			vconn = connectToDownloadTask(versionUrl);
+			long start = System.nanoTime();
+			vconn = connectToDownloadTask(versionUrl, start);
 
 			cmgr.storeCookies(vconn);
 
-			int rc = vconn.getResponseCode();
+			int rc = responseCode(vconn, start);
 
 			LOGGER.debug("Response code is " + rc );
 
@@ -423,6 +439,10 @@ public class RestServicesWrapperImpl extends HttpConnectionHandler implements Re
 			}
 
 		}
+		catch ( MediaPoolUnavailableException e )
+		{
+			throw e;
+		}
 		catch ( Exception e )
 		{
 			LOGGER.error("(2) An error", e);
@@ -442,16 +462,18 @@ public class RestServicesWrapperImpl extends HttpConnectionHandler implements Re
 		try
 		{
 			if ( event.getAssetId() == null ) {
-				// sometimes the MP doesn't provide the array of asset IDs in the sync event.
+				// bulk events are expanded into events of single assets by the consumer, see AssetFanOut.
+				// Sometimes the MP doesn't provide the array of asset IDs in the sync event either,
 				// this is a bug in older builds, which we are catching here
 				LOGGER.error("Asset ID missing!");
 				return null;
 			}
 
-			String restSearchUrl = event.getBaseUrl() + "/rest/mp/v1.1/search";
+			URL restSearchUrl = getEndpoint(event).getSearchUrl();
 
 			LOGGER.info("Retrieving meta data from " + restSearchUrl);
 
+			long start = System.nanoTime();
 			mdconn = connectUri(restSearchUrl, "POST");
 
 			handleCookies(restSearchUrl, mdconn);
@@ -464,12 +486,10 @@ public class RestServicesWrapperImpl extends HttpConnectionHandler implements Re
 			String rqBody = requestObject.toString(4);
 			LOGGER.debug(rqBody);
 
-			mdconn.connect();
-
-			mdconn.getOutputStream().write(rqBody.getBytes(), 0, rqBody.length());
+			send(mdconn, rqBody, start);
 			cmgr.storeCookies(mdconn);
 
-			int rc = mdconn.getResponseCode();
+			int rc = responseCode(mdconn, start);
 
 			LOGGER.info("Response code is " + rc );
 
@@ -509,6 +529,10 @@ public class RestServicesWrapperImpl extends HttpConnectionHandler implements Re
 			}
 
 		}
+		catch ( MediaPoolUnavailableException e )
+		{
+			throw e;
+		}
 		catch ( Exception e )
 		{
 			LOGGER.error("(3) An error", e);
@@ -527,7 +551,12 @@ public class RestServicesWrapperImpl extends HttpConnectionHandler implements Re
 	 */
 	private void handleCookies(String finalUrl, HttpURLConnection mdconn) throws MalformedURLException
 	{
-		Map<String, Map<String, String>>cookies = cmgr.getCookies(new URL(finalUrl));
+		handleCookies(new URL(finalUrl), mdconn);
+	}
+
+	private void handleCookies(URL finalUrl, HttpURLConnection mdconn)
+	{
+		Map<String, Map<String, String>>cookies = cmgr.getCookies(finalUrl);
 		if ( cookies != null )
 		{
 			for ( String name : cookies.keySet() )
@@ -814,6 +843,10 @@ public class RestServicesWrapperImpl extends HttpConnectionHandler implements Re
 			}
 			
 		}
+		catch ( MediaPoolUnavailableException e )
+		{
+			throw e;
+		}
 		catch (Exception e)
 		{
 			LOGGER.error("(4) An error", e);
@@ -869,9 +902,10 @@ public class RestServicesWrapperImpl extends HttpConnectionHandler implements Re
 		long start = System.currentTimeMillis();
 		int maxtries = 5*1000*6; // that's half an hour !!
 		HttpURLConnection conn;
-		conn = connectToDownloadTask(downloadUrl);
+		long call = System.nanoTime();
+		conn = connectToDownloadTask(downloadUrl, call);
 		
-		int rc = conn.getResponseCode();
+		int rc = responseCode(conn, call);
 		
 		while ( rc == 202 && --maxtries > 0 )
 		{
@@ -880,8 +914,9 @@ public class RestServicesWrapperImpl extends HttpConnectionHandler implements Re
 			LOGGER.info("Task " + downloadUrl+ " not yet ready ...");
 			Thread.sleep(5 * 1000);
 			
-			conn = connectToDownloadTask(downloadUrl);
-			rc = conn.getResponseCode();
+			call = System.nanoTime();
+			conn = connectToDownloadTask(downloadUrl, call);
+			rc = responseCode(conn, call);
 		}
 		LOGGER.info("Polling for rendition took " + (System.currentTimeMillis() - start) + " msec, rc = " + rc);
 		return conn;
@@ -890,30 +925,70 @@ public class RestServicesWrapperImpl extends HttpConnectionHandler implements Re
 
 	/**
 	 * @param downloadUrl
-	 * @param tenant
+	 * @param start {@link System#nanoTime()} of the call, for the {@link MediaPoolCallStats}
 	 * @return
 	 * @throws MalformedURLException
 	 * @throws IOException
 	 * @throws WebhookException 
 	 */
-	private HttpURLConnection connectToDownloadTask(String downloadUrl) throws MalformedURLException, IOException, WebhookException 
+	private HttpURLConnection connectToDownloadTask(String downloadUrl, long start) throws MalformedURLException, IOException, WebhookException 
 	{
 		
-		cmgr.getCookies(new URL(downloadUrl));
+		URL url = new URL(downloadUrl);
 		
 		HttpURLConnection conn;
-		conn = connectUri(downloadUrl, "GET");
+		conn = connectUri(url, "GET");
 		
-		handleCookies(downloadUrl, conn);
+		handleCookies(url, conn);
 		cmgr.setCookies(conn);
 
 		conn.setRequestProperty("Authorization", getAuthentication() );
 		conn.setRequestProperty("Content-Type", "application/json");
 		
-		conn.connect();
+		send(conn, null, start);
 		return conn;
 	}
 
+	/**
+	 * Connect and write the request body, a call which cannot be sent is recorded as failed
+	 *
+	 * @param body the request body, null if there is none
+	 * @param start {@link System#nanoTime()} of the call
+	 * @throws MediaPoolUnavailableException if Media Pool cannot be reached
+	 */
+	private void send(HttpURLConnection conn, String body, long start) {
+		try {
+			conn.connect();
+			if ( body != null )
+				conn.getOutputStream().write(body.getBytes(StandardCharsets.UTF_8));
+		}
+		catch ( IOException e ) {
+			callStats.failed(start);
+			throw new MediaPoolUnavailableException("Cannot send request to " + conn.getURL(), e);
+		}
+	}
+
+	/**
+	 * Wait for the response code and record the call
+	 *
+	 * @param start {@link System#nanoTime()} of the call
+	 * @throws MediaPoolUnavailableException if Media Pool did not answer, or answered with 429 or 5xx
+	 */
+	private int responseCode(HttpURLConnection conn, long start) {
+		int rc;
+		try {
+			rc = conn.getResponseCode();
+		}
+		catch ( IOException e ) {
+			callStats.failed(start);
+			throw new MediaPoolUnavailableException("No response from " + conn.getURL(), e);
+		}
+		callStats.answered(start, rc);
+		if ( rc == 429 || rc >= 500 )
+			throw new MediaPoolUnavailableException("Media Pool answered " + rc + " on " + conn.getURL(), rc);
+		return rc;
+	}
+
 	/**
 	 * @return the searchIdRequestBody
 	 */
@@ -98,8 +98,14 @@ public class HttpConnectionHandler
 	}
 
 	public HttpURLConnection connectUri(String url, String method) throws MalformedURLException, IOException {
-		URL mpUrl = new URL(url);
-//		LOGGER.info("Open: " + url);
+		return connectUri(new URL(url), method);
+	}
+
+	/**
+	 * Open a connection to an URL which is already parsed, e.g. a route of a MediaPoolEndpoint
+	 */
+	public HttpURLConnection connectUri(URL mpUrl, String method) throws IOException {
+//		LOGGER.info("Open: " + mpUrl);
 
 		HttpURLConnection.setFollowRedirects(true);
 		HttpURLConnection  conn = (HttpURLConnection)mpUrl.openConnection();
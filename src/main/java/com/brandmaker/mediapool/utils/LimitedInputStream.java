@@ -0,0 +1,84 @@
+package com.brandmaker.mediapool.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p>Input stream which counts the bytes read through it and fails as soon as more than a given number of bytes is read.
+ *
+ * <p>This is put behind decompressing streams to protect against zip bombs: reading stops right at the limit, nothing beyond
+ * it is inflated.
+ *
+ * @author axel.amthor
+ *
+ */
+public class LimitedInputStream extends FilterInputStream {
+
+	/**
+	 * Thrown if the stream delivers more bytes than allowed
+	 */
+	public static class LimitExceededException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		public LimitExceededException(long limit) {
+			super("stream exceeds the limit of " + limit + " bytes");
+		}
+	}
+
+	private final long limit;
+	private long count;
+
+	/**
+	 * @param in the stream to read from
+	 * @param limit max number of bytes, negative for no limit
+	 */
+	public LimitedInputStream(InputStream in, long limit) {
+		super(in);
+		this.limit = limit;
+	}
+
+	/**
+	 * @return number of bytes read so far
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if ( b >= 0 )
+			count(1);
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int n = super.read(b, off, len);
+		if ( n > 0 )
+			count(n);
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		if ( skipped > 0 )
+			count(skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		// we do not count back on reset
+		return false;
+	}
+
+	private void count(long n) throws LimitExceededException {
+		count += n;
+		if ( limit >= 0 && count > limit )
+			throw new LimitExceededException(limit);
+	}
+}
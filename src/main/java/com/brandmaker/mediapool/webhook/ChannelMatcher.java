@@ -0,0 +1,152 @@
+package com.brandmaker.mediapool.webhook;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>Precompiled set of the channels this webhook is responsible for.
+ *
+ * <p>The channel names from <code>spring.application.system.channels</code> are interned into a small symbol table once.
+ * Each configured channel gets a symbol, which is its index in {@link #getChannels()}. A channel ID can be looked up
+ * straight from the character buffer of the JSON tokenizer, so checking an event does not create any strings.
+ *
+ * <p>Instances are immutable and can be shared between threads.
+ *
+ * @author axel.amthor
+ *
+ */
+public final class ChannelMatcher {
+
+	/** symbols of the configured channels, hashed into an open addressing table, -1 marks a free slot */
+	private final int[] table;
+	private final int mask;
+
+	/** symbol -&gt; channel name */
+	private final String[] channels;
+
+	/**
+	 * @param channels channel names as configured, blank entries are ignored
+	 */
+	public ChannelMatcher(Collection<String> channels) {
+
+		List<String> symbols = new ArrayList<String>();
+		for ( String channel : channels ) {
+			if ( channel == null )
+				continue;
+
+			String name = channel.trim();
+			if ( !name.isEmpty() && !symbols.contains(name) )
+				symbols.add(name.intern());
+		}
+		this.channels = symbols.toArray(new String[symbols.size()]);
+
+		int capacity = Integer.highestOneBit(Math.max(2, this.channels.length) * 4 - 1);
+		table = new int[capacity];
+		mask = capacity - 1;
+		Arrays.fill(table, -1);
+
+		for ( int symbol = 0; symbol < this.channels.length; symbol++ ) {
+			String name = this.channels[symbol];
+			int i = hash(name) & mask;
+			while ( table[i] >= 0 )
+				i = (i + 1) & mask;
+			table[i] = symbol;
+		}
+	}
+
+	/**
+	 * @param channels comma separated list of channel names
+	 * @return the matcher for these channels
+	 */
+	public static ChannelMatcher of(String channels) {
+		return new ChannelMatcher(Arrays.asList(channels != null ? channels.split(",") : new String[0]));
+	}
+
+	/**
+	 * @return the configured channel names, indexed by symbol
+	 */
+	public List<String> getChannels() {
+		return Collections.unmodifiableList(Arrays.asList(channels));
+	}
+
+	/**
+	 * @param channelId a channel ID of an event
+	 * @return the symbol of the channel or -1, if this is not one of ours
+	 */
+	public int symbol(CharSequence channelId) {
+
+		if ( channelId == null )
+			return -1;
+
+		int h = 0;
+		for ( int n = 0; n < channelId.length(); n++ )
+			h = 31 * h + channelId.charAt(n);
+
+		for ( int i = h & mask; table[i] >= 0; i = (i + 1) & mask ) {
+			String name = channels[table[i]];
+			if ( name.contentEquals(channelId) )
+				return table[i];
+		}
+		return -1;
+	}
+
+	/**
+	 * @param buffer character buffer of the tokenizer
+	 * @param offset start of the channel ID
+	 * @param length length of the channel ID
+	 * @return the symbol of the channel or -1, if this is not one of ours
+	 */
+	public int symbol(char[] buffer, int offset, int length) {
+
+		int h = 0;
+		for ( int n = offset; n < offset + length; n++ )
+			h = 31 * h + buffer[n];
+
+		for ( int i = h & mask; table[i] >= 0; i = (i + 1) & mask ) {
+			String name = channels[table[i]];
+			if ( equals(name, buffer, offset, length) )
+				return table[i];
+		}
+		return -1;
+	}
+
+	/**
+	 * @param channelId a channel ID of an event
+	 * @return true, if this is one of our channels
+	 */
+	public boolean matches(CharSequence channelId) {
+		return symbol(channelId) >= 0;
+	}
+
+	/**
+	 * @return true, if the channel ID in the buffer is one of our channels
+	 */
+	public boolean matches(char[] buffer, int offset, int length) {
+		return symbol(buffer, offset, length) >= 0;
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(channels);
+	}
+
+	/** same as {@link String#hashCode()} */
+	private static int hash(String s) {
+		return s.hashCode();
+	}
+
+	private static boolean equals(String name, char[] buffer, int offset, int length) {
+
+		if ( name.length() != length )
+			return false;
+
+		for ( int n = 0; n < length; n++ ) {
+			if ( name.charAt(n) != buffer[offset + n] )
+				return false;
+		}
+		return true;
+	}
+}
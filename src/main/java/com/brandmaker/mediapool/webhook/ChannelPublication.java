@@ -0,0 +1,169 @@
+package com.brandmaker.mediapool.webhook;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * <p>One entry of the <code>eventData</code> of an event: the publication of the asset to a channel.
+ *
+ * <pre>
+ * { "channelId": "PUBLIC_LINKS", "startDate": null, "endDate": null, "renderingScheme": 856 }
+ * </pre>
+ *
+ * <p>The eventData is decoded into these once, when the event is read from a request or from the queue. The IDs of the
+ * well known channels share the constants of {@link MediaPoolEvent}, other channel IDs are kept as they were sent: they
+ * are remote input and not interned. Instances are immutable.
+ *
+ * @author axel.amthor
+ *
+ */
+public final class ChannelPublication {
+
+	/** rendering scheme of a publication without one */
+	public static final long NO_RENDERING_SCHEME = -1L;
+
+	public static final String PROP_STARTDATE = "startDate";
+	public static final String PROP_ENDDATE = "endDate";
+
+	public static final ChannelPublication[] NONE = new ChannelPublication[0];
+
+	private final String channelId;
+	private final long renderingScheme;
+	private final Instant startDate;
+	private final Instant endDate;
+
+	/**
+	 * @param channelId the channel, may be null
+	 * @param renderingScheme the rendering scheme, {@link #NO_RENDERING_SCHEME} if not set
+	 * @param startDate start of the publication, may be null
+	 * @param endDate end of the publication, may be null
+	 */
+	public ChannelPublication(String channelId, long renderingScheme, Instant startDate, Instant endDate) {
+		this.channelId = canonical(channelId);
+		this.renderingScheme = renderingScheme;
+		this.startDate = startDate;
+		this.endDate = endDate;
+	}
+
+	/**
+	 * The constant of a well known channel, any other channel ID as it is
+	 */
+	private static String canonical(String channelId) {
+		if ( MediaPoolEvent.CHANNEL_SHARE.equals(channelId) )
+			return MediaPoolEvent.CHANNEL_SHARE;
+		if ( MediaPoolEvent.CHANNEL_PUBLIC_LINKS.equals(channelId) )
+			return MediaPoolEvent.CHANNEL_PUBLIC_LINKS;
+		return channelId;
+	}
+
+	/**
+	 * Decode an eventData as it was transferred in former queue messages
+	 *
+	 * @param payload the eventData entries
+	 * @return the publications, entries which are not objects are skipped
+	 */
+	public static ChannelPublication[] fromJson(JSONArray payload) throws JSONException {
+
+		ChannelPublication[] publications = new ChannelPublication[payload.length()];
+		int count = 0;
+
+		for ( int n = 0; n < payload.length(); n++ ) {
+			JSONObject entry = payload.optJSONObject(n);
+			if ( entry == null )
+				continue;
+
+			publications[count++] = new ChannelPublication(
+					entry.isNull(MediaPoolEvent.PROP_CHANNELID) ? null : entry.getString(MediaPoolEvent.PROP_CHANNELID),
+					entry.isNull(MediaPoolEvent.PROP_RENDERINGSCHEME) ? NO_RENDERING_SCHEME : entry.getLong(MediaPoolEvent.PROP_RENDERINGSCHEME),
+					instant(entry.opt(PROP_STARTDATE)),
+					instant(entry.opt(PROP_ENDDATE)));
+		}
+
+		if ( count < publications.length ) {
+			ChannelPublication[] trimmed = new ChannelPublication[count];
+			System.arraycopy(publications, 0, trimmed, 0, count);
+			return trimmed;
+		}
+		return publications;
+	}
+
+	/**
+	 * @return the eventData entries of the publications
+	 */
+	public static JSONArray toJson(ChannelPublication[] publications) throws JSONException {
+
+		JSONArray payload = new JSONArray();
+		for ( ChannelPublication publication : publications ) {
+			JSONObject entry = new JSONObject();
+			entry.put(MediaPoolEvent.PROP_CHANNELID, publication.channelId != null ? publication.channelId : JSONObject.NULL);
+			entry.put(PROP_STARTDATE, publication.startDate != null ? (Object) publication.startDate.toEpochMilli() : JSONObject.NULL);
+			entry.put(PROP_ENDDATE, publication.endDate != null ? (Object) publication.endDate.toEpochMilli() : JSONObject.NULL);
+			if ( publication.hasRenderingScheme() )
+				entry.put(MediaPoolEvent.PROP_RENDERINGSCHEME, publication.renderingScheme);
+			payload.put(entry);
+		}
+		return payload;
+	}
+
+	/**
+	 * A date of the eventData, either msec since the epoch or ISO-8601
+	 *
+	 * @return the instant, null if not set or not readable
+	 */
+	public static Instant instant(Object value) {
+
+		if ( value instanceof Number )
+			return Instant.ofEpochMilli(((Number) value).longValue());
+
+		if ( value instanceof String ) {
+			try {
+				return Instant.parse((String) value);
+			}
+			catch ( DateTimeParseException e ) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the channel, null if not set
+	 */
+	public String getChannelId() {
+		return channelId;
+	}
+
+	/**
+	 * @return the rendering scheme, {@link #NO_RENDERING_SCHEME} if not set
+	 */
+	public long getRenderingScheme() {
+		return renderingScheme;
+	}
+
+	public boolean hasRenderingScheme() {
+		return renderingScheme != NO_RENDERING_SCHEME;
+	}
+
+	/**
+	 * @return start of the publication, null if not set
+	 */
+	public Instant getStartDate() {
+		return startDate;
+	}
+
+	/**
+	 * @return end of the publication, null if not set
+	 */
+	public Instant getEndDate() {
+		return endDate;
+	}
+
+	@Override
+	public String toString() {
+		return channelId + (hasRenderingScheme() ? "/" + renderingScheme : "");
+	}
+}
@@ -3,7 +3,8 @@ package com.brandmaker.mediapool.webhook;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.List;
@@ -26,7 +27,7 @@ import com.brandmaker.mediapool.MediaPoolWebHookEvents;
  * @author axel.amthor
  *
  */
-public class MediaPoolEvent
+public class MediaPoolEvent implements Cloneable
 {
 
 	public static final String PROP_RENDERINGSCHEME = "renderingScheme";
@@ -44,192 +45,287 @@ public class MediaPoolEvent
 	public static final String PROP_CUSTOMERID = "customerId";
 	public static final String PROP_TENANTID = "tenantId";
 	public static final String PROP_DOWNNLOADSCHEME = "downloadScheme";
+
+	/** tenant number of an event which is not registered in the {@link TenantRegistry} */
+	public static final int NO_TENANT = -1;
 	
 	private static final Logger LOGGER = LoggerFactory.getLogger(MediaPoolEvent.class);
 
-	private ArrayList<String> mySyncChannels;
+	private ChannelMatcher channelMatcher;
 	
 	/**
-	 * Inner class which maps property values to class variables
+	 * <p>Descriptor of an event property: how it is read from a request or a queue message and how it is written to either.
+	 *
+	 * <p>The table is static and shared by all events, so mapping an event allocates nothing but the event and its values.
+	 *
 	 * @author axel.amthor
 	 *
-	 * @param <IN> Type of setter value
-	 * @param <OUT> Type of getter return value
 	 */
-	private class AttributeActor<IN, OUT> {
+	private enum Attribute {
 
-		public String attributeName;
-		private boolean required = true;
+		CUSTOMER_ID(PROP_CUSTOMERID, true) {
+			@Override
+			void read(MediaPoolEvent event, JSONObject request) throws JSONException {
+				event.customerId = request.getString(name);
+			}
 
-		AttributeActor(String name)
-		{
-//			LOGGER.info("Mapping " + name);
-			this.attributeName = name;
-		}
+			@Override
+			void read(MediaPoolEvent event, Object value) {
+				event.customerId = (String) value;
+			}
 
-		AttributeActor(String name, boolean isRequired)
-		{
-//			LOGGER.info("Mapping " + name);
-			this.attributeName = name;
-			this.required = isRequired;
-		}
+			@Override
+			Object value(MediaPoolEvent event) {
+				return event.customerId;
+			}
+		},
 
-		public void set (IN t) throws Exception {};
+		SYSTEM_ID(PROP_SYSTEMID, true) {
+			@Override
+			void read(MediaPoolEvent event, JSONObject request) throws JSONException {
+				event.systemId = request.getString(name);
+			}
 
-		public OUT get() { return null; };
+			@Override
+			void read(MediaPoolEvent event, Object value) {
+				event.systemId = (String) value;
+			}
 
-	}
+			@Override
+			Object value(MediaPoolEvent event) {
+				return event.systemId;
+			}
+		},
 
-	/**
-	 * Mapping structure to call getters and setters based on property names
-	 */
-	private final AttributeActor<?, ?>[] REQUEST_ATTRIBUTES = {
-			new AttributeActor<String, String>(PROP_CUSTOMERID) {
+		BASE_URL(PROP_BASEURL, true) {
+			@Override
+			void read(MediaPoolEvent event, JSONObject request) throws JSONException {
+				event.setBaseUrl(request.getString(name));
+			}
 
-				@Override
-				public void set(String val)
-				{
-					setCustomerId(val);
-				}
+			@Override
+			void read(MediaPoolEvent event, Object value) {
+				event.setBaseUrl((String) value);
+			}
 
-				@Override
-				public String get()
-				{
-					return getCustomerId();
+			@Override
+			Object value(MediaPoolEvent event) {
+				try {
+					return event.baseUrl != null ? event.getBaseUrl() : null;
+				} catch (MalformedURLException e) {
+					LOGGER.error("Exception",e);
+					return null;
 				}
+			}
+		},
 
-			},
-			new AttributeActor<String, String>(PROP_SYSTEMID) {
+		ASSET_ID(PROP_ASSETID, false) {
+			@Override
+			void read(MediaPoolEvent event, JSONObject request) throws JSONException {
+				event.assetId = Long.toString(request.getLong(name));
+			}
 
-				@Override
-				public void set(String val)
-				{
-					setSystemId(val);
-				}
+			@Override
+			void read(MediaPoolEvent event, Object value) {
+				event.assetId = (String) value;
+			}
 
-				@Override
-				public String get()
-				{
-					return getSystemId();
-				}
+			@Override
+			Object value(MediaPoolEvent event) {
+				return event.assetId;
+			}
+		},
 
-			},
-			new AttributeActor<String, String>(PROP_BASEURL) {
+		ASSET_IDS(PROP_ASSETIDS, false) {
+			@Override
+			void read(MediaPoolEvent event, JSONObject request) throws JSONException {
+				Object value = request.get(name);
+				event.assetIds = assetIds(value instanceof JSONArray ? (JSONArray) value : new JSONArray(value.toString()));
+			}
 
-				@Override
-				public void set(String val)
-				{
-					setBaseUrl(val);
-				}
+			@Override
+			void read(MediaPoolEvent event, Object value) throws JSONException {
+				if ( value != null )
+					event.assetIds = assetIds(new JSONArray((String) value));
+			}
 
-				@Override
-				public String get()
-				{
-					try {
-						return getBaseUrl();
-					} catch (MalformedURLException e) {
-						LOGGER.error("Exception",e);
-						return null;
-					}
-				}
+			@Override
+			Object value(MediaPoolEvent event) {
+				if ( event.assetIds == null )
+					return null;
 
-			},
-			new AttributeActor<String, String>(PROP_ASSETID, false) {
+				JSONArray ids = new JSONArray();
+				for ( long id : event.assetIds )
+					ids.put(id);
+				return ids;
+			}
 
-				@Override
-				public void set(String val)
-				{
-					setAssetId(val);
-				}
+			@Override
+			Object mapValue(MediaPoolEvent event) {
+				Object ids = value(event);
+				return ids != null ? ids.toString() : null;
+			}
+		},
 
-				@Override
-				public String get()
-				{
-					return getAssetId();
-				}
+		EVENT_DATA(PROP_EVENTDATA, false) {
+			@Override
+			void read(MediaPoolEvent event, JSONObject request) throws JSONException {
+				Object value = request.get(name);
+				event.setPublications(ChannelPublication.fromJson(value instanceof JSONArray ? (JSONArray) value : parsePayload(value.toString())));
+			}
 
-			},
-			
-			new AttributeActor<String, JSONArray>(PROP_EVENTDATA, false) {
-
-				@Override
-				public void set(String val) throws JSONException
-				{
-					if ( val != null ) {
-						val = val.trim();
-						if ( val.startsWith("{") ) 
-							val = "[" + val + "]";
-						
-						JSONArray pl = new JSONArray(val);
-						setPayloadArray(pl);
-					}
-				}
+			@Override
+			void read(MediaPoolEvent event, Object value) throws JSONException {
+				if ( value != null )
+					event.setPublications(ChannelPublication.fromJson(parsePayload((String) value)));
+			}
 
-				@Override
-				public JSONArray get()
-				{
-					return getPayloadArray();
+			@Override
+			Object value(MediaPoolEvent event) {
+				try {
+					return event.publications != null ? ChannelPublication.toJson(event.publications) : null;
+				} catch (JSONException e) {
+					LOGGER.error("JSON error", e);
+					return null;
 				}
+			}
 
-			},
-			new AttributeActor<String, MediaPoolWebHookEvents.Event>(PROP_EVENT) {
+			@Override
+			Object mapValue(MediaPoolEvent event) {
+				Object payload = value(event);
+				return payload != null ? payload.toString() : null;
+			}
+		},
 
-				@Override
-				public void set(String val) throws WebhookException
-				{
-					MediaPoolWebHookEvents.Event evt = MediaPoolWebHookEvents.theEvent(val);
-					setEvent(evt);
-				}
+		EVENT(PROP_EVENT, true) {
+			@Override
+			void read(MediaPoolEvent event, JSONObject request) throws JSONException, WebhookException {
+				event.event = MediaPoolWebHookEvents.theEvent(request.getString(name));
+			}
 
-				@Override
-				public MediaPoolWebHookEvents.Event get()
-				{
-					return getEvent();
-				}
+			@Override
+			void read(MediaPoolEvent event, Object value) throws WebhookException {
+				event.event = MediaPoolWebHookEvents.theEvent((String) value);
+			}
 
-			},
-			new AttributeActor<Long, GregorianCalendar>(PROP_EVENTTIME) {
+			@Override
+			Object value(MediaPoolEvent event) {
+				return event.event != null ? event.event.toString() : null;
+			}
+		},
 
-				@Override
-				public void set(Long val)
-				{
-					GregorianCalendar cal = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
-					cal.setTime(new Date(new Long(val)));
+		EVENT_TIME(PROP_EVENTTIME, true) {
+			@Override
+			void read(MediaPoolEvent event, JSONObject request) throws JSONException {
+				event.eventTime = calendar(request.getLong(name));
+			}
 
-					setEventTime(cal);
-				}
+			@Override
+			void read(MediaPoolEvent event, Object value) {
+				event.eventTime = calendar(((Number) value).longValue());
+			}
 
-				@Override
-				public GregorianCalendar get()
-				{
-					return getEventTime();
-				}
-			},
-			new AttributeActor<String, String>(PROP_SIGNATURE, false) {
+			@Override
+			Object value(MediaPoolEvent event) {
+				return event.eventTime != null ? event.eventTime.getTimeInMillis() : null;
+			}
+		},
 
-				@Override
-				public void set(String val) throws JSONException
-				{
-					setSignature(val);
-				}
+		SIGNATURE(PROP_SIGNATURE, false) {
+			@Override
+			void read(MediaPoolEvent event, JSONObject request) throws JSONException {
+				event.signature = request.getString(name);
+			}
 
-				@Override
-				public String get()
-				{
-					return getSignature();
-				}
+			@Override
+			void read(MediaPoolEvent event, Object value) {
+				event.signature = (String) value;
+			}
 
+			@Override
+			Object value(MediaPoolEvent event) {
+				return event.signature;
 			}
-	};
+		};
+
+		final String name;
+		final boolean required;
+
+		Attribute(String name, boolean required) {
+			this.name = name;
+			this.required = required;
+		}
+
+		/**
+		 * Read the property from a request, it is present
+		 */
+		abstract void read(MediaPoolEvent event, JSONObject request) throws JSONException, WebhookException;
+
+		/**
+		 * Read the property from a queue message map
+		 *
+		 * @param value the value as written by {@link #mapValue(MediaPoolEvent)}, null if missing
+		 */
+		abstract void read(MediaPoolEvent event, Object value) throws JSONException, WebhookException;
+
+		/**
+		 * @return the value for a JSON representation, null if not set
+		 */
+		abstract Object value(MediaPoolEvent event);
+
+		/**
+		 * @return the value for a queue message map, null if not set
+		 */
+		Object mapValue(MediaPoolEvent event) {
+			return value(event);
+		}
+
+		private static JSONArray parsePayload(String val) throws JSONException {
+			val = val.trim();
+			if ( val.startsWith("{") )
+				val = "[" + val + "]";
+
+			return new JSONArray(val);
+		}
+
+		private static long[] assetIds(JSONArray array) throws JSONException {
+			long[] ids = new long[array.length()];
+			for ( int i = 0; i < ids.length; i++ )
+				ids[i] = array.getLong(i);
+			return ids;
+		}
+
+		private static GregorianCalendar calendar(long millis) {
+			GregorianCalendar cal = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+			cal.setTimeInMillis(millis);
+			return cal;
+		}
+	}
+
+	/** the static, immutable mapping of the properties */
+	private static final Attribute[] ATTRIBUTES = Attribute.values();
 
 	private String user; // logged in user requesting the operation
 
 	private String customerId;
 	private String systemId;
 	private String baseUrl;
-	private ArrayList<Integer>mediaPollAssetIds;
+	/** protocol://host[:port] of the baseUrl, built on first use */
+	private String normalizedBaseUrl;
+	/** number of (customerId, systemId, baseUrl) in the {@link TenantRegistry} */
+	private int tenantId = NO_TENANT;
 	private String assetId;
-	private JSONArray payloadArray;
+	/** the assets of a bulk event, e.g. a SYNCHRONIZE of a category, expanded by the consumer */
+	private long[] assetIds;
+	private ChannelPublication[] publications;
+	private List<ChannelPublication> publicationList;
+	private List<String> channelIds = Collections.emptyList();
+
+	/** derived from the publications and the channel matcher, see {@link #update()} */
+	private boolean myChannel;
+	private boolean publicLinks;
+	private boolean sharing;
+	private long renderingScheme = ChannelPublication.NO_RENDERING_SCHEME;
 	private MediaPoolWebHookEvents.Event event;
 	private GregorianCalendar eventTime;
 	private String signature;
@@ -272,15 +368,15 @@ public class MediaPoolEvent
 	 * @param props
 	 * @throws Exception If JSON is invalid or if attribute is missing
 	 */
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public MediaPoolEvent(Map<String, Object> props) throws Exception {
 		
-		for ( AttributeActor attr : REQUEST_ATTRIBUTES ) {
+		for ( Attribute attr : ATTRIBUTES ) {
 
-			if ( attr.required && !props.containsKey(attr.attributeName) )
-				throw new Exception("missing parameter: " + attr.attributeName);
+			Object val = props.get(attr.name);
+			if ( attr.required && val == null && !props.containsKey(attr.name) )
+				throw new Exception("missing parameter: " + attr.name);
 
-			attr.set( props.get(attr.attributeName) );
+			attr.read(this, val);
 		}
 
 	}
@@ -290,40 +386,16 @@ public class MediaPoolEvent
 	 * @param request the JSON Object
 	 * @throws Exception If JSON is invalid or if attribute is missing
 	 */
-	@SuppressWarnings({ "rawtypes", "unchecked" })
 	public MediaPoolEvent(JSONObject request) throws WebhookException, Exception {
 		
-		for ( AttributeActor attr : REQUEST_ATTRIBUTES ) {
+		for ( Attribute attr : ATTRIBUTES ) {
+
+			if ( request.has(attr.name) )
+				attr.read(this, request);
 
 			// attribute is required but missing
-			if ( attr.required && !request.has(attr.attributeName) )
-				throw new WebhookException("missing parameter: " + attr.attributeName);
-
-			Object val = null;
-			if ( request.has(attr.attributeName) ) {
-				switch (attr.attributeName) {
-					case PROP_EVENTDATA:
-						val = request.get(attr.attributeName).toString();
-						break;
-
-					case PROP_EVENTTIME:
-						val = request.getLong(attr.attributeName);
-						break;
-
-					case PROP_EVENT:
-						val = request.getString(attr.attributeName);
-						break;
-						
-					case PROP_ASSETID:
-						val = "" + request.getLong(attr.attributeName);
-						break;
-
-					default:
-						val = request.getString(attr.attributeName);
-						break;
-				}
-			}
-			attr.set(val);
+			else if ( attr.required )
+				throw new WebhookException("missing parameter: " + attr.name);
 		}
 	}
 
@@ -337,32 +409,15 @@ public class MediaPoolEvent
 
 		HashMap<String, Object> eventMap = new HashMap<String, Object>();
 
-		for ( AttributeActor<?, ?> attr : REQUEST_ATTRIBUTES ) {
+		for ( Attribute attr : ATTRIBUTES ) {
 
-			Object val = attr.get();
-			if ( val != null ) {
-				switch (attr.attributeName) {
-					case PROP_EVENTDATA:
-					case PROP_EVENT:
-					case PROP_ASSETIDS:
-						val = val.toString();
-						break;
-
-					case PROP_EVENTTIME:
-						val = ((GregorianCalendar) val).getTimeInMillis();
-						break;
-
-					default:
-						break;
-				}
-			}
-			else {
-				LOGGER.info("No value for " + attr.attributeName);
+			Object val = attr.mapValue(this);
+			if ( val == null ) {
+				LOGGER.debug("No value for " + attr.name);
 				continue;
 			}
 
-			eventMap.put(attr.attributeName, val );
-
+			eventMap.put(attr.name, val );
 		}
 
 		return eventMap;
@@ -372,29 +427,15 @@ public class MediaPoolEvent
 
 		JSONObject eventMap = new JSONObject();
 
-		for ( AttributeActor<?, ?> attr : REQUEST_ATTRIBUTES ) {
-
-			Object val;
-			switch (attr.attributeName) {
-				case PROP_EVENT:
-					val = attr.get().toString();
-					break;
-
-				case PROP_EVENTTIME:
-					val = ((GregorianCalendar) attr.get()).getTimeInMillis();
-					break;
+		for ( Attribute attr : ATTRIBUTES ) {
 
-				default:
-					val = attr.get();
-					break;
-			}
+			Object val = attr.value(this);
 			if ( val == null ) {
-				LOGGER.info("No value for " + attr.attributeName);
+				LOGGER.debug("No value for " + attr.name);
 				continue;
 			}
 
-			eventMap.put(attr.attributeName, val );
-
+			eventMap.put(attr.name, val );
 		}
 
 		return eventMap;
@@ -426,6 +467,7 @@ public class MediaPoolEvent
 	public void setCustomerId(String customerId)
 	{
 		this.customerId = customerId;
+		this.tenantId = NO_TENANT;
 	}
 
 	/**
@@ -442,18 +484,53 @@ public class MediaPoolEvent
 	public void setSystemId(String systemId)
 	{
 		this.systemId = systemId;
+		this.tenantId = NO_TENANT;
 	}
 
 	/**
-	 * @param event
-	 * @return
+	 * @return the number of the tenant in the {@link TenantRegistry}, {@link #NO_TENANT} if not registered
+	 */
+	public int getTenantId()
+	{
+		return tenantId;
+	}
+
+	/**
+	 * Take the identity of a registered tenant, i.e. its number and its instances of the strings
+	 *
+	 * @param tenant the tenant
+	 */
+	public void setTenant(TenantRegistry.Tenant tenant)
+	{
+		this.customerId = tenant.getCustomerId();
+		this.systemId = tenant.getSystemId();
+		this.baseUrl = tenant.getBaseUrl();
+		this.normalizedBaseUrl = tenant.getBaseUrl();
+		this.tenantId = tenant.getId();
+	}
+
+	/**
+	 * <p>The base URL reduced to protocol://host[:port], the key of the Media Pool instance.
+	 * It is parsed once per event.
+	 *
+	 * @return the normalized base URL
 	 * @throws MalformedURLException
 	 */
 	public String getBaseUrl() throws MalformedURLException
 	{
-		URL su = new URL(this.baseUrl);
-		String baseUrl = su.getProtocol() + "://" + su.getHost() + ( su.getPort() > 0 ? (":" +  su.getPort()) : "");
-		return baseUrl;
+		if ( this.normalizedBaseUrl == null ) {
+			URL su = new URL(this.baseUrl);
+			this.normalizedBaseUrl = su.getProtocol() + "://" + su.getHost() + ( su.getPort() > 0 ? (":" +  su.getPort()) : "");
+		}
+		return this.normalizedBaseUrl;
+	}
+
+	/**
+	 * @return the base URL as submitted, without any normalization
+	 */
+	String getRawBaseUrl()
+	{
+		return this.baseUrl;
 	}
 
 	/**
@@ -462,14 +539,16 @@ public class MediaPoolEvent
 	public void setBaseUrl(String baseUrl)
 	{
 		this.baseUrl = baseUrl;
+		this.normalizedBaseUrl = null;
+		this.tenantId = NO_TENANT;
 	}
 
 	/**
-	 * @return the payload
+	 * @return the publications of the eventData, null if the event has no eventData
 	 */
-	public JSONArray getPayloadArray()
+	public List<ChannelPublication> getPublications()
 	{
-		return payloadArray;
+		return publicationList;
 	}
 	
 	public boolean mustHaveChannel() {
@@ -523,8 +602,11 @@ public boolean isPublishingEvent() {
 		}
 	}
 	
-	public ArrayList<String>getMySyncChannels() {
-		return mySyncChannels;
+	/**
+	 * @return the channels we are listening on
+	 */
+	public ChannelMatcher getChannelMatcher() {
+		return channelMatcher;
 	}
 	
 	/**
@@ -536,101 +618,129 @@ public boolean isPublishingEvent() {
 	 * @return
 	 */
 	public boolean isMyChannel() {
-		
-		LOGGER.info("watching channels: " + (mySyncChannels != null ? mySyncChannels.toString() : "NONE!") );
-		
-		ArrayList<String> channels = this.getChannelsFromPayload();
-		
-		for ( String channel : channels )
-			if ( mySyncChannels != null && mySyncChannels.contains(channel) ) 
-				return true;
-		
-		return false;
+		return myChannel;
 	}
 	
-	public String getRenderingScheme() {
-		
-		try {
-			for ( int n = 0; payloadArray != null && n < payloadArray.length(); n++ ) {
-				JSONObject channelData = payloadArray.getJSONObject(n);
-				if ( channelData.has(PROP_CHANNELID) && channelData.has(PROP_RENDERINGSCHEME) ) {
-					if ( channelData.getString(PROP_CHANNELID).equals(CHANNEL_PUBLIC_LINKS))
-						return ""+channelData.getLong(PROP_RENDERINGSCHEME);
-					
-					if ( channelData.getString(PROP_CHANNELID).equals(CHANNEL_SHARE))
-						return ""+channelData.getLong(PROP_RENDERINGSCHEME);
-								
-				}
-			}
-		}
-		catch ( JSONException e )
-		{
-			LOGGER.error("JSON error", e);
-		}
-		return null;
+	/**
+	 * @return the rendering scheme of the first publication to the PUBLIC_LINKS or SHARE channel,
+	 * 		{@link ChannelPublication#NO_RENDERING_SCHEME} if there is none
+	 */
+	public long getRenderingScheme() {
+		return renderingScheme;
 	}
 	
 	/**
 	 * @return true, if the event is for the "public Link" channel
 	 */
 	public boolean isPublicLinkChannel() {
-		ArrayList<String> channels = this.getChannelsFromPayload();
-		
-		if ( isMyChannel() && channels.contains(CHANNEL_PUBLIC_LINKS) )
-			return true;
-		
-		return false;
+		return myChannel && publicLinks;
 	}
 	
 	/**
 	 * @return true, if the event is for the "sharing Link" channel
 	 */
 	public boolean isSharingChannel() {
-		ArrayList<String> channels = this.getChannelsFromPayload();
-		
-		if ( isMyChannel() && channels.contains(CHANNEL_SHARE) )
-			return true;
-		
-		return false;
+		return myChannel && sharing;
 	}
 	
 	/**
-	 * Get the name of the channel from the payload
+	 * Get the names of the channels from the payload
 	 * 
-	 * @return
+	 * @return the channel IDs, unmodifiable
 	 */
-	public ArrayList<String> getChannelsFromPayload()
+	public List<String> getChannelsFromPayload()
 	{
-		ArrayList<String> channels = new ArrayList<String>();
-		
-		if ( payloadArray != null ) {
-			for ( int n = 0; n < payloadArray.length(); n++ ) {
-				try {
-					JSONObject payload = payloadArray.getJSONObject(n);
-					if ( payload.has(PROP_CHANNELID) )
-						channels.add(payload.getString(PROP_CHANNELID));
-				} catch (JSONException e) {
-					LOGGER.error("JSON Error", e);
-				}
-			}
-		}
-		return channels;
+		return channelIds;
 	}
 	
-	public ArrayList<Integer> getMediaPoolAssetIds() {
-		return this.mediaPollAssetIds;
+	/**
+	 * @return the asset IDs of a bulk event, null if the event is about a single asset. The array must not be changed.
+	 */
+	public long[] getAssetIds() {
+		return this.assetIds;
 	}
 	
-	public void setMediaPoolAssetIds(ArrayList<Integer> aids) {
-		this.mediaPollAssetIds = aids;
+	/**
+	 * @param assetIds the asset IDs of a bulk event. The array must not be changed afterwards.
+	 */
+	public void setAssetIds(long[] assetIds) {
+		this.assetIds = assetIds;
+	}
+	
+	/**
+	 * @return true, if the event carries a list of asset IDs to be expanded into one event per asset
+	 */
+	public boolean hasAssetIds() {
+		return this.assetIds != null;
+	}
+	
+	/**
+	 * <p>The event of one asset of a bulk event. Everything but the asset is shared with this event, 
+	 * the publications and the identity strings are immutable.
+	 * 
+	 * @param assetId one of the {@link #getAssetIds() asset IDs}
+	 * @return a copy of this event for the given asset, without asset IDs
+	 */
+	public MediaPoolEvent forAsset(long assetId) {
+		MediaPoolEvent event = copy();
+		event.assetId = Long.toString(assetId);
+		event.assetIds = null;
+		return event;
+	}
+	
+	/**
+	 * @param assetIds part of the {@link #getAssetIds() asset IDs}
+	 * @return a copy of this bulk event for the given assets
+	 */
+	public MediaPoolEvent forAssets(long[] assetIds) {
+		MediaPoolEvent event = copy();
+		event.assetId = null;
+		event.assetIds = assetIds;
+		return event;
+	}
+	
+	private MediaPoolEvent copy() {
+		try {
+			return (MediaPoolEvent) super.clone();
+		}
+		catch ( CloneNotSupportedException e ) {
+			throw new IllegalStateException(e);
+		}
 	}
 
 	/**
-	 * @param payload the payload to set
+	 * @param publications the decoded eventData, null if the event has no eventData. The array must not be changed afterwards.
 	 */
-	public void setPayloadArray(JSONArray payload)
+	public void setPublications(ChannelPublication[] publications)
 	{
-		this.payloadArray = payload;
+		this.publications = publications;
+		this.publicationList = publications != null ? Collections.unmodifiableList(Arrays.asList(publications)) : null;
+
+		List<String> ids = new ArrayList<String>(publications != null ? publications.length : 0);
+		publicLinks = false;
+		sharing = false;
+		renderingScheme = ChannelPublication.NO_RENDERING_SCHEME;
+
+		if ( publications != null ) {
+			for ( ChannelPublication publication : publications ) {
+				String channelId = publication.getChannelId();
+				if ( channelId == null )
+					continue;
+
+				ids.add(channelId);
+				boolean isPublicLinks = CHANNEL_PUBLIC_LINKS.equals(channelId);
+				boolean isShare = CHANNEL_SHARE.equals(channelId);
+				publicLinks |= isPublicLinks;
+				sharing |= isShare;
+
+				if ( renderingScheme == ChannelPublication.NO_RENDERING_SCHEME && publication.hasRenderingScheme()
+						&& (isPublicLinks || isShare) )
+					renderingScheme = publication.getRenderingScheme();
+			}
+		}
+		this.channelIds = Collections.unmodifiableList(ids);
+
+		update();
 	}
 
 	/**
@@ -713,8 +823,29 @@ public boolean isPublishingEvent() {
 		this.user = user;
 	}
 
-	public void setMySyncChannels(ArrayList<String> mySyncChannels) {
-		this.mySyncChannels = mySyncChannels;
+	/**
+	 * @param channelMatcher the channels we are listening on
+	 */
+	public void setChannelMatcher(ChannelMatcher channelMatcher) {
+		this.channelMatcher = channelMatcher;
+		update();
+	}
+
+	/**
+	 * Check the publications against the channels we are listening on, once
+	 */
+	private void update() {
+
+		myChannel = false;
+		if ( channelMatcher == null || publications == null )
+			return;
+
+		for ( ChannelPublication publication : publications ) {
+			if ( channelMatcher.matches(publication.getChannelId()) ) {
+				myChannel = true;
+				return;
+			}
+		}
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,333 @@
+package com.brandmaker.mediapool.webhook;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import com.brandmaker.mediapool.MediaPoolWebHookEvents;
+
+/**
+ * <p>Compact binary form of a {@link MediaPoolEvent} for the processing queue.
+ *
+ * <p>Layout of version 1, all numbers big endian as written by {@link DataOutputStream}:
+ * <pre>
+ * byte    version
+ * byte    flags, which of the optional parts follow
+ * byte    more flags
+ * byte    event type ordinal, -1 if not set
+ * int     number of the tenant in the {@link TenantRegistry}, -1 if the event is not registered
+ * long    event time in msec                        (FLAG_EVENT_TIME)
+ * UTF     customerId, systemId, baseUrl             (FLAG_CUSTOMER_ID, FLAG_SYSTEM_ID, FLAG_BASE_URL)
+ * long    assetId                                   (FLAG_ASSET_ID)
+ * UTF     assetId, if it is not a number            (FLAG_ASSET_ID_TEXT)
+ * UTF     signature                                 (FLAG_SIGNATURE)
+ * assetIds of a bulk event                          (FLAG2_ASSET_IDS)
+ *   varint  number of IDs
+ *   varint  per ID, the zigzag encoded difference to the previous one
+ * eventData                                         (FLAG_PAYLOAD)
+ *   int     number of entries
+ *   byte[]  per entry, a bit per column with a value: channelId 1, renderingScheme 2, startDate 4, endDate 8
+ *   UTF[]   channelId of the entries with a value
+ *   long[]  renderingScheme, startDate, endDate (msec) of the entries with a value, column by column
+ * </pre>
+ *
+ * <p>The asset IDs of a bulk event are written as differences to their predecessor in 7 bit groups, so a list of consecutive
+ * IDs takes about one byte per asset. The identity strings are only written for events which are not registered, the others
+ * are resolved by the registry when the message is decoded.
+ *
+ * <p>The eventData is written as the {@link ChannelPublication}s of the event. The event type is transferred as ordinal of
+ * {@link MediaPoolWebHookEvents.Event}, so new event types must be added at the end of the enum.
+ *
+ * @author axel.amthor
+ *
+ */
+public final class MediaPoolEventCodec {
+
+	public static final byte VERSION = 1;
+
+	private static final int FLAG_EVENT_TIME = 1;
+	private static final int FLAG_CUSTOMER_ID = 1 << 1;
+	private static final int FLAG_SYSTEM_ID = 1 << 2;
+	private static final int FLAG_BASE_URL = 1 << 3;
+	private static final int FLAG_ASSET_ID = 1 << 4;
+	private static final int FLAG_ASSET_ID_TEXT = 1 << 5;
+	private static final int FLAG_SIGNATURE = 1 << 6;
+	private static final int FLAG_PAYLOAD = 1 << 7;
+
+	private static final int FLAG2_ASSET_IDS = 1;
+
+	/** the columns of the eventData */
+	private static final int CHANNEL_ID = 1;
+	private static final int RENDERING_SCHEME = 1 << 1;
+	private static final int START_DATE = 1 << 2;
+	private static final int END_DATE = 1 << 3;
+
+	private static final MediaPoolWebHookEvents.Event[] TYPES = MediaPoolWebHookEvents.Event.values();
+
+	private MediaPoolEventCodec() {
+	}
+
+	/**
+	 * @param event the event to queue
+	 * @return the binary form
+	 */
+	public static byte[] encode(MediaPoolEvent event) {
+
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+			DataOutputStream out = new DataOutputStream(bytes);
+
+			String assetId = event.getAssetId();
+			long numericAssetId = 0L;
+			boolean numeric = false;
+			if ( assetId != null ) {
+				try {
+					numericAssetId = Long.parseLong(assetId);
+					// "007" would not survive the round trip
+					numeric = Long.toString(numericAssetId).equals(assetId);
+				}
+				catch ( NumberFormatException e ) {
+					numeric = false;
+				}
+			}
+
+			int tenantId = event.getTenantId();
+			boolean registered = tenantId != MediaPoolEvent.NO_TENANT;
+
+			int flags = (event.getEventTime() != null ? FLAG_EVENT_TIME : 0)
+					| (!registered && event.getCustomerId() != null ? FLAG_CUSTOMER_ID : 0)
+					| (!registered && event.getSystemId() != null ? FLAG_SYSTEM_ID : 0)
+					| (!registered && event.getRawBaseUrl() != null ? FLAG_BASE_URL : 0)
+					| (assetId != null ? (numeric ? FLAG_ASSET_ID : FLAG_ASSET_ID_TEXT) : 0)
+					| (event.getSignature() != null ? FLAG_SIGNATURE : 0)
+					| (event.getPublications() != null ? FLAG_PAYLOAD : 0);
+
+			int flags2 = event.getAssetIds() != null ? FLAG2_ASSET_IDS : 0;
+
+			out.writeByte(VERSION);
+			out.writeByte(flags);
+			out.writeByte(flags2);
+			out.writeByte(event.getEvent() != null ? event.getEvent().ordinal() : -1);
+			out.writeInt(tenantId);
+
+			if ( (flags & FLAG_EVENT_TIME) != 0 )
+				out.writeLong(event.getEventTime().getTimeInMillis());
+			if ( (flags & FLAG_CUSTOMER_ID) != 0 )
+				out.writeUTF(event.getCustomerId());
+			if ( (flags & FLAG_SYSTEM_ID) != 0 )
+				out.writeUTF(event.getSystemId());
+			if ( (flags & FLAG_BASE_URL) != 0 )
+				out.writeUTF(event.getRawBaseUrl());
+			if ( (flags & FLAG_ASSET_ID) != 0 )
+				out.writeLong(numericAssetId);
+			if ( (flags & FLAG_ASSET_ID_TEXT) != 0 )
+				out.writeUTF(assetId);
+			if ( (flags & FLAG_SIGNATURE) != 0 )
+				out.writeUTF(event.getSignature());
+			if ( (flags2 & FLAG2_ASSET_IDS) != 0 )
+				writeIds(out, event.getAssetIds());
+			if ( (flags & FLAG_PAYLOAD) != 0 )
+				writePayload(out, event.getPublications());
+
+			out.flush();
+			return bytes.toByteArray();
+		}
+		catch ( IOException e ) {
+			// a byte array does not throw
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param data the binary form
+	 * @param tenants the registry of the tenant numbers
+	 * @return the event, without a channel matcher
+	 * @throws WebhookException if the data is not a supported version, truncated or of an unknown tenant
+	 */
+	public static MediaPoolEvent decode(byte[] data, TenantRegistry tenants) throws WebhookException {
+
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+
+			int version = in.readByte();
+			if ( version != VERSION )
+				throw new WebhookException("unsupported queue message version " + version);
+
+			int flags = in.readUnsignedByte();
+			int flags2 = in.readUnsignedByte();
+			int type = in.readByte();
+			int tenantId = in.readInt();
+
+			MediaPoolEvent event = new MediaPoolEvent();
+
+			if ( type >= 0 ) {
+				if ( type >= TYPES.length )
+					throw new WebhookException("unknown event type ordinal " + type);
+				event.setEvent(TYPES[type]);
+			}
+
+			if ( (flags & FLAG_EVENT_TIME) != 0 ) {
+				GregorianCalendar cal = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+				cal.setTime(new Date(in.readLong()));
+				event.setEventTime(cal);
+			}
+			if ( (flags & FLAG_CUSTOMER_ID) != 0 )
+				event.setCustomerId(in.readUTF());
+			if ( (flags & FLAG_SYSTEM_ID) != 0 )
+				event.setSystemId(in.readUTF());
+			if ( (flags & FLAG_BASE_URL) != 0 )
+				event.setBaseUrl(in.readUTF());
+			if ( (flags & FLAG_ASSET_ID) != 0 )
+				event.setAssetId(Long.toString(in.readLong()));
+			if ( (flags & FLAG_ASSET_ID_TEXT) != 0 )
+				event.setAssetId(in.readUTF());
+			if ( (flags & FLAG_SIGNATURE) != 0 )
+				event.setSignature(in.readUTF());
+			if ( (flags2 & FLAG2_ASSET_IDS) != 0 )
+				event.setAssetIds(readIds(in));
+			if ( (flags & FLAG_PAYLOAD) != 0 )
+				event.setPublications(readPayload(in));
+
+			if ( tenantId != MediaPoolEvent.NO_TENANT ) {
+				TenantRegistry.Tenant tenant = tenants != null ? tenants.getTenant(tenantId) : null;
+				if ( tenant == null )
+					throw new WebhookException("unknown tenant " + tenantId + " of queue message");
+				event.setTenant(tenant);
+			}
+
+			return event;
+		}
+		catch ( IOException e ) {
+			throw new WebhookException("cannot decode queue message: " + e.getMessage());
+		}
+	}
+
+	private static void writePayload(DataOutputStream out, List<ChannelPublication> publications) throws IOException {
+
+		int entries = publications.size();
+		out.writeInt(entries);
+
+		for ( ChannelPublication publication : publications ) {
+			out.writeByte((publication.getChannelId() != null ? CHANNEL_ID : 0)
+					| (publication.hasRenderingScheme() ? RENDERING_SCHEME : 0)
+					| (publication.getStartDate() != null ? START_DATE : 0)
+					| (publication.getEndDate() != null ? END_DATE : 0));
+		}
+
+		for ( ChannelPublication publication : publications ) {
+			if ( publication.getChannelId() != null )
+				out.writeUTF(publication.getChannelId());
+		}
+		for ( ChannelPublication publication : publications ) {
+			if ( publication.hasRenderingScheme() )
+				out.writeLong(publication.getRenderingScheme());
+		}
+		for ( ChannelPublication publication : publications ) {
+			if ( publication.getStartDate() != null )
+				out.writeLong(publication.getStartDate().toEpochMilli());
+		}
+		for ( ChannelPublication publication : publications ) {
+			if ( publication.getEndDate() != null )
+				out.writeLong(publication.getEndDate().toEpochMilli());
+		}
+	}
+
+	private static ChannelPublication[] readPayload(DataInputStream in) throws IOException {
+
+		int entries = in.readInt();
+		if ( entries < 0 || entries > in.available() )
+			throw new IOException("invalid number of eventData entries " + entries);
+
+		int[] masks = new int[entries];
+		for ( int n = 0; n < entries; n++ )
+			masks[n] = in.readUnsignedByte();
+
+		String[] channelIds = new String[entries];
+		for ( int n = 0; n < entries; n++ ) {
+			if ( (masks[n] & CHANNEL_ID) != 0 )
+				channelIds[n] = in.readUTF();
+		}
+
+		long[] renderingSchemes = readColumn(in, masks, RENDERING_SCHEME);
+		long[] startDates = readColumn(in, masks, START_DATE);
+		long[] endDates = readColumn(in, masks, END_DATE);
+
+		ChannelPublication[] publications = new ChannelPublication[entries];
+		for ( int n = 0; n < entries; n++ ) {
+			publications[n] = new ChannelPublication(channelIds[n],
+					(masks[n] & RENDERING_SCHEME) != 0 ? renderingSchemes[n] : ChannelPublication.NO_RENDERING_SCHEME,
+					(masks[n] & START_DATE) != 0 ? Instant.ofEpochMilli(startDates[n]) : null,
+					(masks[n] & END_DATE) != 0 ? Instant.ofEpochMilli(endDates[n]) : null);
+		}
+		return publications;
+	}
+
+	/**
+	 * @return the values of a column, 0 for the entries without one
+	 */
+	private static long[] readColumn(DataInputStream in, int[] masks, int column) throws IOException {
+
+		long[] values = new long[masks.length];
+		for ( int n = 0; n < masks.length; n++ ) {
+			if ( (masks[n] & column) != 0 )
+				values[n] = in.readLong();
+		}
+		return values;
+	}
+
+	private static void writeIds(DataOutputStream out, long[] ids) throws IOException {
+
+		writeVarLong(out, ids.length);
+		long previous = 0L;
+		for ( long id : ids ) {
+			long delta = id - previous;
+			writeVarLong(out, (delta << 1) ^ (delta >> 63));
+			previous = id;
+		}
+	}
+
+	private static long[] readIds(DataInputStream in) throws IOException {
+
+		long count = readVarLong(in);
+		if ( count < 0 || count > in.available() )
+			throw new IOException("invalid number of asset IDs " + count);
+
+		long[] ids = new long[(int) count];
+		long previous = 0L;
+		for ( int i = 0; i < ids.length; i++ ) {
+			long zigzag = readVarLong(in);
+			previous += (zigzag >>> 1) ^ -(zigzag & 1);
+			ids[i] = previous;
+		}
+		return ids;
+	}
+
+	/**
+	 * Unsigned, 7 bits per byte, least significant group first
+	 */
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		while ( (value & ~0x7fL) != 0 ) {
+			out.writeByte((int) (value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0L;
+		for ( int shift = 0; shift < 64; shift += 7 ) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7f) << shift;
+			if ( (b & 0x80) == 0 )
+				return value;
+		}
+		throw new IOException("malformed varint");
+	}
+}
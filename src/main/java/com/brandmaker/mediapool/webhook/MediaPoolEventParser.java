@@ -0,0 +1,552 @@
+package com.brandmaker.mediapool.webhook;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import com.brandmaker.mediapool.MediaPoolWebHookEvents;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * <p>Single pass streaming parser for the <code>data</code> document of a webhook request.
+ *
+ * <p>The document is tokenized once and each element of the <code>events</code> array is decoded straight into a {@link MediaPoolEvent},
+ * which is handed to the given {@link EventHandler} before the next element is read. There is no intermediate JSON tree of the whole request.
+ *
+ * <p>The data document has the following format:
+ * <pre>
+ * {
+ * 		"customerId": "aaa-bbb-ccc",
+ * 		"systemId": "123-456-789",
+ * 		"baseUrl": "https://customer.brandmaker.com",
+ * 		"events": [
+ * 			{ "assetId": 3467, "eventType": "PUBLISHED", "eventTime": 1552667068052, "eventData": [ ... ] },
+ * 			{ "assetIds": [ 3467, 3468, ... ], "eventType": "SYNCHRONIZE", "eventTime": 1552667068052, "eventData": [ ... ] },
+ * 			...
+ * 		]
+ * }
+ * </pre>
+ *
+ * <p>The batch properties <code>customerId</code>, <code>systemId</code> and <code>baseUrl</code> are copied into each event, as within the
+ * subsequent queue there is no "batch" but single, disjoint events. If the <code>events</code> array shows up before these properties,
+ * the events are held back until the end of the document.
+ *
+ * <p>If the parser has a {@link ChannelMatcher}, the channel IDs are checked while the <code>eventData</code> of an event is tokenized.
+ * Events which are not published to any of our channels are skipped before anything is built for them: no {@link MediaPoolEvent},
+ * no payload and no strings. Only for the matching events the payload is decoded from the recorded section of the document.
+ *
+ * @author axel.amthor
+ *
+ */
+public class MediaPoolEventParser {
+
+	/** the Jackson factory is thread safe and expensive to create, so we share it */
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private static final String PROP_EVENTS = "events";
+
+	/** null, if all events are passed to the handler */
+	private final ChannelMatcher channelMatcher;
+
+	/**
+	 * Parser passing all events to the handler
+	 */
+	public MediaPoolEventParser() {
+		this(null);
+	}
+
+	/**
+	 * @param channelMatcher only events published to one of these channels are passed to the handler
+	 */
+	public MediaPoolEventParser(ChannelMatcher channelMatcher) {
+		this.channelMatcher = channelMatcher;
+	}
+
+	/**
+	 * Callback receiving each decoded event
+	 */
+	public interface EventHandler {
+
+		/**
+		 * @param event the decoded and validated event, batch properties are already applied
+		 * @throws WebhookException if the handler wants to abort processing of the request
+		 */
+		void onEvent(MediaPoolEvent event) throws WebhookException;
+
+		/**
+		 * @param eventType type of an event, which is skipped as it is not published to any of our channels. May be null.
+		 */
+		default void onSkipped(String eventType) {
+		}
+	}
+
+	/**
+	 * @return the shared Jackson factory
+	 */
+	public static JsonFactory getJsonFactory() {
+		return JSON_FACTORY;
+	}
+
+	/**
+	 * Parse the data document and pass each event to the handler
+	 *
+	 * @param data the decoded <code>data</code> property of the webhook request
+	 * @param handler receives the events in order of appearance, which are relevant for us
+	 * @return number of events in the document, including the skipped ones
+	 * @throws WebhookException if the document or any event is not well formed. The message carries the error code for the response.
+	 */
+	public int parse(String data, EventHandler handler) throws WebhookException {
+
+		if ( data == null || data.isEmpty() )
+			throw new WebhookException("(1) Data object not well formed");
+
+		try ( JsonParser parser = JSON_FACTORY.createParser(data) ) {
+			return parse(parser, data, handler);
+		}
+		catch ( JsonParseException e ) {
+			throw new WebhookException("(1) Data object not well formed: " + e.getOriginalMessage());
+		}
+		catch ( IOException e ) {
+			throw new WebhookException("(1) Data object not readable: " + e.getMessage());
+		}
+	}
+
+	private int parse(JsonParser parser, String data, EventHandler handler) throws IOException, WebhookException {
+
+		if ( parser.nextToken() != JsonToken.START_OBJECT )
+			throw new WebhookException("(1) Data object not well formed");
+
+		String customerId = null;
+		String systemId = null;
+		String baseUrl = null;
+
+		// only used if the events show up before the batch properties
+		List<MediaPoolEvent> pending = null;
+		int count = 0;
+		boolean hasEvents = false;
+
+		while ( parser.nextToken() == JsonToken.FIELD_NAME ) {
+
+			String name = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+
+			switch ( name ) {
+				case MediaPoolEvent.PROP_CUSTOMERID:
+					customerId = parser.getValueAsString();
+					break;
+
+				case MediaPoolEvent.PROP_SYSTEMID:
+					systemId = parser.getValueAsString();
+					break;
+
+				case MediaPoolEvent.PROP_BASEURL:
+					baseUrl = parser.getValueAsString();
+					break;
+
+				case PROP_EVENTS:
+					if ( token != JsonToken.START_ARRAY )
+						throw new WebhookException("(2) Events array not well formed");
+
+					hasEvents = true;
+					boolean complete = customerId != null && systemId != null && baseUrl != null;
+					if ( !complete )
+						pending = new ArrayList<MediaPoolEvent>();
+
+					while ( (token = parser.nextToken()) != JsonToken.END_ARRAY ) {
+
+						if ( token != JsonToken.START_OBJECT )
+							throw new WebhookException("(3) Event object not well formed");
+
+						MediaPoolEvent event = readEvent(parser, data, handler);
+
+						if ( event == null ) {
+							// not one of our channels
+						}
+						else if ( complete ) {
+							apply(event, customerId, systemId, baseUrl);
+							handler.onEvent(event);
+						}
+						else
+							pending.add(event);
+
+						count++;
+					}
+					break;
+
+				default:
+					parser.skipChildren();
+					break;
+			}
+		}
+
+		if ( !hasEvents )
+			throw new WebhookException("(2) Events array not well formed");
+
+		if ( pending != null ) {
+			for ( MediaPoolEvent event : pending ) {
+				apply(event, customerId, systemId, baseUrl);
+				handler.onEvent(event);
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Decode one element of the events array. The parser is positioned on the START_OBJECT token
+	 * and left on the corresponding END_OBJECT token.
+	 *
+	 * @param source the document the parser is reading, the payload of a matching event is decoded from there
+	 * @param handler is told about skipped events
+	 * @return the event or null, if it is skipped
+	 */
+	private MediaPoolEvent readEvent(JsonParser parser, String source, EventHandler handler) throws IOException, WebhookException {
+
+		String customerId = null;
+		String systemId = null;
+		String baseUrl = null;
+		String signature = null;
+		String eventType = null;
+		long assetId = 0L;
+		boolean hasAssetId = false;
+		long[] assetIds = null;
+		long eventTime = 0L;
+		boolean hasEventTime = false;
+
+		// the eventData, either decoded right away or its section of the source if there is a channel matcher
+		ChannelPublication[] payload = null;
+		String payloadSource = null;
+		int payloadStart = -1;
+		int payloadEnd = -1;
+		boolean matched = channelMatcher == null;
+
+		try {
+			while ( parser.nextToken() == JsonToken.FIELD_NAME ) {
+
+				String name = parser.getCurrentName();
+				JsonToken token = parser.nextToken();
+
+				if ( token == JsonToken.VALUE_NULL )
+					continue;
+
+				switch ( name ) {
+					case MediaPoolEvent.PROP_CUSTOMERID:
+						customerId = parser.getValueAsString();
+						break;
+
+					case MediaPoolEvent.PROP_SYSTEMID:
+						systemId = parser.getValueAsString();
+						break;
+
+					case MediaPoolEvent.PROP_BASEURL:
+						baseUrl = parser.getValueAsString();
+						break;
+
+					case MediaPoolEvent.PROP_ASSETID:
+						assetId = readLong(parser, name);
+						hasAssetId = true;
+						break;
+
+					case MediaPoolEvent.PROP_ASSETIDS:
+						if ( token != JsonToken.START_ARRAY )
+							throw new WebhookException("(5) cannot deserialze event: " + MediaPoolEvent.PROP_ASSETIDS + " is not well formed");
+						assetIds = readLongs(parser, name);
+						break;
+
+					case MediaPoolEvent.PROP_EVENT:
+						eventType = parser.getValueAsString();
+						break;
+
+					case MediaPoolEvent.PROP_EVENTTIME:
+						eventTime = readLong(parser, name);
+						hasEventTime = true;
+						break;
+
+					case MediaPoolEvent.PROP_EVENTDATA:
+						if ( channelMatcher == null ) {
+							payload = readPayload(parser, token);
+						}
+						else if ( token == JsonToken.VALUE_STRING ) {
+							// the payload is a JSON document in a string, scan that one
+							payloadSource = parser.getText();
+							try ( JsonParser nested = JSON_FACTORY.createParser(payloadSource) ) {
+								JsonToken first = nested.nextToken();
+								if ( first != JsonToken.START_ARRAY && first != JsonToken.START_OBJECT )
+									throw new WebhookException("(5) cannot deserialze event: " + MediaPoolEvent.PROP_EVENTDATA + " is not well formed");
+
+								matched = scanChannels(nested, first);
+							}
+							payloadStart = 0;
+							payloadEnd = payloadSource.length();
+						}
+						else if ( token == JsonToken.START_ARRAY || token == JsonToken.START_OBJECT ) {
+							payloadSource = source;
+							payloadStart = (int) parser.getTokenLocation().getCharOffset();
+							matched = scanChannels(parser, token);
+							payloadEnd = (int) parser.getCurrentLocation().getCharOffset();
+						}
+						else
+							throw new WebhookException("(5) cannot deserialze event: " + MediaPoolEvent.PROP_EVENTDATA + " is not well formed");
+						break;
+
+					case MediaPoolEvent.PROP_SIGNATURE:
+						signature = parser.getValueAsString();
+						break;
+
+					default:
+						parser.skipChildren();
+						break;
+				}
+			}
+
+			if ( !matched ) {
+				handler.onSkipped(eventType);
+				return null;
+			}
+
+			if ( payloadSource != null ) {
+				try ( JsonParser section = JSON_FACTORY.createParser(payloadSource.substring(payloadStart, payloadEnd)) ) {
+					payload = readPayload(section, section.nextToken());
+				}
+			}
+
+			MediaPoolEvent event = new MediaPoolEvent();
+			event.setCustomerId(customerId);
+			event.setSystemId(systemId);
+			event.setBaseUrl(baseUrl);
+			event.setSignature(signature);
+			event.setPublications(payload);
+
+			if ( hasAssetId )
+				event.setAssetId(Long.toString(assetId));
+
+			if ( assetIds != null )
+				event.setAssetIds(assetIds);
+
+			if ( eventType != null )
+				event.setEvent(MediaPoolWebHookEvents.theEvent(eventType));
+
+			if ( hasEventTime ) {
+				GregorianCalendar cal = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+				cal.setTime(new Date(eventTime));
+				event.setEventTime(cal);
+			}
+
+			return event;
+		}
+		catch ( NumberFormatException e ) {
+			throw new WebhookException("(5) cannot deserialze event: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Walk through the payload of an event and look up each channel ID in the channel matcher. The parser is positioned on the
+	 * START_ARRAY or START_OBJECT token and left on the corresponding END token. Channel IDs are matched on the character
+	 * buffer of the parser, nothing is allocated here.
+	 *
+	 * @return true, if any of the channels is one of ours
+	 */
+	private boolean scanChannels(JsonParser parser, JsonToken token) throws IOException, WebhookException {
+
+		boolean matched = false;
+		int depth = 0;
+
+		while ( true ) {
+
+			switch ( token ) {
+				case START_OBJECT:
+				case START_ARRAY:
+					depth++;
+					break;
+
+				case END_OBJECT:
+				case END_ARRAY:
+					depth--;
+					break;
+
+				case FIELD_NAME:
+					if ( MediaPoolEvent.PROP_CHANNELID.equals(parser.getCurrentName()) ) {
+						if ( parser.nextToken() == JsonToken.VALUE_STRING ) {
+							if ( !matched )
+								matched = channelMatcher.matches(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+						}
+						else
+							parser.skipChildren();
+					}
+					break;
+
+				default:
+					break;
+			}
+
+			if ( depth == 0 )
+				return matched;
+
+			if ( (token = parser.nextToken()) == null )
+				throw new WebhookException("(5) cannot deserialze event: " + MediaPoolEvent.PROP_EVENTDATA + " is not well formed");
+		}
+	}
+
+	/**
+	 * Stamp the batch properties into the event and check the mandatory attributes
+	 */
+	private static void apply(MediaPoolEvent event, String customerId, String systemId, String baseUrl) throws WebhookException {
+
+		if ( customerId != null )
+			event.setCustomerId(customerId);
+		if ( systemId != null )
+			event.setSystemId(systemId);
+		if ( baseUrl != null )
+			event.setBaseUrl(baseUrl);
+
+		if ( event.getCustomerId() == null )
+			throw new WebhookException("(5) cannot deserialze event: missing parameter: " + MediaPoolEvent.PROP_CUSTOMERID);
+		if ( event.getSystemId() == null )
+			throw new WebhookException("(5) cannot deserialze event: missing parameter: " + MediaPoolEvent.PROP_SYSTEMID);
+		if ( event.getRawBaseUrl() == null )
+			throw new WebhookException("(5) cannot deserialze event: missing parameter: " + MediaPoolEvent.PROP_BASEURL);
+		if ( event.getEvent() == null )
+			throw new WebhookException("(5) cannot deserialze event: missing parameter: " + MediaPoolEvent.PROP_EVENT);
+		if ( event.getEventTime() == null )
+			throw new WebhookException("(5) cannot deserialze event: missing parameter: " + MediaPoolEvent.PROP_EVENTTIME);
+	}
+
+	/**
+	 * Media Pool sends numeric IDs and timestamps either as JSON numbers or as numeric strings, anything else is not well formed
+	 */
+	private static long readLong(JsonParser parser, String name) throws IOException, WebhookException {
+		switch ( parser.getCurrentToken() ) {
+			case VALUE_NUMBER_INT:
+				return parser.getLongValue();
+
+			case VALUE_STRING:
+				return Long.parseLong(parser.getText().trim());
+
+			default:
+				throw new WebhookException("(5) cannot deserialze event: " + name + " is not well formed");
+		}
+	}
+
+	/**
+	 * Read an array of IDs, the parser is positioned on the START_ARRAY token and left on the corresponding END_ARRAY token.
+	 * A bulk event may list tens of thousands of assets, so they are collected as primitives.
+	 */
+	private static long[] readLongs(JsonParser parser, String name) throws IOException, WebhookException {
+
+		long[] values = new long[16];
+		int count = 0;
+		JsonToken token;
+		while ( (token = parser.nextToken()) != JsonToken.END_ARRAY ) {
+
+			if ( token != JsonToken.VALUE_NUMBER_INT && token != JsonToken.VALUE_STRING ) {
+				parser.skipChildren();
+				continue;
+			}
+
+			if ( count == values.length )
+				values = Arrays.copyOf(values, count * 2);
+			values[count++] = readLong(parser, name);
+		}
+		return Arrays.copyOf(values, count);
+	}
+
+	/**
+	 * The channel payload of an event is either an array of channel objects, a single channel object or a string containing one of these.
+	 */
+	private static ChannelPublication[] readPayload(JsonParser parser, JsonToken token) throws IOException, WebhookException {
+
+		switch ( token ) {
+			case START_ARRAY:
+				List<ChannelPublication> publications = new ArrayList<ChannelPublication>(2);
+				JsonToken element;
+				while ( (element = parser.nextToken()) != JsonToken.END_ARRAY ) {
+					if ( element == JsonToken.START_OBJECT )
+						publications.add(readPublication(parser));
+					else
+						parser.skipChildren();
+				}
+				return publications.toArray(new ChannelPublication[publications.size()]);
+
+			case START_OBJECT:
+				return new ChannelPublication[] { readPublication(parser) };
+
+			case VALUE_STRING:
+				try ( JsonParser nested = JSON_FACTORY.createParser(parser.getText()) ) {
+					JsonToken first = nested.nextToken();
+					if ( first == JsonToken.START_ARRAY || first == JsonToken.START_OBJECT )
+						return readPayload(nested, first);
+				}
+				throw new WebhookException("(5) cannot deserialze event: " + MediaPoolEvent.PROP_EVENTDATA + " is not well formed");
+
+			default:
+				throw new WebhookException("(5) cannot deserialze event: " + MediaPoolEvent.PROP_EVENTDATA + " is not well formed");
+		}
+	}
+
+	/**
+	 * Decode one channel object, the parser is positioned on the START_OBJECT token and left on the corresponding END_OBJECT token
+	 */
+	private static ChannelPublication readPublication(JsonParser parser) throws IOException, WebhookException {
+
+		String channelId = null;
+		long renderingScheme = ChannelPublication.NO_RENDERING_SCHEME;
+		Instant startDate = null;
+		Instant endDate = null;
+
+		while ( parser.nextToken() == JsonToken.FIELD_NAME ) {
+
+			String name = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+
+			if ( token == JsonToken.VALUE_NULL )
+				continue;
+
+			switch ( name ) {
+				case MediaPoolEvent.PROP_CHANNELID:
+					channelId = parser.getValueAsString();
+					break;
+
+				case MediaPoolEvent.PROP_RENDERINGSCHEME:
+					renderingScheme = readLong(parser, name);
+					break;
+
+				case ChannelPublication.PROP_STARTDATE:
+					startDate = readInstant(parser, token);
+					break;
+
+				case ChannelPublication.PROP_ENDDATE:
+					endDate = readInstant(parser, token);
+					break;
+
+				default:
+					parser.skipChildren();
+					break;
+			}
+		}
+
+		return new ChannelPublication(channelId, renderingScheme, startDate, endDate);
+	}
+
+	private static Instant readInstant(JsonParser parser, JsonToken token) throws IOException {
+
+		switch ( token ) {
+			case VALUE_NUMBER_INT:
+				return Instant.ofEpochMilli(parser.getLongValue());
+
+			case VALUE_STRING:
+				return ChannelPublication.instant(parser.getText());
+
+			default:
+				parser.skipChildren();
+				return null;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package com.brandmaker.mediapool.webhook;
+
+import java.io.IOException;
+import java.util.Objects;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * <p>Identifies the Media Pool instance a request is coming from, that is the pair of <code>customerId</code> and <code>systemId</code>.
+ *
+ * @author axel.amthor
+ *
+ */
+public final class TenantId {
+
+	/** used for requests which do not tell where they come from */
+	public static final TenantId UNKNOWN = new TenantId("", "");
+
+	private final String customerId;
+	private final String systemId;
+
+	public TenantId(String customerId, String systemId) {
+		this.customerId = customerId != null ? customerId : "";
+		this.systemId = systemId != null ? systemId : "";
+	}
+
+	/**
+	 * <p>Pick the tenant from the batch properties of a data document.
+	 *
+	 * <p>Only the top level properties are scanned, and only until both IDs are found. Media Pool puts them in front of the
+	 * events, so this is usually done after a few tokens. Nested structures are skipped without being decoded.
+	 *
+	 * @param data the <code>data</code> property of the request
+	 * @return the tenant, {@link #UNKNOWN} if the document does not carry both IDs or is not well formed
+	 */
+	public static TenantId fromData(String data) {
+
+		if ( data == null || data.isEmpty() )
+			return UNKNOWN;
+
+		String customerId = null;
+		String systemId = null;
+
+		try ( JsonParser parser = MediaPoolEventParser.getJsonFactory().createParser(data) ) {
+
+			if ( parser.nextToken() != JsonToken.START_OBJECT )
+				return UNKNOWN;
+
+			while ( (customerId == null || systemId == null) && parser.nextToken() == JsonToken.FIELD_NAME ) {
+
+				String name = parser.getCurrentName();
+				parser.nextToken();
+
+				if ( MediaPoolEvent.PROP_CUSTOMERID.equals(name) )
+					customerId = parser.getValueAsString();
+				else if ( MediaPoolEvent.PROP_SYSTEMID.equals(name) )
+					systemId = parser.getValueAsString();
+				else
+					parser.skipChildren();
+			}
+		}
+		catch ( IOException e ) {
+			// the parser will tell the details later on
+			return UNKNOWN;
+		}
+
+		return customerId != null && systemId != null ? new TenantId(customerId, systemId) : UNKNOWN;
+	}
+
+	public String getCustomerId() {
+		return customerId;
+	}
+
+	public String getSystemId() {
+		return systemId;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if ( this == o )
+			return true;
+		if ( !(o instanceof TenantId) )
+			return false;
+
+		TenantId other = (TenantId) o;
+		return customerId.equals(other.customerId) && systemId.equals(other.systemId);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(customerId, systemId);
+	}
+
+	/**
+	 * @return "customerId/systemId"
+	 */
+	@Override
+	public String toString() {
+		return customerId + "/" + systemId;
+	}
+}
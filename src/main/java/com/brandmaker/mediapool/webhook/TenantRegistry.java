@@ -0,0 +1,346 @@
+package com.brandmaker.mediapool.webhook;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.MalformedURLException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+
+/**
+ * <p>Assigns a compact, stable number to each Media Pool instance we receive events from, that is each triple of
+ * <code>customerId</code>, <code>systemId</code> and normalized <code>baseUrl</code>.
+ *
+ * <p>Events are {@link #register(MediaPoolEvent) registered} when they are decoded. Their identity strings are replaced by
+ * the ones of the registry, so a backlog of events shares one copy of them. The number is used instead of the strings in
+ * the queue messages, and as key of the per tenant state and caches. The strings are only resolved where they are
+ * needed, e.g. for a file path or a metrics tag.
+ *
+ * <p>Queued messages refer to the numbers, so they must not change across restarts. The registry is an append-only file,
+ * the number of a tenant is the position of its record. A record is written and synced before its number is handed out.
+ *
+ * <p>File layout:
+ * <pre>
+ * int   magic "MPTR"
+ * per tenant, as written by {@link DataOutputStream#writeUTF(String)}:
+ *   UTF customerId, UTF systemId, UTF baseUrl
+ * </pre>
+ *
+ * @author axel.amthor
+ *
+ */
+public class TenantRegistry {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TenantRegistry.class);
+
+	private static final int MAGIC = 0x4d505452;
+
+	/**
+	 * A registered Media Pool instance. Instances are immutable and unique per number.
+	 */
+	public static final class Tenant {
+
+		private final int id;
+		private final String customerId;
+		private final String systemId;
+		private final String baseUrl;
+
+		Tenant(int id, String customerId, String systemId, String baseUrl) {
+			this.id = id;
+			this.customerId = customerId;
+			this.systemId = systemId;
+			this.baseUrl = baseUrl;
+		}
+
+		public int getId() {
+			return id;
+		}
+
+		public String getCustomerId() {
+			return customerId;
+		}
+
+		public String getSystemId() {
+			return systemId;
+		}
+
+		/**
+		 * @return the normalized base URL, protocol://host[:port]
+		 */
+		public String getBaseUrl() {
+			return baseUrl;
+		}
+
+		/**
+		 * The strings of the events of one request are the same instances, so this is usually decided by reference
+		 */
+		boolean matches(String customerId, String systemId, String baseUrl) {
+			return this.customerId.equals(customerId) && this.systemId.equals(systemId) && this.baseUrl.equals(baseUrl);
+		}
+
+		/**
+		 * @return "customerId/systemId"
+		 */
+		@Override
+		public String toString() {
+			return customerId + "/" + systemId;
+		}
+	}
+
+	/** the registry file */
+	@Value("${spring.application.tenant-registry.file:./state/tenants.bin}")
+	private String file;
+
+	/** max number of tenants, events of further tenants keep their strings */
+	@Value("${spring.application.tenant-registry.max-tenants:65536}")
+	private int maxTenants;
+
+	/** by number, replaced on registration */
+	private volatile Tenant[] tenants = new Tenant[0];
+
+	/** by customerId, systemId and baseUrl, separated by NUL */
+	private final ConcurrentHashMap<String, Tenant> byKey = new ConcurrentHashMap<String, Tenant>();
+
+	/** guarded by this */
+	private Path path;
+	private DataOutputStream out;
+	private FileOutputStream fileOut;
+	private boolean fullReported;
+
+	/** the tenant of the last registration, most events are of the same tenant as their predecessor */
+	private volatile Tenant last;
+
+	@PostConstruct
+	public synchronized void init() throws IOException {
+
+		path = Paths.get(file).toAbsolutePath().normalize();
+		if ( path.getParent() != null )
+			Files.createDirectories(path.getParent());
+
+		long valid = 0L;
+		if ( Files.exists(path) && Files.size(path) > 0 )
+			valid = load();
+
+		if ( valid < 0L ) {
+			Path unreadable = path.resolveSibling(path.getFileName() + ".unreadable");
+			LOGGER.error("Tenant registry " + path + " is not readable, moved to " + unreadable
+					+ ". Queued messages of former tenants cannot be assigned to them.");
+			Files.move(path, unreadable, StandardCopyOption.REPLACE_EXISTING);
+			valid = 0L;
+		}
+
+		// cut off a record which was not completely written
+		if ( Files.exists(path) && Files.size(path) > valid ) {
+			try ( RandomAccessFile raf = new RandomAccessFile(path.toFile(), "rw") ) {
+				raf.setLength(valid);
+			}
+		}
+
+		fileOut = new FileOutputStream(path.toFile(), true);
+		out = new DataOutputStream(fileOut);
+		if ( valid == 0L ) {
+			out.writeInt(MAGIC);
+			sync();
+		}
+
+		LOGGER.info("Tenant registry " + path + " with " + tenants.length + " tenants");
+	}
+
+	@PreDestroy
+	public synchronized void close() throws IOException {
+		if ( out != null ) {
+			out.close();
+			out = null;
+		}
+	}
+
+	/**
+	 * Replace the identity of the event by the registered one, register it if it is new
+	 *
+	 * @param event a decoded event
+	 * @return the number of the tenant, {@link MediaPoolEvent#NO_TENANT} if the event has no complete or valid identity
+	 * 		or the registry is full
+	 */
+	public int register(MediaPoolEvent event) {
+
+		if ( event.getTenantId() != MediaPoolEvent.NO_TENANT )
+			return event.getTenantId();
+
+		String customerId = event.getCustomerId();
+		String systemId = event.getSystemId();
+		if ( customerId == null || systemId == null || event.getRawBaseUrl() == null )
+			return MediaPoolEvent.NO_TENANT;
+
+		String baseUrl;
+		try {
+			baseUrl = event.getBaseUrl();
+		}
+		catch ( MalformedURLException e ) {
+			return MediaPoolEvent.NO_TENANT;
+		}
+
+		Tenant tenant = last;
+		if ( tenant == null || !tenant.matches(customerId, systemId, baseUrl) ) {
+			tenant = byKey.get(key(customerId, systemId, baseUrl));
+			if ( tenant == null )
+				tenant = add(customerId, systemId, baseUrl);
+			if ( tenant == null )
+				return MediaPoolEvent.NO_TENANT;
+			last = tenant;
+		}
+
+		event.setTenant(tenant);
+		return tenant.id;
+	}
+
+	/**
+	 * @param id the number of a tenant
+	 * @return the tenant, null if the number is not registered
+	 */
+	public Tenant getTenant(int id) {
+		Tenant[] tenants = this.tenants;
+		return id >= 0 && id < tenants.length ? tenants[id] : null;
+	}
+
+	/**
+	 * @return the number of registered tenants
+	 */
+	public int size() {
+		return tenants.length;
+	}
+
+	private synchronized Tenant add(String customerId, String systemId, String baseUrl) {
+
+		String key = key(customerId, systemId, baseUrl);
+		Tenant tenant = byKey.get(key);
+		if ( tenant != null )
+			return tenant;
+
+		Tenant[] tenants = this.tenants;
+		if ( tenants.length >= maxTenants ) {
+			if ( !fullReported ) {
+				LOGGER.warn("Tenant registry full with " + tenants.length + " tenants, consider to raise max-tenants");
+				fullReported = true;
+			}
+			return null;
+		}
+
+		long length = -1L;
+		try {
+			length = fileOut.getChannel().position();
+			out.writeUTF(customerId);
+			out.writeUTF(systemId);
+			out.writeUTF(baseUrl);
+			sync();
+		}
+		catch ( IOException e ) {
+			LOGGER.error("Cannot register tenant " + customerId + "/" + systemId + " of " + baseUrl, e);
+			truncate(length);
+			return null;
+		}
+
+		tenant = new Tenant(tenants.length, customerId, systemId, baseUrl);
+
+		Tenant[] grown = new Tenant[tenants.length + 1];
+		System.arraycopy(tenants, 0, grown, 0, tenants.length);
+		grown[tenant.id] = tenant;
+
+		// readers of the number may come before the readers of the key
+		this.tenants = grown;
+		byKey.put(key, tenant);
+
+		LOGGER.info("Registered tenant " + tenant.id + ": " + tenant + " of " + baseUrl);
+		return tenant;
+	}
+
+	/**
+	 * Remove a partially written record, so the next one is not appended to it
+	 */
+	private void truncate(long length) {
+
+		if ( length < 0L )
+			return;
+		try {
+			fileOut.getChannel().truncate(length);
+		}
+		catch ( IOException e ) {
+			LOGGER.error("Cannot truncate tenant registry " + path + ", no more tenants are registered", e);
+			maxTenants = 0;
+		}
+	}
+
+	private void sync() throws IOException {
+		out.flush();
+		fileOut.getFD().sync();
+	}
+
+	/**
+	 * @return the length of the complete records, -1 if the file is not a registry
+	 */
+	private long load() throws IOException {
+
+		try ( DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path))) ) {
+
+			if ( in.readInt() != MAGIC )
+				return -1L;
+
+			List<Tenant> loaded = new ArrayList<Tenant>();
+			long valid = 4L;
+			while ( true ) {
+				String customerId;
+				String systemId;
+				String baseUrl;
+				try {
+					customerId = in.readUTF();
+					systemId = in.readUTF();
+					baseUrl = in.readUTF();
+				}
+				catch ( EOFException e ) {
+					break;
+				}
+
+				Tenant tenant = new Tenant(loaded.size(), customerId, systemId, baseUrl);
+				loaded.add(tenant);
+				byKey.put(key(customerId, systemId, baseUrl), tenant);
+				valid += 6 + utfLength(customerId) + utfLength(systemId) + utfLength(baseUrl);
+			}
+
+			tenants = loaded.toArray(new Tenant[loaded.size()]);
+			return valid;
+		}
+		catch ( EOFException e ) {
+			// not even the magic
+			return 0L;
+		}
+	}
+
+	private static int utfLength(String s) {
+
+		int length = 0;
+		for ( int i = 0; i < s.length(); i++ ) {
+			char c = s.charAt(i);
+			length += c >= 0x0001 && c <= 0x007f ? 1 : c > 0x07ff ? 3 : 2;
+		}
+		return length;
+	}
+
+	private static String key(String customerId, String systemId, String baseUrl) {
+		return customerId + '\0' + systemId + '\0' + baseUrl;
+	}
+}
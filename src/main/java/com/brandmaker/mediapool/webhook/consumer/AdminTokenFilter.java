@@ -0,0 +1,65 @@
+package com.brandmaker.mediapool.webhook.consumer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * <p>Authenticates requests which carry the configured admin token as <code>Authorization: Bearer &lt;token&gt;</code>
+ * with the role <code>ADMIN</code>, which is required for the endpoints below <code>/admin</code>.
+ *
+ * <p>Without a configured token no request is authenticated, the admin endpoints are closed then.
+ *
+ * @see SecurityConfiguration
+ *
+ * @author axel.amthor
+ *
+ */
+public class AdminTokenFilter extends OncePerRequestFilter {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(AdminTokenFilter.class);
+
+	public static final String ROLE = "ADMIN";
+
+	private static final String BEARER = "Bearer ";
+
+	private final byte[] token;
+
+	/**
+	 * @param token the admin token, null or empty closes the admin endpoints
+	 */
+	public AdminTokenFilter(String token) {
+		this.token = token == null || token.isEmpty() ? null : token.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		String authorization = request.getHeader("Authorization");
+		if ( token != null && authorization != null && authorization.startsWith(BEARER) ) {
+
+			// constant time, the token must not be guessed from the response times
+			if ( MessageDigest.isEqual(token, authorization.substring(BEARER.length()).trim().getBytes(StandardCharsets.UTF_8)) ) {
+				SecurityContextHolder.getContext().setAuthentication(
+						new UsernamePasswordAuthenticationToken("admin", null, AuthorityUtils.createAuthorityList("ROLE_" + ROLE)));
+			}
+			else
+				LOGGER.warn("Invalid admin token from " + request.getRemoteAddr() + " on " + request.getRequestURI());
+		}
+
+		filterChain.doFilter(request, response);
+	}
+}
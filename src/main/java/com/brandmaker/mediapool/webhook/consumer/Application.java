@@ -2,6 +2,7 @@ package com.brandmaker.mediapool.webhook.consumer;
 
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.ManagementWebSecurityAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
 import org.springframework.boot.builder.SpringApplicationBuilder;
@@ -14,19 +15,23 @@ import com.brandmaker.mediapool.webhook.rest.controller.HookController;
  * <p>
  * Spring Boot Application starter
  * <p>
- * Security auto config is <b>not loaded</b here
+ * Security auto config is <b>not loaded</b here, neither for the application nor for the actuator endpoints
  * 
  * @see com.brandmaker.mediapool.webhook.consumer.SecurityConfiguration
  * 
  * @author axel.amthor
  *
  */
-@SpringBootApplication(exclude = { SecurityAutoConfiguration.class })
+@SpringBootApplication(exclude = { SecurityAutoConfiguration.class, ManagementWebSecurityAutoConfiguration.class })
 
 // our controller is in a sibling package, give Spring some hints where to find it
 @ComponentScan(basePackageClasses = HookController.class, basePackages = { 
 		"com.brandmaker.mediapool.queue",
-		"com.brandmaker.mediapool.rest" })
+		"com.brandmaker.mediapool.rest",
+		"com.brandmaker.mediapool.webhook.consumer",
+		"com.brandmaker.mediapool.webhook.ingress",
+		"com.brandmaker.mediapool.webhook.recorder",
+		"com.brandmaker.mediapool.webhook.tenant" })
 public class Application extends SpringBootServletInitializer {
 
 	private static final org.slf4j.Logger LOGGER = LoggerFactory.getLogger(Application.class);
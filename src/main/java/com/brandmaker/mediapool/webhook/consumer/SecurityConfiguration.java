@@ -4,10 +4,15 @@ import java.util.Arrays;
 
 import javax.ws.rs.HttpMethod;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.web.authentication.AnonymousAuthenticationFilter;
+import org.springframework.security.web.authentication.HttpStatusEntryPoint;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -18,17 +23,30 @@ import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
  * <p>We need some sophisticated control on security. In general, Spring REST endpoints are protected by various measures, which
  * we entirely turn <b>off</b> here!
  * 
+ * <p>Except for the admin endpoints below <code>/admin</code>: they require the token configured as
+ * <code>spring.application.admin.token</code>, sent as <code>Authorization: Bearer &lt;token&gt;</code>. Without a configured
+ * token they are closed, requests are rejected with 401.
+ * 
+ * @see AdminTokenFilter
+ * 
  * @author axel.amthor
  *
  */
 @Configuration
+@EnableWebSecurity
 public class SecurityConfiguration extends WebSecurityConfigurerAdapter  {
 
+	@Value("${spring.application.admin.token:}")
+	private String adminToken;
+
 	@Override
     protected void configure(HttpSecurity httpSecurity) throws Exception {
         httpSecurity.cors().and().csrf().disable();
         httpSecurity.csrf().disable();
+        httpSecurity.addFilterBefore(new AdminTokenFilter(adminToken), AnonymousAuthenticationFilter.class);
+        httpSecurity.exceptionHandling().authenticationEntryPoint(new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED));
         httpSecurity.authorizeRequests()
+	        .antMatchers("/admin/**").hasRole(AdminTokenFilter.ROLE)
 	        .antMatchers("**").permitAll()
 	        .antMatchers(HttpMethod.POST,"/hook").permitAll()
 	        .anyRequest().authenticated();
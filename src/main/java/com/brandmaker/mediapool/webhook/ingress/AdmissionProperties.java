@@ -0,0 +1,112 @@
+package com.brandmaker.mediapool.webhook.ingress;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Settings of the per-tenant admission control, bound from <code>spring.application.ingress.admission</code>.
+ *
+ * <pre>
+ * admission:
+ *     enabled: true
+ *     rate: 20
+ *     burst: 100
+ *     tenants:
+ *       - customer-id: aaa-bbb-ccc
+ *         system-id: 123-456-789
+ *         rate: 100
+ *         burst: 500
+ * </pre>
+ *
+ * @author axel.amthor
+ *
+ */
+public class AdmissionProperties {
+
+	/**
+	 * Rate and burst of one tenant
+	 */
+	public static class TenantLimit {
+
+		private String customerId;
+		private String systemId;
+		private double rate;
+		private int burst;
+
+		public String getCustomerId() {
+			return customerId;
+		}
+
+		public void setCustomerId(String customerId) {
+			this.customerId = customerId;
+		}
+
+		public String getSystemId() {
+			return systemId;
+		}
+
+		public void setSystemId(String systemId) {
+			this.systemId = systemId;
+		}
+
+		public double getRate() {
+			return rate;
+		}
+
+		public void setRate(double rate) {
+			this.rate = rate;
+		}
+
+		public int getBurst() {
+			return burst;
+		}
+
+		public void setBurst(int burst) {
+			this.burst = burst;
+		}
+	}
+
+	/** requests per second of a tenant without own settings, 0 for no limit */
+	private double rate = 20;
+
+	/** number of requests a tenant without own settings may send at once */
+	private int burst = 100;
+
+	/** max number of tenants with an own bucket, any further tenants share one */
+	private int maxTenants = 10000;
+
+	/** tenants with own settings */
+	private List<TenantLimit> tenants = new ArrayList<TenantLimit>();
+
+	public double getRate() {
+		return rate;
+	}
+
+	public void setRate(double rate) {
+		this.rate = rate;
+	}
+
+	public int getBurst() {
+		return burst;
+	}
+
+	public void setBurst(int burst) {
+		this.burst = burst;
+	}
+
+	public int getMaxTenants() {
+		return maxTenants;
+	}
+
+	public void setMaxTenants(int maxTenants) {
+		this.maxTenants = maxTenants;
+	}
+
+	public List<TenantLimit> getTenants() {
+		return tenants;
+	}
+
+	public void setTenants(List<TenantLimit> tenants) {
+		this.tenants = tenants;
+	}
+}
@@ -0,0 +1,299 @@
+package com.brandmaker.mediapool.webhook.ingress;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * <p>Drops events which have been queued recently already.
+ *
+ * <p>Media Pool retries deliveries and overlapping SYNCHRONIZE runs submit the same asset events again. Each of these would
+ * cost a metadata search, a version lookup, a rendition and a binary download in the consumer. Events are identified by
+ * (tenant number, assetId, eventType, eventTime), which is hashed into a 64 bit key. Events without tenant number are
+ * identified by their customerId and systemId instead, bulk events by their list of asset IDs.
+ *
+ * <p>The keys are kept in two generations of primitive long hash sets with a fixed number of slots each. When the time window
+ * has elapsed or the current generation is full, the older generation is cleared and becomes the current one. So a key is
+ * remembered for at least one and at most two windows (less under extreme load), and the memory used is fixed by
+ * <code>max-keys</code>: 2 generations of 2 * max-keys longs.
+ *
+ * <p>Metrics:
+ * <ul>
+ * 		<li><code>mediapool.ingress.dedup{result=hit}</code>: dropped duplicates
+ * 		<li><code>mediapool.ingress.dedup{result=miss}</code>: events seen the first time
+ * 		<li><code>mediapool.ingress.dedup.rotations</code>: generation changes
+ * </ul>
+ *
+ * @author axel.amthor
+ *
+ */
+public class DuplicateEventFilter {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DuplicateEventFilter.class);
+
+	/** seconds a key is remembered at least */
+	@Value("${spring.application.ingress.dedup.window:600}")
+	private long window;
+
+	/** max number of keys per generation */
+	@Value("${spring.application.ingress.dedup.max-keys:1048576}")
+	private int maxKeys;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private LongHashSet current;
+	private LongHashSet previous;
+	private long rotatedAt;
+
+	private Counter hits;
+	private Counter misses;
+	private Counter rotations;
+
+	@PostConstruct
+	public void init() {
+
+		current = new LongHashSet(maxKeys);
+		previous = new LongHashSet(maxKeys);
+		rotatedAt = System.currentTimeMillis();
+
+		hits = meterRegistry.counter("mediapool.ingress.dedup", "result", "hit");
+		misses = meterRegistry.counter("mediapool.ingress.dedup", "result", "miss");
+		rotations = meterRegistry.counter("mediapool.ingress.dedup.rotations");
+
+		LOGGER.info("Duplicate filter with a window of " + window + " sec and max " + maxKeys + " keys per generation");
+	}
+
+	/**
+	 * Check, whether the event has been seen within the window and remember it if not
+	 *
+	 * @param event a decoded event
+	 * @return true, if the event is seen the first time and must be processed
+	 */
+	public boolean accept(MediaPoolEvent event) {
+
+		long key = key(event);
+
+		boolean firstSeen;
+		synchronized ( this ) {
+			rotateIfNecessary();
+			firstSeen = !previous.contains(key) && current.add(key);
+		}
+
+		if ( firstSeen )
+			misses.increment();
+		else
+			hits.increment();
+
+		return firstSeen;
+	}
+
+	/**
+	 * Remove the events of a batch again, which could not be queued. So a redelivery of Media Pool is not dropped.
+	 *
+	 * @param batch events which have been accepted
+	 */
+	public void forget(List<MediaPoolEvent> batch) {
+
+		synchronized ( this ) {
+			for ( MediaPoolEvent event : batch ) {
+				long key = key(event);
+				current.remove(key);
+				previous.remove(key);
+			}
+		}
+	}
+
+	private void rotateIfNecessary() {
+
+		long now = System.currentTimeMillis();
+		boolean expired = now - rotatedAt >= window * 1000L;
+
+		if ( expired || current.size() >= maxKeys ) {
+
+			if ( !expired )
+				LOGGER.warn("Duplicate filter full after " + (now - rotatedAt) / 1000L + " sec, consider to raise max-keys");
+
+			LongHashSet recycled = previous;
+			recycled.clear();
+			previous = current;
+			current = recycled;
+			rotatedAt = now;
+
+			rotations.increment();
+		}
+	}
+
+	private static long key(MediaPoolEvent event) {
+
+		long key;
+		if ( event.getTenantId() != MediaPoolEvent.NO_TENANT )
+			key = key(event.getTenantId(), event.getAssetId(), event.getEvent() != null ? event.getEvent().ordinal() : -1,
+					event.getEventTime() != null ? event.getEventTime().getTimeInMillis() : 0L);
+		else
+			key = key(event.getCustomerId(), event.getSystemId(), event.getAssetId(),
+					event.getEvent() != null ? event.getEvent().toString() : null,
+					event.getEventTime() != null ? event.getEventTime().getTimeInMillis() : 0L);
+
+		return event.hasAssetIds() ? key(key, event.getAssetIds()) : key;
+	}
+
+	/**
+	 * A bulk event has no assetId, so its list of asset IDs is folded into the key
+	 */
+	static long key(long key, long[] assetIds) {
+
+		long h = key;
+		for ( long id : assetIds )
+			h = (h ^ id) * 0x100000001b3L;
+		return mix(h ^ assetIds.length);
+	}
+
+	/**
+	 * 64 bit FNV-1a over the fields, finished with the MurmurHash3 mixer
+	 */
+	static long key(String customerId, String systemId, String assetId, String eventType, long eventTime) {
+
+		long h = 0xcbf29ce484222325L;
+		h = hash(h, customerId);
+		h = hash(h, systemId);
+		h = hash(h, assetId);
+		h = hash(h, eventType);
+		h = (h ^ eventTime) * 0x100000001b3L;
+		return mix(h);
+	}
+
+	/**
+	 * Same as above for an event of a registered tenant
+	 */
+	static long key(int tenantId, String assetId, int eventType, long eventTime) {
+
+		long h = 0xcbf29ce484222325L;
+		h = (h ^ tenantId) * 0x100000001b3L;
+		h = hash(h, assetId);
+		h = (h ^ eventType) * 0x100000001b3L;
+		h = (h ^ eventTime) * 0x100000001b3L;
+		return mix(h);
+	}
+
+	/**
+	 * MurmurHash3 finalizer
+	 */
+	private static long mix(long h) {
+
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static long hash(long h, String s) {
+
+		if ( s != null ) {
+			for ( int i = 0; i < s.length(); i++ )
+				h = (h ^ s.charAt(i)) * 0x100000001b3L;
+		}
+		// field separator, so ("ab", "c") and ("a", "bc") differ
+		return (h ^ 0xff) * 0x100000001b3L;
+	}
+
+	/**
+	 * Open addressing set of longs with linear probing. 0 marks a free slot, so the key 0 is stored as 1.
+	 */
+	static final class LongHashSet {
+
+		private final long[] slots;
+		private final int mask;
+		private int size;
+
+		LongHashSet(int maxKeys) {
+			// keep the load factor at or below 0.5
+			int capacity = Integer.highestOneBit(Math.max(2, maxKeys) * 2 - 1) << 1;
+			slots = new long[capacity];
+			mask = capacity - 1;
+		}
+
+		int size() {
+			return size;
+		}
+
+		boolean contains(long key) {
+
+			key = key == 0 ? 1 : key;
+			for ( int i = index(key); ; i = (i + 1) & mask ) {
+				long slot = slots[i];
+				if ( slot == 0 )
+					return false;
+				if ( slot == key )
+					return true;
+			}
+		}
+
+		/**
+		 * @return false, if the key was present already
+		 */
+		boolean add(long key) {
+
+			key = key == 0 ? 1 : key;
+			int i = index(key);
+			while ( slots[i] != 0 ) {
+				if ( slots[i] == key )
+					return false;
+				i = (i + 1) & mask;
+			}
+			slots[i] = key;
+			size++;
+			return true;
+		}
+
+		/**
+		 * Remove a key and shift the following entries of its probe sequence back, so no tombstones are needed
+		 */
+		void remove(long key) {
+
+			key = key == 0 ? 1 : key;
+			int i = index(key);
+			while ( slots[i] != key ) {
+				if ( slots[i] == 0 )
+					return;
+				i = (i + 1) & mask;
+			}
+
+			slots[i] = 0;
+			size--;
+
+			for ( int j = (i + 1) & mask; slots[j] != 0; j = (j + 1) & mask ) {
+				int home = index(slots[j]);
+				// move the entry into the gap, if its home slot is not between the gap and its position
+				if ( ((j - home) & mask) >= ((j - i) & mask) ) {
+					slots[i] = slots[j];
+					slots[j] = 0;
+					i = j;
+				}
+			}
+		}
+
+		void clear() {
+			Arrays.fill(slots, 0L);
+			size = 0;
+		}
+
+		private int index(long key) {
+			// keys are mixed already
+			return (int) key & mask;
+		}
+	}
+}
@@ -0,0 +1,259 @@
+package com.brandmaker.mediapool.webhook.ingress;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.jms.JmsException;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.brandmaker.mediapool.utils.LimitedInputStream;
+import com.brandmaker.mediapool.webhook.TenantId;
+import com.brandmaker.mediapool.webhook.WebhookException;
+import com.brandmaker.mediapool.webhook.rest.controller.HookRequestBody;
+import com.brandmaker.mediapool.webhook.tenant.TenantContext;
+import com.brandmaker.mediapool.webhook.tenant.TenantDirectory;
+
+/**
+ * <p>The contract of the hook endpoint, independent of the HTTP server it runs on.
+ *
+ * <p>A request is read, its signature is verified and it is handed over to the {@link IngressBuffer} in buffered mode,
+ * appended to the {@link IngressJournal} in journal mode or processed right away by the {@link IngressProcessor} in sync mode. Any reason not to accept the request is thrown as
+ * {@link ResponseStatusException} carrying the HTTP status and the error code of the response.
+ *
+ * <p>The settings of the tenant come from the route, or are looked up in the {@link TenantDirectory} by the IDs in the data
+ * document for requests on <code>/hook</code>. On a route, the IDs in the data document have to be those of the route.
+ *
+ * <p>This is used by the Spring MVC hook controller and by the {@link NettyIngressServer}.
+ *
+ * @author axel.amthor
+ *
+ */
+public class HookIngress {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(HookIngress.class);
+
+	/**
+	 * The request is fine, but cannot be taken right now. The response has to carry a Retry-After header.
+	 */
+	public static class RetryLaterException extends ResponseStatusException {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int retryAfter;
+
+		public RetryLaterException(HttpStatus status, String reason, int retryAfter) {
+			super(status, reason);
+			this.retryAfter = retryAfter;
+		}
+
+		/**
+		 * @return seconds to wait before retrying
+		 */
+		public int getRetryAfter() {
+			return retryAfter;
+		}
+	}
+
+	/** the tenants with their public keys */
+	@Autowired
+	private TenantDirectory tenantDirectory;
+
+	/** reads the possibly compressed request body */
+	@Autowired
+	private RequestBodyDecoder requestBodyDecoder;
+
+	/** does the decoding and queueing of the events */
+	@Autowired
+	private IngressProcessor ingressProcessor;
+
+	@Autowired
+	private IngressMetrics metrics;
+
+	/** only present if admission control is enabled */
+	@Autowired(required=false)
+	private TenantAdmission tenantAdmission;
+
+	/** only present in buffered ingress mode */
+	@Autowired(required=false)
+	private IngressBuffer ingressBuffer;
+
+	/** only present in journal ingress mode */
+	@Autowired(required=false)
+	private IngressJournal ingressJournal;
+
+	/**
+	 * @return true, if accepted requests are handed over to the ingress buffer or the journal without waiting for the broker
+	 */
+	public boolean isBuffered() {
+		return ingressBuffer != null || ingressJournal != null;
+	}
+
+	/**
+	 * Accept a webhook request on <code>/hook</code>
+	 *
+	 * @param requestStream the raw request body
+	 * @param contentEncoding value of the Content-Encoding header, may be null
+	 * @throws ResponseStatusException if the request is not accepted
+	 * @throws RetryLaterException if the tenant is over its limit or the ingress buffer is full
+	 */
+	public void accept(InputStream requestStream, String contentEncoding) {
+		accept(requestStream, contentEncoding, null);
+	}
+
+	/**
+	 * Accept a webhook request
+	 *
+	 * @param requestStream the raw request body
+	 * @param contentEncoding value of the Content-Encoding header, may be null
+	 * @param routeTenant the tenant resolved from the route, null to look it up by the data document
+	 * @throws ResponseStatusException if the request is not accepted
+	 * @throws RetryLaterException if the tenant is over its limit or the ingress buffer is full
+	 */
+	public void accept(InputStream requestStream, String contentEncoding, TenantContext routeTenant) {
+
+		long start = System.nanoTime();
+		try {
+			receive(requestStream, contentEncoding, routeTenant);
+			metrics.request(HttpStatus.ACCEPTED.value());
+		}
+		catch ( ResponseStatusException e ) {
+			metrics.request(e.getStatus().value());
+			throw e;
+		}
+		catch ( RuntimeException e ) {
+			metrics.request(HttpStatus.INTERNAL_SERVER_ERROR.value());
+			throw e;
+		}
+		finally {
+			metrics.record(IngressMetrics.Phase.TOTAL, System.nanoTime() - start);
+		}
+	}
+
+	private void receive(InputStream requestStream, String contentEncoding, TenantContext routeTenant) {
+
+		long start = System.currentTimeMillis();
+		long phaseStart = System.nanoTime();
+
+		HookRequestBody requestBody;
+		try {
+			requestBody = requestBodyDecoder.read(requestStream, contentEncoding);
+		}
+		catch ( RequestBodyDecoder.UnsupportedEncodingException e ) {
+			throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, e.getMessage(), e);
+		}
+		catch ( LimitedInputStream.LimitExceededException e ) {
+			// this is a zip bomb or a request larger than we are willing to handle
+			throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "(0) request body too large", e);
+		}
+		catch ( WebhookException e ) {
+			// the request isn't well formed, exit immediately
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+		}
+		catch ( IOException e ) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "(0) cannot read request body", e);
+		}
+		finally {
+			metrics.record(IngressMetrics.Phase.READ, System.nanoTime() - phaseStart);
+		}
+
+		String eventData = requestBody.getData();
+		String signature = requestBody.getSignature();
+
+		LOGGER.debug("event data: " + eventData);
+
+		/*
+		 * the tenant of a /hook request is only known from the data, the IDs are in front of the events
+		 */
+		TenantContext tenant = routeTenant;
+		TenantId tenantId;
+		if ( tenant != null ) {
+			tenantId = tenant.getId();
+
+			// the key of the route must not sign the events of somebody else
+			TenantId dataTenant = TenantId.fromData(eventData);
+			if ( !dataTenant.equals(tenantId) ) {
+				LOGGER.warn("Request with data of tenant " + dataTenant + " on the route of " + tenantId + " rejected");
+				throw new ResponseStatusException(HttpStatus.FORBIDDEN, "(15) data of tenant " + dataTenant + " posted for " + tenantId);
+			}
+		}
+		else {
+			tenantId = tenantDirectory.isEmpty() && tenantAdmission == null ? TenantId.UNKNOWN : TenantId.fromData(eventData);
+			tenant = tenantDirectory.resolve(tenantId);
+
+			if ( !tenant.isEnabled() ) {
+				LOGGER.warn("Request of disabled tenant " + tenantId + " rejected");
+				throw new ResponseStatusException(HttpStatus.FORBIDDEN, "(11) tenant " + tenantId + " disabled");
+			}
+		}
+
+		/*
+		 * validate the data with the signature and the pub key of the tenant.
+		 * This is done on the bytes of the data as read, before any of the events is decoded.
+		 */
+		phaseStart = System.nanoTime();
+		boolean verified = tenant.getSignatureVerifier().verify(requestBody.getDataBytes(), signature);
+		metrics.record(IngressMetrics.Phase.VERIFY, System.nanoTime() - phaseStart);
+
+		if ( !verified ) {
+			LOGGER.warn("Invalid request signature, request rejected");
+			throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "(8) invalid signature");
+		}
+
+		/*
+		 * each tenant has its own budget, so a mass publish of one customer doesn't delay everybody else
+		 */
+		if ( tenantAdmission != null ) {
+			int retryAfter = tenantAdmission.admit(tenantId);
+			if ( retryAfter > 0 )
+				throw new RetryLaterException(HttpStatus.TOO_MANY_REQUESTS, "(9) too many requests of " + tenantId, retryAfter);
+		}
+
+		HookPayload payload = new HookPayload(eventData, signature, start, tenant);
+
+		if ( ingressJournal != null ) {
+
+			/*
+			 * journal mode: the request is durable once it is appended, the events are decoded and queued by the replayer
+			 */
+			try {
+				ingressJournal.append(payload);
+			}
+			catch ( IOException e ) {
+				LOGGER.error("Cannot append to the ingress journal, request rejected", e);
+				throw new RetryLaterException(HttpStatus.SERVICE_UNAVAILABLE, "(7) ingress journal not writable", 60);
+			}
+		}
+		else if ( ingressBuffer != null ) {
+
+			/*
+			 * buffered mode: the events are decoded and queued by the drainer of the ingress buffer.
+			 * If the buffer is full, we tell Media Pool to come back later.
+			 */
+			if ( !ingressBuffer.offer(payload) ) {
+				LOGGER.warn("Ingress buffer full, request rejected");
+				throw new RetryLaterException(HttpStatus.SERVICE_UNAVAILABLE, "(7) ingress buffer full", ingressBuffer.getRetryAfter());
+			}
+		}
+		else {
+
+			/*
+			 * sync mode: parse the data property and push the relevant events to the processing queue.
+			 * The batch is committed at once, we do not acknowledge the request before the commit has succeeded.
+			 */
+			try {
+				ingressProcessor.process(payload);
+			}
+			catch ( WebhookException e ) {
+				// the data isn't well formed, exit immediately
+				throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+			}
+			catch ( JmsException e ) {
+				throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "(6) cannot enqueue events", e);
+			}
+		}
+	}
+}
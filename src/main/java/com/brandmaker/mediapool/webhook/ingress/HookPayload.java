@@ -0,0 +1,78 @@
+package com.brandmaker.mediapool.webhook.ingress;
+
+import com.brandmaker.mediapool.webhook.tenant.TenantContext;
+
+/**
+ * <p>A received webhook request, which is accepted but not yet processed.
+ * 
+ * <p>This carries the <code>data</code> document and the signature exactly as they were posted. The events are decoded 
+ * later on by the {@link IngressProcessor}.
+ * 
+ * @author axel.amthor
+ *
+ */
+public class HookPayload {
+
+	private final String data;
+	private final String signature;
+	private final long receivedAt;
+	private final TenantContext tenant;
+
+	/**
+	 * @param data the data document
+	 * @param signature the signature of the data document
+	 */
+	public HookPayload(String data, String signature) {
+		this(data, signature, System.currentTimeMillis());
+	}
+
+	/**
+	 * @param data the data document
+	 * @param signature the signature of the data document
+	 * @param receivedAt time of reception in msec
+	 */
+	public HookPayload(String data, String signature, long receivedAt) {
+		this(data, signature, receivedAt, null);
+	}
+
+	/**
+	 * @param data the data document
+	 * @param signature the signature of the data document
+	 * @param receivedAt time of reception in msec
+	 * @param tenant the tenant the request came from, null if not yet known
+	 */
+	public HookPayload(String data, String signature, long receivedAt, TenantContext tenant) {
+		this.data = data;
+		this.signature = signature;
+		this.receivedAt = receivedAt;
+		this.tenant = tenant;
+	}
+
+	/**
+	 * @return the data document
+	 */
+	public String getData() {
+		return data;
+	}
+
+	/**
+	 * @return the signature
+	 */
+	public String getSignature() {
+		return signature;
+	}
+
+	/**
+	 * @return time of reception in msec
+	 */
+	public long getReceivedAt() {
+		return receivedAt;
+	}
+
+	/**
+	 * @return the tenant the request came from, null if not yet known
+	 */
+	public TenantContext getTenant() {
+		return tenant;
+	}
+}
@@ -0,0 +1,212 @@
+package com.brandmaker.mediapool.webhook.ingress;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.JmsException;
+
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+import com.brandmaker.mediapool.webhook.WebhookException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * <p>Bounded in-memory ring buffer between the hook endpoint and the processing queue.
+ *
+ * <p>In buffered ingress mode the endpoint only puts the received payload into this buffer and acknowledges the request right away.
+ * A dedicated drainer thread takes everything which has piled up meanwhile (up to the configured batch size), decodes the events
+ * and commits them to the processing queue within one transaction. Under bursts this groups many requests into one broker commit.
+ *
+ * <p>If the buffer is full, {@link #offer(HookPayload)} fails immediately and the endpoint answers with "503 Service Unavailable",
+ * which makes Media Pool retry the delivery later.
+ *
+ * <p>Metrics:
+ * <ul>
+ * 		<li><code>mediapool.ingress.buffer.occupancy</code>, <code>mediapool.ingress.buffer.capacity</code>: payloads in the buffer
+ * 		<li><code>mediapool.ingress.buffer.accepted</code>, <code>mediapool.ingress.buffer.rejected</code>: offered payloads
+ * 		<li><code>mediapool.ingress.buffer.drained</code>: drained payloads and events, the drain rate is the rate of this counter
+ * 		<li><code>mediapool.ingress.buffer.commit</code>: latency of the group commits
+ * </ul>
+ *
+ * @author axel.amthor
+ *
+ */
+public class IngressBuffer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(IngressBuffer.class);
+
+	private static final long MAX_RETRY_DELAY = 30000L;
+
+	/** max number of payloads waiting in the buffer */
+	@Value("${spring.application.ingress.buffer.capacity:1024}")
+	private int capacity;
+
+	/** max number of payloads per group commit */
+	@Value("${spring.application.ingress.buffer.max-batch:64}")
+	private int maxBatch;
+
+	/** seconds Media Pool should wait before retrying a rejected request */
+	@Value("${spring.application.ingress.buffer.retry-after:5}")
+	private int retryAfter;
+
+	@Autowired
+	private IngressProcessor ingressProcessor;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private ArrayBlockingQueue<HookPayload> buffer;
+
+	private Thread drainer;
+	private volatile boolean running;
+
+	private Counter accepted;
+	private Counter rejected;
+	private Counter drainedPayloads;
+	private Counter drainedEvents;
+	private Timer commitTimer;
+
+	@PostConstruct
+	public void start() {
+
+		buffer = new ArrayBlockingQueue<HookPayload>(capacity);
+
+		meterRegistry.gauge("mediapool.ingress.buffer.occupancy", buffer, ArrayBlockingQueue::size);
+		meterRegistry.gauge("mediapool.ingress.buffer.capacity", this, b -> b.capacity);
+		accepted = meterRegistry.counter("mediapool.ingress.buffer.accepted");
+		rejected = meterRegistry.counter("mediapool.ingress.buffer.rejected");
+		drainedPayloads = meterRegistry.counter("mediapool.ingress.buffer.drained", "unit", "payloads");
+		drainedEvents = meterRegistry.counter("mediapool.ingress.buffer.drained", "unit", "events");
+		commitTimer = meterRegistry.timer("mediapool.ingress.buffer.commit");
+
+		running = true;
+		drainer = new Thread(this::drain, "ingress-drainer");
+		drainer.start();
+
+		LOGGER.info("Buffered ingress started with capacity " + capacity + " and max batch " + maxBatch);
+	}
+
+	/**
+	 * Stop accepting and drain what is left in the buffer
+	 */
+	@PreDestroy
+	public void stop() throws InterruptedException {
+
+		running = false;
+		drainer.join(MAX_RETRY_DELAY);
+
+		if ( !buffer.isEmpty() )
+			LOGGER.error(buffer.size() + " accepted requests could not be queued on shutdown");
+	}
+
+	/**
+	 * Put a payload into the buffer without waiting
+	 *
+	 * @param payload the received request
+	 * @return false, if the buffer is full or shutting down
+	 */
+	public boolean offer(HookPayload payload) {
+
+		if ( running && buffer.offer(payload) ) {
+			accepted.increment();
+			return true;
+		}
+
+		rejected.increment();
+		return false;
+	}
+
+	/**
+	 * @return seconds Media Pool should wait before retrying a rejected request
+	 */
+	public int getRetryAfter() {
+		return retryAfter;
+	}
+
+	/**
+	 * Drainer loop, group-commits whatever is in the buffer
+	 */
+	private void drain() {
+
+		List<HookPayload> payloads = new ArrayList<HookPayload>(maxBatch);
+
+		while ( running || !buffer.isEmpty() ) {
+
+			try {
+				HookPayload first = buffer.poll(500, TimeUnit.MILLISECONDS);
+				if ( first == null )
+					continue;
+
+				payloads.add(first);
+				buffer.drainTo(payloads, maxBatch - 1);
+
+				commit(payloads);
+			}
+			catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			catch ( Exception e ) {
+				LOGGER.error("Drainer error, dropping " + payloads.size() + " requests", e);
+			}
+			finally {
+				payloads.clear();
+			}
+		}
+	}
+
+	/**
+	 * Decode all payloads and send their events as one batch. As the requests are already acknowledged, we keep on trying
+	 * while the broker is not available. The events stay registered in the duplicate filter meanwhile, they are only
+	 * forgotten if the batch is dropped on shutdown.
+	 */
+	private void commit(List<HookPayload> payloads) throws InterruptedException {
+
+		List<MediaPoolEvent> batch = new ArrayList<MediaPoolEvent>();
+
+		for ( HookPayload payload : payloads ) {
+			try {
+				ingressProcessor.collect(payload, batch);
+			}
+			catch ( WebhookException e ) {
+				// this one was acknowledged already, all we can do is to log it
+				LOGGER.error("Dropping malformed request received at " + payload.getReceivedAt() + ": " + e.getMessage());
+			}
+		}
+
+		long delay = 1000L;
+		while ( true ) {
+			try {
+				long start = System.nanoTime();
+				ingressProcessor.enqueue(batch);
+				commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+				break;
+			}
+			catch ( JmsException e ) {
+				if ( !running ) {
+					// dropped, the events must not be suppressed as duplicates when Media Pool sends them again
+					ingressProcessor.forget(batch);
+					throw e;
+				}
+
+				LOGGER.error("Cannot queue " + batch.size() + " events, retrying in " + delay + " msec", e);
+				Thread.sleep(delay);
+				delay = Math.min(delay * 2, MAX_RETRY_DELAY);
+			}
+		}
+
+		drainedPayloads.increment(payloads.size());
+		drainedEvents.increment(batch.size());
+	}
+}
@@ -0,0 +1,121 @@
+package com.brandmaker.mediapool.webhook.ingress;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.brandmaker.mediapool.webhook.ChannelMatcher;
+import com.brandmaker.mediapool.webhook.SignatureVerifier;
+
+/**
+ * Configure the ingress stage between the hook endpoint and the processing queue
+ * 
+ * @author axel.amthor
+ *
+ */
+@Configuration
+public class IngressConfig {
+
+	/** BM public key to validate request signatures */
+	@Value("${spring.application.system.publickey}")
+	private String publicKey;
+
+	@Value("${spring.application.system.signature-algorithm:SHA256withRSA}")
+	private String signatureAlgorithm;
+
+	@Value("${spring.application.system.verify-signature:false}")
+	private boolean verifySignature;
+
+	/** The channel or the channels, this webhook is responsible for */
+	@Value("${spring.application.system.channels:}")
+	private String channels;
+
+	/**
+	 * The channels are compiled once and shared by the ingress and the queue consumer
+	 */
+	@Bean
+	public ChannelMatcher channelMatcher() {
+		return ChannelMatcher.of(channels);
+	}
+
+	@Bean
+	public RequestBodyDecoder requestBodyDecoder() {
+		return new RequestBodyDecoder();
+	}
+
+	@Bean
+	public HookIngress hookIngress() {
+		return new HookIngress();
+	}
+
+	/**
+	 * The non-blocking endpoint is only started with <code>spring.application.ingress.server: netty</code>
+	 */
+	@Bean
+	@ConditionalOnProperty(name = "spring.application.ingress.server", havingValue = "netty")
+	public NettyIngressServer nettyIngressServer() {
+		return new NettyIngressServer();
+	}
+
+	@Bean
+	@ConfigurationProperties(prefix = "spring.application.ingress.admission")
+	public AdmissionProperties admissionProperties() {
+		return new AdmissionProperties();
+	}
+
+	/**
+	 * Admission control is on unless <code>spring.application.ingress.admission.enabled: false</code>
+	 */
+	@Bean
+	@ConditionalOnProperty(name = "spring.application.ingress.admission.enabled", havingValue = "true", matchIfMissing = true)
+	public TenantAdmission tenantAdmission() {
+		return new TenantAdmission();
+	}
+
+	@Bean
+	public IngressMetrics ingressMetrics() {
+		return new IngressMetrics();
+	}
+
+	@Bean
+	public IngressProcessor ingressProcessor() {
+		return new IngressProcessor();
+	}
+
+	/**
+	 * The buffer is only used with <code>spring.application.ingress.mode: buffered</code>
+	 */
+	@Bean
+	@ConditionalOnProperty(name = "spring.application.ingress.mode", havingValue = "buffered")
+	public IngressBuffer ingressBuffer() {
+		return new IngressBuffer();
+	}
+
+	/**
+	 * The journal is only used with <code>spring.application.ingress.mode: journal</code>
+	 */
+	@Bean
+	@ConditionalOnProperty(name = "spring.application.ingress.mode", havingValue = "journal")
+	public IngressJournal ingressJournal() {
+		return new IngressJournal();
+	}
+
+	/**
+	 * The duplicate filter is on unless <code>spring.application.ingress.dedup.enabled: false</code>
+	 */
+	@Bean
+	@ConditionalOnProperty(name = "spring.application.ingress.dedup.enabled", havingValue = "true", matchIfMissing = true)
+	public DuplicateEventFilter duplicateEventFilter() {
+		return new DuplicateEventFilter();
+	}
+
+	/**
+	 * The public key is decoded once here, an invalid key prevents the application from starting
+	 */
+	@Bean
+	public SignatureVerifier signatureVerifier() {
+		return new SignatureVerifier(publicKey, signatureAlgorithm, verifySignature);
+	}
+}
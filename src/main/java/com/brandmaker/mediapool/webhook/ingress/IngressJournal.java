@@ -0,0 +1,569 @@
+package com.brandmaker.mediapool.webhook.ingress;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.JmsException;
+
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+import com.brandmaker.mediapool.webhook.TenantId;
+import com.brandmaker.mediapool.webhook.WebhookException;
+import com.brandmaker.mediapool.webhook.tenant.TenantContext;
+import com.brandmaker.mediapool.webhook.tenant.TenantDirectory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * <p>Memory mapped write-ahead journal between the hook endpoint and the processing queue.
+ *
+ * <p>In journal ingress mode the endpoint appends each accepted request to the journal and acknowledges it right away, so the
+ * acknowledgement costs one append to a memory mapped file instead of a broker round trip. A replayer thread reads the journal
+ * from the last committed offset, decodes the events and commits them to the processing queue in batches. After each
+ * successful commit the offset is written to the checkpoint file. On startup the journal is recovered and everything behind
+ * the checkpoint is replayed, so accepted requests survive if the process dies before they reach the broker.
+ * Events between the last commit and the checkpoint may be queued twice after a crash.
+ *
+ * <p>The journal is a directory of segment files, named by the offset of their first byte. A new segment is started if a
+ * record does not fit into the current one. Segments which are completely committed are deleted, except for the latest
+ * <code>retained-segments</code> ones.
+ *
+ * <p>Record format, all numbers big endian:
+ * <pre>
+ * int   length of the record body
+ * int   CRC32 of the record body
+ * body: long   time of reception
+ *       int    length of data, data as UTF-8
+ *       int    length of signature or -1, signature as UTF-8
+ *       int    length of customerId or -1, customerId as UTF-8
+ *       int    length of systemId or -1, systemId as UTF-8
+ * </pre>
+ * The header is written after the body, a length of 0 marks the end of a segment. The IDs are those of the tenant the
+ * request was accepted for, e.g. by its route, they are -1 if the tenant is not listed. On replay, the tenant is restored from
+ * the {@link TenantDirectory}, so the events get the channels of the tenant the signature has been verified for.
+ *
+ * <p>Metrics:
+ * <ul>
+ * 		<li><code>mediapool.ingress.journal.append</code>: latency of the appends
+ * 		<li><code>mediapool.ingress.journal.lag</code>: bytes appended, but not yet committed to the queue
+ * 		<li><code>mediapool.ingress.journal.segments</code>: segment files
+ * 		<li><code>mediapool.ingress.journal.replayed</code>: replayed payloads and events
+ * </ul>
+ *
+ * @author axel.amthor
+ *
+ */
+public class IngressJournal {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(IngressJournal.class);
+
+	private static final String SEGMENT_SUFFIX = ".journal";
+	private static final String CHECKPOINT = "checkpoint";
+
+	/** length and CRC of a record */
+	private static final int HEADER = 8;
+
+	private static final long MAX_RETRY_DELAY = 30000L;
+
+	/** directory of the segment and checkpoint files */
+	@Value("${spring.application.ingress.journal.directory:./journal/}")
+	private String directory;
+
+	/** size of a segment file in bytes */
+	@Value("${spring.application.ingress.journal.segment-size:67108864}")
+	private int segmentSize;
+
+	/** number of committed segments to keep */
+	@Value("${spring.application.ingress.journal.retained-segments:2}")
+	private int retainedSegments;
+
+	/** max number of requests per commit to the queue */
+	@Value("${spring.application.ingress.journal.max-batch:64}")
+	private int maxBatch;
+
+	/** flush each append to the disk, only needed to survive a crash of the OS */
+	@Value("${spring.application.ingress.journal.force:false}")
+	private boolean force;
+
+	@Autowired
+	private IngressProcessor ingressProcessor;
+
+	/** restores the tenants of the records */
+	@Autowired
+	private TenantDirectory tenantDirectory;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	/**
+	 * A segment file, mapped as a whole
+	 */
+	private static final class Segment {
+
+		final long base;
+		final Path path;
+		final MappedByteBuffer buffer;
+		final int size;
+
+		Segment(long base, Path path, MappedByteBuffer buffer) {
+			this.base = base;
+			this.path = path;
+			this.buffer = buffer;
+			this.size = buffer.capacity();
+		}
+	}
+
+	private Path journalDirectory;
+
+	/** all segments by their base offset */
+	private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<Long, Segment>();
+
+	/** writer state, guarded by this */
+	private Segment writeSegment;
+	private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private final CRC32 writeCrc = new CRC32();
+
+	/** offset behind the last complete record */
+	private volatile long writePosition;
+
+	/** offset behind the last record committed to the queue */
+	private volatile long committed;
+
+	private FileChannel checkpointChannel;
+	private final ByteBuffer checkpointBuffer = ByteBuffer.allocate(8);
+
+	private Thread replayer;
+	private volatile boolean running;
+
+	private Timer appendTimer;
+	private Counter replayedPayloads;
+	private Counter replayedEvents;
+
+	@PostConstruct
+	public void start() throws IOException {
+
+		journalDirectory = Paths.get(directory);
+		Files.createDirectories(journalDirectory);
+
+		try ( DirectoryStream<Path> files = Files.newDirectoryStream(journalDirectory, "*" + SEGMENT_SUFFIX) ) {
+			for ( Path file : files ) {
+				String name = file.getFileName().toString();
+				long base = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+				segments.put(base, openSegment(base, 0));
+			}
+		}
+		if ( segments.isEmpty() )
+			segments.put(0L, openSegment(0L, segmentSize));
+
+		checkpointChannel = FileChannel.open(journalDirectory.resolve(CHECKPOINT),
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		recover();
+
+		appendTimer = meterRegistry.timer("mediapool.ingress.journal.append");
+		replayedPayloads = meterRegistry.counter("mediapool.ingress.journal.replayed", "unit", "payloads");
+		replayedEvents = meterRegistry.counter("mediapool.ingress.journal.replayed", "unit", "events");
+		meterRegistry.gauge("mediapool.ingress.journal.lag", this, journal -> journal.writePosition - journal.committed);
+		meterRegistry.gauge("mediapool.ingress.journal.segments", segments, Map::size);
+
+		running = true;
+		replayer = new Thread(this::replay, "ingress-journal-replayer");
+		replayer.start();
+	}
+
+	/**
+	 * Stop replaying, whatever is left will be replayed on the next start
+	 */
+	@PreDestroy
+	public void stop() throws InterruptedException, IOException {
+
+		running = false;
+		LockSupport.unpark(replayer);
+		replayer.join(MAX_RETRY_DELAY);
+
+		synchronized ( this ) {
+			writeSegment.buffer.force();
+		}
+		checkpointChannel.close();
+
+		if ( writePosition > committed )
+			LOGGER.info((writePosition - committed) + " bytes of accepted requests left in the journal for the next start");
+	}
+
+	/**
+	 * Append a request to the journal
+	 *
+	 * @param payload the accepted request
+	 * @return offset behind the record
+	 * @throws IOException if the journal cannot be written
+	 */
+	public long append(HookPayload payload) throws IOException {
+
+		long start = System.nanoTime();
+		long position;
+
+		synchronized ( this ) {
+
+			String data = payload.getData();
+			String signature = payload.getSignature();
+
+			TenantId tenant = payload.getTenant() != null ? payload.getTenant().getId() : TenantId.UNKNOWN;
+			String customerId = tenant != TenantId.UNKNOWN ? tenant.getCustomerId() : null;
+			String systemId = tenant != TenantId.UNKNOWN ? tenant.getSystemId() : null;
+
+			// UTF-8 takes at most 3 bytes per char
+			long maxLength = HEADER + 8L + 4L + 3L * data.length() + 4L + (signature != null ? 3L * signature.length() : 0L)
+					+ 4L + (customerId != null ? 3L * customerId.length() : 0L) + 4L + (systemId != null ? 3L * systemId.length() : 0L);
+
+			int pos = (int) (writePosition - writeSegment.base);
+			if ( pos + maxLength > writeSegment.size ) {
+				roll(maxLength);
+				pos = 0;
+			}
+
+			ByteBuffer record = writeSegment.buffer.duplicate();
+			record.position(pos + HEADER);
+			record.putLong(payload.getReceivedAt());
+			putString(record, data);
+			putString(record, signature);
+			putString(record, customerId);
+			putString(record, systemId);
+
+			int length = record.position() - pos - HEADER;
+
+			ByteBuffer body = writeSegment.buffer.duplicate();
+			body.position(pos + HEADER).limit(pos + HEADER + length);
+			writeCrc.reset();
+			writeCrc.update(body);
+
+			// the length goes last, so an incomplete record is never taken for a record
+			record.putInt(pos + 4, (int) writeCrc.getValue());
+			record.putInt(pos, length);
+
+			if ( force )
+				writeSegment.buffer.force();
+
+			position = writeSegment.base + pos + HEADER + length;
+			writePosition = position;
+		}
+
+		LockSupport.unpark(replayer);
+		appendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+		return position;
+	}
+
+	/**
+	 * Write length and UTF-8 bytes of a string, the buffer is large enough
+	 */
+	private void putString(ByteBuffer record, String s) {
+
+		if ( s == null ) {
+			record.putInt(-1);
+			return;
+		}
+
+		int lengthPosition = record.position();
+		record.putInt(0);
+
+		encoder.reset();
+		encoder.encode(CharBuffer.wrap(s), record, true);
+		encoder.flush(record);
+
+		record.putInt(lengthPosition, record.position() - lengthPosition - 4);
+	}
+
+	/**
+	 * Start a new segment, which can take at least the given number of bytes
+	 */
+	private void roll(long minSize) throws IOException {
+
+		if ( minSize > Integer.MAX_VALUE )
+			throw new IOException("request too large for the journal: " + minSize + " bytes");
+
+		long base = writeSegment.base + writeSegment.size;
+		Segment segment = openSegment(base, (int) Math.max(segmentSize, minSize));
+
+		segments.put(base, segment);
+		writeSegment = segment;
+		writePosition = base;
+
+		LOGGER.debug("Journal rolled to segment " + segment.path);
+	}
+
+	/**
+	 * Map a segment file
+	 *
+	 * @param size size of a new segment, 0 to open an existing one
+	 */
+	private Segment openSegment(long base, int size) throws IOException {
+
+		Path path = journalDirectory.resolve(String.format("%020d", base) + SEGMENT_SUFFIX);
+
+		try ( RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw") ) {
+			if ( size > 0 )
+				file.setLength(size);
+
+			// the mapping stays valid after the file is closed
+			return new Segment(base, path, file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length()));
+		}
+	}
+
+	/**
+	 * Find the end of the journal and read the checkpoint
+	 */
+	private void recover() throws IOException {
+
+		long end = segments.firstKey();
+
+		for ( Segment segment : segments.values() ) {
+
+			int pos = 0;
+			while ( true ) {
+				int length = pos + HEADER <= segment.size ? segment.buffer.getInt(pos) : 0;
+				if ( length <= 0 || pos + HEADER + length > segment.size || !crcMatches(segment, pos, length) )
+					break;
+				pos += HEADER + length;
+			}
+			end = segment.base + pos;
+			writeSegment = segment;
+		}
+		writePosition = end;
+
+		checkpointBuffer.clear();
+		long checkpoint = checkpointChannel.read(checkpointBuffer, 0) == 8 ? checkpointBuffer.getLong(0) : 0L;
+
+		committed = Math.min(Math.max(checkpoint, segments.firstKey()), writePosition);
+		if ( committed != checkpoint )
+			LOGGER.warn("Journal checkpoint " + checkpoint + " is outside of the journal, starting at " + committed);
+
+		LOGGER.info("Journal in " + journalDirectory.toAbsolutePath() + " recovered with " + segments.size() + " segments, "
+				+ (writePosition - committed) + " bytes to replay");
+	}
+
+	private static boolean crcMatches(Segment segment, int pos, int length) {
+
+		ByteBuffer body = segment.buffer.duplicate();
+		body.position(pos + HEADER).limit(pos + HEADER + length);
+
+		CRC32 crc = new CRC32();
+		crc.update(body);
+
+		return (int) crc.getValue() == segment.buffer.getInt(pos + 4);
+	}
+
+	/**
+	 * Replayer loop, commits whatever has been appended
+	 */
+	private void replay() {
+
+		List<HookPayload> payloads = new ArrayList<HookPayload>(maxBatch);
+		long position = committed;
+
+		while ( running ) {
+
+			if ( position >= writePosition ) {
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(500));
+				continue;
+			}
+
+			try {
+				long end = read(position, payloads);
+
+				if ( !payloads.isEmpty() )
+					commit(payloads);
+
+				checkpoint(end);
+				position = end;
+
+				retain();
+			}
+			catch ( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+			catch ( JmsException e ) {
+				// shutting down while the broker is away, we start over from the checkpoint next time
+				break;
+			}
+			catch ( Exception e ) {
+				LOGGER.error("Journal replay error at offset " + position, e);
+				LockSupport.parkNanos(TimeUnit.SECONDS.toNanos(1));
+			}
+			finally {
+				payloads.clear();
+			}
+		}
+	}
+
+	/**
+	 * Read up to max-batch records
+	 *
+	 * @return offset behind the last record read
+	 */
+	private long read(long from, List<HookPayload> payloads) {
+
+		long limit = writePosition;
+		long position = from;
+
+		while ( payloads.size() < maxBatch && position < limit ) {
+
+			Segment segment = segments.floorEntry(position).getValue();
+			int pos = (int) (position - segment.base);
+			int length = pos + HEADER <= segment.size ? segment.buffer.getInt(pos) : 0;
+
+			if ( length <= 0 ) {
+				// end of this segment
+				position = segment.base + segment.size;
+				continue;
+			}
+
+			if ( !crcMatches(segment, pos, length) ) {
+				LOGGER.error("Journal record at offset " + position + " is corrupt, skipping the rest of " + segment.path);
+				position = segment.base + segment.size;
+				continue;
+			}
+
+			ByteBuffer record = segment.buffer.duplicate();
+			record.position(pos + HEADER).limit(pos + HEADER + length);
+
+			long receivedAt = record.getLong();
+			String data = getString(record);
+			String signature = getString(record);
+			String customerId = getString(record);
+			String systemId = getString(record);
+
+			payloads.add(new HookPayload(data, signature, receivedAt, tenant(customerId, systemId, position)));
+			position += HEADER + length;
+		}
+
+		return position;
+	}
+
+	/**
+	 * @return the context of the tenant of a record, null to resolve it from the data like a request on <code>/hook</code>
+	 */
+	private TenantContext tenant(String customerId, String systemId, long position) {
+
+		if ( customerId == null || systemId == null )
+			return null;
+
+		TenantId id = new TenantId(customerId, systemId);
+		TenantContext tenant = tenantDirectory.find(id);
+		if ( tenant == null )
+			LOGGER.warn("Tenant " + id + " of the journal record at offset " + position + " is not listed any more, replaying with the default settings");
+
+		return tenant != null ? tenant : tenantDirectory.getDefault();
+	}
+
+	private static String getString(ByteBuffer record) {
+
+		int length = record.getInt();
+		if ( length < 0 )
+			return null;
+
+		ByteBuffer bytes = record.duplicate();
+		bytes.limit(bytes.position() + length);
+		record.position(record.position() + length);
+
+		return StandardCharsets.UTF_8.decode(bytes).toString();
+	}
+
+	/**
+	 * Decode all payloads and send their events as one batch. As the requests are already acknowledged, we keep on trying
+	 * while the broker is not available.
+	 */
+	private void commit(List<HookPayload> payloads) throws InterruptedException {
+
+		List<MediaPoolEvent> batch = new ArrayList<MediaPoolEvent>();
+
+		for ( HookPayload payload : payloads ) {
+			try {
+				ingressProcessor.collect(payload, batch);
+			}
+			catch ( WebhookException e ) {
+				// this one was acknowledged already, all we can do is to log it
+				LOGGER.error("Dropping malformed request received at " + payload.getReceivedAt() + ": " + e.getMessage());
+			}
+		}
+
+		long delay = 1000L;
+		while ( true ) {
+			try {
+				ingressProcessor.enqueue(batch);
+				break;
+			}
+			catch ( JmsException e ) {
+				if ( !running )
+					throw e;
+
+				LOGGER.error("Cannot queue " + batch.size() + " events, retrying in " + delay + " msec", e);
+				Thread.sleep(delay);
+				delay = Math.min(delay * 2, MAX_RETRY_DELAY);
+			}
+		}
+
+		replayedPayloads.increment(payloads.size());
+		replayedEvents.increment(batch.size());
+	}
+
+	private void checkpoint(long offset) throws IOException {
+
+		checkpointBuffer.clear();
+		checkpointBuffer.putLong(offset).flip();
+		checkpointChannel.write(checkpointBuffer, 0);
+		checkpointChannel.force(false);
+
+		committed = offset;
+	}
+
+	/**
+	 * Delete committed segments, except for the latest ones
+	 */
+	private void retain() throws IOException {
+
+		List<Segment> done = new ArrayList<Segment>();
+		for ( Segment segment : segments.values() ) {
+			if ( segment.base + segment.size > committed || segment == writeSegment )
+				break;
+			done.add(segment);
+		}
+
+		for ( int n = 0; n < done.size() - retainedSegments; n++ ) {
+			Segment segment = done.get(n);
+			segments.remove(segment.base);
+			Files.deleteIfExists(segment.path);
+
+			LOGGER.debug("Journal segment " + segment.path + " deleted");
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package com.brandmaker.mediapool.webhook.ingress;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import com.brandmaker.mediapool.MediaPoolWebHookEvents;
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+import com.brandmaker.mediapool.webhook.TenantRegistry;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * <p>Latency and throughput metrics of the ingress stage.
+ *
+ * <ul>
+ * 		<li><code>mediapool.ingress.latency{phase}</code>: percentile histograms of the phases <code>read</code> (decode the
+ * 			body), <code>verify</code> (signature), <code>parse</code> (decode the events, including the channel filter),
+ * 			<code>filter</code> (duplicate filter), <code>enqueue</code> (commit to the queue) and <code>total</code>
+ * 			(the whole request, without the asynchronous phases in buffered and journal mode)
+ * 		<li><code>mediapool.ingress.request.events</code>: histogram of the events per request
+ * 		<li><code>mediapool.ingress.requests{status}</code>: requests by response status
+ * 		<li><code>mediapool.ingress.events{tenant, type, result=accepted|filtered|duplicate|rejected}</code>: events by type
+ * 			and tenant. Filtered events are not published to any of our channels, rejected ones were part of a malformed request.
+ * </ul>
+ *
+ * <p>All meters but the event counters are created up front. The events of a request are counted in a {@link Tally} and
+ * added to the counters once per request, so the cost per event is an array increment. The counters are kept by the number
+ * of the tenant in the {@link TenantRegistry}, the tag is only resolved when a counter is created. Tenants numbered
+ * beyond <code>max-tenants</code> are counted as tenant <code>other</code>.
+ *
+ * @author axel.amthor
+ *
+ */
+public class IngressMetrics {
+
+	public enum Phase {
+		READ, VERIFY, PARSE, FILTER, ENQUEUE, TOTAL
+	}
+
+	public enum Result {
+		ACCEPTED, FILTERED, DUPLICATE, REJECTED
+	}
+
+	private static final String UNKNOWN = "unknown";
+	private static final String OTHER = "other";
+
+	private static final MediaPoolWebHookEvents.Event[] TYPES = MediaPoolWebHookEvents.Event.values();
+	private static final Result[] RESULTS = Result.values();
+	private static final Map<String, Integer> TYPE_INDEX = new HashMap<String, Integer>();
+
+	static {
+		for ( MediaPoolWebHookEvents.Event type : TYPES )
+			TYPE_INDEX.put(type.name(), type.ordinal());
+	}
+
+	/** max number of tenants with own event counters */
+	@Value("${spring.application.ingress.metrics.max-tenants:1000}")
+	private int maxTenants;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private TenantRegistry tenantRegistry;
+
+	private final Timer[] phases = new Timer[Phase.values().length];
+	private DistributionSummary eventsPerRequest;
+	private final AtomicReferenceArray<Counter> requests = new AtomicReferenceArray<Counter>(600);
+	/** by number of the tenant */
+	private AtomicReferenceArray<Counter[]> tenantEvents;
+	/** of events without tenant number, by tag */
+	private final ConcurrentHashMap<String, Counter[]> events = new ConcurrentHashMap<String, Counter[]>();
+
+	/**
+	 * The events of one request, by type and result. The last type is for unknown event types.
+	 */
+	public static final class Tally {
+
+		private final int[] counts = new int[(TYPES.length + 1) * RESULTS.length];
+
+		public void count(MediaPoolWebHookEvents.Event type, Result result) {
+			counts[(type != null ? type.ordinal() : TYPES.length) * RESULTS.length + result.ordinal()]++;
+		}
+
+		public void count(String type, Result result) {
+			Integer index = type != null ? TYPE_INDEX.get(type) : null;
+			counts[(index != null ? index : TYPES.length) * RESULTS.length + result.ordinal()]++;
+		}
+
+		/**
+		 * The request turned out to be malformed, nothing of it is queued
+		 */
+		public void reject() {
+			for ( int n = 0; n < counts.length; n += RESULTS.length ) {
+				counts[n + Result.REJECTED.ordinal()] += counts[n + Result.ACCEPTED.ordinal()] + counts[n + Result.DUPLICATE.ordinal()];
+				counts[n + Result.ACCEPTED.ordinal()] = 0;
+				counts[n + Result.DUPLICATE.ordinal()] = 0;
+			}
+		}
+	}
+
+	@PostConstruct
+	public void init() {
+
+		tenantEvents = new AtomicReferenceArray<Counter[]>(Math.max(0, maxTenants));
+
+		for ( Phase phase : Phase.values() ) {
+			phases[phase.ordinal()] = Timer.builder("mediapool.ingress.latency")
+					.tag("phase", phase.name().toLowerCase(Locale.ROOT))
+					.publishPercentileHistogram()
+					.minimumExpectedValue(Duration.ofNanos(10000))
+					.maximumExpectedValue(Duration.ofSeconds(60))
+					.register(meterRegistry);
+		}
+
+		eventsPerRequest = DistributionSummary.builder("mediapool.ingress.request.events")
+				.publishPercentileHistogram()
+				.minimumExpectedValue(1L)
+				.maximumExpectedValue(1000000L)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * @param phase the phase of the request
+	 * @param nanos duration of the phase
+	 */
+	public void record(Phase phase, long nanos) {
+		phases[phase.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @param status the response status of a request
+	 */
+	public void request(int status) {
+
+		int index = status >= 0 && status < requests.length() ? status : 0;
+
+		Counter counter = requests.get(index);
+		if ( counter == null ) {
+			counter = meterRegistry.counter("mediapool.ingress.requests", "status", Integer.toString(status));
+			requests.set(index, counter);
+		}
+		counter.increment();
+	}
+
+	/**
+	 * @param tally the events of one request
+	 * @param events number of events in the request, negative if the request is malformed
+	 * @param tenantId number of the tenant in the {@link TenantRegistry}, {@link MediaPoolEvent#NO_TENANT} if not known
+	 * @param tenant "customerId/systemId" if there is no tenant number, null if not known at all
+	 */
+	public void record(Tally tally, int events, int tenantId, String tenant) {
+
+		if ( events >= 0 )
+			eventsPerRequest.record(events);
+
+		String tag;
+		Counter[] counters;
+
+		if ( tenantId != MediaPoolEvent.NO_TENANT && tenantId < tenantEvents.length() ) {
+			// a lost race just creates the array once more, the counters of the meter registry are the same
+			counters = tenantEvents.get(tenantId);
+			if ( counters == null ) {
+				counters = new Counter[tally.counts.length];
+				tenantEvents.set(tenantId, counters);
+			}
+			// resolved when a counter is created
+			tag = null;
+		}
+		else {
+			tag = tenantId != MediaPoolEvent.NO_TENANT ? OTHER : tenant != null ? tenant : UNKNOWN;
+			counters = this.events.get(tag);
+			if ( counters == null ) {
+				if ( this.events.size() >= maxTenants )
+					tag = OTHER;
+				counters = this.events.computeIfAbsent(tag, t -> new Counter[tally.counts.length]);
+			}
+		}
+
+		for ( int n = 0; n < tally.counts.length; n++ ) {
+
+			if ( tally.counts[n] == 0 )
+				continue;
+
+			Counter counter = counters[n];
+			if ( counter == null ) {
+				// a lost race just looks up the same counter once more
+				if ( tag == null )
+					tag = tenantRegistry.getTenant(tenantId).toString();
+				int type = n / RESULTS.length;
+				counter = meterRegistry.counter("mediapool.ingress.events", "tenant", tag,
+						"type", type < TYPES.length ? TYPES[type].name() : UNKNOWN,
+						"result", RESULTS[n % RESULTS.length].name().toLowerCase(Locale.ROOT));
+				counters[n] = counter;
+			}
+			counter.increment(tally.counts[n]);
+		}
+	}
+}
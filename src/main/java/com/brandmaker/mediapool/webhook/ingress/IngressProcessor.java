@@ -0,0 +1,225 @@
+package com.brandmaker.mediapool.webhook.ingress;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jms.JmsException;
+
+import com.brandmaker.mediapool.queue.Sender;
+import com.brandmaker.mediapool.webhook.ChannelMatcher;
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+import com.brandmaker.mediapool.webhook.MediaPoolEventParser;
+import com.brandmaker.mediapool.webhook.TenantId;
+import com.brandmaker.mediapool.webhook.TenantRegistry;
+import com.brandmaker.mediapool.webhook.WebhookException;
+import com.brandmaker.mediapool.webhook.tenant.TenantContext;
+import com.brandmaker.mediapool.webhook.tenant.TenantDirectory;
+
+/**
+ * <p>Turns accepted webhook requests into messages of the processing queue.
+ *
+ * <p>The events of a request are decoded, checked against the channels we are listening on and the relevant ones are sent to the queue
+ * as one batch. This is used by the hook controller in synchronous mode and by the drainer of the {@link IngressBuffer}.
+ * Events which have been queued recently already are dropped by the {@link DuplicateEventFilter}, if enabled.
+ * The channels are those of the tenant of the request, payloads without a tenant are looked up in the {@link TenantDirectory}.
+ * The events are registered in the {@link TenantRegistry}, so they are queued and counted by the number of their tenant.
+ *
+ * @author axel.amthor
+ *
+ */
+public class IngressProcessor {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(IngressProcessor.class);
+
+	/** the tenants with the channels we want to manage */
+	@Autowired
+	private TenantDirectory tenantDirectory;
+
+	@Autowired
+	private TenantRegistry tenantRegistry;
+
+	@Autowired
+	private Sender processingQueueSender;
+
+	@Autowired
+	private IngressMetrics metrics;
+
+	/** only present if the duplicate filter is enabled */
+	@Autowired(required=false)
+	private DuplicateEventFilter duplicateFilter;
+
+	/**
+	 * Decode the payload and process it right away
+	 *
+	 * @param payload the accepted request
+	 * @return number of events queued
+	 * @throws WebhookException if the data document is not well formed
+	 * @throws org.springframework.jms.JmsException if the events cannot be queued
+	 */
+	public int process(HookPayload payload) throws WebhookException {
+
+		List<MediaPoolEvent> batch = new ArrayList<MediaPoolEvent>();
+
+		collect(payload, batch);
+
+		try {
+			return enqueue(batch);
+		}
+		catch ( JmsException e ) {
+			// the request is rejected, the events are accepted when Media Pool delivers them once more
+			forget(batch);
+			throw e;
+		}
+	}
+
+	/**
+	 * <p>Parse the data property and process the actual media pool events submitted in this request one by one.
+	 * <p>The events are decoded while the data document is tokenized, there is no JSON tree of the whole request.
+	 * Events which are not published to any of our channels are skipped by the parser already.
+	 *
+	 * @param payload the accepted request
+	 * @param batch receives all events, which are relevant for us
+	 * @return number of events in the request
+	 * @throws WebhookException if the data document is not well formed, or an event is not of the tenant of the payload.
+	 * 		Nothing is added to the batch in this case.
+	 */
+	public int collect(HookPayload payload, List<MediaPoolEvent> batch) throws WebhookException {
+
+		int mark = batch.size();
+
+		TenantContext tenant = payload.getTenant() != null ? payload.getTenant() : tenantDirectory.resolve(payload.getData());
+		ChannelMatcher channelMatcher = tenant.getChannelMatcher();
+		TenantId tenantOnly = tenant.getId() != TenantId.UNKNOWN ? tenant.getId() : null;
+
+		IngressMetrics.Tally tally = new IngressMetrics.Tally();
+		int[] tenantId = { MediaPoolEvent.NO_TENANT };
+		String[] tenantTag = { tenant.getId() != TenantId.UNKNOWN ? tenant.getId().toString() : null };
+		long[] filterNanos = { 0L };
+		int events = -1;
+
+		long start = System.nanoTime();
+		try {
+			events = tenant.getEventParser().parse(payload.getData(), new MediaPoolEventParser.EventHandler() {
+
+				private int n = 0;
+
+				@Override
+				public void onEvent(MediaPoolEvent mediapoolEvent) throws WebhookException {
+
+					n++;
+
+					// the events of a tenant, e.g. of a route or a journal record, must carry its IDs
+					if ( tenantOnly != null && !(tenantOnly.getCustomerId().equals(mediapoolEvent.getCustomerId())
+							&& tenantOnly.getSystemId().equals(mediapoolEvent.getSystemId())) )
+						throw new WebhookException("(15) event of tenant " + mediapoolEvent.getCustomerId() + "/" + mediapoolEvent.getSystemId()
+								+ " posted for " + tenantOnly);
+
+					int registered = tenantRegistry.register(mediapoolEvent);
+					if ( tenantId[0] == MediaPoolEvent.NO_TENANT )
+						tenantId[0] = registered;
+
+					if ( tenantTag[0] == null && registered == MediaPoolEvent.NO_TENANT )
+						tenantTag[0] = mediapoolEvent.getCustomerId() + "/" + mediapoolEvent.getSystemId();
+
+					// check source system IDs of this event
+					// if you want to listen for a particular instance and custoomer ID, uncomment the following and the `else` branch below
+//					if ( mediapoolEvent.getCustomerId().equals(customerId) && mediapoolEvent.getSystemId().equals(systemId) )
+					{
+						mediapoolEvent.setChannelMatcher(channelMatcher);
+
+						/*
+						 * Media Pool retries deliveries and overlapping synchronizations resend events, we process them once only
+						 */
+						long filterStart = System.nanoTime();
+						boolean duplicate = duplicateFilter != null && !duplicateFilter.accept(mediapoolEvent);
+						filterNanos[0] += System.nanoTime() - filterStart;
+
+						if ( duplicate ) {
+							tally.count(mediapoolEvent.getEvent(), IngressMetrics.Result.DUPLICATE);
+							LOGGER.debug( n + ". Event " + mediapoolEvent.getEvent().toString() + " for Asset " + mediapoolEvent.getAssetId() + " is a duplicate." );
+						}
+						else
+						{
+							/*
+							 * Add event to the batch for the processing queue
+							 * We will not process this event within this loop!
+							 */
+
+							// serialized by the message converter of the queue
+							batch.add(mediapoolEvent);
+							tally.count(mediapoolEvent.getEvent(), IngressMetrics.Result.ACCEPTED);
+
+							LOGGER.debug( n + ". Event " + mediapoolEvent.getEvent().toString() + " for Asset " + mediapoolEvent.getAssetId() + " accepted." );
+						}
+
+					}
+//					else
+//						LOGGER.error("Event " + mediapoolEvent.getEvent().toString()
+//								+ " ignored for customer " + mediapoolEvent.getCustomerId() + " on system " + mediapoolEvent.getSystemId() );
+				}
+
+				@Override
+				public void onSkipped(String eventType) {
+					tally.count(eventType, IngressMetrics.Result.FILTERED);
+				}
+			});
+
+			metrics.record(IngressMetrics.Phase.PARSE, System.nanoTime() - start - filterNanos[0]);
+			metrics.record(IngressMetrics.Phase.FILTER, filterNanos[0]);
+
+			if ( batch.size() - mark < events )
+				LOGGER.debug("Not my business: " + (events - (batch.size() - mark)) + " of " + events + " events skipped");
+
+			return events;
+		}
+		catch ( WebhookException e ) {
+			// drop what we got so far from this request, the batch may contain events of other requests
+			List<MediaPoolEvent> dropped = batch.subList(mark, batch.size());
+			if ( duplicateFilter != null )
+				duplicateFilter.forget(dropped);
+			dropped.clear();
+			tally.reject();
+			throw e;
+		}
+		finally {
+			metrics.record(tally, events, tenantId[0], tenantTag[0]);
+		}
+	}
+
+	/**
+	 * <p>Push the events to the processing queue
+	 *
+	 * <p>We are using spring JMS together with ActiveMQ as a broker. Configuration can be done via the application.yaml
+	 * The batch is committed at once. If this fails, the events stay in the duplicate filter: the caller either tries the
+	 * batch again, or {@link #forget(List) forgets} it, if it is dropped.
+	 *
+	 * @param batch the events
+	 * @return number of events queued
+	 * @throws org.springframework.jms.JmsException if the events cannot be queued
+	 */
+	public int enqueue(List<MediaPoolEvent> batch) {
+
+		long start = System.nanoTime();
+		int queued = processingQueueSender.sendBatch(batch);
+		if ( queued > 0 )
+			metrics.record(IngressMetrics.Phase.ENQUEUE, System.nanoTime() - start);
+
+		LOGGER.info(queued + " Events queued.");
+
+		return queued;
+	}
+
+	/**
+	 * Remove the events of a batch which could not be queued from the duplicate filter, so they are accepted when they are
+	 * delivered once more
+	 *
+	 * @param batch the events, which are not queued
+	 */
+	public void forget(List<MediaPoolEvent> batch) {
+		if ( duplicateFilter != null )
+			duplicateFilter.forget(batch);
+	}
+}
@@ -0,0 +1,226 @@
+package com.brandmaker.mediapool.webhook.ingress;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.Duration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.brandmaker.mediapool.webhook.tenant.TenantContext;
+import com.brandmaker.mediapool.webhook.tenant.TenantContextInterceptor;
+import com.brandmaker.mediapool.webhook.tenant.TenantDirectory;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.netty.resources.LoopResources;
+
+/**
+ * <p>Non-blocking variant of the hook endpoint on a Reactor Netty server.
+ *
+ * <p>The server listens on its own port and serves <code>POST /hook</code> and <code>POST /hook/{customerId}/{systemId}</code>
+ * with the same contract as the Spring MVC hook controller. All connections are handled by a small, fixed number of event loop threads. The body is collected from the
+ * connection without blocking, then read, verified and handed over to the {@link IngressBuffer} by the {@link HookIngress}.
+ * As the buffer never blocks, no event loop thread waits for the broker. So thousands of concurrent connections of several
+ * Media Pool instances are absorbed by a handful of threads.
+ *
+ * <p>The server is started with <code>spring.application.ingress.server: netty</code>, which requires
+ * <code>spring.application.ingress.mode: buffered</code> or <code>journal</code>. The Tomcat server keeps on running for the actuator and the API docs.
+ *
+ * @author axel.amthor
+ *
+ */
+public class NettyIngressServer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(NettyIngressServer.class);
+
+	private static final String PATH = "/hook";
+
+	@Value("${spring.application.ingress.netty.address:0.0.0.0}")
+	private String address;
+
+	@Value("${spring.application.ingress.netty.port:8081}")
+	private int port;
+
+	/** number of event loop threads, 0 for one per core */
+	@Value("${spring.application.ingress.netty.threads:0}")
+	private int threads;
+
+	/** max number of connections waiting to be accepted */
+	@Value("${spring.application.ingress.netty.backlog:1024}")
+	private int backlog;
+
+	/** max number of bytes of the request body */
+	@Value("${spring.application.ingress.max-body-size:268435456}")
+	private long maxBodySize;
+
+	@Autowired
+	private HookIngress hookIngress;
+
+	@Autowired
+	private TenantDirectory tenantDirectory;
+
+	private LoopResources loops;
+	private DisposableServer server;
+
+	/**
+	 * Response status, body and Retry-After header
+	 */
+	private static class Reply {
+
+		final int status;
+		final String body;
+		final int retryAfter;
+
+		Reply(int status, String body, int retryAfter) {
+			this.status = status;
+			this.body = body;
+			this.retryAfter = retryAfter;
+		}
+	}
+
+	@PostConstruct
+	public void start() {
+
+		if ( !hookIngress.isBuffered() )
+			throw new IllegalStateException("Invalid configuration: the netty ingress server requires spring.application.ingress.mode: buffered or journal");
+
+		int workers = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		loops = LoopResources.create("ingress-netty", 1, workers, true);
+
+		server = HttpServer.create()
+				.tcpConfiguration(tcp -> tcp
+						.runOn(loops)
+						.selectorOption(ChannelOption.SO_BACKLOG, backlog))
+				.host(address)
+				.port(port)
+				.route(routes -> routes
+						.post(PATH, (request, response) -> handle(request, response, null))
+						.post(PATH + "/{" + TenantContextInterceptor.CUSTOMER_ID + "}/{" + TenantContextInterceptor.SYSTEM_ID + "}", this::handleTenant))
+				.bindNow(Duration.ofSeconds(30));
+
+		LOGGER.info("Netty ingress listening on " + address + ":" + port + " with " + workers + " event loop threads");
+	}
+
+	@PreDestroy
+	public void stop() {
+
+		if ( server != null )
+			server.disposeNow(Duration.ofSeconds(30));
+		if ( loops != null )
+			loops.dispose();
+	}
+
+	/**
+	 * Resolve the tenant of the route, unknown and disabled tenants are rejected before the body is read
+	 */
+	private Mono<Void> handleTenant(HttpServerRequest request, HttpServerResponse response) {
+
+		TenantContext tenant;
+		try {
+			tenant = TenantContextInterceptor.resolve(tenantDirectory,
+					request.param(TenantContextInterceptor.CUSTOMER_ID), request.param(TenantContextInterceptor.SYSTEM_ID));
+		}
+		catch ( ResponseStatusException e ) {
+			return send(response, error(e, request.path()));
+		}
+
+		return handle(request, response, tenant);
+	}
+
+	/**
+	 * Collect the body, hand the request over and answer it
+	 */
+	private Mono<Void> handle(HttpServerRequest request, HttpServerResponse response, TenantContext tenant) {
+
+		long start = System.currentTimeMillis();
+		String path = request.path();
+
+		if ( request.requestHeaders().getInt(HttpHeaderNames.CONTENT_LENGTH, -1) > maxBodySize )
+			return send(response, error(new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "(0) request body too large"), path));
+
+		String contentEncoding = request.requestHeaders().get(HttpHeaderNames.CONTENT_ENCODING);
+
+		// chunked requests have no content length, so we count ourselves
+		long[] received = new long[1];
+		ByteBufFlux body = ByteBufFlux.fromInbound(request.receive().doOnNext((ByteBuf chunk) -> {
+			received[0] += chunk.readableBytes();
+			if ( received[0] > maxBodySize )
+				throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "(0) request body too large");
+		}));
+
+		return body.aggregate()
+				.asInputStream()
+				.switchIfEmpty(Mono.fromCallable(() -> (InputStream) new ByteArrayInputStream(new byte[0])))
+				.map(in -> {
+					hookIngress.accept(in, contentEncoding, tenant);
+					return reply(HttpStatus.ACCEPTED, "Request accepted", 0, path);
+				})
+				.onErrorResume(e -> Mono.just(error(e, path)))
+				.flatMap(reply -> send(response, reply))
+				.doFinally(signal -> LOGGER.debug("Finished processing webhook request  in " + (System.currentTimeMillis() - start) + " msec"));
+	}
+
+	private static Mono<Void> send(HttpServerResponse response, Reply reply) {
+
+		response.status(reply.status)
+				.header(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON);
+
+		if ( reply.retryAfter > 0 )
+			response.header(HttpHeaderNames.RETRY_AFTER, Integer.toString(reply.retryAfter));
+
+		return Mono.from(response.sendString(Mono.just(reply.body)));
+	}
+
+	private static Reply error(Throwable e, String path) {
+
+		if ( e instanceof HookIngress.RetryLaterException ) {
+			HookIngress.RetryLaterException retry = (HookIngress.RetryLaterException) e;
+			return reply(retry.getStatus(), retry.getReason(), retry.getRetryAfter(), path);
+		}
+
+		if ( e instanceof ResponseStatusException ) {
+			ResponseStatusException status = (ResponseStatusException) e;
+			return reply(status.getStatus(), status.getReason(), 0, path);
+		}
+
+		LOGGER.error("Cannot process webhook request", e);
+		return reply(HttpStatus.INTERNAL_SERVER_ERROR, "(6) cannot process request", 0, path);
+	}
+
+	/**
+	 * Same format as the error responses of Spring MVC
+	 */
+	private static Reply reply(HttpStatus status, String message, int retryAfter, String path) {
+
+		JSONObject body = new JSONObject();
+		try {
+			body.put("timestamp", System.currentTimeMillis());
+			body.put("status", status.value());
+			body.put("error", status.getReasonPhrase());
+			body.put("message", message);
+			body.put("path", "/" + path);
+		}
+		catch ( JSONException e ) {
+			LOGGER.error("JSON error", e);
+		}
+		return new Reply(status.value(), body.toString(), retryAfter);
+	}
+}
@@ -0,0 +1,178 @@
+package com.brandmaker.mediapool.webhook.ingress;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import com.brandmaker.mediapool.utils.LimitedInputStream;
+import com.brandmaker.mediapool.webhook.WebhookException;
+import com.brandmaker.mediapool.webhook.rest.controller.HookRequestBody;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * <p>Reads the body of a webhook request, which may be compressed.
+ *
+ * <p>Full synchronizations of Media Pool can be several megabytes of very repetitive JSON, so the endpoint accepts the
+ * content encodings <code>gzip</code> and <code>deflate</code>. The body is inflated while it is tokenized, the inflated
+ * stream is not buffered. The number of decompressed bytes is limited by
+ * <code>spring.application.ingress.max-body-size</code>, reading stops as soon as the limit is exceeded.
+ *
+ * <p>The <code>data</code> property, which is almost all of the body, is held as a whole though: as string, and for the
+ * signature verification as UTF-8 bytes once more. It is limited by <code>spring.application.ingress.max-data-size</code>,
+ * which is checked before the string is built.
+ *
+ * <p>Metrics:
+ * <ul>
+ * 		<li><code>mediapool.ingress.compression.ratio</code>: decompressed size / compressed size of the compressed requests
+ * 		<li><code>mediapool.ingress.body.size{encoding}</code>: bytes received on the wire
+ * </ul>
+ *
+ * @author axel.amthor
+ *
+ */
+public class RequestBodyDecoder {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RequestBodyDecoder.class);
+
+	private static final String IDENTITY = "identity";
+	private static final String GZIP = "gzip";
+	private static final String X_GZIP = "x-gzip";
+	private static final String DEFLATE = "deflate";
+
+	/** max number of bytes of the decompressed request body */
+	@Value("${spring.application.ingress.max-body-size:268435456}")
+	private long maxBodySize;
+
+	/** max number of UTF-8 bytes of the data property */
+	@Value("${spring.application.ingress.max-data-size:67108864}")
+	private long maxDataSize;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private DistributionSummary compressionRatio;
+
+	/** request size histogram by supported encoding */
+	private final Map<String, DistributionSummary> bodySizes = new ConcurrentHashMap<String, DistributionSummary>();
+
+	/**
+	 * Thrown if the request uses a content encoding we do not support
+	 */
+	public static class UnsupportedEncodingException extends WebhookException {
+
+		private static final long serialVersionUID = 1L;
+
+		public UnsupportedEncodingException(String encoding) {
+			super("(0) unsupported content encoding: " + encoding);
+		}
+	}
+
+	@PostConstruct
+	public void init() {
+
+		compressionRatio = DistributionSummary.builder("mediapool.ingress.compression.ratio")
+				.description("decompressed size / compressed size of compressed requests")
+				.register(meterRegistry);
+
+		LOGGER.info("Accepting gzip and deflate encoded requests up to " + maxBodySize + " bytes decompressed, data up to " + maxDataSize + " bytes");
+	}
+
+	private DistributionSummary bodySize(String encoding) {
+		return DistributionSummary.builder("mediapool.ingress.body.size")
+				.description("size of the requests as received")
+				.tag("encoding", encoding)
+				.baseUnit("bytes")
+				.publishPercentileHistogram()
+				.minimumExpectedValue(1024L)
+				.maximumExpectedValue(maxBodySize)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Read the request body
+	 *
+	 * @param in the raw request body stream
+	 * @param contentEncoding value of the Content-Encoding header, may be null
+	 * @return the request body
+	 * @throws UnsupportedEncodingException if the content encoding is not supported
+	 * @throws WebhookException if the body is not well formed or the data property is missing
+	 * @throws LimitedInputStream.LimitExceededException if the decompressed body or its data property is larger than allowed
+	 * @throws IOException if the stream cannot be read or decompressed
+	 */
+	public HookRequestBody read(InputStream in, String contentEncoding) throws WebhookException, IOException {
+
+		String encoding = contentEncoding == null || contentEncoding.trim().isEmpty() ? IDENTITY : contentEncoding.trim().toLowerCase();
+
+		LimitedInputStream wire = new LimitedInputStream(in, IDENTITY.equals(encoding) ? maxBodySize : -1L);
+		LimitedInputStream body;
+		Inflater inflater = null;
+
+		switch ( encoding ) {
+			case IDENTITY:
+				body = wire;
+				break;
+
+			case GZIP:
+			case X_GZIP:
+				body = new LimitedInputStream(new GZIPInputStream(wire, 8192), maxBodySize);
+				break;
+
+			case DEFLATE:
+				BufferedInputStream buffered = new BufferedInputStream(wire, 8192);
+				inflater = new Inflater(!isZlib(buffered));
+				body = new LimitedInputStream(new InflaterInputStream(buffered, inflater, 8192), maxBodySize);
+				break;
+
+			default:
+				throw new UnsupportedEncodingException(encoding);
+		}
+
+		HookRequestBody requestBody;
+		try {
+			requestBody = HookRequestBody.read(body, maxDataSize);
+		}
+		finally {
+			body.close();
+
+			// the inflater is not released by the stream, as we have passed it in
+			if ( inflater != null )
+				inflater.end();
+		}
+
+		bodySizes.computeIfAbsent(encoding, this::bodySize).record(wire.getCount());
+		if ( body != wire && wire.getCount() > 0 ) {
+			compressionRatio.record((double) body.getCount() / wire.getCount());
+
+			LOGGER.debug("Inflated " + wire.getCount() + " bytes " + encoding + " to " + body.getCount() + " bytes");
+		}
+
+		return requestBody;
+	}
+
+	/**
+	 * HTTP "deflate" is supposed to be zlib framed, but some clients send raw deflate data. We tell them apart by the zlib header.
+	 */
+	private static boolean isZlib(BufferedInputStream in) throws IOException {
+
+		in.mark(2);
+		int cmf = in.read();
+		int flg = in.read();
+		in.reset();
+
+		return cmf >= 0 && flg >= 0 && (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+	}
+}
@@ -0,0 +1,161 @@
+package com.brandmaker.mediapool.webhook.ingress;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.brandmaker.mediapool.webhook.TenantId;
+import com.brandmaker.mediapool.webhook.tenant.TenantContext;
+import com.brandmaker.mediapool.webhook.tenant.TenantDirectory;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * <p>Token bucket admission control per tenant.
+ *
+ * <p>All Media Pool instances share the one endpoint and the one processing queue, so the mass publish of one customer
+ * would delay the events of everybody else. Each tenant gets a bucket with a rate and a burst, requests beyond are
+ * rejected right away with "429 Too Many Requests" and a Retry-After header, which makes Media Pool retry later.
+ *
+ * <p>The buckets are kept in a concurrent map and are lock-free themselves: a bucket is a single {@link AtomicLong} holding
+ * the theoretical arrival time of the next request (generic cell rate algorithm), which is advanced by compare-and-set.
+ * Up to <code>max-tenants</code> tenants get their own bucket, any further ones share an overflow bucket.
+ * The limits of a tenant are taken from the {@link TenantDirectory} first, then from the admission settings.
+ *
+ * <p>Metrics: <code>mediapool.ingress.admission{tenant, result=admitted|rejected}</code>
+ *
+ * @author axel.amthor
+ *
+ */
+public class TenantAdmission {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TenantAdmission.class);
+
+	private static final String OVERFLOW = "overflow";
+
+	@Autowired
+	private AdmissionProperties properties;
+
+	@Autowired
+	private TenantDirectory tenantDirectory;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private final Map<TenantId, AdmissionProperties.TenantLimit> limits = new HashMap<TenantId, AdmissionProperties.TenantLimit>();
+	private final ConcurrentHashMap<TenantId, TokenBucket> buckets = new ConcurrentHashMap<TenantId, TokenBucket>();
+	private TokenBucket overflow;
+
+	/**
+	 * One tenant's bucket
+	 */
+	static final class TokenBucket {
+
+		/** nanoseconds per request */
+		private final long interval;
+
+		/** how far the arrival time may run ahead of the clock, this is the burst */
+		private final long tolerance;
+
+		/** theoretical arrival time of the next request */
+		private final AtomicLong arrival;
+
+		private final Counter admitted;
+		private final Counter rejected;
+
+		TokenBucket(double rate, int burst, Counter admitted, Counter rejected) {
+			this.interval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0L;
+			this.tolerance = interval * (Math.max(1, burst) - 1);
+			this.arrival = new AtomicLong(System.nanoTime());
+			this.admitted = admitted;
+			this.rejected = rejected;
+		}
+
+		/**
+		 * @return 0, if the request is admitted, otherwise the nanoseconds until it would be
+		 */
+		long tryAcquire(long now) {
+
+			if ( interval == 0L ) {
+				admitted.increment();
+				return 0L;
+			}
+
+			while ( true ) {
+				long current = arrival.get();
+				long next = current - now > 0 ? current : now;
+
+				long wait = next - now - tolerance;
+				if ( wait > 0 ) {
+					rejected.increment();
+					return wait;
+				}
+
+				if ( arrival.compareAndSet(current, next + interval) ) {
+					admitted.increment();
+					return 0L;
+				}
+			}
+		}
+	}
+
+	@PostConstruct
+	public void init() {
+
+		for ( AdmissionProperties.TenantLimit limit : properties.getTenants() )
+			limits.put(new TenantId(limit.getCustomerId(), limit.getSystemId()), limit);
+
+		overflow = newBucket(OVERFLOW, properties.getRate(), properties.getBurst());
+
+		LOGGER.info("Admission control with " + properties.getRate() + " requests/sec and a burst of " + properties.getBurst()
+				+ " per tenant, " + limits.size() + " tenants with own limits");
+	}
+
+	/**
+	 * Take a token from the tenant's bucket
+	 *
+	 * @param tenant where the request comes from
+	 * @return 0, if the request is admitted, otherwise the seconds to wait before retrying
+	 */
+	public int admit(TenantId tenant) {
+
+		TokenBucket bucket = buckets.get(tenant);
+		if ( bucket == null )
+			bucket = buckets.size() < properties.getMaxTenants() ? buckets.computeIfAbsent(tenant, this::newBucket) : overflow;
+
+		long wait = bucket.tryAcquire(System.nanoTime());
+		if ( wait == 0L )
+			return 0;
+
+		LOGGER.debug("Tenant " + tenant + " over limit, retry in " + wait + " nsec");
+		return (int) Math.max(1L, TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1));
+	}
+
+	private TokenBucket newBucket(TenantId tenant) {
+
+		TenantContext context = tenantDirectory.find(tenant);
+		if ( context != null && context.hasRateLimit() )
+			return newBucket(tenant.toString(), context.getRate(), context.getBurst() >= 0 ? context.getBurst() : properties.getBurst());
+
+		AdmissionProperties.TenantLimit limit = limits.get(tenant);
+		if ( limit != null )
+			return newBucket(tenant.toString(), limit.getRate(), limit.getBurst());
+
+		return newBucket(tenant.toString(), properties.getRate(), properties.getBurst());
+	}
+
+	private TokenBucket newBucket(String tag, double rate, int burst) {
+		return new TokenBucket(rate, burst,
+				meterRegistry.counter("mediapool.ingress.admission", "tenant", tag, "result", "admitted"),
+				meterRegistry.counter("mediapool.ingress.admission", "tenant", tag, "result", "rejected"));
+	}
+}
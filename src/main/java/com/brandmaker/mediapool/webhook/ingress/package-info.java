@@ -0,0 +1,13 @@
+/**
+ * <h2>Media Pool Webhook Example Consumer</h2>
+ *
+ * <p>The software is protected by copyright laws and international copyright agreements,
+ * as well as other intellectual property laws and agreements. 
+ * The use of the software is done at your own risk. The manufacturer and developer accepts no
+ * liability for any damages, either as direct or indirect consequence of the use or abuse of
+ * this software by the end-user.
+ *
+ * <p>All rights reserved. Software Copyright © 2019 - 2020, BrandMaker GmbH, Karlsruhe, Germany.
+ *
+ */
+package com.brandmaker.mediapool.webhook.ingress;
\ No newline at end of file
@@ -0,0 +1,34 @@
+package com.brandmaker.mediapool.webhook.recorder;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configure the traffic recorder, which is only active with <code>spring.application.recorder.enabled: true</code>
+ *
+ * @author axel.amthor
+ *
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.application.recorder.enabled", havingValue = "true")
+public class RecorderConfig {
+
+	@Bean(initMethod = "start", destroyMethod = "stop")
+	public TrafficRecorder trafficRecorder() {
+		return new TrafficRecorder();
+	}
+
+	/**
+	 * Only the hook endpoints are recorded
+	 */
+	@Bean
+	public FilterRegistrationBean<TrafficRecorder> trafficRecorderRegistration() {
+
+		FilterRegistrationBean<TrafficRecorder> registration = new FilterRegistrationBean<TrafficRecorder>(trafficRecorder());
+		registration.addUrlPatterns("/hook", "/hook/*");
+
+		return registration;
+	}
+}
@@ -0,0 +1,148 @@
+package com.brandmaker.mediapool.webhook.recorder;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p>One webhook request of a traffic recording, as written by the {@link TrafficRecorder}.
+ *
+ * <p>A recording is a gzip compressed stream of
+ * <pre>
+ * header: "MPWR", int version, long start of the recording in epoch millis
+ * record: long nanoseconds since the start, UTF path, UTF Content-Encoding or "", int length, raw request body
+ * </pre>
+ * The body is kept as it came over the wire, so compressed requests are replayed compressed.
+ *
+ * @author axel.amthor
+ *
+ */
+public final class TrafficRecord {
+
+	private static final int MAGIC = 0x4d505752; // "MPWR"
+	private static final int VERSION = 1;
+
+	private final long offset;
+	private final String path;
+	private final String contentEncoding;
+	private final byte[] body;
+
+	public TrafficRecord(long offset, String path, String contentEncoding, byte[] body) {
+		this.offset = offset;
+		this.path = path;
+		this.contentEncoding = contentEncoding;
+		this.body = body;
+	}
+
+	/**
+	 * @return nanoseconds since the start of the recording
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return request URI without the query
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return value of the Content-Encoding header, null if there was none
+	 */
+	public String getContentEncoding() {
+		return contentEncoding;
+	}
+
+	/**
+	 * @return raw request body
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+
+	static void writeHeader(DataOutputStream out, long startMillis) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(startMillis);
+	}
+
+	void writeTo(DataOutputStream out) throws IOException {
+		out.writeLong(offset);
+		out.writeUTF(path);
+		out.writeUTF(contentEncoding != null ? contentEncoding : "");
+		out.writeInt(body.length);
+		out.write(body);
+	}
+
+	/**
+	 * Sequential reader of a recording
+	 */
+	public static final class Reader implements AutoCloseable {
+
+		private final DataInputStream in;
+		private final long startMillis;
+
+		/**
+		 * @param in the recording, as written by the {@link TrafficRecorder}
+		 * @throws IOException if this is not a recording
+		 */
+		public Reader(InputStream in) throws IOException {
+
+			this.in = new DataInputStream(new GZIPInputStream(in, 65536));
+
+			if ( this.in.readInt() != MAGIC )
+				throw new IOException("not a traffic recording");
+
+			int version = this.in.readInt();
+			if ( version != VERSION )
+				throw new IOException("unsupported traffic recording version " + version);
+
+			startMillis = this.in.readLong();
+		}
+
+		/**
+		 * @return epoch millis of the start of the recording
+		 */
+		public long getStartMillis() {
+			return startMillis;
+		}
+
+		/**
+		 * @return the next record, null at the end of the recording
+		 * @throws IOException if the recording cannot be read
+		 */
+		public TrafficRecord next() throws IOException {
+
+			long offset;
+			try {
+				offset = in.readLong();
+			}
+			catch ( EOFException e ) {
+				return null;
+			}
+
+			try {
+				String path = in.readUTF();
+				String contentEncoding = in.readUTF();
+				byte[] body = new byte[in.readInt()];
+				in.readFully(body);
+
+				return new TrafficRecord(offset, path, contentEncoding.isEmpty() ? null : contentEncoding, body);
+			}
+			catch ( EOFException e ) {
+				// the recorder did not get the chance to write the last record completely
+				return null;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package com.brandmaker.mediapool.webhook.recorder;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * <p>Records the webhook requests with their timing into a compact file, so a production burst can be replayed in a test
+ * environment with the real event mix.
+ *
+ * <p>The filter sits in front of the hook controller and copies the raw request body while the controller reads it. After
+ * the request is done, the record is appended to the recording with the time of arrival. See {@link TrafficRecord} for the
+ * format. Recording stops when <code>max-size</code> bytes of request bodies have been written.
+ *
+ * <p>Switched on with <code>spring.application.recorder.enabled: true</code>, each start of the application writes a new
+ * file <code>hook-yyyyMMdd-HHmmss.rec</code> to the recorder directory.
+ *
+ * @author axel.amthor
+ *
+ */
+public class TrafficRecorder extends OncePerRequestFilter {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TrafficRecorder.class);
+
+	private static final long FLUSH_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+	@Value("${spring.application.recorder.directory:./recordings/}")
+	private String directory;
+
+	/** max number of body bytes to record */
+	@Value("${spring.application.recorder.max-size:1073741824}")
+	private long maxSize;
+
+	/** the recording, null when stopped; guarded by this */
+	private DataOutputStream out;
+	private Path file;
+	private long startNanos;
+	private long written;
+	private long lastFlush;
+
+	/**
+	 * Copies everything read from the request
+	 */
+	private static final class RecordingInputStream extends ServletInputStream {
+
+		private final ServletInputStream in;
+		private final ByteArrayOutputStream copy;
+
+		RecordingInputStream(ServletInputStream in, int contentLength) {
+			this.in = in;
+			this.copy = new ByteArrayOutputStream(contentLength > 0 ? contentLength : 8192);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if ( b >= 0 )
+				copy.write(b);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = in.read(b, off, len);
+			if ( n > 0 )
+				copy.write(b, off, n);
+			return n;
+		}
+
+		@Override
+		public boolean isFinished() {
+			return in.isFinished();
+		}
+
+		@Override
+		public boolean isReady() {
+			return in.isReady();
+		}
+
+		@Override
+		public void setReadListener(ReadListener readListener) {
+			in.setReadListener(readListener);
+		}
+
+		/**
+		 * @return the whole body, including what the controller did not read
+		 */
+		byte[] drain() throws IOException {
+			byte[] buffer = new byte[8192];
+			while ( read(buffer, 0, buffer.length) >= 0 )
+				;
+			return copy.toByteArray();
+		}
+	}
+
+	/**
+	 * Hands the recording stream to the controller
+	 */
+	private static final class RecordingRequest extends HttpServletRequestWrapper {
+
+		private RecordingInputStream stream;
+
+		RecordingRequest(HttpServletRequest request) {
+			super(request);
+		}
+
+		@Override
+		public ServletInputStream getInputStream() throws IOException {
+			if ( stream == null )
+				stream = new RecordingInputStream(super.getInputStream(), getContentLength());
+			return stream;
+		}
+	}
+
+	/**
+	 * Open a new recording. This is the init method of the bean, the servlet container would call a
+	 * <code>@PostConstruct</code> method of a filter a second time.
+	 */
+	public void start() throws IOException {
+
+		Path dir = Paths.get(directory);
+		Files.createDirectories(dir);
+
+		file = dir.resolve("hook-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".rec");
+		out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file), 65536, true), 65536));
+
+		startNanos = System.nanoTime();
+		lastFlush = startNanos;
+		TrafficRecord.writeHeader(out, System.currentTimeMillis());
+
+		LOGGER.warn("Recording webhook requests to " + file.toAbsolutePath());
+	}
+
+	public synchronized void stop() {
+
+		if ( out == null )
+			return;
+
+		try {
+			out.close();
+		}
+		catch ( IOException e ) {
+			LOGGER.error("Cannot close recording " + file, e);
+		}
+		out = null;
+
+		LOGGER.info("Recording " + file.toAbsolutePath() + " closed with " + written + " bytes of requests");
+	}
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return !"POST".equals(request.getMethod());
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+
+		long arrival = System.nanoTime();
+		RecordingRequest recordingRequest = new RecordingRequest(request);
+
+		try {
+			filterChain.doFilter(recordingRequest, response);
+		}
+		finally {
+			RecordingInputStream stream = (RecordingInputStream) recordingRequest.getInputStream();
+			record(new TrafficRecord(arrival - startNanos, request.getRequestURI(), request.getHeader(HttpHeaders.CONTENT_ENCODING), stream.drain()));
+		}
+	}
+
+	private synchronized void record(TrafficRecord record) {
+
+		if ( out == null )
+			return;
+
+		try {
+			record.writeTo(out);
+			written += record.getBody().length;
+
+			long now = System.nanoTime();
+			if ( now - lastFlush > FLUSH_INTERVAL ) {
+				// the file stays readable up to here, even if we do not get the chance to close it
+				out.flush();
+				lastFlush = now;
+			}
+		}
+		catch ( IOException e ) {
+			LOGGER.error("Cannot write to recording " + file + ", recording stopped", e);
+			stop();
+			return;
+		}
+
+		if ( written >= maxSize ) {
+			LOGGER.warn("Recording size limit of " + maxSize + " bytes reached");
+			stop();
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package com.brandmaker.mediapool.webhook.rest.controller;
+
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import com.brandmaker.mediapool.queue.DeadLetterReplayer;
+
+/**
+ * <p>Admin endpoint of the dead letters, the events which could not be processed
+ *
+ * <p>Requires the admin token, see <code>spring.application.admin.token</code>. Closed if no token is configured.
+ *
+ * @see DeadLetterReplayer
+ *
+ * @author axel.amthor
+ *
+ */
+public interface DeadLetterController {
+
+	/**
+	 * <p>the rest endpoint is "/admin/dead-letters"
+	 *
+	 * @return number of dead letters and the running or previous replay
+	 */
+	@GetMapping(
+			path="/admin/dead-letters",
+			produces="application/json")
+	Map<String, Object> status();
+
+	/**
+	 * <p>Queue the dead letters to their lanes again, in the background
+	 * <p>the rest endpoint is "/admin/dead-letters/replay"
+	 *
+	 * @param limit max number of dead letters to replay, all if not given
+	 * @param rate dead letters per second, the configured rate if not given
+	 * @return the started replay, 409 if a replay is running already
+	 */
+	@PostMapping(
+			path="/admin/dead-letters/replay",
+			produces="application/json")
+	@ResponseStatus(HttpStatus.ACCEPTED)
+	DeadLetterReplayer.Replay replay(
+			@RequestParam(name="limit", required=false, defaultValue="0") int limit,
+			@RequestParam(name="rate", required=false, defaultValue="0") double rate);
+
+	/**
+	 * <p>Stop the running replay, the dead letters not replayed yet are kept
+	 * <p>the rest endpoint is "/admin/dead-letters/replay"
+	 *
+	 * @return the stopped replay, 404 if none is running
+	 */
+	@DeleteMapping(
+			path="/admin/dead-letters/replay",
+			produces="application/json")
+	DeadLetterReplayer.Replay stop();
+}
@@ -0,0 +1,74 @@
+package com.brandmaker.mediapool.webhook.rest.controller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.jms.JMSException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.brandmaker.mediapool.queue.DeadLetterReplayer;
+import com.brandmaker.mediapool.queue.EventRetries;
+
+import io.swagger.v3.oas.annotations.tags.Tag;
+
+@RestController
+@Tag(name="Dead letters")
+public class DeadLetterControllerImpl implements DeadLetterController {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DeadLetterController.class);
+
+	@Autowired
+	private DeadLetterReplayer replayer;
+
+	@Autowired
+	private EventRetries retries;
+
+	/* (non-Javadoc)
+	 * @see com.brandmaker.mediapool.webhook.rest.controller.DeadLetterController#status()
+	 */
+	@Override
+	public Map<String, Object> status() {
+
+		Map<String, Object> status = new LinkedHashMap<String, Object>();
+		status.put("queue", retries.getDeadLetterQueue());
+		try {
+			status.put("deadLetters", replayer.countDeadLetters());
+		}
+		catch ( JMSException e ) {
+			LOGGER.error("Cannot browse the dead letters", e);
+			throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "(12) cannot browse the dead letters", e);
+		}
+		status.put("replay", replayer.getReplay());
+		return status;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brandmaker.mediapool.webhook.rest.controller.DeadLetterController#replay(int, double)
+	 */
+	@Override
+	public DeadLetterReplayer.Replay replay(int limit, double rate) {
+
+		DeadLetterReplayer.Replay replay = replayer.start(limit, rate);
+		if ( replay == null )
+			throw new ResponseStatusException(HttpStatus.CONFLICT, "(13) a replay is running already");
+		return replay;
+	}
+
+	/* (non-Javadoc)
+	 * @see com.brandmaker.mediapool.webhook.rest.controller.DeadLetterController#stop()
+	 */
+	@Override
+	public DeadLetterReplayer.Replay stop() {
+
+		DeadLetterReplayer.Replay replay = replayer.stop();
+		if ( replay == null )
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "(14) no replay is running");
+		return replay;
+	}
+}
@@ -1,15 +1,25 @@
 package com.brandmaker.mediapool.webhook.rest.controller;
 
+import java.io.InputStream;
+
 import javax.servlet.http.HttpServletResponse;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
+import com.brandmaker.mediapool.webhook.tenant.TenantContext;
+
 import io.swagger.v3.oas.annotations.OpenAPIDefinition;
 import io.swagger.v3.oas.annotations.info.Contact;
 import io.swagger.v3.oas.annotations.info.Info;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.parameters.RequestBody;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
 /**
@@ -28,8 +38,10 @@ public interface HookController {
 	 * 
 	 * @return Response message object with detailed status and error code
 	 * 
-	 * @param requestBody The auto-converted POST data. If this can not be converted to the HookRequestBody PoJo, an excpetion will be thrown
+	 * @param requestBody The raw POST data stream. It has the structure of the HookRequestBody PoJo and is tokenized in a single pass, 
+	 * 		if it is not well formed, an excpetion will be thrown
 	 * @see {@link HookRequestBody}
+	 * @param contentEncoding The body may be compressed with <code>gzip</code> or <code>deflate</code>
 	 * @param httpResponse The http reaponse object
 	 * 
 	 */
@@ -38,6 +50,37 @@ public interface HookController {
 			consumes="application/json", 
 			produces="application/json")
 	@ResponseStatus(value=HttpStatus.ACCEPTED, reason="Request accepted")
-	Response post(@RequestBody HookRequestBody requestBody, HttpServletResponse httpResponse);
+	Response post(
+			@RequestBody(content=@Content(mediaType="application/json", schema=@Schema(implementation=HookRequestBody.class))) InputStream requestBody, 
+			@RequestHeader(name=HttpHeaders.CONTENT_ENCODING, required=false) String contentEncoding,
+			HttpServletResponse httpResponse);
+
+	/**
+	 * <p>request validator method for the routes of a single tenant
+	 * <p>the rest endpoint is "/hook/{customerId}/{systemId}". The tenant has to be listed in the tenant directory, 
+	 * otherwise the request is rejected before the body is read.
+	 * 
+	 * @return Response message object with detailed status and error code
+	 * 
+	 * @param customerId customer ID of the Media Pool instance
+	 * @param systemId system ID of the Media Pool instance
+	 * @param requestBody The raw POST data stream, see {@link #post(InputStream, String, HttpServletResponse)}
+	 * @param contentEncoding The body may be compressed with <code>gzip</code> or <code>deflate</code>
+	 * @param tenant The settings of the tenant, resolved from the route
+	 * @param httpResponse The http reaponse object
+	 * 
+	 */
+	@PostMapping(
+			path="/hook/{customerId}/{systemId}", 
+			consumes="application/json", 
+			produces="application/json")
+	@ResponseStatus(value=HttpStatus.ACCEPTED, reason="Request accepted")
+	Response post(
+			@PathVariable("customerId") String customerId,
+			@PathVariable("systemId") String systemId,
+			@RequestBody(content=@Content(mediaType="application/json", schema=@Schema(implementation=HookRequestBody.class))) InputStream requestBody, 
+			@RequestHeader(name=HttpHeaders.CONTENT_ENCODING, required=false) String contentEncoding,
+			@RequestAttribute(TenantContext.ATTRIBUTE) TenantContext tenant,
+			HttpServletResponse httpResponse);
 
 }
@@ -1,11 +1,21 @@
 package com.brandmaker.mediapool.webhook.rest.controller;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.LoggerFactory;
 
+import com.brandmaker.mediapool.utils.LimitedInputStream;
+import com.brandmaker.mediapool.webhook.MediaPoolEventParser;
+import com.brandmaker.mediapool.webhook.WebhookException;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
@@ -30,12 +40,109 @@ public class HookRequestBody {
 	private String data;
 	private String signature;
 
+	/** UTF-8 bytes of data, the input of the signature, encoded once on demand */
+	private byte[] dataBytes;
+
+	/**
+	 * <p>Read the request body from the raw request stream, without a limit of the <code>data</code> property.
+	 * 
+	 * @see #read(InputStream, long)
+	 */
+	public static HookRequestBody read(InputStream in) throws WebhookException, IOException {
+		return read(in, -1L);
+	}
+
+	/**
+	 * <p>Read the request body from the raw request stream.
+	 * 
+	 * <p>This is a plain token scan of the two properties, the <code>data</code> string is not parsed any further here.
+	 * But it is held as a whole: as string for the event parser and, once the signature is verified, as its UTF-8 bytes
+	 * again. So its size is checked against the limit before either is built.
+	 * 
+	 * @param in the request body stream
+	 * @param maxDataSize max number of UTF-8 bytes of the <code>data</code> property, negative for no limit
+	 * @return the request body
+	 * @throws WebhookException if the body is not well formed or the data property is missing
+	 * @throws LimitedInputStream.LimitExceededException if the data property is larger than allowed
+	 * @throws IOException if the stream cannot be read
+	 */
+	public static HookRequestBody read(InputStream in, long maxDataSize) throws WebhookException, IOException {
+
+		HookRequestBody body = new HookRequestBody();
+
+		try ( JsonParser parser = MediaPoolEventParser.getJsonFactory().createParser(in) ) {
+
+			if ( parser.nextToken() != JsonToken.START_OBJECT )
+				throw new WebhookException("(0) Request body not well formed");
+
+			while ( parser.nextToken() == JsonToken.FIELD_NAME ) {
+
+				String name = parser.getCurrentName();
+				parser.nextToken();
+
+				if ( "data".equals(name) ) {
+					if ( maxDataSize >= 0 && utf8Length(parser, maxDataSize) > maxDataSize )
+						throw new LimitedInputStream.LimitExceededException(maxDataSize);
+					body.setData(parser.getValueAsString());
+				}
+				else if ( "signature".equals(name) )
+					body.setSignature(parser.getValueAsString());
+				else
+					parser.skipChildren();
+			}
+		}
+		catch ( JsonParseException e ) {
+			throw new WebhookException("(0) Request body not well formed: " + e.getOriginalMessage());
+		}
+
+		if ( body.getData() == null )
+			throw new WebhookException("(1) Data object not well formed");
+
+		return body;
+	}
+
+	/**
+	 * Number of UTF-8 bytes of the current string token, counted on the text buffer of the parser. Counting stops beyond the limit.
+	 */
+	private static long utf8Length(JsonParser parser, long limit) throws IOException {
+
+		if ( parser.getCurrentToken() != JsonToken.VALUE_STRING )
+			return 0L;
+
+		int length = parser.getTextLength();
+		if ( length > limit )
+			return length;
+		if ( (long) length * 3 <= limit )
+			return length;
+
+		char[] text = parser.getTextCharacters();
+		int end = parser.getTextOffset() + length;
+		long bytes = 0L;
+		for ( int i = parser.getTextOffset(); i < end && bytes <= limit; i++ ) {
+			char c = text[i];
+			// a surrogate pair is 4 bytes, 2 for each half
+			bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+		}
+		return bytes;
+	}
+
 	public String getData() {
 		return data;
 	}
 
 	public void setData(String data) {
 		this.data = data;
+		this.dataBytes = null;
+	}
+
+	/**
+	 * @return the UTF-8 bytes of the data as signed by Media Pool, read only
+	 */
+	@JsonIgnore
+	public ByteBuffer getDataBytes() {
+		if ( dataBytes == null )
+			dataBytes = data != null ? data.getBytes(StandardCharsets.UTF_8) : new byte[0];
+		return ByteBuffer.wrap(dataBytes).asReadOnlyBuffer();
 	}
 
 	public String getSignature() {
@@ -0,0 +1,45 @@
+package com.brandmaker.mediapool.webhook.tenant;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import com.brandmaker.mediapool.webhook.TenantRegistry;
+
+/**
+ * Configure the tenant directory, the tenant registry and the resolution of the tenant routes
+ *
+ * @author axel.amthor
+ *
+ */
+@Configuration
+public class TenantConfig implements WebMvcConfigurer {
+
+	@Bean
+	@ConfigurationProperties(prefix = "spring.application")
+	public TenantProperties tenantProperties() {
+		return new TenantProperties();
+	}
+
+	@Bean
+	public TenantRegistry tenantRegistry() {
+		return new TenantRegistry();
+	}
+
+	@Bean
+	public TenantDirectory tenantDirectory() {
+		return new TenantDirectory();
+	}
+
+	@Bean
+	public TenantContextInterceptor tenantContextInterceptor() {
+		return new TenantContextInterceptor();
+	}
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(tenantContextInterceptor()).addPathPatterns("/hook/*/*");
+	}
+}
@@ -0,0 +1,115 @@
+package com.brandmaker.mediapool.webhook.tenant;
+
+import com.brandmaker.mediapool.webhook.ChannelMatcher;
+import com.brandmaker.mediapool.webhook.MediaPoolEventParser;
+import com.brandmaker.mediapool.webhook.SignatureVerifier;
+import com.brandmaker.mediapool.webhook.TenantId;
+
+/**
+ * <p>Everything we need to know about a tenant to take its requests and to process its events, resolved once by the
+ * {@link TenantDirectory}.
+ *
+ * <p>The default context carries the settings of <code>spring.application.system</code> and is used for all tenants which
+ * are not listed in the directory.
+ *
+ * @author axel.amthor
+ *
+ */
+public final class TenantContext {
+
+	/** request attribute of the context resolved from the route */
+	public static final String ATTRIBUTE = "com.brandmaker.mediapool.webhook.tenant.TenantContext";
+
+	private final TenantId id;
+	private final boolean enabled;
+	private final ChannelMatcher channelMatcher;
+	private final MediaPoolEventParser eventParser;
+	private final SignatureVerifier signatureVerifier;
+	private final double rate;
+	private final int burst;
+	private final String basepath;
+
+	/**
+	 * @param rate requests per second, negative to use the admission defaults
+	 * @param burst max requests at once, negative to use the admission defaults
+	 */
+	TenantContext(TenantId id, boolean enabled, ChannelMatcher channelMatcher, SignatureVerifier signatureVerifier,
+			double rate, int burst, String basepath) {
+		this.id = id;
+		this.enabled = enabled;
+		this.channelMatcher = channelMatcher;
+		this.eventParser = new MediaPoolEventParser(channelMatcher);
+		this.signatureVerifier = signatureVerifier;
+		this.rate = rate;
+		this.burst = burst;
+		this.basepath = basepath;
+	}
+
+	/**
+	 * @return the tenant, {@link TenantId#UNKNOWN} for the default context
+	 */
+	public TenantId getId() {
+		return id;
+	}
+
+	/**
+	 * @return false, if requests of this tenant are rejected
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return the channels we are managing for this tenant
+	 */
+	public ChannelMatcher getChannelMatcher() {
+		return channelMatcher;
+	}
+
+	/**
+	 * @return parser which skips the events of other channels
+	 */
+	public MediaPoolEventParser getEventParser() {
+		return eventParser;
+	}
+
+	/**
+	 * @return verifier with the public key of this tenant
+	 */
+	public SignatureVerifier getSignatureVerifier() {
+		return signatureVerifier;
+	}
+
+	/**
+	 * @return true, if this tenant has its own rate limit
+	 */
+	public boolean hasRateLimit() {
+		return rate >= 0;
+	}
+
+	/**
+	 * @return requests per second, negative if not set
+	 */
+	public double getRate() {
+		return rate;
+	}
+
+	/**
+	 * @return max requests at once, negative if not set
+	 */
+	public int getBurst() {
+		return burst;
+	}
+
+	/**
+	 * @return directory of the local copies of this tenant's assets
+	 */
+	public String getBasepath() {
+		return basepath;
+	}
+
+	@Override
+	public String toString() {
+		return id + (enabled ? "" : " (disabled)") + " channels " + channelMatcher;
+	}
+}
@@ -0,0 +1,73 @@
+package com.brandmaker.mediapool.webhook.tenant;
+
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import com.brandmaker.mediapool.webhook.TenantId;
+
+/**
+ * <p>Resolves the tenant of a <code>/hook/{customerId}/{systemId}</code> route right after the URL has been matched.
+ *
+ * <p>Requests of tenants which are not listed in the {@link TenantDirectory} are answered with 404, requests of disabled
+ * tenants with 403. In both cases the body is not read at all. The context of all others is put into the request
+ * attribute {@link TenantContext#ATTRIBUTE} for the controller.
+ *
+ * @author axel.amthor
+ *
+ */
+public class TenantContextInterceptor extends HandlerInterceptorAdapter {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TenantContextInterceptor.class);
+
+	public static final String CUSTOMER_ID = "customerId";
+	public static final String SYSTEM_ID = "systemId";
+
+	@Autowired
+	private TenantDirectory tenantDirectory;
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+
+		@SuppressWarnings("unchecked")
+		Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+		if ( variables == null || !variables.containsKey(CUSTOMER_ID) || !variables.containsKey(SYSTEM_ID) )
+			return true;
+
+		request.setAttribute(TenantContext.ATTRIBUTE, resolve(tenantDirectory, variables.get(CUSTOMER_ID), variables.get(SYSTEM_ID)));
+
+		return true;
+	}
+
+	/**
+	 * Look up the tenant of a route
+	 *
+	 * @return the context of the tenant
+	 * @throws ResponseStatusException if the tenant is not listed or disabled
+	 */
+	public static TenantContext resolve(TenantDirectory tenantDirectory, String customerId, String systemId) {
+
+		TenantId tenant = new TenantId(customerId, systemId);
+		TenantContext context = tenantDirectory.find(tenant);
+
+		if ( context == null ) {
+			LOGGER.warn("Request of unknown tenant " + tenant + " rejected");
+			throw new ResponseStatusException(HttpStatus.NOT_FOUND, "(10) unknown tenant " + tenant);
+		}
+		if ( !context.isEnabled() ) {
+			LOGGER.warn("Request of disabled tenant " + tenant + " rejected");
+			throw new ResponseStatusException(HttpStatus.FORBIDDEN, "(11) tenant " + tenant + " disabled");
+		}
+
+		return context;
+	}
+}
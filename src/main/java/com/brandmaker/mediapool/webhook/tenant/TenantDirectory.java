@@ -0,0 +1,117 @@
+package com.brandmaker.mediapool.webhook.tenant;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+
+import com.brandmaker.mediapool.webhook.ChannelMatcher;
+import com.brandmaker.mediapool.webhook.SignatureVerifier;
+import com.brandmaker.mediapool.webhook.TenantId;
+
+/**
+ * <p>The tenants we know, with their settings resolved once at startup.
+ *
+ * <p>Tenants posting to <code>/hook/{customerId}/{systemId}</code> have to be listed here, any other tenant is rejected on
+ * these routes. Requests on <code>/hook</code> and queued events of tenants which are not listed get the
+ * {@link #getDefault() default context} with the settings of <code>spring.application.system</code>.
+ *
+ * @author axel.amthor
+ *
+ */
+public class TenantDirectory {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(TenantDirectory.class);
+
+	@Value("${spring.application.system.signature-algorithm:SHA256withRSA}")
+	private String signatureAlgorithm;
+
+	@Value("${spring.application.system.verify-signature:false}")
+	private boolean verifySignature;
+
+	/** directory where to store the local copies of the assets */
+	@Value("${spring.application.system.basepath}")
+	private String basepath;
+
+	@Autowired
+	private TenantProperties properties;
+
+	/** the channels of spring.application.system */
+	@Autowired
+	private ChannelMatcher channelMatcher;
+
+	/** the public key of spring.application.system */
+	@Autowired
+	private SignatureVerifier signatureVerifier;
+
+	private final Map<TenantId, TenantContext> tenants = new HashMap<TenantId, TenantContext>();
+	private TenantContext defaultContext;
+
+	@PostConstruct
+	public void init() {
+
+		defaultContext = new TenantContext(TenantId.UNKNOWN, true, channelMatcher, signatureVerifier, -1, -1, basepath);
+		LOGGER.info("watching channels: " + channelMatcher.toString());
+
+		for ( TenantProperties.Tenant tenant : properties.getTenants() ) {
+
+			TenantId id = new TenantId(tenant.getCustomerId(), tenant.getSystemId());
+
+			TenantContext context = new TenantContext(id, tenant.isEnabled(),
+					tenant.getChannels() != null ? ChannelMatcher.of(tenant.getChannels()) : channelMatcher,
+					tenant.getPublickey() != null ? new SignatureVerifier(tenant.getPublickey(), signatureAlgorithm, verifySignature) : signatureVerifier,
+					tenant.getRate() != null ? tenant.getRate() : -1,
+					tenant.getBurst() != null ? tenant.getBurst() : -1,
+					tenant.getBasepath() != null ? tenant.getBasepath() : basepath);
+
+			if ( tenants.put(id, context) != null )
+				throw new IllegalStateException("Invalid configuration: tenant " + id + " is listed twice");
+
+			LOGGER.info("Tenant " + context);
+		}
+	}
+
+	/**
+	 * @return true, if no tenants are listed
+	 */
+	public boolean isEmpty() {
+		return tenants.isEmpty();
+	}
+
+	/**
+	 * @return the context of a listed tenant, null if the tenant is not listed
+	 */
+	public TenantContext find(TenantId tenant) {
+		return tenants.get(tenant);
+	}
+
+	/**
+	 * @return the context of the tenant, the default context if the tenant is not listed
+	 */
+	public TenantContext resolve(TenantId tenant) {
+		TenantContext context = tenants.get(tenant);
+		return context != null ? context : defaultContext;
+	}
+
+	/**
+	 * Resolve the tenant of a data document, which is only scanned if there are listed tenants at all
+	 *
+	 * @param data the <code>data</code> property of a request
+	 * @return the context of the tenant, the default context if the tenant is not listed
+	 */
+	public TenantContext resolve(String data) {
+		return tenants.isEmpty() ? defaultContext : resolve(TenantId.fromData(data));
+	}
+
+	/**
+	 * @return the settings of <code>spring.application.system</code>
+	 */
+	public TenantContext getDefault() {
+		return defaultContext;
+	}
+}
@@ -0,0 +1,117 @@
+package com.brandmaker.mediapool.webhook.tenant;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>The tenants of the {@link TenantDirectory}, bound from <code>spring.application.tenants</code>.
+ *
+ * <pre>
+ * tenants:
+ *   - customer-id: aaa-bbb-ccc
+ *     system-id: 123-456-789
+ *     enabled: true
+ *     channels: SHARE,PRINT
+ *     publickey: MIIBIjANBgkqhkiG9w0BAQEFAAOCAQ8AMIIBCgKCAQEA...
+ *     rate: 50
+ *     burst: 200
+ *     basepath: ./assets/
+ * </pre>
+ * Everything but the IDs is optional, missing settings are taken from <code>spring.application.system</code> and the
+ * admission control.
+ *
+ * @author axel.amthor
+ *
+ */
+public class TenantProperties {
+
+	/**
+	 * Settings of one tenant
+	 */
+	public static class Tenant {
+
+		private String customerId;
+		private String systemId;
+		private boolean enabled = true;
+		private String channels;
+		private String publickey;
+		private Double rate;
+		private Integer burst;
+		private String basepath;
+
+		public String getCustomerId() {
+			return customerId;
+		}
+
+		public void setCustomerId(String customerId) {
+			this.customerId = customerId;
+		}
+
+		public String getSystemId() {
+			return systemId;
+		}
+
+		public void setSystemId(String systemId) {
+			this.systemId = systemId;
+		}
+
+		public boolean isEnabled() {
+			return enabled;
+		}
+
+		public void setEnabled(boolean enabled) {
+			this.enabled = enabled;
+		}
+
+		public String getChannels() {
+			return channels;
+		}
+
+		public void setChannels(String channels) {
+			this.channels = channels;
+		}
+
+		public String getPublickey() {
+			return publickey;
+		}
+
+		public void setPublickey(String publickey) {
+			this.publickey = publickey;
+		}
+
+		public Double getRate() {
+			return rate;
+		}
+
+		public void setRate(Double rate) {
+			this.rate = rate;
+		}
+
+		public Integer getBurst() {
+			return burst;
+		}
+
+		public void setBurst(Integer burst) {
+			this.burst = burst;
+		}
+
+		public String getBasepath() {
+			return basepath;
+		}
+
+		public void setBasepath(String basepath) {
+			this.basepath = basepath;
+		}
+	}
+
+	/** the known tenants */
+	private List<Tenant> tenants = new ArrayList<Tenant>();
+
+	public List<Tenant> getTenants() {
+		return tenants;
+	}
+
+	public void setTenants(List<Tenant> tenants) {
+		this.tenants = tenants;
+	}
+}
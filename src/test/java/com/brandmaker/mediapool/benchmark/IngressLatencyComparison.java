@@ -0,0 +1,126 @@
+package com.brandmaker.mediapool.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Side-by-side latency comparison of the Spring MVC hook endpoint and the non-blocking Netty endpoint under the same load.
+ *
+ * <p>The application has to run with both endpoints, i.e.
+ * <pre>
+ * java -jar webhook.consumer.jar --spring.application.ingress.mode=buffered --spring.application.ingress.server=netty
+ * </pre>
+ * Each endpoint gets the same number of requests with the same number of concurrent connections, one after the other.
+ * Latencies are measured on the client from sending the request to the complete response.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.brandmaker.mediapool.benchmark.IngressLatencyComparison \
+ *     -Dexec.args="http://localhost:8080/hook http://localhost:8081/hook 1000 20000 10"
+ * </pre>
+ * Arguments: endpoint URLs, concurrent requests (default 1000), requests per endpoint (default 20000), events per request (default 10)
+ *
+ * @author axel.amthor
+ *
+ */
+public class IngressLatencyComparison {
+
+	public static void main(String[] args) throws Exception {
+
+		List<String> urls = new ArrayList<String>();
+		List<Integer> numbers = new ArrayList<Integer>();
+		for ( String arg : args ) {
+			if ( arg.startsWith("http") )
+				urls.add(arg);
+			else
+				numbers.add(Integer.parseInt(arg));
+		}
+		if ( urls.isEmpty() )
+			urls = Arrays.asList("http://localhost:8080/hook", "http://localhost:8081/hook");
+
+		int concurrency = numbers.size() > 0 ? numbers.get(0) : 1000;
+		int requests = numbers.size() > 1 ? numbers.get(1) : 20000;
+		int events = numbers.size() > 2 ? numbers.get(2) : 10;
+
+		String body = WebhookPayloads.body(WebhookPayloads.data(events), null);
+
+		System.out.println(String.format("%d requests with %d events each, %d concurrent", requests, events, concurrency));
+		System.out.println(String.format("%-32s %8s %8s %8s %8s %8s %8s %10s %8s", "endpoint", "p50", "p90", "p99", "p99.9", "max", "mean", "req/s", "errors"));
+
+		for ( String url : urls ) {
+			// warm up both sides, then measure
+			run(url, body, concurrency, Math.max(concurrency, requests / 10));
+			System.out.println(run(url, body, concurrency, requests));
+		}
+
+		System.exit(0);
+	}
+
+	/**
+	 * Fire the requests with at most <code>concurrency</code> of them in flight
+	 *
+	 * @return result line
+	 */
+	private static String run(String url, String body, int concurrency, int requests) throws Exception {
+
+		HttpClient client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.executor(Executors.newFixedThreadPool(4))
+				.connectTimeout(Duration.ofSeconds(30))
+				.build();
+
+		HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+				.header("Content-Type", "application/json")
+				.timeout(Duration.ofSeconds(60))
+				.POST(HttpRequest.BodyPublishers.ofString(body))
+				.build();
+
+		long[] latencies = new long[requests];
+		AtomicInteger errors = new AtomicInteger();
+		Semaphore inFlight = new Semaphore(concurrency);
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[requests];
+
+		long start = System.nanoTime();
+		for ( int n = 0; n < requests; n++ ) {
+
+			inFlight.acquire();
+			int index = n;
+			long sent = System.nanoTime();
+
+			futures[n] = client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+					.whenComplete((response, e) -> {
+						latencies[index] = System.nanoTime() - sent;
+						if ( e != null || response.statusCode() != 202 )
+							errors.incrementAndGet();
+						inFlight.release();
+					});
+		}
+		CompletableFuture.allOf(futures).handle((v, e) -> null).join();
+		long elapsed = System.nanoTime() - start;
+
+		Arrays.sort(latencies);
+		double mean = Arrays.stream(latencies).average().orElse(0);
+
+		return String.format("%-32s %8.2f %8.2f %8.2f %8.2f %8.2f %8.2f %10.0f %8d", url,
+				millis(percentile(latencies, 0.50)), millis(percentile(latencies, 0.90)), millis(percentile(latencies, 0.99)),
+				millis(percentile(latencies, 0.999)), millis(latencies[latencies.length - 1]), mean / 1e6,
+				requests / (elapsed / 1e9), errors.get());
+	}
+
+	private static long percentile(long[] sorted, double p) {
+		return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+}
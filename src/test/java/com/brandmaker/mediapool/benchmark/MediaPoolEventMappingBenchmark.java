@@ -0,0 +1,111 @@
+package com.brandmaker.mediapool.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+
+/**
+ * <p>Cost of mapping a single event between its object, JSON and map forms.
+ *
+ * <p>Each operation maps one event of a synthetic request. Run with the GC profiler (as done by {@link #main(String[])})
+ * to get the bytes allocated per event, <code>gc.alloc.rate.norm</code>.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.brandmaker.mediapool.benchmark.MediaPoolEventMappingBenchmark
+ * </pre>
+ *
+ * @author axel.amthor
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Thread)
+public class MediaPoolEventMappingBenchmark {
+
+	private static final int EVENTS = 1024;
+
+	private JSONObject[] requests;
+	private Map<String, Object>[] maps;
+	private MediaPoolEvent[] events;
+	private int next;
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setup() throws Exception {
+
+		WebhookPayloads.quietLogging();
+
+		JSONObject data = new JSONObject(WebhookPayloads.data(EVENTS));
+		JSONArray eventArray = data.getJSONArray("events");
+
+		requests = new JSONObject[EVENTS];
+		maps = new Map[EVENTS];
+		events = new MediaPoolEvent[EVENTS];
+
+		for ( int n = 0; n < EVENTS; n++ ) {
+			JSONObject request = eventArray.getJSONObject(n);
+			request.put(MediaPoolEvent.PROP_CUSTOMERID, data.getString(MediaPoolEvent.PROP_CUSTOMERID));
+			request.put(MediaPoolEvent.PROP_SYSTEMID, data.getString(MediaPoolEvent.PROP_SYSTEMID));
+			request.put(MediaPoolEvent.PROP_BASEURL, data.getString(MediaPoolEvent.PROP_BASEURL));
+
+			requests[n] = request;
+			events[n] = new MediaPoolEvent(request);
+			maps[n] = events[n].toMap();
+		}
+	}
+
+	private int next() {
+		return next = (next + 1) & (EVENTS - 1);
+	}
+
+	@Benchmark
+	public MediaPoolEvent fromJson() throws Exception {
+		return new MediaPoolEvent(requests[next()]);
+	}
+
+	@Benchmark
+	public MediaPoolEvent fromMap() throws Exception {
+		return new MediaPoolEvent(maps[next()]);
+	}
+
+	@Benchmark
+	public Map<String, Object> toMap() {
+		return events[next()].toMap();
+	}
+
+	@Benchmark
+	public JSONObject toJson() throws Exception {
+		return events[next()].toJson();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(MediaPoolEventMappingBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,140 @@
+package com.brandmaker.mediapool.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.brandmaker.mediapool.webhook.ChannelMatcher;
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+import com.brandmaker.mediapool.webhook.MediaPoolEventParser;
+import com.brandmaker.mediapool.webhook.rest.controller.HookRequestBody;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * <p>Compares the former tree based decoding of a webhook request with the single pass streaming parser.
+ *
+ * <p>Both variants start from the raw request bytes and end with the queue message map of each event.
+ * <code>filtered</code> is the streaming path as used by the ingress, which skips the events of foreign channels
+ * (every second event of the benchmark requests) without decoding them.
+ * Run with the GC profiler (as done by {@link #main(String[])}) to get the bytes allocated per operation,
+ * the <code>events</code> counter gives the events per second.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.brandmaker.mediapool.benchmark.MediaPoolEventParserBenchmark
+ * </pre>
+ *
+ * @author axel.amthor
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" })
+@State(Scope.Benchmark)
+public class MediaPoolEventParserBenchmark {
+
+	private static final String[] COPY_PROPS = { MediaPoolEvent.PROP_CUSTOMERID, MediaPoolEvent.PROP_SYSTEMID, MediaPoolEvent.PROP_BASEURL };
+
+	@Param({ "10", "1000", "100000" })
+	public int events;
+
+	private byte[] request;
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final MediaPoolEventParser parser = new MediaPoolEventParser();
+	private final MediaPoolEventParser filteringParser = new MediaPoolEventParser(ChannelMatcher.of(WebhookPayloads.CHANNELS));
+
+	/**
+	 * Counts the decoded events, reported as events per second
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	public static class EventCounter {
+
+		public long events;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			events = 0;
+		}
+	}
+
+	@Setup
+	public void setup() throws Exception {
+		WebhookPayloads.quietLogging();
+		request = WebhookPayloads.body(WebhookPayloads.data(events), null).getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * The former path: bind the body, build the data tree, copy the batch properties into each event tree and map it
+	 */
+	@Benchmark
+	public void tree(EventCounter counter, Blackhole bh) throws Exception {
+
+		HookRequestBody body = mapper.readValue(request, HookRequestBody.class);
+		JSONObject dataObject = new JSONObject(body.getData());
+		JSONArray eventArray = dataObject.getJSONArray("events");
+
+		for ( int n = 0; n < eventArray.length(); n++ ) {
+			JSONObject eventObject = eventArray.getJSONObject(n);
+			for ( String prop : COPY_PROPS ) {
+				if ( dataObject.has(prop) )
+					eventObject.put(prop, dataObject.getString(prop));
+			}
+			bh.consume(MediaPoolEvent.factory(eventObject).toMap());
+		}
+		counter.events += eventArray.length();
+	}
+
+	/**
+	 * The streaming path: scan the body, decode the events one by one and map them
+	 */
+	@Benchmark
+	public void streaming(EventCounter counter, Blackhole bh) throws Exception {
+
+		HookRequestBody body = HookRequestBody.read(new ByteArrayInputStream(request));
+		counter.events += parser.parse(body.getData(), event -> bh.consume(event.toMap()));
+	}
+
+	/**
+	 * The streaming path with the channel matcher of the ingress
+	 */
+	@Benchmark
+	public void filtered(EventCounter counter, Blackhole bh) throws Exception {
+
+		HookRequestBody body = HookRequestBody.read(new ByteArrayInputStream(request));
+		counter.events += filteringParser.parse(body.getData(), event -> bh.consume(event.toMap()));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(MediaPoolEventParserBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+
+		new Runner(opt).run();
+	}
+}
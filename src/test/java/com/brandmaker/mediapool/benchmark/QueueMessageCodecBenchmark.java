@@ -0,0 +1,219 @@
+package com.brandmaker.mediapool.benchmark;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQMapMessage;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.util.ByteSequence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.FileSystemUtils;
+
+import com.brandmaker.mediapool.queue.MediaPoolEventMessageConverter;
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+import com.brandmaker.mediapool.webhook.MediaPoolEventCodec;
+import com.brandmaker.mediapool.webhook.MediaPoolEventParser;
+import com.brandmaker.mediapool.webhook.TenantRegistry;
+
+/**
+ * <p>Compares the map form of the queue messages with the binary form of the {@link MediaPoolEventCodec}.
+ *
+ * <p>Each operation serializes or deserializes one event, including the marshalling of the message body as done by
+ * ActiveMQ when the message is sent or dispatched. Before the JMH run, {@link #main(String[])} prints the size of the
+ * message bodies and the growth of a persistent KahaDB store for the same number of events in either form. The size of
+ * the binary form is printed for events with their identity strings and for events registered in the {@link TenantRegistry}.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.brandmaker.mediapool.benchmark.QueueMessageCodecBenchmark
+ * </pre>
+ *
+ * @author axel.amthor
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Thread)
+public class QueueMessageCodecBenchmark {
+
+	private static final int EVENTS = 1024;
+
+	private MediaPoolEventMessageConverter converter;
+
+	private List<MediaPoolEvent> events;
+	private ByteSequence[] mapBodies;
+	private ByteSequence[] binaryBodies;
+	private int next;
+
+	@Setup
+	public void setup() throws Exception {
+
+		WebhookPayloads.quietLogging();
+		TenantRegistry tenants = WebhookPayloads.tenantRegistry();
+		converter = new MediaPoolEventMessageConverter(true, tenants);
+		events = events(EVENTS);
+		events.forEach(tenants::register);
+
+		mapBodies = new ByteSequence[EVENTS];
+		binaryBodies = new ByteSequence[EVENTS];
+		for ( int n = 0; n < EVENTS; n++ ) {
+			mapBodies[n] = mapMessage(events.get(n)).getContent();
+			binaryBodies[n] = binaryMessage(events.get(n)).getContent();
+		}
+	}
+
+	private int next() {
+		return next = (next + 1) & (EVENTS - 1);
+	}
+
+	@Benchmark
+	public ByteSequence serializeMap() throws Exception {
+		return mapMessage(events.get(next())).getContent();
+	}
+
+	@Benchmark
+	public ByteSequence serializeBinary() throws Exception {
+		return binaryMessage(events.get(next())).getContent();
+	}
+
+	@Benchmark
+	public Object deserializeMap() throws Exception {
+		ActiveMQMapMessage message = new ActiveMQMapMessage();
+		message.setContent(mapBodies[next()]);
+		message.setReadOnlyBody(true);
+		return converter.fromMessage(message);
+	}
+
+	@Benchmark
+	public Object deserializeBinary() throws Exception {
+		ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+		message.setContent(binaryBodies[next()]);
+		message.setReadOnlyBody(true);
+		return converter.fromMessage(message);
+	}
+
+	/**
+	 * The former message: the map of the event, marshalled as it is sent
+	 */
+	private static ActiveMQMessage mapMessage(MediaPoolEvent event) throws Exception {
+		ActiveMQMapMessage message = new ActiveMQMapMessage();
+		for ( Map.Entry<String, Object> entry : event.toMap().entrySet() )
+			message.setObject(entry.getKey(), entry.getValue());
+		message.storeContent();
+		return message;
+	}
+
+	private static ActiveMQMessage binaryMessage(MediaPoolEvent event) throws Exception {
+		ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+		message.writeBytes(MediaPoolEventCodec.encode(event));
+		message.storeContent();
+		return message;
+	}
+
+	/**
+	 * Decode the events of a synthetic request, as the ingress does
+	 */
+	static List<MediaPoolEvent> events(int count) throws Exception {
+		List<MediaPoolEvent> events = new ArrayList<MediaPoolEvent>(count);
+		new MediaPoolEventParser().parse(WebhookPayloads.data(count), events::add);
+		return events;
+	}
+
+	/**
+	 * Send the events to a persistent broker of its own and return the growth of its store in bytes
+	 */
+	private static long storeGrowth(List<MediaPoolEvent> events, boolean binary, TenantRegistry tenants) throws Exception {
+
+		File directory = Files.createTempDirectory("codec-benchmark").toFile();
+		BrokerService broker = new BrokerService();
+		broker.setBrokerName("codec-benchmark");
+		broker.setDataDirectoryFile(directory);
+		broker.setPersistent(true);
+		broker.setUseJmx(false);
+		broker.start();
+
+		try {
+			long before = broker.getPersistenceAdapter().size();
+
+			ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory("vm://codec-benchmark?create=false");
+			MediaPoolEventMessageConverter converter = new MediaPoolEventMessageConverter(binary, tenants);
+
+			Connection connection = factory.createConnection();
+			try {
+				Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+				MessageProducer producer = session.createProducer(session.createQueue("mediapool.queue"));
+				for ( MediaPoolEvent event : events )
+					producer.send(converter.toMessage(event, session));
+				session.commit();
+			}
+			finally {
+				connection.close();
+			}
+
+			return broker.getPersistenceAdapter().size() - before;
+		}
+		finally {
+			broker.stop();
+			broker.waitUntilStopped();
+			FileSystemUtils.deleteRecursively(directory);
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		WebhookPayloads.quietLogging();
+
+		TenantRegistry tenants = WebhookPayloads.tenantRegistry();
+
+		List<MediaPoolEvent> sample = events(10000);
+		long mapBytes = 0;
+		long stringBytes = 0;
+		long binaryBytes = 0;
+		for ( MediaPoolEvent event : sample ) {
+			mapBytes += mapMessage(event).getContent().getLength();
+			stringBytes += binaryMessage(event).getContent().getLength();
+			tenants.register(event);
+			binaryBytes += binaryMessage(event).getContent().getLength();
+		}
+
+		long mapStore = storeGrowth(sample, false, tenants);
+		long binaryStore = storeGrowth(sample, true, tenants);
+
+		System.out.println(String.format("%d events         %12s %12s %12s", sample.size(), "map", "strings", "binary"));
+		System.out.println(String.format("body bytes per event  %12d %12d %12d", mapBytes / sample.size(), stringBytes / sample.size(), binaryBytes / sample.size()));
+		System.out.println(String.format("store bytes per event %12d %12s %12d", mapStore / sample.size(), "", binaryStore / sample.size()));
+
+		Options opt = new OptionsBuilder()
+				.include(QueueMessageCodecBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,134 @@
+package com.brandmaker.mediapool.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.brandmaker.mediapool.webhook.MediaPoolEventParser;
+import com.brandmaker.mediapool.webhook.SignatureVerifier;
+import com.brandmaker.mediapool.webhook.rest.controller.HookRequestBody;
+
+/**
+ * <p>Puts the cost of the signature verification of a webhook request into relation to the decoding of the same request.
+ *
+ * <p><code>ingress</code> reads the request body and decodes all events into queue messages, <code>verify</code> checks the
+ * signature of the data document and <code>verifiedIngress</code> does both, as the hook endpoint does. The broker commit is
+ * not part of the ingress cost here, so the share of the verification is an upper bound.
+ * The benchmarks run on several threads to cover the per-thread signature instances.
+ *
+ * <p>The goal is a verification cost well below 5% of the ingress. Results with RSA-2048 on a single CPU:
+ * <ul>
+ * 		<li>1000 events: verify 244 &micro;s, ingress 5408 &micro;s, about 4.5%
+ * 		<li>10 events: verify 57 &micro;s, ingress 50 &micro;s, about 110%
+ * </ul>
+ *
+ * <p>The goal is <b>missed</b> for small requests, this is an accepted exception. Almost all of their verification is the
+ * single RSA public key operation, a fixed cost per request which does not depend on how the data is fed in. The algorithm
+ * is chosen by Media Pool, not by us. Measured against the full request, including the broker commit, the share is
+ * lower, but that is not what this benchmark shows.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.brandmaker.mediapool.benchmark.SignatureVerifierBenchmark
+ * </pre>
+ *
+ * @author axel.amthor
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xms2g", "-Xmx2g" })
+@Threads(4)
+@State(Scope.Benchmark)
+public class SignatureVerifierBenchmark {
+
+	private static final String ALGORITHM = "SHA256withRSA";
+
+	@Param({ "10", "1000" })
+	public int events;
+
+	private byte[] request;
+	private String data;
+	private String signature;
+
+	private SignatureVerifier verifier;
+	private final MediaPoolEventParser parser = new MediaPoolEventParser();
+
+	@Setup
+	public void setup() throws Exception {
+
+		WebhookPayloads.quietLogging();
+
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		KeyPair keyPair = generator.generateKeyPair();
+
+		data = WebhookPayloads.data(events);
+
+		Signature signer = Signature.getInstance(ALGORITHM);
+		signer.initSign(keyPair.getPrivate());
+		signer.update(data.getBytes(StandardCharsets.UTF_8));
+		signature = Base64.getEncoder().encodeToString(signer.sign());
+
+		request = WebhookPayloads.body(data, signature).getBytes(StandardCharsets.UTF_8);
+
+		verifier = new SignatureVerifier(Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded()), ALGORITHM, true);
+		if ( !verifier.verify(data, signature) )
+			throw new IllegalStateException("signature of the benchmark request does not verify");
+	}
+
+	@Benchmark
+	public boolean verify() {
+		return verifier.verify(data, signature);
+	}
+
+	@Benchmark
+	public int ingress(Blackhole bh) throws Exception {
+
+		HookRequestBody body = HookRequestBody.read(new ByteArrayInputStream(request));
+		return parser.parse(body.getData(), event -> bh.consume(event.toMap()));
+	}
+
+	@Benchmark
+	public int verifiedIngress(Blackhole bh) throws Exception {
+
+		HookRequestBody body = HookRequestBody.read(new ByteArrayInputStream(request));
+		if ( !verifier.verify(body.getDataBytes(), body.getSignature()) )
+			throw new IllegalStateException("signature does not verify");
+
+		return parser.parse(body.getData(), event -> bh.consume(event.toMap()));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(SignatureVerifierBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,207 @@
+package com.brandmaker.mediapool.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.json.JSONObject;
+
+import com.brandmaker.mediapool.webhook.recorder.TrafficRecord;
+
+/**
+ * <p>Replays a recording of the {@link com.brandmaker.mediapool.webhook.recorder.TrafficRecorder} against a running consumer,
+ * at the recorded pace or accelerated.
+ *
+ * <p>Each request is sent at its recorded offset divided by the speed factor, with the recorded path, Content-Encoding and
+ * raw body. When all requests are answered, the driver waits until the consumer has taken all queued events, i.e. the
+ * actuator counters <code>mediapool.queue.consumed</code> and <code>mediapool.queue.enqueued</code> have caught up and
+ * stay equal. Reported are the ingest latencies from sending a request to its response, how far sending fell behind the
+ * schedule, and the drain time from the first request until the queue is empty.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.brandmaker.mediapool.benchmark.TrafficReplay \
+ *     -Dexec.args="recordings/hook-20200301-120000.rec http://localhost:8080 10"
+ * </pre>
+ * Arguments: recording, base URL of the consumer (default http://localhost:8080), speed factors (default 1 10 100).
+ * Use the recording of a system without signature verification, or the same key, as the data is sent unchanged.
+ * To replay a recording more than once against the same consumer, run it with
+ * <code>spring.application.ingress.dedup.enabled: false</code>, otherwise the events are dropped as duplicates.
+ *
+ * @author axel.amthor
+ *
+ */
+public class TrafficReplay {
+
+	private static final long DRAIN_TIMEOUT = TimeUnit.MINUTES.toNanos(30);
+
+	public static void main(String[] args) throws Exception {
+
+		if ( args.length < 1 ) {
+			System.err.println("usage: TrafficReplay <recording> [base URL] [speed...]");
+			System.exit(1);
+		}
+
+		String recording = args[0];
+		String baseUrl = args.length > 1 ? args[1] : "http://localhost:8080";
+
+		List<Integer> speeds = new ArrayList<Integer>();
+		for ( int n = 2; n < args.length; n++ )
+			speeds.add(Integer.parseInt(args[n]));
+		if ( speeds.isEmpty() )
+			speeds = Arrays.asList(1, 10, 100);
+
+		List<TrafficRecord> records = read(recording);
+		if ( records.isEmpty() ) {
+			System.err.println("empty recording " + recording);
+			System.exit(1);
+		}
+
+		long bytes = records.stream().mapToLong(r -> r.getBody().length).sum();
+		System.out.println(String.format("%d requests, %.1f MB, recorded over %.1f sec", records.size(), bytes / 1e6,
+				records.get(records.size() - 1).getOffset() / 1e9));
+		System.out.println(String.format("%6s %8s %8s %8s %8s %8s %10s %10s %10s %10s  %s", "speed", "p50", "p90", "p99", "p99.9",
+				"max", "late max", "send sec", "drain sec", "events", "status"));
+
+		HttpClient client = HttpClient.newBuilder()
+				.version(HttpClient.Version.HTTP_1_1)
+				.executor(Executors.newFixedThreadPool(4))
+				.connectTimeout(Duration.ofSeconds(30))
+				.build();
+
+		for ( int speed : speeds )
+			System.out.println(replay(client, baseUrl, records, speed));
+
+		System.exit(0);
+	}
+
+	private static List<TrafficRecord> read(String recording) throws IOException {
+
+		List<TrafficRecord> records = new ArrayList<TrafficRecord>();
+
+		try ( InputStream in = Files.newInputStream(Paths.get(recording));
+				TrafficRecord.Reader reader = new TrafficRecord.Reader(in) ) {
+			TrafficRecord record;
+			while ( (record = reader.next()) != null )
+				records.add(record);
+		}
+
+		return records;
+	}
+
+	/**
+	 * Send all records on their schedule and wait for the queue to drain
+	 *
+	 * @return result line
+	 */
+	private static String replay(HttpClient client, String baseUrl, List<TrafficRecord> records, int speed) throws Exception {
+
+		long enqueuedBefore = counter(client, baseUrl, "mediapool.queue.enqueued");
+
+		long[] latencies = new long[records.size()];
+		Map<Integer, AtomicInteger> statuses = new ConcurrentHashMap<Integer, AtomicInteger>();
+		CompletableFuture<?>[] futures = new CompletableFuture<?>[records.size()];
+		long firstOffset = records.get(0).getOffset();
+		long late = 0L;
+
+		long start = System.nanoTime();
+		for ( int n = 0; n < records.size(); n++ ) {
+
+			TrafficRecord record = records.get(n);
+
+			long due = start + (record.getOffset() - firstOffset) / speed;
+			long wait = due - System.nanoTime();
+			if ( wait > 0 )
+				LockSupport.parkNanos(wait);
+			else
+				late = Math.max(late, -wait);
+
+			HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + record.getPath()))
+					.header("Content-Type", "application/json")
+					.timeout(Duration.ofSeconds(120))
+					.POST(HttpRequest.BodyPublishers.ofByteArray(record.getBody()));
+			if ( record.getContentEncoding() != null )
+				request.header("Content-Encoding", record.getContentEncoding());
+
+			int index = n;
+			long sent = System.nanoTime();
+
+			futures[n] = client.sendAsync(request.build(), HttpResponse.BodyHandlers.discarding())
+					.whenComplete((response, e) -> {
+						latencies[index] = System.nanoTime() - sent;
+						statuses.computeIfAbsent(e != null ? -1 : response.statusCode(), s -> new AtomicInteger()).incrementAndGet();
+					});
+		}
+		CompletableFuture.allOf(futures).handle((v, e) -> null).join();
+		long sendTime = System.nanoTime() - start;
+
+		long events = drain(client, baseUrl) - enqueuedBefore;
+		long drainTime = System.nanoTime() - start;
+
+		Arrays.sort(latencies);
+
+		return String.format("%5dx %8.2f %8.2f %8.2f %8.2f %8.2f %10.2f %10.2f %10.2f %10d  %s", speed,
+				millis(percentile(latencies, 0.50)), millis(percentile(latencies, 0.90)), millis(percentile(latencies, 0.99)),
+				millis(percentile(latencies, 0.999)), millis(latencies[latencies.length - 1]), millis(late),
+				sendTime / 1e9, drainTime / 1e9, events, new TreeMap<Integer, AtomicInteger>(statuses));
+	}
+
+	/**
+	 * Wait until all enqueued events are consumed and nothing more is coming from the ingress buffer or journal
+	 *
+	 * @return events enqueued in total
+	 */
+	private static long drain(HttpClient client, String baseUrl) throws Exception {
+
+		long timeout = System.nanoTime() + DRAIN_TIMEOUT;
+		long last = -1L;
+
+		while ( System.nanoTime() < timeout ) {
+
+			long enqueued = counter(client, baseUrl, "mediapool.queue.enqueued");
+			long consumed = counter(client, baseUrl, "mediapool.queue.consumed");
+
+			if ( consumed >= enqueued && enqueued == last )
+				return enqueued;
+
+			last = enqueued;
+			Thread.sleep(200);
+		}
+
+		throw new IllegalStateException("queue not drained within " + TimeUnit.NANOSECONDS.toMinutes(DRAIN_TIMEOUT) + " minutes");
+	}
+
+	private static long counter(HttpClient client, String baseUrl, String name) throws Exception {
+
+		HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/metrics/" + name)).build(),
+				HttpResponse.BodyHandlers.ofString());
+		if ( response.statusCode() == 404 )
+			return 0L;
+
+		return (long) new JSONObject(response.body()).getJSONArray("measurements").getJSONObject(0).getDouble("value");
+	}
+
+	private static long percentile(long[] sorted, double p) {
+		return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+}
@@ -0,0 +1,96 @@
+package com.brandmaker.mediapool.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.brandmaker.mediapool.webhook.TenantRegistry;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * Synthetic webhook request payloads for the benchmarks
+ *
+ * @author axel.amthor
+ *
+ */
+public final class WebhookPayloads {
+
+	/** channels the benchmark consumer is listening on */
+	public static final String CHANNELS = "PUBLIC_LINKS,SHARE";
+
+	private static final String[] EVENT_CHANNELS = { "PUBLIC_LINKS", "SHARE", "INTRANET", "PRINT" };
+
+	private WebhookPayloads() {
+	}
+
+	/**
+	 * Create the <code>data</code> document of a webhook request.
+	 * Every second event is published to one of our channels, the others go to foreign channels.
+	 *
+	 * @param events number of events in the batch
+	 * @return the data document as it is embedded into the request
+	 */
+	public static String data(int events) {
+
+		StringBuilder sb = new StringBuilder(events * 200 + 200);
+		sb.append("{\"tenantId\":8997,\"customerId\":\"aaa-bbb-ccc\",\"systemId\":\"123-456-789\",")
+			.append("\"baseUrl\":\"https://customer.brandmaker.com\",\"events\":[");
+
+		for ( int n = 0; n < events; n++ ) {
+			if ( n > 0 )
+				sb.append(',');
+
+			sb.append("{\"assetId\":").append(10000 + n)
+				.append(",\"eventType\":\"PUBLISHED\",\"eventTime\":").append(1581543493000L + n)
+				.append(",\"eventData\":[{\"channelId\":\"").append(EVENT_CHANNELS[n % EVENT_CHANNELS.length])
+				.append("\",\"startDate\":null,\"endDate\":null,\"renderingScheme\":856}]}");
+		}
+		sb.append("]}");
+		return sb.toString();
+	}
+
+	/**
+	 * Wrap a data document into the request body as posted by Media Pool
+	 *
+	 * @param data the data document
+	 * @param signature the signature or null
+	 * @return request body
+	 * @throws JSONException
+	 */
+	public static String body(String data, String signature) throws JSONException {
+		JSONObject body = new JSONObject();
+		body.put("data", data);
+		if ( signature != null )
+			body.put("signature", signature);
+		return body.toString();
+	}
+
+	/**
+	 * A tenant registry in a temporary file, as it is injected into the application
+	 */
+	public static TenantRegistry tenantRegistry() throws IOException {
+
+		File file = File.createTempFile("tenants", ".bin");
+		file.deleteOnExit();
+
+		TenantRegistry registry = new TenantRegistry();
+		ReflectionTestUtils.setField(registry, "file", file.getPath());
+		ReflectionTestUtils.setField(registry, "maxTenants", 1000);
+		registry.init();
+		return registry;
+	}
+
+	/**
+	 * The forked benchmark JVM runs without Spring Boot logging configuration, so logback defaults to DEBUG on the console.
+	 * Silence that, otherwise we are measuring the console.
+	 */
+	public static void quietLogging() {
+		((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.WARN);
+	}
+}
@@ -0,0 +1,271 @@
+package com.brandmaker.mediapool.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Session;
+
+import org.apache.activemq.ScheduledMessage;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jms.core.MessagePostProcessor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.brandmaker.mediapool.MediaPoolWebHookEvents.Event;
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AssetFanOutTests {
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final Session session = mock(Session.class);
+
+	private RecordingSender sender;
+
+	/**
+	 * Records the events sent, in order, each with the properties set by the fan-out
+	 */
+	private static final class RecordingSender extends Sender {
+
+		private final Deque<Queued> queued = new ArrayDeque<Queued>();
+
+		@Override
+		public int send(Collection<?> messages, Session session, MessagePostProcessor postProcessor) throws JMSException {
+
+			for ( Object message : messages ) {
+				Message properties = new ActiveMQMessage();
+				if ( postProcessor != null )
+					properties = postProcessor.postProcessMessage(properties);
+				queued.add(new Queued((MediaPoolEvent) message, properties));
+			}
+			return messages.size();
+		}
+	}
+
+	private static final class Queued {
+
+		private final MediaPoolEvent event;
+		private final Message properties;
+
+		Queued(MediaPoolEvent event, Message properties) {
+			this.event = event;
+			this.properties = properties;
+		}
+	}
+
+	@BeforeEach
+	void setUp() {
+		sender = new RecordingSender();
+	}
+
+	@Test
+	void queuesAnEventPerAsset() throws Exception {
+
+		AssetFanOut fanOut = fanOut(100, 2, 1000);
+
+		assertEquals(3, fanOut.expand(bulk(3), session));
+
+		List<MediaPoolEvent> sent = sent();
+		assertEquals(3, sent.size());
+		for ( int i = 0; i < 3; i++ ) {
+			MediaPoolEvent event = sent.get(i);
+			assertFalse(event.hasAssetIds());
+			assertTrue(AssetFanOut.isFanOut(properties(i)));
+			assertEquals(String.valueOf(1000L + i), event.getAssetId());
+			assertEquals(Event.SYNCHRONIZE, event.getEvent());
+			assertEquals("customer", event.getCustomerId());
+		}
+
+		assertEquals(3d, meterRegistry.counter("mediapool.queue.fanout.assets").count());
+		assertEquals(0d, meterRegistry.counter("mediapool.queue.fanout.continuations").count());
+		assertEquals(3, fanOut.getOutstanding());
+	}
+
+	@Test
+	void queuesTheRestAsContinuations() throws Exception {
+
+		AssetFanOut fanOut = fanOut(10, 2, 1000);
+
+		assertEquals(10, fanOut.expand(bulk(35), session));
+
+		List<MediaPoolEvent> sent = sent();
+		assertEquals(12, sent.size());
+
+		// every asset exactly once, in order
+		List<Long> ids = new ArrayList<Long>();
+		for ( MediaPoolEvent event : sent.subList(0, 10) )
+			ids.add(Long.valueOf(event.getAssetId()));
+		for ( int i = 10; i < 12; i++ ) {
+			MediaPoolEvent event = sent.get(i);
+			assertTrue(event.hasAssetIds());
+			// not outstanding, they are expanded by a consumer
+			assertFalse(AssetFanOut.isFanOut(properties(i)));
+			for ( long id : event.getAssetIds() )
+				ids.add(id);
+		}
+		assertEquals(35, ids.size());
+		for ( int i = 0; i < 35; i++ )
+			assertEquals(1000L + i, ids.get(i).longValue());
+
+		assertEquals(12, sent.get(10).getAssetIds().length);
+		assertEquals(13, sent.get(11).getAssetIds().length);
+		assertEquals(2d, meterRegistry.counter("mediapool.queue.fanout.continuations").count());
+	}
+
+	@Test
+	void splitsNotBelowTheChunkSize() throws Exception {
+
+		AssetFanOut fanOut = fanOut(10, 4, 1000);
+
+		fanOut.expand(bulk(15), session);
+
+		List<MediaPoolEvent> sent = sent();
+		assertEquals(11, sent.size());
+		assertEquals(5, sent.get(10).getAssetIds().length);
+	}
+
+	@Test
+	void takesOnlyAsManyAssetsAsThereIsRoomFor() throws Exception {
+
+		AssetFanOut fanOut = fanOut(10, 2, 15);
+
+		assertEquals(10, fanOut.expand(bulk(10), session));
+		assertEquals(5, fanOut.expand(bulk(10), session));
+		assertEquals(15, fanOut.getOutstanding());
+
+		// no room, the bulk event is queued again as it is
+		sender.queued.clear();
+		assertEquals(0, fanOut.expand(bulk(10), session));
+		assertEquals(1, sent().size());
+		assertEquals(10, sent().get(0).getAssetIds().length);
+		assertEquals(5000L, properties(0).getLongProperty(ScheduledMessage.AMQ_SCHEDULED_DELAY));
+		assertEquals(1d, meterRegistry.counter("mediapool.queue.fanout.held").count());
+
+		fanOut.completed();
+		assertEquals(14, fanOut.getOutstanding());
+		assertEquals(1, fanOut.expand(bulk(10), session));
+	}
+
+	@Test
+	void outstandingEventsStayBoundedWhileALargeBulkEventIsProcessed() throws Exception {
+
+		int maxOutstanding = 300;
+		int total = 50000;
+		AssetFanOut fanOut = fanOut(100, 2, maxOutstanding);
+
+		// the broker, and the events being synchronized, which take longer than receiving a message
+		Deque<Queued> broker = sender.queued;
+		Deque<MediaPoolEvent> synchronizing = new ArrayDeque<MediaPoolEvent>();
+		BitSet done = new BitSet(total);
+
+		fanOut.expand(bulk(total), session);
+
+		int maxQueued = 0;
+		int maxInFlight = 0;
+		for ( int step = 0; !broker.isEmpty() || !synchronizing.isEmpty(); step++ ) {
+
+			Queued message = broker.poll();
+			if ( message != null ) {
+				if ( message.event.hasAssetIds() ) {
+					fanOut.expand(message.event, session);
+				}
+				else {
+					assertTrue(AssetFanOut.isFanOut(message.properties));
+					synchronizing.add(message.event);
+				}
+			}
+
+			// one event is synchronized while two messages are received
+			if ( step % 2 == 0 && !synchronizing.isEmpty() ) {
+				done.set((int) (Long.parseLong(synchronizing.poll().getAssetId()) - 1000L));
+				fanOut.completed();
+			}
+
+			int events = 0;
+			for ( Queued queued : broker )
+				if ( !queued.event.hasAssetIds() )
+					events++;
+			maxQueued = Math.max(maxQueued, broker.size());
+			maxInFlight = Math.max(maxInFlight, events + synchronizing.size());
+		}
+
+		assertEquals(total, done.cardinality());
+		assertTrue(maxInFlight <= maxOutstanding, "in flight " + maxInFlight);
+		// the events of the assets, and about one bulk event with the rest per chunk of them
+		assertTrue(maxQueued <= maxOutstanding + maxOutstanding / 100 + 2, "queued " + maxQueued);
+		assertEquals(0, fanOut.getOutstanding());
+	}
+
+	@Test
+	void stalledEventsAreNoLongerCounted() throws Exception {
+
+		AssetFanOut fanOut = fanOut(10, 2, 10);
+		fanOut.expand(bulk(10), session);
+		assertEquals(0, fanOut.expand(bulk(10), session));
+
+		// e.g. consumed by another instance
+		ReflectionTestUtils.setField(fanOut, "lastProgress", System.currentTimeMillis() - 601000L);
+		assertEquals(10, fanOut.expand(bulk(10), session));
+	}
+
+	private AssetFanOut fanOut(int chunkSize, int split, int maxOutstanding) {
+
+		AssetFanOut fanOut = new AssetFanOut();
+		ReflectionTestUtils.setField(fanOut, "chunkSize", chunkSize);
+		ReflectionTestUtils.setField(fanOut, "split", split);
+		ReflectionTestUtils.setField(fanOut, "maxOutstanding", maxOutstanding);
+		ReflectionTestUtils.setField(fanOut, "holdDelay", 5000L);
+		ReflectionTestUtils.setField(fanOut, "stallTimeout", 600);
+		ReflectionTestUtils.setField(fanOut, "sender", sender);
+		ReflectionTestUtils.setField(fanOut, "meterRegistry", meterRegistry);
+		fanOut.init();
+		return fanOut;
+	}
+
+	/**
+	 * @return the events sent on the session of the listener
+	 */
+	private List<MediaPoolEvent> sent() {
+
+		List<MediaPoolEvent> events = new ArrayList<MediaPoolEvent>();
+		for ( Queued queued : sender.queued )
+			events.add(queued.event);
+		return events;
+	}
+
+	/**
+	 * @return the properties of the n-th message sent
+	 */
+	private Message properties(int n) {
+		return new ArrayList<Queued>(sender.queued).get(n).properties;
+	}
+
+	private static MediaPoolEvent bulk(int assets) {
+
+		long[] ids = new long[assets];
+		for ( int i = 0; i < assets; i++ )
+			ids[i] = 1000L + i;
+
+		MediaPoolEvent event = new MediaPoolEvent();
+		event.setEvent(Event.SYNCHRONIZE);
+		event.setCustomerId("customer");
+		event.setSystemId("system");
+		event.setAssetIds(ids);
+		return event;
+	}
+}
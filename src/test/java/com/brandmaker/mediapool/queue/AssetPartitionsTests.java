@@ -0,0 +1,272 @@
+package com.brandmaker.mediapool.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.Connection;
+import javax.jms.Destination;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.ScheduledMessage;
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.brandmaker.mediapool.MediaPoolWebHookEvents.Event;
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+import com.brandmaker.mediapool.webhook.TenantRegistry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AssetPartitionsTests {
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	void eventsOfAnAssetAreProcessedInOrderByTheirGroup() throws Exception {
+
+		AssetPartitions partitions = partitions(10000L);
+		MediaPoolEventMessageConverter converter = new MediaPoolEventMessageConverter(true, mock(TenantRegistry.class));
+
+		int assets = 5;
+		int eventsPerAsset = 40;
+		Map<String, List<Integer>> processed = new ConcurrentHashMap<String, List<Integer>>();
+		AtomicInteger received = new AtomicInteger();
+
+		ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory("vm://partitions?broker.persistent=false&broker.useJmx=false");
+		Connection connection = connectionFactory.createConnection();
+		try {
+			connection.start();
+
+			// two partitions, each consumer has a session of its own
+			for ( int i = 0; i < 2; i++ ) {
+				Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+
+				MessageConsumer consumer = session.createConsumer(session.createQueue("partitions"));
+				consumer.setMessageListener(message -> {
+					try {
+						MediaPoolEvent event = (MediaPoolEvent) converter.fromMessage(message);
+						int sequence = message.getIntProperty("sequence");
+						partitions.process(event, message, session, e -> {
+							processed.computeIfAbsent(e.getAssetId(), a -> Collections.synchronizedList(new ArrayList<Integer>())).add(sequence);
+							sleep(1L);
+						});
+						session.commit();
+						received.incrementAndGet();
+					}
+					catch ( Exception e ) {
+						throw new IllegalStateException(e);
+					}
+				});
+			}
+
+			// the events of the assets interleaved
+			Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+			MessageProducer producer = session.createProducer(session.createQueue("partitions"));
+			for ( int sequence = 0; sequence < eventsPerAsset; sequence++ ) {
+				for ( int asset = 0; asset < assets; asset++ ) {
+					Message message = converter.toMessage(event(String.valueOf(asset)), session);
+					message.setIntProperty("sequence", sequence);
+					producer.send(message);
+				}
+			}
+			session.commit();
+
+			long timeout = System.currentTimeMillis() + 10000L;
+			while ( received.get() < assets * eventsPerAsset && System.currentTimeMillis() < timeout )
+				Thread.sleep(10L);
+		}
+		finally {
+			connection.close();
+		}
+
+		assertEquals(assets, processed.size());
+		for ( List<Integer> sequences : processed.values() ) {
+			assertEquals(eventsPerAsset, sequences.size());
+			for ( int i = 0; i < eventsPerAsset; i++ )
+				assertEquals(i, sequences.get(i).intValue());
+		}
+		assertEquals(0d, meterRegistry.counter("mediapool.queue.partition.requeued").count());
+	}
+
+	@Test
+	void eventsOfAnAssetDoNotOverlap() throws Exception {
+
+		AssetPartitions partitions = partitions(10000L);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for ( int i = 0; i < 4; i++ ) {
+				Session session = mock(Session.class);
+				futures.add(executor.submit(() -> {
+					for ( int n = 0; n < 50; n++ ) {
+						assertTrue(partitions.process(event("4711"), null, session, e -> {
+							maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+							sleep(1L);
+							running.decrementAndGet();
+						}));
+					}
+				}));
+			}
+			for ( Future<?> future : futures )
+				future.get(30, TimeUnit.SECONDS);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(1, maxRunning.get());
+		assertTrue(locks(partitions).isEmpty());
+	}
+
+	@Test
+	void otherAssetsDoNotWait() throws Exception {
+
+		AssetPartitions partitions = partitions(10000L);
+		CountDownLatch locked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> first = executor.submit(() -> partitions.process(event("1"), null, mock(Session.class), e -> {
+				locked.countDown();
+				await(release);
+			}));
+			assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+			// asset 2 is processed while asset 1 is busy
+			AtomicInteger processed = new AtomicInteger();
+			assertTrue(partitions.process(event("2"), null, mock(Session.class), e -> processed.incrementAndGet()));
+			assertEquals(1, processed.get());
+
+			release.countDown();
+			first.get(10, TimeUnit.SECONDS);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(0d, meterRegistry.counter("mediapool.queue.partition.contended").count());
+	}
+
+	@Test
+	void eventsWhichWaitTooLongAreQueuedAgain() throws Exception {
+
+		AssetPartitions partitions = partitions(50L);
+		CountDownLatch locked = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		Queue queue = new ActiveMQQueue("mediapool.binary");
+		ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+		message.writeBytes(new byte[] { 1, 2, 3 });
+		message.setIntProperty(EventRetries.ATTEMPTS_PROPERTY, 2);
+		message.setJMSDestination(queue);
+		message.reset();
+		message.setReadOnlyProperties(true);
+
+		MessageProducer producer = mock(MessageProducer.class);
+		Session session = mock(Session.class);
+		when(session.createProducer(any(Destination.class))).thenReturn(producer);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<?> first = executor.submit(() -> partitions.process(event("4711"), null, mock(Session.class), e -> {
+				locked.countDown();
+				await(release);
+			}));
+			assertTrue(locked.await(10, TimeUnit.SECONDS));
+
+			Runnable handler = mock(Runnable.class);
+			assertFalse(partitions.process(event("4711"), message, session, e -> handler.run()));
+			verify(handler, never()).run();
+
+			release.countDown();
+			first.get(10, TimeUnit.SECONDS);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		verify(session).createProducer(queue);
+		ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+		verify(producer).send(sent.capture());
+		assertEquals(5000L, sent.getValue().getLongProperty(ScheduledMessage.AMQ_SCHEDULED_DELAY));
+		assertEquals(2, sent.getValue().getIntProperty(EventRetries.ATTEMPTS_PROPERTY));
+
+		assertEquals(1d, meterRegistry.counter("mediapool.queue.partition.contended").count());
+		assertEquals(1d, meterRegistry.counter("mediapool.queue.partition.requeued").count());
+		assertTrue(locks(partitions).isEmpty());
+	}
+
+	private AssetPartitions partitions(long lockWait) {
+
+		AssetPartitions partitions = new AssetPartitions();
+		ReflectionTestUtils.setField(partitions, "lockWait", lockWait);
+		ReflectionTestUtils.setField(partitions, "requeueDelay", 5000L);
+		ReflectionTestUtils.setField(partitions, "skewWindow", 60);
+		ReflectionTestUtils.setField(partitions, "meterRegistry", meterRegistry);
+		partitions.init();
+		return partitions;
+	}
+
+	private static Map<?, ?> locks(AssetPartitions partitions) {
+		return (Map<?, ?>) ReflectionTestUtils.getField(partitions, "locks");
+	}
+
+	private static MediaPoolEvent event(String assetId) {
+
+		MediaPoolEvent event = new MediaPoolEvent();
+		event.setEvent(Event.METADATA_CHANGED);
+		event.setCustomerId("customer");
+		event.setSystemId("system");
+		event.setAssetId(assetId);
+		return event;
+	}
+
+	private static void sleep(long msec) {
+		try {
+			Thread.sleep(msec);
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,221 @@
+package com.brandmaker.mediapool.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.QueueBrowser;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.brandmaker.mediapool.MediaPoolWebHookEvents.Event;
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+import com.brandmaker.mediapool.webhook.TenantRegistry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class DeadLetterReplayerTests {
+
+	private static final String DLQ = "mediapool.dlq";
+
+	private static final String LANE = "mediapool.metadata";
+
+	/** a broker of its own for each test */
+	private static final AtomicInteger BROKERS = new AtomicInteger();
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final MediaPoolEventMessageConverter converter = new MediaPoolEventMessageConverter(true, mock(TenantRegistry.class));
+
+	private Connection connection;
+	private Session session;
+	private DeadLetterReplayer replayer;
+
+	@BeforeEach
+	void setUp() throws Exception {
+
+		ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory("vm://replay" + BROKERS.incrementAndGet() + "?broker.persistent=false&broker.useJmx=false");
+		// keeps the broker up between the connections of the replayer
+		connection = connectionFactory.createConnection();
+		connection.start();
+		session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+
+		EventLanes lanes = mock(EventLanes.class);
+		when(lanes.queueName(any(MediaPoolEvent.class))).thenReturn(LANE);
+
+		EventRetries retries = new EventRetries();
+		ReflectionTestUtils.setField(retries, "deadLetterQueue", DLQ);
+		ReflectionTestUtils.setField(retries, "maxAttempts", 6);
+		ReflectionTestUtils.setField(retries, "messageConverter", converter);
+		ReflectionTestUtils.setField(retries, "lanes", lanes);
+		ReflectionTestUtils.setField(retries, "meterRegistry", meterRegistry);
+		retries.init();
+
+		replayer = new DeadLetterReplayer();
+		ReflectionTestUtils.setField(replayer, "defaultRate", 10d);
+		ReflectionTestUtils.setField(replayer, "receiverActiveMQConnectionFactory", connectionFactory);
+		ReflectionTestUtils.setField(replayer, "messageConverter", converter);
+		ReflectionTestUtils.setField(replayer, "retries", retries);
+		ReflectionTestUtils.setField(replayer, "lanes", lanes);
+		ReflectionTestUtils.setField(replayer, "meterRegistry", meterRegistry);
+		replayer.init();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+		replayer.close();
+		connection.close();
+	}
+
+	@Test
+	void deadLettersAreQueuedToTheirLaneAgain() throws Exception {
+
+		Message letter = converter.toMessage(event("4711"), session);
+		letter.setIntProperty(EventRetries.ATTEMPTS_PROPERTY, 6);
+		letter.setStringProperty(EventRetries.FAILURE_TYPE_PROPERTY, "transient");
+		deadLetter(letter);
+		deadLetter(converter.toMessage(event("4712"), session));
+
+		assertEquals(2, replayer.countDeadLetters());
+
+		replay(0);
+
+		List<Message> queued = browse(LANE);
+		assertEquals(2, queued.size());
+		assertEquals("4711", ((MediaPoolEvent) converter.fromMessage(queued.get(0))).getAssetId());
+		assertEquals("4712", ((MediaPoolEvent) converter.fromMessage(queued.get(1))).getAssetId());
+		// as a new event, with all attempts left
+		assertFalse(queued.get(0).propertyExists(EventRetries.ATTEMPTS_PROPERTY));
+		assertFalse(queued.get(0).propertyExists(EventRetries.FAILURE_TYPE_PROPERTY));
+
+		assertEquals(0, replayer.countDeadLetters());
+		assertEquals(2d, meterRegistry.counter("mediapool.queue.dead-letters.replayed").count());
+	}
+
+	@Test
+	void replaysUpToTheLimit() throws Exception {
+
+		for ( int i = 0; i < 3; i++ )
+			deadLetter(converter.toMessage(event(String.valueOf(4711 + i)), session));
+
+		replay(2);
+
+		assertEquals(2, browse(LANE).size());
+		assertEquals(1, replayer.countDeadLetters());
+	}
+
+	@Test
+	void undecodableDeadLettersAreKept() throws Exception {
+
+		BytesMessage undecodable = session.createBytesMessage();
+		undecodable.writeBytes(new byte[] { 1, 0, 0, 0, 0, 0, 0, 7 });
+		undecodable.setStringProperty(EventRetries.FAILURE_TYPE_PROPERTY, EventRetries.UNDECODABLE);
+		deadLetter(undecodable);
+
+		// not decodable any more, e.g. the tenant has been removed from the registry
+		BytesMessage broken = session.createBytesMessage();
+		broken.writeBytes(new byte[] { 99 });
+		broken.setStringProperty(EventRetries.FAILURE_TYPE_PROPERTY, "permanent");
+		deadLetter(broken);
+
+		deadLetter(converter.toMessage(event("4711"), session));
+
+		replay(0);
+
+		assertEquals(1, browse(LANE).size());
+
+		List<Message> kept = browse(DLQ);
+		assertEquals(2, kept.size());
+		for ( Message message : kept )
+			assertEquals(EventRetries.UNDECODABLE, message.getStringProperty(EventRetries.FAILURE_TYPE_PROPERTY));
+
+		assertEquals(1d, meterRegistry.counter("mediapool.queue.dead-letters.replayed").count());
+		assertEquals(1d, meterRegistry.counter("mediapool.queue.dead-letters", "reason", EventRetries.UNDECODABLE).count());
+	}
+
+	@Test
+	void oneReplayRunsAtATime() throws Exception {
+
+		for ( int i = 0; i < 3; i++ )
+			deadLetter(converter.toMessage(event(String.valueOf(4711 + i)), session));
+
+		assertNotNull(replayer.start(0, 1d));
+		assertNull(replayer.start(0, 1d));
+
+		assertNotNull(replayer.stop());
+		awaitReplay();
+		assertFalse(replayer.getReplay().isRunning());
+	}
+
+	/**
+	 * Replay the dead letters and wait for the end
+	 */
+	private void replay(int limit) throws InterruptedException {
+
+		assertNotNull(replayer.start(limit, 1000d));
+		awaitReplay();
+		assertNull(replayer.getReplay().getError());
+	}
+
+	private void awaitReplay() throws InterruptedException {
+
+		long timeout = System.currentTimeMillis() + 10000L;
+		while ( replayer.getReplay().isRunning() && System.currentTimeMillis() < timeout )
+			Thread.sleep(10L);
+		assertFalse(replayer.getReplay().isRunning());
+	}
+
+	private void deadLetter(Message message) throws Exception {
+
+		MessageProducer producer = session.createProducer(session.createQueue(DLQ));
+		try {
+			producer.send(message);
+		}
+		finally {
+			producer.close();
+		}
+	}
+
+	private List<Message> browse(String queue) throws Exception {
+
+		List<Message> messages = new ArrayList<Message>();
+		QueueBrowser browser = session.createBrowser(session.createQueue(queue));
+		try {
+			for ( Enumeration<?> e = browser.getEnumeration(); e.hasMoreElements(); )
+				messages.add((Message) e.nextElement());
+		}
+		finally {
+			browser.close();
+		}
+		return messages;
+	}
+
+	private static MediaPoolEvent event(String assetId) {
+
+		MediaPoolEvent event = new MediaPoolEvent();
+		event.setEvent(Event.METADATA_CHANGED);
+		event.setCustomerId("customer");
+		event.setSystemId("system");
+		event.setAssetId(assetId);
+		return event;
+	}
+}
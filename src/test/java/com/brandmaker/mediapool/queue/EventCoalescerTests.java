@@ -0,0 +1,163 @@
+package com.brandmaker.mediapool.queue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.GregorianCalendar;
+
+import org.junit.jupiter.api.Test;
+
+import com.brandmaker.mediapool.MediaPoolWebHookEvents.Event;
+import com.brandmaker.mediapool.queue.EventCoalescer.Effect;
+import com.brandmaker.mediapool.webhook.ChannelPublication;
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+
+class EventCoalescerTests {
+
+	@Test
+	void effects() {
+
+		assertEquals(Effect.METADATA, EventCoalescer.effect(Event.METADATA_CHANGED));
+		assertEquals(Effect.FILES, EventCoalescer.effect(Event.PUBLISHED));
+		assertEquals(Effect.FILES, EventCoalescer.effect(Event.DEPUBLISHED));
+		assertEquals(Effect.FILES, EventCoalescer.effect(Event.VERSION_ADDED));
+		assertEquals(Effect.DELETE, EventCoalescer.effect(Event.ASSET_DELETED));
+		assertEquals(Effect.NONE, EventCoalescer.effect(Event.SYNCHRONIZE));
+		assertEquals(Effect.NONE, EventCoalescer.effect(null));
+	}
+
+	@Test
+	void metadataChangesCollapse() {
+
+		MediaPoolEvent first = event(Event.METADATA_CHANGED, 1000L, "SHARE");
+		MediaPoolEvent second = event(Event.METADATA_CHANGED, 2000L, "SHARE");
+
+		assertSame(second, EventCoalescer.merge(first, second));
+		assertEquals(2000L, time(second));
+	}
+
+	@Test
+	void changesOfTheFilesAbsorbMetadataChanges() {
+
+		MediaPoolEvent files = event(Event.VERSION_ADDED, 1000L, "SHARE");
+		MediaPoolEvent metadata = event(Event.METADATA_CHANGED, 2000L, "SHARE");
+
+		assertSame(files, EventCoalescer.merge(files, metadata));
+		// the net event includes the later metadata change
+		assertEquals(2000L, time(files));
+	}
+
+	@Test
+	void changesOfTheFilesAbsorbMetadataChangesOfOtherChannels() {
+
+		MediaPoolEvent files = event(Event.PUBLISHED, 1000L, "SHARE");
+		MediaPoolEvent metadata = event(Event.METADATA_CHANGED, 2000L, "PRINT");
+
+		assertSame(files, EventCoalescer.merge(files, metadata));
+		assertEquals(2000L, time(files));
+	}
+
+	@Test
+	void changesOfTheFilesSupersedeMetadataChanges() {
+
+		MediaPoolEvent metadata = event(Event.METADATA_CHANGED, 1000L, "SHARE");
+		MediaPoolEvent files = event(Event.VERSION_ADDED, 2000L, "SHARE");
+
+		assertSame(files, EventCoalescer.merge(metadata, files));
+		assertEquals(2000L, time(files));
+	}
+
+	@Test
+	void theLaterStateOfTheFilesWins() {
+
+		MediaPoolEvent published = event(Event.PUBLISHED, 1000L, "SHARE");
+		MediaPoolEvent depublished = event(Event.DEPUBLISHED, 2000L, "SHARE");
+
+		assertSame(depublished, EventCoalescer.merge(published, depublished));
+		assertEquals(2000L, time(depublished));
+	}
+
+	@Test
+	void aDeletionCancelsEverything() {
+
+		MediaPoolEvent files = event(Event.PUBLISHED, 1000L, "SHARE");
+		MediaPoolEvent deleted = event(Event.ASSET_DELETED, 2000L);
+
+		assertSame(deleted, EventCoalescer.merge(files, deleted));
+
+		MediaPoolEvent metadata = event(Event.METADATA_CHANGED, 1000L, "PRINT");
+		assertSame(deleted, EventCoalescer.merge(metadata, deleted));
+	}
+
+	@Test
+	void metadataChangesAfterADeletionHaveNothingToDo() {
+
+		MediaPoolEvent deleted = event(Event.ASSET_DELETED, 1000L);
+		MediaPoolEvent metadata = event(Event.METADATA_CHANGED, 2000L);
+
+		assertSame(deleted, EventCoalescer.merge(deleted, metadata));
+		assertEquals(2000L, time(deleted));
+	}
+
+	@Test
+	void otherChannelsAreNotMerged() {
+
+		assertNull(EventCoalescer.merge(event(Event.METADATA_CHANGED, 1000L, "SHARE"), event(Event.METADATA_CHANGED, 2000L, "PRINT")));
+		assertNull(EventCoalescer.merge(event(Event.PUBLISHED, 1000L, "SHARE"), event(Event.PUBLISHED, 2000L, "PRINT")));
+		assertNull(EventCoalescer.merge(event(Event.METADATA_CHANGED, 1000L, "SHARE"), event(Event.PUBLISHED, 2000L, "PRINT")));
+	}
+
+	@Test
+	void olderEventsAreDropped() {
+
+		MediaPoolEvent pending = event(Event.METADATA_CHANGED, 2000L, "SHARE");
+		MediaPoolEvent older = event(Event.ASSET_DELETED, 1000L);
+
+		assertSame(pending, EventCoalescer.merge(pending, older));
+		assertEquals(2000L, time(pending));
+	}
+
+	@Test
+	void theEventTimeIsNotSetBack() {
+
+		// events without time, e.g. of a former release, do not clear the time of the other one
+		MediaPoolEvent pending = event(Event.METADATA_CHANGED, 2000L, "SHARE");
+		MediaPoolEvent untimed = event(Event.METADATA_CHANGED, 0L, "SHARE");
+
+		assertSame(untimed, EventCoalescer.merge(pending, untimed));
+		assertEquals(2000L, time(untimed));
+
+		MediaPoolEvent files = event(Event.PUBLISHED, 0L, "SHARE");
+		assertSame(files, EventCoalescer.merge(files, event(Event.METADATA_CHANGED, 3000L, "SHARE")));
+		assertEquals(3000L, time(files));
+	}
+
+	/**
+	 * @param eventTime msec, 0 for none
+	 */
+	private static MediaPoolEvent event(Event type, long eventTime, String... channelIds) {
+
+		MediaPoolEvent event = new MediaPoolEvent();
+		event.setEvent(type);
+		event.setCustomerId("customer");
+		event.setSystemId("system");
+		event.setAssetId("4711");
+
+		if ( eventTime > 0L ) {
+			GregorianCalendar time = new GregorianCalendar();
+			time.setTimeInMillis(eventTime);
+			event.setEventTime(time);
+		}
+
+		ChannelPublication[] publications = new ChannelPublication[channelIds.length];
+		for ( int i = 0; i < channelIds.length; i++ )
+			publications[i] = new ChannelPublication(channelIds[i], 856L, null, null);
+		event.setPublications(publications);
+		return event;
+	}
+
+	private static long time(MediaPoolEvent event) {
+		return event.getEventTime().getTimeInMillis();
+	}
+}
@@ -0,0 +1,230 @@
+package com.brandmaker.mediapool.queue;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ScheduledMessage;
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.filter.BooleanExpression;
+import org.apache.activemq.filter.MessageEvaluationContext;
+import org.apache.activemq.selector.SelectorParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.brandmaker.mediapool.MediaPoolWebHookEvents.Event;
+import com.brandmaker.mediapool.rest.AssetSyncException;
+import com.brandmaker.mediapool.rest.MediaPoolUnavailableException;
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+import com.brandmaker.mediapool.webhook.TenantRegistry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class EventRetriesTests {
+
+	private static final String DLQ = "mediapool.dlq";
+
+	private static final String LANE = "mediapool.metadata";
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private Session session;
+	private MessageProducer producer;
+	private EventRetries retries;
+
+	@BeforeEach
+	void setUp() throws JMSException {
+
+		producer = mock(MessageProducer.class);
+		session = mock(Session.class);
+		when(session.createQueue(anyString())).thenAnswer(invocation -> new ActiveMQQueue(invocation.getArgument(0)));
+		when(session.createProducer(any(Destination.class))).thenReturn(producer);
+		when(session.createBytesMessage()).thenAnswer(invocation -> new ActiveMQBytesMessage());
+
+		EventLanes lanes = mock(EventLanes.class);
+		when(lanes.queueName(any(MediaPoolEvent.class))).thenReturn(LANE);
+
+		retries = new EventRetries();
+		ReflectionTestUtils.setField(retries, "deadLetterQueue", DLQ);
+		ReflectionTestUtils.setField(retries, "maxAttempts", 6);
+		ReflectionTestUtils.setField(retries, "initialDelay", 30L);
+		ReflectionTestUtils.setField(retries, "multiplier", 2d);
+		ReflectionTestUtils.setField(retries, "maxDelay", 1800L);
+		ReflectionTestUtils.setField(retries, "jitter", 0.5d);
+		ReflectionTestUtils.setField(retries, "messageConverter", new MediaPoolEventMessageConverter(true, mock(TenantRegistry.class)));
+		ReflectionTestUtils.setField(retries, "lanes", lanes);
+		ReflectionTestUtils.setField(retries, "meterRegistry", meterRegistry);
+		retries.init();
+	}
+
+	@Test
+	void theDelayGrowsUpToTheMaxDelay() {
+
+		ReflectionTestUtils.setField(retries, "jitter", 0d);
+
+		assertEquals(30000L, retries.delay(1));
+		assertEquals(60000L, retries.delay(2));
+		assertEquals(120000L, retries.delay(3));
+		assertEquals(960000L, retries.delay(6));
+		assertEquals(1800000L, retries.delay(7));
+		assertEquals(1800000L, retries.delay(20));
+	}
+
+	@Test
+	void theDelayIsShortenedByTheJitter() {
+
+		for ( int i = 0; i < 100; i++ ) {
+			long delay = retries.delay(2);
+			assertTrue(delay > 30000L && delay <= 60000L, "delay " + delay);
+
+			delay = retries.delay(10);
+			assertTrue(delay > 900000L && delay <= 1800000L, "delay " + delay);
+		}
+	}
+
+	@Test
+	void failuresAreClassified() {
+
+		assertTrue(EventRetries.isTransient(new MediaPoolUnavailableException("Service unavailable", 503)));
+		assertTrue(EventRetries.isTransient(new IllegalStateException(new MediaPoolUnavailableException("Service unavailable", 503))));
+		assertTrue(EventRetries.isTransient(new AssetSyncException("disk full", new IOException(), true)));
+		assertFalse(EventRetries.isTransient(new AssetSyncException("not found", false)));
+		assertFalse(EventRetries.isTransient(new IllegalStateException(new AssetSyncException("not found", false))));
+		assertFalse(EventRetries.isTransient(new IllegalStateException("bug")));
+	}
+
+	@Test
+	void transientFailuresAreTriedAgainInTheirLane() throws Exception {
+
+		ReflectionTestUtils.setField(retries, "jitter", 0d);
+
+		retries.failed(event(), 1, session, new AssetSyncException("disk full", true));
+
+		verify(session).createProducer(new ActiveMQQueue(LANE));
+		Message sent = sent();
+		assertEquals(2, sent.getIntProperty(EventRetries.ATTEMPTS_PROPERTY));
+		assertEquals(60000L, sent.getLongProperty(ScheduledMessage.AMQ_SCHEDULED_DELAY));
+		assertFalse(sent.propertyExists(EventRetries.FAILURE_TYPE_PROPERTY));
+
+		assertEquals(1d, meterRegistry.counter("mediapool.queue.retries").count());
+	}
+
+	@Test
+	void permanentFailuresAreDeadLettered() throws Exception {
+
+		retries.failed(event(), 0, session, new AssetSyncException("Cannot load asset 4711", false));
+
+		verify(session).createProducer(new ActiveMQQueue(DLQ));
+		Message sent = sent();
+		assertEquals(1, sent.getIntProperty(EventRetries.ATTEMPTS_PROPERTY));
+		assertFalse(sent.propertyExists(ScheduledMessage.AMQ_SCHEDULED_DELAY));
+		assertEquals("permanent", sent.getStringProperty(EventRetries.FAILURE_TYPE_PROPERTY));
+		assertEquals("Cannot load asset 4711", sent.getStringProperty(EventRetries.FAILURE_PROPERTY));
+
+		assertEquals(0d, meterRegistry.counter("mediapool.queue.retries").count());
+		assertEquals(1d, meterRegistry.counter("mediapool.queue.dead-letters", "reason", "permanent").count());
+	}
+
+	@Test
+	void transientFailuresAreDeadLetteredAfterTheLastAttempt() throws Exception {
+
+		retries.failed(event(), 5, session, new MediaPoolUnavailableException("Service unavailable", 503));
+
+		verify(session).createProducer(new ActiveMQQueue(DLQ));
+		Message sent = sent();
+		assertEquals(6, sent.getIntProperty(EventRetries.ATTEMPTS_PROPERTY));
+		assertEquals("transient", sent.getStringProperty(EventRetries.FAILURE_TYPE_PROPERTY));
+
+		assertEquals(1d, meterRegistry.counter("mediapool.queue.dead-letters", "reason", "exhausted").count());
+	}
+
+	@Test
+	void undecodableMessagesAreCopiedToTheDeadLetterQueue() throws Exception {
+
+		byte[] data = { 1, 2, 3, 4 };
+		ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+		message.writeBytes(data);
+		message.setStringProperty(AssetPartitions.GROUP_PROPERTY, "1:4711");
+		// as received, and read by the converter
+		message.reset();
+		message.setReadOnlyProperties(true);
+		message.readBytes(new byte[data.length]);
+
+		retries.undecodable(message, session, new MessageConversionException("unknown tenant 7"));
+
+		verify(session).createProducer(new ActiveMQQueue(DLQ));
+		ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+		verify(producer).send(sent.capture());
+
+		ActiveMQBytesMessage letter = (ActiveMQBytesMessage) sent.getValue();
+		assertEquals(EventRetries.UNDECODABLE, letter.getStringProperty(EventRetries.FAILURE_TYPE_PROPERTY));
+		assertEquals("unknown tenant 7", letter.getStringProperty(EventRetries.FAILURE_PROPERTY));
+		assertEquals("1:4711", letter.getStringProperty(AssetPartitions.GROUP_PROPERTY));
+
+		letter.reset();
+		byte[] body = new byte[(int) letter.getBodyLength()];
+		letter.readBytes(body);
+		assertArrayEquals(data, body);
+
+		assertEquals(1d, meterRegistry.counter("mediapool.queue.dead-letters", "reason", EventRetries.UNDECODABLE).count());
+	}
+
+	@Test
+	void undecodableDeadLettersAreNotReplayed() throws Exception {
+
+		BooleanExpression replayable = SelectorParser.parse(EventRetries.REPLAYABLE);
+
+		assertTrue(matches(replayable, null));
+		assertTrue(matches(replayable, "transient"));
+		assertTrue(matches(replayable, "permanent"));
+		assertFalse(matches(replayable, EventRetries.UNDECODABLE));
+	}
+
+	private Message sent() throws JMSException {
+
+		ArgumentCaptor<Message> sent = ArgumentCaptor.forClass(Message.class);
+		verify(producer).send(sent.capture());
+		return sent.getValue();
+	}
+
+	private static MediaPoolEvent event() {
+
+		MediaPoolEvent event = new MediaPoolEvent();
+		event.setEvent(Event.METADATA_CHANGED);
+		event.setCustomerId("customer");
+		event.setSystemId("system");
+		event.setAssetId("4711");
+		return event;
+	}
+
+	private static boolean matches(BooleanExpression selector, String failureType) throws Exception {
+
+		ActiveMQMessage message = new ActiveMQMessage();
+		if ( failureType != null )
+			message.setStringProperty(EventRetries.FAILURE_TYPE_PROPERTY, failureType);
+
+		MessageEvaluationContext context = new MessageEvaluationContext();
+		context.setMessageReference(message);
+		return selector.matches(context);
+	}
+}
@@ -0,0 +1,163 @@
+package com.brandmaker.mediapool.queue;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import javax.jms.Session;
+
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.brandmaker.mediapool.MediaPoolWebHookEvents.Event;
+import com.brandmaker.mediapool.webhook.ChannelMatcher;
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+import com.brandmaker.mediapool.webhook.MediaPoolEventCodec;
+import com.brandmaker.mediapool.webhook.SignatureVerifier;
+import com.brandmaker.mediapool.webhook.TenantRegistry;
+import com.brandmaker.mediapool.webhook.tenant.TenantDirectory;
+import com.brandmaker.mediapool.webhook.tenant.TenantProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class QueueConsumerTests {
+
+	private AssetPartitions partitions;
+	private AssetFanOut fanOut;
+	private EventRetries retries;
+	private QueueConsumer consumer;
+
+	@BeforeEach
+	void setUp() {
+
+		partitions = mock(AssetPartitions.class);
+		fanOut = mock(AssetFanOut.class);
+		retries = mock(EventRetries.class);
+
+		consumer = new QueueConsumer();
+		ReflectionTestUtils.setField(consumer, "partitions", partitions);
+		ReflectionTestUtils.setField(consumer, "fanOut", fanOut);
+		ReflectionTestUtils.setField(consumer, "retries", retries);
+		ReflectionTestUtils.setField(consumer, "tenantDirectory", tenantDirectory());
+		// no tenants are registered
+		ReflectionTestUtils.setField(consumer, "messageConverter", new MediaPoolEventMessageConverter(true, mock(TenantRegistry.class)));
+		ReflectionTestUtils.setField(consumer, "meterRegistry", new SimpleMeterRegistry());
+		consumer.init();
+	}
+
+	@Test
+	void messagesOfAnUnknownTenantAreDeadLettered() throws Exception {
+
+		MediaPoolEvent event = new MediaPoolEvent();
+		event.setEvent(Event.PUBLISHED);
+		event.setAssetId("4711");
+		byte[] data = MediaPoolEventCodec.encode(event);
+		// tenant number 7, which is not registered
+		data[4] = 0;
+		data[5] = 0;
+		data[6] = 0;
+		data[7] = 7;
+
+		ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+		message.writeBytes(data);
+		message.reset();
+		Session session = mock(Session.class);
+
+		consumer.onMessage(message, session);
+
+		verify(retries).undecodable(eq(message), eq(session), any(MessageConversionException.class));
+		verifyZeroInteractions(partitions);
+	}
+
+	@Test
+	void bulkEventsAreQueuedAgainPerAsset() throws Exception {
+
+		MediaPoolEvent event = new MediaPoolEvent();
+		event.setEvent(Event.SYNCHRONIZE);
+		event.setCustomerId("customer");
+		event.setSystemId("system");
+		event.setAssetIds(new long[] { 1L, 2L, 3L });
+
+		ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+		message.writeBytes(MediaPoolEventCodec.encode(event));
+		message.reset();
+		Session session = mock(Session.class);
+
+		consumer.onMessage(message, session);
+
+		// nothing is synchronized inline, the events of the assets are received again
+		verify(fanOut).expand(any(MediaPoolEvent.class), eq(session));
+		verifyZeroInteractions(partitions, retries);
+	}
+
+	@Test
+	void failuresAreHandedToTheRetries() throws Exception {
+
+		MediaPoolEvent event = new MediaPoolEvent();
+		event.setEvent(Event.SYNCHRONIZE);
+		event.setCustomerId("customer");
+		event.setSystemId("system");
+		event.setAssetIds(new long[] { 1L, 2L, 3L });
+
+		ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+		message.writeBytes(MediaPoolEventCodec.encode(event));
+		message.setIntProperty(EventRetries.ATTEMPTS_PROPERTY, 2);
+		message.reset();
+		Session session = mock(Session.class);
+
+		IllegalStateException failure = new IllegalStateException("bug");
+		doThrow(failure).when(fanOut).expand(any(MediaPoolEvent.class), eq(session));
+
+		consumer.onMessage(message, session);
+
+		// not lost: tried again or dead-lettered
+		verify(retries).failed(any(MediaPoolEvent.class), eq(2), eq(session), same(failure));
+	}
+
+	@Test
+	void processedEventsOfBulkEventsAreReported() throws Exception {
+
+		MediaPoolEvent event = new MediaPoolEvent();
+		event.setEvent(Event.SYNCHRONIZE);
+		event.setCustomerId("customer");
+		event.setSystemId("system");
+		event.setAssetId("4711");
+
+		Session session = mock(Session.class);
+		ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+		message.writeBytes(MediaPoolEventCodec.encode(event));
+		message.setBooleanProperty(AssetFanOut.FAN_OUT_PROPERTY, true);
+		message.reset();
+
+		// queued again to wait for the lock of its asset, still outstanding
+		when(partitions.process(any(MediaPoolEvent.class), eq(message), eq(session), any())).thenReturn(false);
+		consumer.onMessage(message, session);
+		verify(fanOut, never()).completed();
+
+		when(partitions.process(any(MediaPoolEvent.class), eq(message), eq(session), any())).thenReturn(true);
+		// as redelivered
+		message.reset();
+		consumer.onMessage(message, session);
+		verify(fanOut).completed();
+	}
+
+	private static TenantDirectory tenantDirectory() {
+
+		TenantDirectory directory = new TenantDirectory();
+		ReflectionTestUtils.setField(directory, "basepath", "target");
+		ReflectionTestUtils.setField(directory, "properties", new TenantProperties());
+		ReflectionTestUtils.setField(directory, "channelMatcher", ChannelMatcher.of("SHARE"));
+		ReflectionTestUtils.setField(directory, "signatureVerifier", new SignatureVerifier(null, "SHA256withRSA", false));
+		directory.init();
+		return directory;
+	}
+}
@@ -0,0 +1,104 @@
+package com.brandmaker.mediapool.rest;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.brandmaker.mediapool.MediaPoolWebHookEvents.Event;
+import com.brandmaker.mediapool.queue.EventRetries;
+import com.brandmaker.mediapool.webhook.ChannelMatcher;
+import com.brandmaker.mediapool.webhook.ChannelPublication;
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+
+class MediaPoolAssetManagerTests {
+
+	private RestServicesWrapper restService;
+	private FileManagerService fileManagerService;
+	private MediaPoolAssetManager assetManager;
+
+	@BeforeEach
+	void setUp() {
+
+		restService = mock(RestServicesWrapper.class);
+		fileManagerService = mock(FileManagerService.class);
+
+		assetManager = new MediaPoolAssetManager();
+		assetManager.restService = restService;
+		assetManager.fileManagerService = fileManagerService;
+		assetManager.assetStates = mock(AssetStateStore.class);
+	}
+
+	@Test
+	void assetsWhichAreNotFoundFailPermanently() {
+
+		// not found
+		when(restService.getAssetData(any(MediaPoolEvent.class))).thenReturn(null);
+
+		AssetSyncException failure = assertThrows(AssetSyncException.class, () -> assetManager.synchronize(event()));
+
+		assertFalse(failure.isRetryable());
+		assertFalse(EventRetries.isTransient(failure));
+		verifyZeroInteractions(fileManagerService);
+	}
+
+	@Test
+	void unexpectedErrorsOnLoadingFailPermanently() {
+
+		IllegalArgumentException cause = new IllegalArgumentException("bug");
+		when(restService.getAssetData(any(MediaPoolEvent.class))).thenThrow(cause);
+
+		AssetSyncException failure = assertThrows(AssetSyncException.class, () -> assetManager.synchronize(event()));
+
+		assertFalse(failure.isRetryable());
+		assertSame(cause, failure.getCause());
+	}
+
+	@Test
+	void anUnavailableMediaPoolIsTriedAgain() {
+
+		MediaPoolUnavailableException cause = new MediaPoolUnavailableException("Service unavailable", 503);
+		when(restService.getAssetData(any(MediaPoolEvent.class))).thenThrow(cause);
+
+		MediaPoolUnavailableException failure = assertThrows(MediaPoolUnavailableException.class, () -> assetManager.synchronize(event()));
+
+		assertSame(cause, failure);
+		assertTrue(EventRetries.isTransient(failure));
+	}
+
+	@Test
+	void errorsOfTheFileSystemAreTriedAgain() {
+
+		MediaPoolEvent event = event();
+		event.setEvent(Event.ASSET_DELETED);
+		AssetSyncException cause = new AssetSyncException("Error on removing files of asset 4711", true);
+		doThrow(cause).when(fileManagerService).deleteFiles(event);
+
+		AssetSyncException failure = assertThrows(AssetSyncException.class, () -> assetManager.synchronize(event));
+
+		assertSame(cause, failure);
+		assertTrue(EventRetries.isTransient(failure));
+		verify(fileManagerService).deleteFiles(event);
+	}
+
+	private static MediaPoolEvent event() {
+
+		MediaPoolEvent event = new MediaPoolEvent();
+		event.setEvent(Event.METADATA_CHANGED);
+		event.setCustomerId("customer");
+		event.setSystemId("system");
+		event.setAssetId("4711");
+		event.setPublications(new ChannelPublication[] { new ChannelPublication("SHARE", 856L, null, null) });
+		event.setChannelMatcher(ChannelMatcher.of("SHARE"));
+		return event;
+	}
+}
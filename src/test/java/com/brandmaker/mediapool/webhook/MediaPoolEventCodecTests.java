@@ -0,0 +1,202 @@
+package com.brandmaker.mediapool.webhook;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.brandmaker.mediapool.MediaPoolWebHookEvents.Event;
+
+class MediaPoolEventCodecTests {
+
+	private static final long EVENT_TIME = 1581543493123L;
+
+	@Test
+	void roundTripOfEveryEventType() throws Exception {
+
+		for ( Event type : Event.values() ) {
+
+			MediaPoolEvent event = event(type, "4711");
+			MediaPoolEvent decoded = MediaPoolEventCodec.decode(MediaPoolEventCodec.encode(event), null);
+
+			assertEquals(type, decoded.getEvent(), type.toString());
+			assertEquals(EVENT_TIME, decoded.getEventTime().getTimeInMillis(), type.toString());
+			assertEquals("customer", decoded.getCustomerId(), type.toString());
+			assertEquals("system", decoded.getSystemId(), type.toString());
+			assertEquals("https://mediapool.example.com", decoded.getRawBaseUrl(), type.toString());
+			assertEquals("4711", decoded.getAssetId(), type.toString());
+			assertEquals("signature", decoded.getSignature(), type.toString());
+			assertEquals(MediaPoolEvent.NO_TENANT, decoded.getTenantId(), type.toString());
+			assertPublications(event.getPublications(), decoded.getPublications());
+		}
+	}
+
+	@Test
+	void roundTripOfAnEmptyEvent() throws Exception {
+
+		MediaPoolEvent decoded = MediaPoolEventCodec.decode(MediaPoolEventCodec.encode(new MediaPoolEvent()), null);
+
+		assertNull(decoded.getEvent());
+		assertNull(decoded.getEventTime());
+		assertNull(decoded.getCustomerId());
+		assertNull(decoded.getSystemId());
+		assertNull(decoded.getAssetId());
+		assertNull(decoded.getSignature());
+		assertFalse(decoded.hasAssetIds());
+	}
+
+	@Test
+	void roundTripOfAssetIdsWhichAreNoNumbers() throws Exception {
+
+		for ( String assetId : Arrays.asList("007", "-1", "asset", "", "9223372036854775807") ) {
+			MediaPoolEvent decoded = MediaPoolEventCodec.decode(MediaPoolEventCodec.encode(event(Event.PUBLISHED, assetId)), null);
+			assertEquals(assetId, decoded.getAssetId());
+		}
+	}
+
+	@Test
+	void roundTripOfABulkEvent() throws Exception {
+
+		long[] assetIds = { 1000L, 1001L, 1002L, 5L, Long.MAX_VALUE, Long.MIN_VALUE, 0L };
+
+		MediaPoolEvent event = event(Event.SYNCHRONIZE, null);
+		event.setAssetIds(assetIds);
+
+		MediaPoolEvent decoded = MediaPoolEventCodec.decode(MediaPoolEventCodec.encode(event), null);
+
+		assertArrayEquals(assetIds, decoded.getAssetIds());
+		assertNull(decoded.getAssetId());
+	}
+
+	@Test
+	void roundTripOfARegisteredTenant() throws Exception {
+
+		Path directory = Files.createTempDirectory("registry");
+		TenantRegistry registry = registry(directory);
+		try {
+			MediaPoolEvent event = event(Event.METADATA_CHANGED, "4711");
+			int tenantId = registry.register(event);
+
+			byte[] data = MediaPoolEventCodec.encode(event);
+			MediaPoolEvent decoded = MediaPoolEventCodec.decode(data, registry);
+
+			assertEquals(tenantId, decoded.getTenantId());
+			assertEquals("customer", decoded.getCustomerId());
+			assertEquals("system", decoded.getSystemId());
+			assertEquals("https://mediapool.example.com", decoded.getBaseUrl());
+
+			// the identity strings are not written
+			assertEquals(MediaPoolEventCodec.encode(event(Event.METADATA_CHANGED, "4711")).length - data.length,
+					2 + "customer".length() + 2 + "system".length() + 2 + "https://mediapool.example.com".length());
+		}
+		finally {
+			registry.close();
+			delete(directory);
+		}
+	}
+
+	@Test
+	void unknownTenantIsRejected() throws Exception {
+
+		Path directory = Files.createTempDirectory("registry");
+		TenantRegistry registry = registry(directory);
+		try {
+			MediaPoolEvent event = event(Event.PUBLISHED, "4711");
+			registry.register(event);
+			byte[] data = MediaPoolEventCodec.encode(event);
+
+			assertThrows(WebhookException.class, () -> MediaPoolEventCodec.decode(data, null));
+		}
+		finally {
+			registry.close();
+			delete(directory);
+		}
+	}
+
+	@Test
+	void otherVersionsAreRejected() {
+
+		byte[] data = MediaPoolEventCodec.encode(event(Event.PUBLISHED, "4711"));
+		assertEquals(MediaPoolEventCodec.VERSION, data[0]);
+
+		data[0] = 2;
+		assertThrows(WebhookException.class, () -> MediaPoolEventCodec.decode(data, null));
+	}
+
+	@Test
+	void truncatedMessagesAreRejected() {
+
+		MediaPoolEvent event = event(Event.PUBLISHED, "4711");
+		event.setAssetIds(new long[] { 1L, 2L, 3L });
+		byte[] data = MediaPoolEventCodec.encode(event);
+
+		for ( int length = 0; length < data.length; length++ ) {
+			byte[] truncated = Arrays.copyOf(data, length);
+			assertThrows(WebhookException.class, () -> MediaPoolEventCodec.decode(truncated, null), "length " + length);
+		}
+	}
+
+	private static MediaPoolEvent event(Event type, String assetId) {
+
+		MediaPoolEvent event = new MediaPoolEvent();
+		event.setEvent(type);
+		event.setCustomerId("customer");
+		event.setSystemId("system");
+		event.setBaseUrl("https://mediapool.example.com");
+		event.setAssetId(assetId);
+		event.setSignature("signature");
+
+		GregorianCalendar time = new GregorianCalendar();
+		time.setTimeInMillis(EVENT_TIME);
+		event.setEventTime(time);
+
+		event.setPublications(new ChannelPublication[] {
+				new ChannelPublication("SHARE", 856L, Instant.ofEpochMilli(1000L), Instant.ofEpochMilli(2000L)),
+				new ChannelPublication("PRINT", ChannelPublication.NO_RENDERING_SCHEME, null, Instant.ofEpochMilli(3000L)),
+				new ChannelPublication(null, 0L, Instant.ofEpochMilli(-1L), null),
+				new ChannelPublication("WEB", ChannelPublication.NO_RENDERING_SCHEME, null, null) });
+		return event;
+	}
+
+	private static void assertPublications(List<ChannelPublication> expected, List<ChannelPublication> actual) {
+
+		assertEquals(expected.size(), actual.size());
+		for ( int i = 0; i < expected.size(); i++ ) {
+			assertEquals(expected.get(i).getChannelId(), actual.get(i).getChannelId());
+			assertEquals(expected.get(i).hasRenderingScheme(), actual.get(i).hasRenderingScheme());
+			assertEquals(expected.get(i).getRenderingScheme(), actual.get(i).getRenderingScheme());
+			assertEquals(expected.get(i).getStartDate(), actual.get(i).getStartDate());
+			assertEquals(expected.get(i).getEndDate(), actual.get(i).getEndDate());
+		}
+	}
+
+	private static TenantRegistry registry(Path directory) throws IOException {
+
+		TenantRegistry registry = new TenantRegistry();
+		ReflectionTestUtils.setField(registry, "file", directory.resolve("tenants.bin").toString());
+		ReflectionTestUtils.setField(registry, "maxTenants", 16);
+		registry.init();
+		return registry;
+	}
+
+	private static void delete(Path directory) throws IOException {
+
+		try ( Stream<Path> files = Files.walk(directory) ) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package com.brandmaker.mediapool.webhook;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class MediaPoolEventParserTests {
+
+	private final MediaPoolEventParser parser = new MediaPoolEventParser();
+
+	private final MediaPoolEventParser filteringParser = new MediaPoolEventParser(ChannelMatcher.of("SHARE"));
+
+	@Test
+	void numbersAreReadAsNumbersOrNumericStrings() throws Exception {
+
+		List<MediaPoolEvent> events = parse(parser, data("\"assetIds\":[4711,\" 4712 \"]", "\"1552667068052\"", "856"));
+
+		assertEquals(1, events.size());
+		assertArrayEquals(new long[] { 4711L, 4712L }, events.get(0).getAssetIds());
+		assertEquals(1552667068052L, events.get(0).getEventTime().getTimeInMillis());
+	}
+
+	@Test
+	void objectsAndArraysAsAssetIdAreRejected() {
+
+		assertMalformed(parser, data("\"assetId\":{\"id\":4711}", "1552667068052", "856"), MediaPoolEvent.PROP_ASSETID);
+		assertMalformed(parser, data("\"assetId\":[4711]", "1552667068052", "856"), MediaPoolEvent.PROP_ASSETID);
+	}
+
+	@Test
+	void objectsAndArraysAsEventTimeAreRejected() {
+
+		assertMalformed(parser, data("\"assetId\":4711", "{\"time\":1552667068052}", "856"), MediaPoolEvent.PROP_EVENTTIME);
+		assertMalformed(parser, data("\"assetId\":4711", "[1552667068052]", "856"), MediaPoolEvent.PROP_EVENTTIME);
+	}
+
+	@Test
+	void objectsAndArraysAsRenderingSchemeAreRejected() {
+
+		for ( MediaPoolEventParser p : new MediaPoolEventParser[] { parser, filteringParser } ) {
+			assertMalformed(p, data("\"assetId\":4711", "1552667068052", "{\"id\":856}"), MediaPoolEvent.PROP_RENDERINGSCHEME);
+			assertMalformed(p, data("\"assetId\":4711", "1552667068052", "[856]"), MediaPoolEvent.PROP_RENDERINGSCHEME);
+		}
+	}
+
+	@Test
+	void objectsAndArraysWithinAssetIdsAreSkipped() throws Exception {
+
+		List<MediaPoolEvent> events = parse(parser, data("\"assetIds\":[4711,{\"id\":4712},[4713],4714]", "1552667068052", "856"));
+
+		assertArrayEquals(new long[] { 4711L, 4714L }, events.get(0).getAssetIds());
+	}
+
+	@Test
+	void onlyTheWellKnownChannelsAreCanonicalized() throws Exception {
+
+		String share = new String(MediaPoolEvent.CHANNEL_SHARE);
+		String custom = new String("CUSTOM_CHANNEL");
+
+		ChannelPublication known = new ChannelPublication(share, 856L, null, null);
+		ChannelPublication unknown = new ChannelPublication(custom, 857L, null, null);
+
+		assertSame(MediaPoolEvent.CHANNEL_SHARE, known.getChannelId());
+		// remote input, not interned
+		assertSame(custom, unknown.getChannelId());
+
+		MediaPoolEvent event = new MediaPoolEvent();
+		event.setChannelMatcher(ChannelMatcher.of("PUBLIC_LINKS,SHARE"));
+		event.setPublications(new ChannelPublication[] { unknown, known });
+
+		assertTrue(event.isSharingChannel());
+		assertFalse(event.isPublicLinkChannel());
+		assertEquals(856L, event.getRenderingScheme());
+	}
+
+	private static void assertMalformed(MediaPoolEventParser parser, String data, String property) {
+
+		WebhookException e = assertThrows(WebhookException.class, () -> parse(parser, data), data);
+		assertTrue(e.getMessage().startsWith("(5)"), e.getMessage());
+		assertTrue(e.getMessage().contains(property), e.getMessage());
+	}
+
+	private static List<MediaPoolEvent> parse(MediaPoolEventParser parser, String data) throws WebhookException {
+
+		List<MediaPoolEvent> events = new ArrayList<MediaPoolEvent>();
+		parser.parse(data, events::add);
+		return events;
+	}
+
+	private static String data(String assets, String eventTime, String renderingScheme) {
+
+		return "{\"customerId\":\"aaa-bbb-ccc\",\"systemId\":\"123-456-789\",\"baseUrl\":\"https://customer.brandmaker.com\",\"events\":[{"
+			+ assets + ",\"eventType\":\"PUBLISHED\",\"eventTime\":" + eventTime
+			+ ",\"eventData\":[{\"channelId\":\"SHARE\",\"renderingScheme\":" + renderingScheme + "}]}]}";
+	}
+}
@@ -0,0 +1,60 @@
+package com.brandmaker.mediapool.webhook.consumer;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.web.servlet.MockMvc;
+
+@SpringBootTest(properties = "spring.application.admin.token=s3cr3t")
+@AutoConfigureMockMvc
+class SecurityConfigurationTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Test
+	void unauthenticatedAdminRequestsAreRejected() throws Exception {
+
+		mockMvc.perform(get("/admin/dead-letters")).andExpect(status().isUnauthorized());
+		mockMvc.perform(post("/admin/dead-letters/replay")).andExpect(status().isUnauthorized());
+		mockMvc.perform(delete("/admin/dead-letters/replay")).andExpect(status().isUnauthorized());
+	}
+
+	@Test
+	void adminRequestsWithAWrongTokenAreRejected() throws Exception {
+
+		mockMvc.perform(get("/admin/dead-letters").header("Authorization", "Bearer guess"))
+			.andExpect(status().isUnauthorized());
+		mockMvc.perform(get("/admin/dead-letters").header("Authorization", "Basic czNjcjN0"))
+			.andExpect(status().isUnauthorized());
+	}
+
+	@Test
+	void adminRequestsWithTheTokenAreAccepted() throws Exception {
+
+		mockMvc.perform(get("/admin/dead-letters").header("Authorization", "Bearer s3cr3t"))
+			.andExpect(status().isOk());
+	}
+
+	@Test
+	void withoutATokenTheAdminEndpointsAreClosed() throws Exception {
+
+		AdminTokenFilter filter = new AdminTokenFilter("");
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/admin/dead-letters");
+		request.addHeader("Authorization", "Bearer ");
+		filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+		assertNull(SecurityContextHolder.getContext().getAuthentication());
+	}
+}
@@ -0,0 +1,238 @@
+package com.brandmaker.mediapool.webhook.ingress;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.brandmaker.mediapool.MediaPoolWebHookEvents.Event;
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+import com.brandmaker.mediapool.webhook.ingress.DuplicateEventFilter.LongHashSet;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class DuplicateEventFilterTests {
+
+	/** 4 keys, 8 slots: keys with the same low 3 bits share a home slot */
+	private static final int MAX_KEYS = 4;
+
+	@Test
+	void addContainsRemove() {
+
+		LongHashSet set = new LongHashSet(MAX_KEYS);
+
+		assertTrue(set.add(42L));
+		assertFalse(set.add(42L));
+		assertTrue(set.contains(42L));
+		assertFalse(set.contains(43L));
+		assertEquals(1, set.size());
+
+		set.remove(43L);
+		assertEquals(1, set.size());
+
+		set.remove(42L);
+		assertFalse(set.contains(42L));
+		assertEquals(0, set.size());
+	}
+
+	@Test
+	void zeroIsAKey() {
+
+		LongHashSet set = new LongHashSet(MAX_KEYS);
+
+		assertFalse(set.contains(0L));
+		assertTrue(set.add(0L));
+		assertTrue(set.contains(0L));
+
+		set.remove(0L);
+		assertFalse(set.contains(0L));
+	}
+
+	@Test
+	void probesWrapAround() {
+
+		LongHashSet set = new LongHashSet(MAX_KEYS);
+
+		// home slot 7, the last one: the collisions go to slots 0 and 1
+		assertTrue(set.add(7L));
+		assertTrue(set.add(15L));
+		assertTrue(set.add(23L));
+
+		assertTrue(set.contains(7L));
+		assertTrue(set.contains(15L));
+		assertTrue(set.contains(23L));
+		assertFalse(set.contains(31L));
+		assertEquals(3, set.size());
+	}
+
+	@Test
+	void removeShiftsBackAcrossTheEnd() {
+
+		LongHashSet set = new LongHashSet(MAX_KEYS);
+
+		set.add(7L);
+		set.add(15L);
+		set.add(23L);
+		// home slot 0, probed to slot 2 behind the wrapped entries
+		set.add(8L);
+
+		set.remove(7L);
+
+		assertFalse(set.contains(7L));
+		assertTrue(set.contains(15L));
+		assertTrue(set.contains(23L));
+		assertTrue(set.contains(8L));
+		assertEquals(3, set.size());
+
+		// no gap is left in the probe sequences, so the removed slot can be taken again and is found
+		set.remove(15L);
+		assertTrue(set.contains(23L));
+		assertTrue(set.contains(8L));
+		assertTrue(set.add(7L));
+		assertTrue(set.contains(7L));
+		assertEquals(3, set.size());
+	}
+
+	@Test
+	void removeKeepsEntriesAtTheirHome() {
+
+		LongHashSet set = new LongHashSet(MAX_KEYS);
+
+		// 1 and 9 share slot 1, 2 is at home in slot 2 and must not be moved into the gap
+		set.add(1L);
+		set.add(9L);
+		set.add(2L);
+
+		set.remove(1L);
+
+		assertTrue(set.contains(9L));
+		assertTrue(set.contains(2L));
+
+		set.remove(9L);
+		assertTrue(set.contains(2L));
+		assertEquals(1, set.size());
+	}
+
+	@Test
+	void clear() {
+
+		LongHashSet set = new LongHashSet(MAX_KEYS);
+		set.add(1L);
+		set.add(2L);
+
+		set.clear();
+
+		assertEquals(0, set.size());
+		assertFalse(set.contains(1L));
+		assertTrue(set.add(1L));
+	}
+
+	@Test
+	void dropsDuplicates() {
+
+		DuplicateEventFilter filter = filter(600L, MAX_KEYS);
+
+		assertTrue(filter.accept(event("1", 1000L)));
+		assertFalse(filter.accept(event("1", 1000L)));
+		assertTrue(filter.accept(event("1", 2000L)));
+		assertTrue(filter.accept(event("2", 1000L)));
+	}
+
+	@Test
+	void rotatesWhenFull() {
+
+		DuplicateEventFilter filter = filter(600L, MAX_KEYS);
+
+		for ( int i = 0; i < MAX_KEYS; i++ )
+			assertTrue(filter.accept(event(String.valueOf(i), 1000L)));
+
+		// the current generation is full: it becomes the previous one, its keys are still known
+		assertTrue(filter.accept(event("new", 1000L)));
+		for ( int i = 0; i < MAX_KEYS; i++ )
+			assertFalse(filter.accept(event(String.valueOf(i), 1000L)));
+
+		// fill the new generation, the next rotation drops the first keys
+		for ( int i = 1; i < MAX_KEYS; i++ )
+			assertTrue(filter.accept(event("next" + i, 1000L)));
+		assertTrue(filter.accept(event("last", 1000L)));
+
+		assertTrue(filter.accept(event("0", 1000L)));
+		assertFalse(filter.accept(event("new", 1000L)));
+	}
+
+	@Test
+	void rotatesWhenExpired() {
+
+		DuplicateEventFilter filter = filter(0L, MAX_KEYS);
+
+		// every call rotates, a key is kept for one more generation
+		assertTrue(filter.accept(event("1", 1000L)));
+		assertFalse(filter.accept(event("1", 1000L)));
+		assertTrue(filter.accept(event("2", 1000L)));
+		assertTrue(filter.accept(event("3", 1000L)));
+		assertTrue(filter.accept(event("1", 1000L)));
+	}
+
+	@Test
+	void forgetsAcceptedEvents() {
+
+		DuplicateEventFilter filter = filter(600L, MAX_KEYS);
+
+		MediaPoolEvent first = event("1", 1000L);
+		MediaPoolEvent second = event("2", 1000L);
+		assertTrue(filter.accept(first));
+		assertTrue(filter.accept(second));
+
+		filter.forget(Arrays.asList(first));
+
+		assertTrue(filter.accept(event("1", 1000L)));
+		assertFalse(filter.accept(event("2", 1000L)));
+	}
+
+	@Test
+	void forgetsAcrossGenerations() {
+
+		DuplicateEventFilter filter = filter(600L, MAX_KEYS);
+
+		MediaPoolEvent old = event("old", 1000L);
+		assertTrue(filter.accept(old));
+		for ( int i = 1; i < MAX_KEYS; i++ )
+			filter.accept(event(String.valueOf(i), 1000L));
+		// rotated, the old key is in the previous generation now
+		filter.accept(event("new", 1000L));
+		assertFalse(filter.accept(event("old", 1000L)));
+
+		filter.forget(Arrays.asList(old));
+
+		assertTrue(filter.accept(event("old", 1000L)));
+	}
+
+	private static DuplicateEventFilter filter(long window, int maxKeys) {
+
+		DuplicateEventFilter filter = new DuplicateEventFilter();
+		ReflectionTestUtils.setField(filter, "window", window);
+		ReflectionTestUtils.setField(filter, "maxKeys", maxKeys);
+		ReflectionTestUtils.setField(filter, "meterRegistry", new SimpleMeterRegistry());
+		filter.init();
+		return filter;
+	}
+
+	private static MediaPoolEvent event(String assetId, long eventTime) {
+
+		MediaPoolEvent event = new MediaPoolEvent();
+		event.setCustomerId("customer");
+		event.setSystemId("system");
+		event.setAssetId(assetId);
+		event.setEvent(Event.PUBLISHED);
+
+		GregorianCalendar time = new GregorianCalendar();
+		time.setTimeInMillis(eventTime);
+		event.setEventTime(time);
+		return event;
+	}
+}
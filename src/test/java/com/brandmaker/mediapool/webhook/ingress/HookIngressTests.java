@@ -0,0 +1,202 @@
+package com.brandmaker.mediapool.webhook.ingress;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import com.brandmaker.mediapool.queue.Sender;
+import com.brandmaker.mediapool.utils.LimitedInputStream;
+import com.brandmaker.mediapool.webhook.ChannelMatcher;
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+import com.brandmaker.mediapool.webhook.SignatureVerifier;
+import com.brandmaker.mediapool.webhook.TenantId;
+import com.brandmaker.mediapool.webhook.TenantRegistry;
+import com.brandmaker.mediapool.webhook.WebhookException;
+import com.brandmaker.mediapool.webhook.rest.controller.HookRequestBody;
+import com.brandmaker.mediapool.webhook.tenant.TenantContext;
+import com.brandmaker.mediapool.webhook.tenant.TenantDirectory;
+import com.brandmaker.mediapool.webhook.tenant.TenantProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class HookIngressTests {
+
+	private static final TenantId ROUTE = new TenantId("customer", "route");
+
+	private TenantDirectory tenantDirectory;
+	private IngressProcessor ingressProcessor;
+	private RequestBodyDecoder decoder;
+	private HookIngress ingress;
+
+	@BeforeEach
+	void setUp() {
+
+		tenantDirectory = tenantDirectory();
+		ingressProcessor = mock(IngressProcessor.class);
+
+		decoder = new RequestBodyDecoder();
+		ReflectionTestUtils.setField(decoder, "maxBodySize", 1048576L);
+		ReflectionTestUtils.setField(decoder, "maxDataSize", 1048576L);
+		ReflectionTestUtils.setField(decoder, "meterRegistry", new SimpleMeterRegistry());
+		decoder.init();
+
+		ingress = new HookIngress();
+		ReflectionTestUtils.setField(ingress, "tenantDirectory", tenantDirectory);
+		ReflectionTestUtils.setField(ingress, "requestBodyDecoder", decoder);
+		ReflectionTestUtils.setField(ingress, "ingressProcessor", ingressProcessor);
+		ReflectionTestUtils.setField(ingress, "metrics", mock(IngressMetrics.class));
+	}
+
+	@Test
+	void acceptsTheDataOfTheRoute() throws Exception {
+
+		ingress.accept(request(data("customer", "route")), null, tenantDirectory.find(ROUTE));
+
+		verify(ingressProcessor).process(any(HookPayload.class));
+	}
+
+	@Test
+	void rejectsTheDataOfAnotherTenant() throws Exception {
+
+		ResponseStatusException e = assertThrows(ResponseStatusException.class,
+				() -> ingress.accept(request(data("customer", "other")), null, tenantDirectory.find(ROUTE)));
+
+		assertEquals(HttpStatus.FORBIDDEN, e.getStatus());
+		assertTrue(e.getReason().startsWith("(15)"));
+		verify(ingressProcessor, never()).process(any(HookPayload.class));
+	}
+
+	@Test
+	void rejectsDataWithoutIdsOnARoute() throws Exception {
+
+		JSONObject data = data("customer", "route");
+		data.remove(MediaPoolEvent.PROP_CUSTOMERID);
+		data.remove(MediaPoolEvent.PROP_SYSTEMID);
+
+		ResponseStatusException e = assertThrows(ResponseStatusException.class,
+				() -> ingress.accept(request(data), null, tenantDirectory.find(ROUTE)));
+
+		assertEquals(HttpStatus.FORBIDDEN, e.getStatus());
+		verify(ingressProcessor, never()).process(any(HookPayload.class));
+	}
+
+	@Test
+	void acceptsAnyTenantWithoutRoute() throws Exception {
+
+		ingress.accept(request(data("customer", "other")), null);
+
+		verify(ingressProcessor).process(any(HookPayload.class));
+	}
+
+	@Test
+	void rejectsDataLargerThanTheLimit() throws Exception {
+
+		JSONObject data = data("customer", "other");
+		ReflectionTestUtils.setField(decoder, "maxDataSize", (long) data.toString().length() - 1);
+
+		ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> ingress.accept(request(data), null));
+
+		assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, e.getStatus());
+		verify(ingressProcessor, never()).process(any(HookPayload.class));
+
+		ReflectionTestUtils.setField(decoder, "maxDataSize", (long) data.toString().length());
+		ingress.accept(request(data), null);
+		verify(ingressProcessor).process(any(HookPayload.class));
+	}
+
+	@Test
+	void theDataLimitCountsUtf8Bytes() throws Exception {
+
+		// 4 characters, 2 bytes each, and a surrogate pair of 4 bytes
+		byte[] body = "{\"data\":\"\u00fc\u00fc\u00fc\u00fc\ud83d\ude00\"}".getBytes(StandardCharsets.UTF_8);
+
+		assertThrows(LimitedInputStream.LimitExceededException.class, () -> HookRequestBody.read(new ByteArrayInputStream(body), 11L));
+		assertEquals(12, HookRequestBody.read(new ByteArrayInputStream(body), 12L).getDataBytes().remaining());
+	}
+
+	@Test
+	void collectRejectsEventsOfAnotherTenant() throws Exception {
+
+		IngressProcessor processor = new IngressProcessor();
+		ReflectionTestUtils.setField(processor, "tenantDirectory", tenantDirectory);
+		ReflectionTestUtils.setField(processor, "tenantRegistry", mock(TenantRegistry.class));
+		ReflectionTestUtils.setField(processor, "processingQueueSender", mock(Sender.class));
+		ReflectionTestUtils.setField(processor, "metrics", mock(IngressMetrics.class));
+
+		TenantContext route = tenantDirectory.find(ROUTE);
+		List<MediaPoolEvent> batch = new ArrayList<MediaPoolEvent>();
+
+		// the IDs of the events are those of the batch, if present
+		JSONObject other = data("customer", "other");
+		assertThrows(WebhookException.class, () -> processor.collect(new HookPayload(other.toString(), null, 0L, route), batch));
+		assertTrue(batch.isEmpty());
+
+		// events with IDs of their own
+		JSONObject own = data("customer", "route");
+		own.remove(MediaPoolEvent.PROP_CUSTOMERID);
+		own.remove(MediaPoolEvent.PROP_SYSTEMID);
+		own.getJSONArray("events").getJSONObject(0).put(MediaPoolEvent.PROP_CUSTOMERID, "customer").put(MediaPoolEvent.PROP_SYSTEMID, "other");
+		assertThrows(WebhookException.class, () -> processor.collect(new HookPayload(own.toString(), null, 0L, route), batch));
+		assertTrue(batch.isEmpty());
+
+		assertEquals(1, processor.collect(new HookPayload(data("customer", "route").toString(), null, 0L, route), batch));
+		assertEquals(1, batch.size());
+	}
+
+	private static JSONObject data(String customerId, String systemId) {
+
+		JSONObject event = new JSONObject()
+				.put(MediaPoolEvent.PROP_ASSETID, 1)
+				.put("eventType", "PUBLISHED")
+				.put("eventTime", 1581543493000L)
+				.put("eventData", Arrays.asList(new JSONObject().put("channelId", "SHARE").put("renderingScheme", 856)));
+
+		return new JSONObject()
+				.put(MediaPoolEvent.PROP_CUSTOMERID, customerId)
+				.put(MediaPoolEvent.PROP_SYSTEMID, systemId)
+				.put(MediaPoolEvent.PROP_BASEURL, "https://localhost:1")
+				.put("events", Arrays.asList(event));
+	}
+
+	private static ByteArrayInputStream request(JSONObject data) {
+
+		String body = new JSONObject().put("data", data.toString()).put("signature", "x").toString();
+		return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static TenantDirectory tenantDirectory() {
+
+		TenantProperties.Tenant tenant = new TenantProperties.Tenant();
+		tenant.setCustomerId(ROUTE.getCustomerId());
+		tenant.setSystemId(ROUTE.getSystemId());
+		tenant.setEnabled(true);
+
+		TenantProperties properties = new TenantProperties();
+		properties.setTenants(Arrays.asList(tenant));
+
+		TenantDirectory directory = new TenantDirectory();
+		ReflectionTestUtils.setField(directory, "basepath", "target");
+		ReflectionTestUtils.setField(directory, "properties", properties);
+		ReflectionTestUtils.setField(directory, "channelMatcher", ChannelMatcher.of("SHARE"));
+		ReflectionTestUtils.setField(directory, "signatureVerifier", new SignatureVerifier(null, "SHA256withRSA", false));
+		directory.init();
+		return directory;
+	}
+}
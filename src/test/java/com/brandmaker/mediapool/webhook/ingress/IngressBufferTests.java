@@ -0,0 +1,123 @@
+package com.brandmaker.mediapool.webhook.ingress;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jms.JmsException;
+import org.springframework.jms.UncategorizedJmsException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.brandmaker.mediapool.MediaPoolWebHookEvents.Event;
+import com.brandmaker.mediapool.queue.Sender;
+import com.brandmaker.mediapool.webhook.MediaPoolEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class IngressBufferTests {
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	void theCapacityIsReportedAfterAGarbageCollection() throws Exception {
+
+		IngressBuffer buffer = buffer(mock(IngressProcessor.class));
+		try {
+			System.gc();
+			assertEquals(8d, meterRegistry.get("mediapool.ingress.buffer.capacity").gauge().value());
+		}
+		finally {
+			buffer.stop();
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void eventsOfABatchTriedAgainStayInTheDuplicateFilter() throws Exception {
+
+		AtomicInteger attempts = new AtomicInteger();
+		IngressProcessor processor = mock(IngressProcessor.class);
+		doAnswer(invocation -> {
+			((List<MediaPoolEvent>) invocation.getArgument(1)).add(event());
+			return 1;
+		}).when(processor).collect(any(HookPayload.class), anyList());
+		doAnswer(invocation -> {
+			if ( attempts.incrementAndGet() == 1 )
+				throw new UncategorizedJmsException("broker not available");
+			return 1;
+		}).when(processor).enqueue(anyList());
+
+		IngressBuffer buffer = buffer(processor);
+		try {
+			assertTrue(buffer.offer(new HookPayload("{}", null)));
+
+			long timeout = System.currentTimeMillis() + 10000L;
+			while ( attempts.get() < 2 && System.currentTimeMillis() < timeout )
+				Thread.sleep(10L);
+		}
+		finally {
+			buffer.stop();
+		}
+
+		verify(processor, times(2)).enqueue(anyList());
+		// queued after all, a redelivery by Media Pool is still a duplicate
+		verify(processor, never()).forget(anyList());
+	}
+
+	@Test
+	void eventsOfARejectedRequestAreForgotten() throws Exception {
+
+		Sender sender = mock(Sender.class);
+		when(sender.sendBatch(anyList())).thenThrow(new UncategorizedJmsException("broker not available"));
+		DuplicateEventFilter filter = mock(DuplicateEventFilter.class);
+
+		IngressProcessor processor = new IngressProcessor();
+		ReflectionTestUtils.setField(processor, "processingQueueSender", sender);
+		ReflectionTestUtils.setField(processor, "duplicateFilter", filter);
+		ReflectionTestUtils.setField(processor, "metrics", mock(IngressMetrics.class));
+
+		// a buffer or the journal tries the batch again, it is not forgotten
+		List<MediaPoolEvent> batch = Collections.singletonList(event());
+		assertThrows(JmsException.class, () -> processor.enqueue(batch));
+		verify(filter, never()).forget(anyList());
+
+		processor.forget(batch);
+		verify(filter).forget(batch);
+	}
+
+	private IngressBuffer buffer(IngressProcessor processor) {
+
+		IngressBuffer buffer = new IngressBuffer();
+		ReflectionTestUtils.setField(buffer, "capacity", 8);
+		ReflectionTestUtils.setField(buffer, "maxBatch", 4);
+		ReflectionTestUtils.setField(buffer, "retryAfter", 5);
+		ReflectionTestUtils.setField(buffer, "ingressProcessor", processor);
+		ReflectionTestUtils.setField(buffer, "meterRegistry", meterRegistry);
+		buffer.start();
+		return buffer;
+	}
+
+	private static MediaPoolEvent event() {
+
+		MediaPoolEvent event = new MediaPoolEvent();
+		event.setEvent(Event.METADATA_CHANGED);
+		event.setCustomerId("customer");
+		event.setSystemId("system");
+		event.setAssetId("4711");
+		return event;
+	}
+}
@@ -0,0 +1,262 @@
+package com.brandmaker.mediapool.webhook.ingress;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jms.UncategorizedJmsException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.brandmaker.mediapool.webhook.ChannelMatcher;
+import com.brandmaker.mediapool.webhook.SignatureVerifier;
+import com.brandmaker.mediapool.webhook.TenantId;
+import com.brandmaker.mediapool.webhook.tenant.TenantDirectory;
+import com.brandmaker.mediapool.webhook.tenant.TenantProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class IngressJournalTests {
+
+	private static final TenantId TENANT = new TenantId("customer", "system");
+
+	private Path directory;
+
+	private TenantDirectory tenantDirectory;
+
+	/** the payloads handed to the processor, in their order */
+	private final List<HookPayload> replayed = Collections.synchronizedList(new ArrayList<HookPayload>());
+
+	private IngressJournal journal;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		directory = Files.createTempDirectory("journal");
+		tenantDirectory = tenantDirectory();
+	}
+
+	@AfterEach
+	void tearDown() throws Exception {
+
+		if ( journal != null )
+			journal.stop();
+
+		try ( Stream<Path> files = Files.walk(directory) ) {
+			files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Test
+	void replaysInOrderAcrossSegments() throws Exception {
+
+		// small segments and batches, so the records span several of each
+		journal = journal(1024, 7, replaying());
+
+		List<String> appended = new ArrayList<String>();
+		for ( int i = 0; i < 100; i++ ) {
+			String data = "{\"n\":" + i + "}";
+			journal.append(new HookPayload(data, "signature-" + i, 1000L + i));
+			appended.add(data);
+		}
+
+		awaitReplayed(100);
+
+		assertEquals(appended, dataOf(replayed));
+		for ( int i = 0; i < 100; i++ ) {
+			assertEquals("signature-" + i, replayed.get(i).getSignature());
+			assertEquals(1000L + i, replayed.get(i).getReceivedAt());
+		}
+	}
+
+	@Test
+	void restoresTheTenant() throws Exception {
+
+		journal = journal(65536, 64, replaying());
+
+		journal.append(new HookPayload("{}", null, 1L, tenantDirectory.find(TENANT)));
+		journal.append(new HookPayload("{}", null, 2L, tenantDirectory.getDefault()));
+		journal.append(new HookPayload("{}", null, 3L));
+
+		awaitReplayed(3);
+
+		assertEquals(TENANT, replayed.get(0).getTenant().getId());
+		assertNull(replayed.get(0).getSignature());
+		// not listed, resolved from the data again
+		assertNull(replayed.get(1).getTenant());
+		assertNull(replayed.get(2).getTenant());
+	}
+
+	@Test
+	void replaysWhatIsLeftAfterARestart() throws Exception {
+
+		journal = journal(65536, 64, unavailable());
+		journal.append(new HookPayload("first", null, 1L, tenantDirectory.find(TENANT)));
+		journal.append(new HookPayload("second", null, 2L));
+		journal.stop();
+
+		journal = journal(65536, 64, replaying());
+		awaitReplayed(2);
+
+		assertEquals(Arrays.asList("first", "second"), dataOf(replayed));
+		assertEquals(TENANT, replayed.get(0).getTenant().getId());
+	}
+
+	@Test
+	void recoversFromATornRecord() throws Exception {
+
+		journal = journal(65536, 64, unavailable());
+		journal.append(new HookPayload("first", null, 1L));
+		long end = journal.append(new HookPayload("second", null, 2L));
+		journal.stop();
+
+		// the process died while the next record was written: the length is there, the body is incomplete
+		try ( RandomAccessFile segment = new RandomAccessFile(segment(0L).toFile(), "rw") ) {
+			segment.seek(end);
+			segment.writeInt(64);
+			segment.writeInt(0x12345678);
+			segment.writeLong(3L);
+			segment.writeInt(5);
+		}
+
+		journal = journal(65536, 64, replaying());
+		awaitReplayed(2);
+
+		// the torn record is overwritten by the next one
+		assertEquals(end + 8 + 8 + 4 + 5 + 4 + 4 + 4, journal.append(new HookPayload("third", null, 3L)));
+		awaitReplayed(3);
+
+		assertEquals(Arrays.asList("first", "second", "third"), dataOf(replayed));
+	}
+
+	@Test
+	void recoversFromARecordBeyondTheSegment() throws Exception {
+
+		journal = journal(1024, 64, unavailable());
+		long end = journal.append(new HookPayload("first", null, 1L));
+		journal.stop();
+
+		// a garbage length pointing behind the end of the segment
+		try ( RandomAccessFile segment = new RandomAccessFile(segment(0L).toFile(), "rw") ) {
+			segment.seek(end);
+			segment.writeInt(4096);
+		}
+
+		journal = journal(1024, 64, replaying());
+		journal.append(new HookPayload("second", null, 2L));
+		awaitReplayed(2);
+
+		assertEquals(Arrays.asList("first", "second"), dataOf(replayed));
+	}
+
+	@Test
+	void doesNotReplayCommittedRecordsAgain() throws Exception {
+
+		journal = journal(65536, 64, replaying());
+		journal.append(new HookPayload("first", null, 1L));
+		awaitReplayed(1);
+		journal.stop();
+
+		journal = journal(65536, 64, replaying());
+		journal.append(new HookPayload("second", null, 2L));
+		awaitReplayed(2);
+
+		assertEquals(Arrays.asList("first", "second"), dataOf(replayed));
+	}
+
+	private IngressJournal journal(int segmentSize, int maxBatch, IngressProcessor processor) throws IOException {
+
+		IngressJournal journal = new IngressJournal();
+		ReflectionTestUtils.setField(journal, "directory", directory.toString());
+		ReflectionTestUtils.setField(journal, "segmentSize", segmentSize);
+		ReflectionTestUtils.setField(journal, "retainedSegments", 2);
+		ReflectionTestUtils.setField(journal, "maxBatch", maxBatch);
+		ReflectionTestUtils.setField(journal, "ingressProcessor", processor);
+		ReflectionTestUtils.setField(journal, "tenantDirectory", tenantDirectory);
+		ReflectionTestUtils.setField(journal, "meterRegistry", new SimpleMeterRegistry());
+		journal.start();
+		return journal;
+	}
+
+	/**
+	 * @return a processor, which records the payloads
+	 */
+	private IngressProcessor replaying() throws Exception {
+
+		IngressProcessor processor = mock(IngressProcessor.class);
+		doAnswer(invocation -> {
+			replayed.add(invocation.getArgument(0));
+			return 0;
+		}).when(processor).collect(any(HookPayload.class), anyList());
+		return processor;
+	}
+
+	/**
+	 * @return a processor, which cannot queue anything
+	 */
+	private static IngressProcessor unavailable() {
+
+		IngressProcessor processor = mock(IngressProcessor.class);
+		doThrow(new UncategorizedJmsException("broker not available")).when(processor).enqueue(anyList());
+		return processor;
+	}
+
+	private void awaitReplayed(int count) throws InterruptedException {
+
+		long timeout = System.currentTimeMillis() + 10000L;
+		while ( replayed.size() < count && System.currentTimeMillis() < timeout )
+			Thread.sleep(10L);
+
+		assertTrue(replayed.size() >= count, "replayed " + replayed.size() + " of " + count);
+	}
+
+	private Path segment(long base) {
+		return directory.resolve(String.format("%020d", base) + ".journal");
+	}
+
+	private static List<String> dataOf(List<HookPayload> payloads) {
+
+		List<String> data = new ArrayList<String>();
+		synchronized ( payloads ) {
+			for ( HookPayload payload : payloads )
+				data.add(payload.getData());
+		}
+		return data;
+	}
+
+	private static TenantDirectory tenantDirectory() {
+
+		TenantProperties.Tenant tenant = new TenantProperties.Tenant();
+		tenant.setCustomerId(TENANT.getCustomerId());
+		tenant.setSystemId(TENANT.getSystemId());
+		tenant.setEnabled(true);
+
+		TenantProperties properties = new TenantProperties();
+		properties.setTenants(Arrays.asList(tenant));
+
+		TenantDirectory directory = new TenantDirectory();
+		ReflectionTestUtils.setField(directory, "basepath", "target");
+		ReflectionTestUtils.setField(directory, "properties", properties);
+		ReflectionTestUtils.setField(directory, "channelMatcher", ChannelMatcher.of("SHARE"));
+		ReflectionTestUtils.setField(directory, "signatureVerifier", new SignatureVerifier(null, "SHA256withRSA", false));
+		directory.init();
+		return directory;
+	}
+}
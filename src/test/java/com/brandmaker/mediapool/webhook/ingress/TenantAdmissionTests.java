@@ -0,0 +1,188 @@
+package com.brandmaker.mediapool.webhook.ingress;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.brandmaker.mediapool.webhook.ChannelMatcher;
+import com.brandmaker.mediapool.webhook.SignatureVerifier;
+import com.brandmaker.mediapool.webhook.TenantId;
+import com.brandmaker.mediapool.webhook.ingress.TenantAdmission.TokenBucket;
+import com.brandmaker.mediapool.webhook.tenant.TenantDirectory;
+import com.brandmaker.mediapool.webhook.tenant.TenantProperties;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class TenantAdmissionTests {
+
+	private static final long MSEC = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	void burstIsAdmittedAtOnce() {
+
+		TokenBucket bucket = bucket(10d, 3);
+		long now = System.nanoTime();
+
+		assertEquals(0L, bucket.tryAcquire(now));
+		assertEquals(0L, bucket.tryAcquire(now));
+		assertEquals(0L, bucket.tryAcquire(now));
+
+		// the next token is due one interval of 100 msec later
+		assertEquals(100L * MSEC, bucket.tryAcquire(now));
+		assertEquals(40L * MSEC, bucket.tryAcquire(now + 60L * MSEC));
+
+		assertEquals(3d, meterRegistry.counter("admitted").count());
+		assertEquals(2d, meterRegistry.counter("rejected").count());
+	}
+
+	@Test
+	void refillsAtTheRate() {
+
+		TokenBucket bucket = bucket(10d, 3);
+		long now = System.nanoTime();
+
+		for ( int i = 0; i < 3; i++ )
+			bucket.tryAcquire(now);
+
+		// one token per 100 msec
+		assertEquals(0L, bucket.tryAcquire(now + 100L * MSEC));
+		assertTrue(bucket.tryAcquire(now + 100L * MSEC) > 0L);
+		assertEquals(0L, bucket.tryAcquire(now + 200L * MSEC));
+		assertTrue(bucket.tryAcquire(now + 250L * MSEC) > 0L);
+	}
+
+	@Test
+	void refillsNotBeyondTheBurst() {
+
+		TokenBucket bucket = bucket(10d, 3);
+		long now = System.nanoTime();
+
+		bucket.tryAcquire(now);
+
+		// idle for 10 sec, still only 3 tokens
+		long later = now + TimeUnit.SECONDS.toNanos(10);
+		for ( int i = 0; i < 3; i++ )
+			assertEquals(0L, bucket.tryAcquire(later));
+		assertEquals(100L * MSEC, bucket.tryAcquire(later));
+	}
+
+	@Test
+	void rejectedRequestsTakeNoToken() {
+
+		TokenBucket bucket = bucket(10d, 1);
+		long now = System.nanoTime();
+
+		assertEquals(0L, bucket.tryAcquire(now));
+		for ( int i = 0; i < 10; i++ )
+			assertEquals(100L * MSEC, bucket.tryAcquire(now));
+
+		assertEquals(0L, bucket.tryAcquire(now + 100L * MSEC));
+	}
+
+	@Test
+	void noRateIsUnlimited() {
+
+		TokenBucket bucket = bucket(0d, 1);
+		long now = System.nanoTime();
+
+		for ( int i = 0; i < 1000; i++ )
+			assertEquals(0L, bucket.tryAcquire(now));
+	}
+
+	@Test
+	void retryAfterIsRoundedUpToSeconds() {
+
+		TenantAdmission admission = admission(0.1d, 1, 10);
+		TenantId tenant = new TenantId("customer", "system");
+
+		assertEquals(0, admission.admit(tenant));
+
+		// 10 sec per request, a few nsec have passed
+		assertEquals(10, admission.admit(tenant));
+	}
+
+	@Test
+	void retryAfterIsAtLeastOneSecond() {
+
+		TenantAdmission admission = admission(100d, 1, 10);
+		TenantId tenant = new TenantId("customer", "system");
+
+		assertEquals(0, admission.admit(tenant));
+		assertEquals(1, admission.admit(tenant));
+	}
+
+	@Test
+	void tenantsHaveOwnBuckets() {
+
+		TenantAdmission admission = admission(0.1d, 1, 10);
+
+		assertEquals(0, admission.admit(new TenantId("customer", "a")));
+		assertEquals(0, admission.admit(new TenantId("customer", "b")));
+		assertTrue(admission.admit(new TenantId("customer", "a")) > 0);
+	}
+
+	@Test
+	void configuredLimitsWin() {
+
+		AdmissionProperties.TenantLimit limit = new AdmissionProperties.TenantLimit();
+		limit.setCustomerId("customer");
+		limit.setSystemId("fast");
+		limit.setRate(1000d);
+		limit.setBurst(5);
+
+		TenantAdmission admission = admission(0.1d, 1, 10, limit);
+		TenantId tenant = new TenantId("customer", "fast");
+
+		for ( int i = 0; i < 5; i++ )
+			assertEquals(0, admission.admit(tenant));
+	}
+
+	@Test
+	void furtherTenantsShareTheOverflowBucket() {
+
+		TenantAdmission admission = admission(0.1d, 1, 1);
+
+		assertEquals(0, admission.admit(new TenantId("customer", "a")));
+		assertEquals(0, admission.admit(new TenantId("customer", "b")));
+		assertTrue(admission.admit(new TenantId("customer", "c")) > 0);
+	}
+
+	private TokenBucket bucket(double rate, int burst) {
+		return new TokenBucket(rate, burst, meterRegistry.counter("admitted"), meterRegistry.counter("rejected"));
+	}
+
+	private TenantAdmission admission(double rate, int burst, int maxTenants, AdmissionProperties.TenantLimit... limits) {
+
+		AdmissionProperties properties = new AdmissionProperties();
+		properties.setRate(rate);
+		properties.setBurst(burst);
+		properties.setMaxTenants(maxTenants);
+		properties.setTenants(Arrays.asList(limits));
+
+		TenantAdmission admission = new TenantAdmission();
+		ReflectionTestUtils.setField(admission, "properties", properties);
+		ReflectionTestUtils.setField(admission, "tenantDirectory", tenantDirectory());
+		ReflectionTestUtils.setField(admission, "meterRegistry", meterRegistry);
+		admission.init();
+		return admission;
+	}
+
+	private static TenantDirectory tenantDirectory() {
+
+		TenantDirectory directory = new TenantDirectory();
+		ReflectionTestUtils.setField(directory, "basepath", "target");
+		ReflectionTestUtils.setField(directory, "properties", new TenantProperties());
+		ReflectionTestUtils.setField(directory, "channelMatcher", ChannelMatcher.of("SHARE"));
+		ReflectionTestUtils.setField(directory, "signatureVerifier", new SignatureVerifier(null, "SHA256withRSA", false));
+		directory.init();
+		return directory;
+	}
+}